@@ -0,0 +1,39 @@
+package net.flybyte.virgo.maven.benchmark;
+
+import java.io.File;
+
+import net.flybyte.virgo.maven.BaseMojo;
+
+/**
+ * Minimal mojo giving the benchmarks access to the helper methods of {@link BaseMojo}. The parameters Maven
+ * would normally inject are set to the values of a default configuration.
+ * 
+ * @author Frieder Heugel
+ */
+public class BenchmarkMojo extends BaseMojo {
+
+	public BenchmarkMojo(File virgoRoot, File target, String finalArtefact) {
+		logger = new QuietLog();
+		setVirgoRoot(virgoRoot);
+		setServiceUrl("service:jmx:rmi://localhost:%d/jndi/rmi://localhost:%d/jmxrmi");
+		setUser("admin");
+		setPassword("springsource");
+		setPackaging("jar");
+		setTransport("jmx");
+		path = target.getAbsolutePath();
+		this.finalArtefact = finalArtefact;
+	}
+
+	@Override
+	public void execute() {
+		// only the helper methods are of interest
+	}
+
+	/**
+	 * Makes the start argument parsing accessible.
+	 */
+	public void parseJmxPort() {
+		checkForJMXPort();
+	}
+
+}
@@ -0,0 +1,31 @@
+package net.flybyte.virgo.maven.benchmark;
+
+import net.flybyte.virgo.maven.server.Start;
+
+import org.apache.commons.exec.CommandLine;
+
+/**
+ * Gives the benchmarks access to the start argument processing of the {@link Start} goal.
+ * 
+ * @author Frieder Heugel
+ */
+public class BenchmarkStart extends Start {
+
+	public BenchmarkStart(String startParams) {
+		logger = new QuietLog();
+		setStartParams(startParams);
+	}
+
+	/**
+	 * Builds the command line used to launch Virgo including the start arguments.
+	 * 
+	 * @return
+	 */
+	public CommandLine buildCommandLine() {
+		CommandLine cmdLine = new CommandLine("sh");
+		cmdLine.addArgument("startup.sh");
+		processArguments(cmdLine);
+		return cmdLine;
+	}
+
+}
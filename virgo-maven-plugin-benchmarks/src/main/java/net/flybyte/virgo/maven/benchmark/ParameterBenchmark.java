@@ -0,0 +1,96 @@
+package net.flybyte.virgo.maven.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.flybyte.virgo.maven.helper.MavenVersionNumberConverter;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the work the plugin does before it talks to Virgo: version conversion, artefact resolution,
+ * service URL formatting and start argument parsing.
+ * 
+ * @author Frieder Heugel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterBenchmark {
+	private static final String START_PARAMS = "-clean,-jmxport,9876,-debug,8000,-suspend";
+
+	private File target;
+	private BenchmarkMojo mojo;
+	private BenchmarkStart start;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		target = File.createTempFile("virgo-benchmark", "");
+		target.delete();
+		target.mkdirs();
+		new File(target, "bundle-1.0.0.jar").createNewFile();
+		mojo = new BenchmarkMojo(target, target, "bundle-1.0.0");
+		mojo.setStartParams(START_PARAMS);
+		start = new BenchmarkStart(START_PARAMS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		new File(target, "bundle-1.0.0.jar").delete();
+		target.delete();
+	}
+
+	@Benchmark
+	public String convertToOsgi(Versions versions) {
+		return MavenVersionNumberConverter.convertToOsgi(versions.mavenVersion);
+	}
+
+	@Benchmark
+	public File getArtefactFile() throws MojoFailureException {
+		return mojo.getArtefactFile();
+	}
+
+	@Benchmark
+	public String getServiceUrl() {
+		return mojo.getServiceUrl();
+	}
+
+	@Benchmark
+	public int checkForJMXPort() {
+		mojo.parseJmxPort();
+		return mojo.getJmxPort();
+	}
+
+	@Benchmark
+	public CommandLine processArguments() {
+		return start.buildCommandLine();
+	}
+
+	/**
+	 * The Maven versions converted, kept separately so the other benchmarks don't run once per version.
+	 */
+	@State(Scope.Benchmark)
+	public static class Versions {
+		@Param({ "1.0.1-SNAPSHOT", "2.3", "1.0.0.RELEASE" })
+		private String mavenVersion;
+	}
+
+}
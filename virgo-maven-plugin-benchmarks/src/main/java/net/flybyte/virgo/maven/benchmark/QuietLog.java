@@ -0,0 +1,64 @@
+package net.flybyte.virgo.maven.benchmark;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Drops everything but errors, otherwise writing the plugin's progress messages to the console would
+ * dominate the measured times.
+ * 
+ * @author Frieder Heugel
+ */
+public class QuietLog extends SystemStreamLog {
+
+	@Override
+	public boolean isDebugEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isInfoEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isWarnEnabled() {
+		return false;
+	}
+
+	@Override
+	public void debug(CharSequence content) {
+	}
+
+	@Override
+	public void debug(CharSequence content, Throwable error) {
+	}
+
+	@Override
+	public void debug(Throwable error) {
+	}
+
+	@Override
+	public void info(CharSequence content) {
+	}
+
+	@Override
+	public void info(CharSequence content, Throwable error) {
+	}
+
+	@Override
+	public void info(Throwable error) {
+	}
+
+	@Override
+	public void warn(CharSequence content) {
+	}
+
+	@Override
+	public void warn(CharSequence content, Throwable error) {
+	}
+
+	@Override
+	public void warn(Throwable error) {
+	}
+
+}
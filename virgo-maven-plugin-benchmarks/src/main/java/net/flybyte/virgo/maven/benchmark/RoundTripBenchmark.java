@@ -0,0 +1,113 @@
+package net.flybyte.virgo.maven.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.testsupport.VirgoStandIn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures complete JMX round trips through {@link BaseMojo#getConnection()} against the in-process
+ * {@link VirgoStandIn}, with and without SSL: connecting and invoking an operation with a fresh connection
+ * each time, invoking an operation on a connection taken from the session cache and invoking an operation
+ * on an already established connection.
+ * 
+ * @author Frieder Heugel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+	private static final String[] DEPLOY_SIGNATURE = { "java.lang.String", "boolean" };
+
+	@Param({ "false", "true" })
+	private boolean ssl;
+
+	private VirgoStandIn server;
+	private BenchmarkMojo freshMojo;
+	private BenchmarkMojo cachedMojo;
+	private ObjectName deployer;
+	private ObjectName shutdown;
+	private Object[] deployParams;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new VirgoStandIn();
+		server.setSsl(ssl);
+		server.start();
+		File target = server.getVirgoRoot();
+		freshMojo = createMojo(target, false);
+		cachedMojo = createMojo(target, true);
+		deployer = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+		shutdown = new ObjectName(BaseMojo.MBEAN_SHUTDOWN);
+		deployParams = new Object[] { "file:///tmp/bundle-1.0.0.jar", Boolean.TRUE };
+	}
+
+	private BenchmarkMojo createMojo(File target, boolean reuseConnection) {
+		BenchmarkMojo mojo = new BenchmarkMojo(server.getVirgoRoot(), target, "bundle-1.0.0");
+		mojo.setJmxPort(server.getPort());
+		mojo.setServiceUrl(server.getServiceUrl());
+		mojo.setReuseConnection(reuseConnection);
+		return mojo;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		// the mojo has no session, so the cached connection is closed as well
+		cachedMojo.getConnection();
+		cachedMojo.closeConnector();
+		server.stop();
+	}
+
+	@Benchmark
+	public Object connectAndDeploy() throws Exception {
+		try {
+			return freshMojo.getConnection().invoke(deployer, "deploy", deployParams, DEPLOY_SIGNATURE);
+		} finally {
+			freshMojo.closeConnector();
+		}
+	}
+
+	@Benchmark
+	public Object connectAndShutdown() throws Exception {
+		try {
+			return freshMojo.getConnection().invoke(shutdown, "shutdown", null, null);
+		} finally {
+			freshMojo.closeConnector();
+		}
+	}
+
+	@Benchmark
+	public Object cachedConnectionDeploy() throws Exception {
+		// every project of a reactor build uses its own mojo instance which finds the connection in the cache
+		BenchmarkMojo mojo = createMojo(server.getVirgoRoot(), true);
+		return mojo.getConnection().invoke(deployer, "deploy", deployParams, DEPLOY_SIGNATURE);
+	}
+
+	@Benchmark
+	public Object invokeOnly() throws Exception {
+		MBeanServerConnection connection = cachedMojo.getConnection();
+		return connection.invoke(deployer, "deploy", deployParams, DEPLOY_SIGNATURE);
+	}
+
+}
@@ -2,21 +2,53 @@ package net.flybyte.virgo.maven;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import javax.naming.Context;
 
+import net.flybyte.virgo.maven.helper.ArtifactStateWatcher;
+import net.flybyte.virgo.maven.helper.BundleManifest;
+import net.flybyte.virgo.maven.helper.BundlePackager;
+import net.flybyte.virgo.maven.helper.ChunkedUploader;
+import net.flybyte.virgo.maven.helper.CircuitBreaker;
+import net.flybyte.virgo.maven.helper.ConnectionCache;
+import net.flybyte.virgo.maven.helper.ContentHasher;
+import net.flybyte.virgo.maven.helper.Deadlines;
+import net.flybyte.virgo.maven.helper.DeployState;
+import net.flybyte.virgo.maven.helper.DirectorySync;
 import net.flybyte.virgo.maven.helper.MavenVersionNumberConverter;
+import net.flybyte.virgo.maven.helper.MetricsReport;
+import net.flybyte.virgo.maven.helper.PhaseTimer;
+import net.flybyte.virgo.maven.helper.PickupDeployer;
+import net.flybyte.virgo.maven.helper.ServerPool;
+import net.flybyte.virgo.maven.helper.SslContextRegistry;
+import net.flybyte.virgo.maven.helper.TargetExecutor;
+import net.flybyte.virgo.maven.helper.TargetList;
+import net.flybyte.virgo.maven.helper.VirgoTarget;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -27,7 +59,7 @@ import org.apache.maven.plugin.logging.Log;
  * 
  * @author Frieder Heugel
  */
-public abstract class BaseMojo extends AbstractMojo {
+public abstract class BaseMojo extends AbstractMojo implements Cloneable {
 	/**
 	 * The identifier for the Virgo Shutdown MBean
 	 */
@@ -36,6 +68,20 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * The identifier for the Virgo Deployer MBean
 	 */
 	public static final String MBEAN_DEPLOYER = "org.eclipse.virgo.kernel:category=Control,type=Deployer";
+	/**
+	 * The identifier for the Virgo KernelStatus MBean
+	 */
+	public static final String MBEAN_KERNEL_STATUS = "org.eclipse.virgo.kernel:type=KernelStatus";
+	/**
+	 * The location of the Virgo event log relative to the Virgo root directory
+	 */
+	public static final String EVENT_LOG = "serviceability/eventlogs/eventlog.log";
+	/**
+	 * The JMX port Virgo uses unless told otherwise
+	 */
+	public static final int DEFAULT_JMX_PORT = 9875;
+	private static final long MAX_RETRY_DELAY = 10000;
+	private static final Pattern ENDPOINT_PATTERN = Pattern.compile("rmi://([^/:]+):(\\d+)");
 	protected Log logger = getLog();
 	/**
 	 * The root directory of the Virgo installation. Instead of defining this property in the pom file it is
@@ -45,7 +91,14 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * @required
 	 */
 	private File virgoRoot;
-	private int jmxPort = 9875;
+	/**
+	 * The JMX port of the Virgo instance. A <code>-jmxport</code> argument in the start arguments takes
+	 * precedence. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.jmxport</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="jmxPort" expression="${virgo.jmxport}"
+	 */
+	private int jmxPort = DEFAULT_JMX_PORT;
 	/**
 	 * An array of start arguments used when starting the virgo instance. Instead of defining this property in
 	 * the pom file it is also possible to use a VM argument <code>-Dvirgo.startparameter</code> when
@@ -73,6 +126,14 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * @parameter property="truststoreLocation" expression="${javax.net.ssl.trustStore}"
 	 */
 	private File truststoreLocation;
+	/**
+	 * The password of the truststore, only needed in case the keystore type requires it to read
+	 * certificates. Instead of defining this property in the pom file it is also possible to use a VM
+	 * argument <code>-Djavax.net.ssl.trustStorePassword</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="truststorePassword" expression="${javax.net.ssl.trustStorePassword}"
+	 */
+	private String truststorePassword;
 	/**
 	 * The service url of the JMX management server. <code>%d</code> will be replaced by the defined JMX port
 	 * or 9875 in case no JMX port has been specified. Instead of defining this property in the pom file it is
@@ -113,6 +174,14 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * @readonly
 	 */
 	protected String finalArtefact;
+	/**
+	 * The directory containing the compiled classes and resources.
+	 * 
+	 * @parameter expression="${project.build.outputDirectory}"
+	 * @required
+	 * @readonly
+	 */
+	protected File outputDirectory;
 	/**
 	 * The type of the artifact.
 	 * 
@@ -148,9 +217,258 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * @parameter property="recoverable" default-value="true" expression="${virgo.recoverable}
 	 */
 	private boolean recoverable;
+	/**
+	 * Defines whether or not JMX connections are kept open and shared by all goals of the current Maven
+	 * session. All cached connections are closed once the session ends.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.reuseconnection</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="reuseConnection" default-value="true" expression="${virgo.reuseconnection}"
+	 */
+	private boolean reuseConnection;
+	/**
+	 * Artefacts are only pushed to the server in case their content has changed since their last deployment.
+	 * Set this property to <code>true</code> to deploy/refresh an artefact in any case. Instead of defining
+	 * this property in the pom file it is also possible to use a VM argument <code>-Dvirgo.force</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="force" default-value="false" expression="${virgo.force}"
+	 */
+	private boolean force;
+	/**
+	 * The transport used to deploy artefacts. <code>jmx</code> uses the Deployer MBean, <code>pickup</code>
+	 * moves the artefact into the pickup directory of the (co-located) Virgo instance and doesn't require a
+	 * JMX connection at all. <code>stream</code> transfers the artefact over the JMX connection to the staging
+	 * MBean of a remote Virgo instance first (see {@link ChunkedUploader}), so the server doesn't need access
+	 * to the local file system. Instead of defining this property in the pom file it is also possible to use
+	 * a VM argument <code>-Dvirgo.transport</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="transport" default-value="jmx" expression="${virgo.transport}"
+	 */
+	private String transport;
+	/**
+	 * The maximum time in milliseconds to wait for Virgo to confirm a deployment when using the
+	 * <code>pickup</code> transport. Instead of defining this property in the pom file it is also possible to
+	 * use a VM argument <code>-Dvirgo.pickuptimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="pickupTimeout" default-value="60000" expression="${virgo.pickuptimeout}"
+	 */
+	private int pickupTimeout;
+	/**
+	 * Defines whether or not the <code>pickup</code> transport stages the artefact as a hard link instead of
+	 * a copy. Hard links are cheaper but share their content with the artefact in the target folder, so a
+	 * rebuild overwriting the artefact in place also changes the deployed file. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.pickuphardlink</code>
+	 * when executing the Maven goal.
+	 * 
+	 * @parameter property="pickupHardLink" default-value="false" expression="${virgo.pickuphardlink}"
+	 */
+	private boolean pickupHardLink;
+	/**
+	 * The maximum time in milliseconds to wait for an artefact to reach its final state after it has been
+	 * deployed, refreshed or undeployed via JMX. The goals follow the artefact model MBeans of Virgo through
+	 * JMX notifications and only succeed once the artefact is <code>ACTIVE</code> (or has been removed), a
+	 * value of 0 takes the return of the deployer operation as success. Instead of defining this property in
+	 * the pom file it is also possible to use a VM argument <code>-Dvirgo.deploytimeout</code> when executing
+	 * the Maven goal.
+	 * 
+	 * @parameter property="deployTimeout" default-value="60000" expression="${virgo.deploytimeout}"
+	 */
+	private int deployTimeout;
+	/**
+	 * The maximum time in milliseconds a single attempt to connect to the JMX server may take. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.connecttimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="connectTimeout" default-value="30000" expression="${virgo.connecttimeout}"
+	 */
+	private int connectTimeout;
+	/**
+	 * The number of times a failed attempt to connect is retried. The delay between the attempts grows
+	 * exponentially starting with <code>retryDelay</code> and is randomised, so concurrent builds don't retry
+	 * in lock step. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.connectretries</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="connectRetries" default-value="4" expression="${virgo.connectretries}"
+	 */
+	private int connectRetries;
+	/**
+	 * The upper bound of the delay before the first retry to connect in milliseconds. Instead of defining
+	 * this property in the pom file it is also possible to use a VM argument <code>-Dvirgo.retrydelay</code>
+	 * when executing the Maven goal.
+	 * 
+	 * @parameter property="retryDelay" default-value="500" expression="${virgo.retrydelay}"
+	 */
+	private int retryDelay;
+	/**
+	 * The maximum time in milliseconds an MBean operation may take, 0 waits forever. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.invoketimeout</code>
+	 * when executing the Maven goal.
+	 * 
+	 * @parameter property="invokeTimeout" default-value="300000" expression="${virgo.invoketimeout}"
+	 */
+	private int invokeTimeout;
+	/**
+	 * The time in milliseconds goals fail fast after a goal gave up connecting to the same server, 0 turns
+	 * the circuit breaker off. Instead of defining this property in the pom file it is also possible to use
+	 * a VM argument <code>-Dvirgo.breakercooldown</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="breakerCoolDown" default-value="60000" expression="${virgo.breakercooldown}"
+	 */
+	private int breakerCoolDown;
+	/**
+	 * Defines whether or not the bundle is deployed as an exploded directory instead of a packaged archive.
+	 * The directory is kept in sync with the build output incrementally, so the packaging step is not needed
+	 * at all. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.exploded</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="exploded" default-value="false" expression="${virgo.exploded}"
+	 */
+	private boolean exploded;
+	/**
+	 * The directory the exploded bundle is created from. Defaults to the build output directory, or for WAR
+	 * projects to the exploded web application <code>${project.build.directory}/${project.build.finalName}</code>.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.explodedsource</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="explodedSource" expression="${virgo.explodedsource}"
+	 */
+	private File explodedSource;
+	/**
+	 * Defines whether or not the duration of the individual phases of a goal (e.g. connect, invoke, close)
+	 * is written to <code>${project.build.directory}/virgo-metrics</code>. A report covering all projects of
+	 * the reactor build is written to the <code>target/virgo-metrics</code> folder of the execution root.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.metrics</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="metrics" default-value="true" expression="${virgo.metrics}"
+	 */
+	private boolean metrics;
+	/**
+	 * Defines whether or not the goal is executed against all instances of the server pool created by the
+	 * start goal (see <code>poolSize</code>) instead of the configured Virgo instance. The instances are
+	 * handled concurrently. Instead of defining this property in the pom file it is also possible to use a VM
+	 * argument <code>-Dvirgo.pool</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="pool" default-value="false" expression="${virgo.pool}"
+	 */
+	private boolean pool;
+	/**
+	 * The directory containing the instances and the descriptor of the server pool. Defaults to
+	 * <code>target/virgo-pool</code> of the execution root, so all projects of the reactor build share the
+	 * same pool. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.pooldirectory</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="poolDirectory" expression="${virgo.pooldirectory}"
+	 */
+	private File poolDirectory;
+	/**
+	 * A properties file listing target servers, each with its own service URL, credentials and keystore (see
+	 * {@link TargetList} for the format). The goal is executed against all of them concurrently instead of
+	 * the configured Virgo instance and a summary of the result and duration per server is printed. Instead
+	 * of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.targets</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="targets" expression="${virgo.targets}"
+	 */
+	private File targets;
+	/**
+	 * The maximum number of target servers (or pool instances) the goal is executed against at the same
+	 * time. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.paralleltargets</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="parallelTargets" default-value="8" expression="${virgo.paralleltargets}"
+	 */
+	private int parallelTargets;
+	/**
+	 * Defines whether or not the goal stops at the first target server (or pool instance) it failed for.
+	 * Servers the goal has not been started for yet are skipped then, the ones in progress are finished.
+	 * Otherwise the goal is executed against all servers and fails afterwards. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.failfast</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="failFast" default-value="false" expression="${virgo.failfast}"
+	 */
+	private boolean failFast;
+	/**
+	 * How <code>deploy</code> and <code>refresh</code> roll an artefact out to a list of target servers.
+	 * <code>parallel</code> updates all servers at once, <code>rolling</code> updates them in batches of
+	 * <code>batchSize</code> and only continues with the next batch once the artefact is ACTIVE on every
+	 * server of the batch and the optional <code>healthUrl</code> answers. A failed batch halts the rollout.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.rollout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="rollout" default-value="parallel" expression="${virgo.rollout}"
+	 */
+	private String rollout;
+	/**
+	 * The number of target servers updated at the same time by a rolling rollout. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.batchsize</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="batchSize" default-value="1" expression="${virgo.batchsize}"
+	 */
+	private int batchSize;
+	/**
+	 * An HTTP URL which has to answer with a 2xx status after a server has been updated by a rolling rollout,
+	 * e.g. <code>http://{host}:{httpPort}/myapp/health</code>. <code>{host}</code> is replaced by the host of
+	 * the service URL of the server, <code>{httpPort}</code> by its <code>httpport</code> from the list of
+	 * target servers. Instead of defining this property in the pom file it is also possible to use a VM
+	 * argument <code>-Dvirgo.healthurl</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="healthUrl" expression="${virgo.healthurl}"
+	 */
+	private String healthUrl;
+	/**
+	 * The maximum time in ms a server of a rolling rollout may take to pass its health check. It also bounds
+	 * the wait for the artefact to become ACTIVE in case <code>deployTimeout</code> is disabled. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.healthtimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="healthTimeout" default-value="60000" expression="${virgo.healthtimeout}"
+	 */
+	private int healthTimeout;
+	/**
+	 * Defines whether or not the servers already updated by a halted rolling rollout are rolled back. The
+	 * artefact of the last successful rollout to the server is deployed again and the new artefact is
+	 * removed. Servers without such an artefact, and the servers the rollout failed on, are left as they
+	 * are. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.rollback</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="rollback" default-value="true" expression="${virgo.rollback}"
+	 */
+	private boolean rollback;
+	/**
+	 * The directory keeping the artefact of the last successful rolling rollout per server, used to roll back
+	 * a later rollout. Instead of defining this property in the pom file it is also possible to use a VM
+	 * argument <code>-Dvirgo.rollbackcache</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="rollbackCache" default-value="${user.home}/.virgo-maven/rollback"
+	 *            expression="${virgo.rollbackcache}"
+	 */
+	private File rollbackCache;
+	/**
+	 * The current Maven session.
+	 * 
+	 * @parameter expression="${session}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenSession session;
+	/**
+	 * The current mojo execution.
+	 * 
+	 * @parameter expression="${mojoExecution}"
+	 * @readonly
+	 */
+	private MojoExecution mojoExecution;
 
 	private JMXConnector connector = null;
 	private MBeanServerConnection connection = null;
+	private File hashedArtefact = null;
+	private long hashedModified = 0;
+	private String artefactHash = null;
+	private final PhaseTimer timer = new PhaseTimer();
 
 	public abstract void execute() throws MojoExecutionException, MojoFailureException;
 
@@ -159,34 +477,72 @@ public abstract class BaseMojo extends AbstractMojo {
 	 */
 
 	/**
-	 * This method can be used to get an active MBeanServerConnection object.
+	 * This method can be used to get an active MBeanServerConnection object. Failed attempts to connect are
+	 * retried with an exponential backoff, once all retries failed the circuit breaker of the server is
+	 * opened so later goals fail fast.
 	 * 
 	 * @return A MBeanServerConnection object
 	 * @throws IOException
 	 */
 	public MBeanServerConnection getConnection() throws IOException {
+		return openConnection(true);
+	}
+
+	/**
+	 * Opens a connection with a single attempt which neither retries nor affects the circuit breaker. This
+	 * should be used to probe whether a server which is expected to come up or go down is reachable.
+	 * 
+	 * @return A MBeanServerConnection object
+	 * @throws IOException
+	 */
+	protected MBeanServerConnection probeConnection() throws IOException {
+		return openConnection(false);
+	}
+
+	private MBeanServerConnection openConnection(boolean resilient) throws IOException {
 		if (connection != null) {
 			return connection;
 		}
+		long start = System.currentTimeMillis();
+		long phase = timer.start();
+		if (reuseConnection) {
+			ConnectionCache.bindSession(session, logger);
+			connector = ConnectionCache.get(getConnectionKey(), connectTimeout);
+			if (connector != null) {
+				connection = connector.getMBeanServerConnection();
+				timer.stop("connect", phase);
+				logger.info("Reusing cached JMX connection to " + getServiceUrl() + " ("
+						+ (System.currentTimeMillis() - start) + "ms, " + ConnectionCache.getHits()
+						+ " cache hits, " + ConnectionCache.getMisses() + " misses)");
+				return connection;
+			}
+		}
 		// check whether or not the location to the truststore has been provided and does actually
-		// exist, for that first check the system property
+		// exist, for that first check the truststore location setting (e.g. the truststore of a target)
+		File truststore = null;
 		String trustStoreSystemProperty = System.getProperty("javax.net.ssl.trustStore");
-		if (trustStoreSystemProperty == null || !new File(trustStoreSystemProperty).exists()
-				|| !new File(trustStoreSystemProperty).isFile()) {
-			// next check the truststore location setting
-			if (truststoreLocation == null || !truststoreLocation.exists() || !truststoreLocation.isFile()) {
-				// if non of the checks before apply fall back
-				truststoreLocation = new File(virgoRoot, "configuration/keystore");
-				if (!truststoreLocation.exists()) {
-					truststoreLocation = new File(virgoRoot, "config/keystore");
-					if (!truststoreLocation.exists()) {
-						throw new IOException("Cannot find a keystore file");
-					}
+		if (truststoreLocation != null && truststoreLocation.isFile()) {
+			truststore = truststoreLocation;
+		} else if (trustStoreSystemProperty != null && new File(trustStoreSystemProperty).isFile()) {
+			// next check the system property
+			truststore = new File(trustStoreSystemProperty);
+		} else if (virgoRoot == null) {
+			throw new IOException("Cannot find a keystore file, no truststore has been configured for "
+					+ getServiceUrl());
+		} else {
+			// if non of the checks before apply fall back
+			truststore = new File(virgoRoot, "configuration/keystore");
+			if (!truststore.exists()) {
+				truststore = new File(virgoRoot, "config/keystore");
+				if (!truststore.exists()) {
+					throw new IOException("Cannot find a keystore file");
 				}
 			}
-			// set path to the truststore location
-			System.setProperty("javax.net.ssl.trustStore", truststoreLocation.getAbsolutePath());
 		}
+		// SSL connections to this server trust the keystore, other servers may use a different one
+		registerTruststore(truststore);
+		timer.stop("locate truststore", phase);
+		phase = timer.start();
 		// create a service url
 		logger.info("Create new service URL: " + getServiceUrl());
 		JMXServiceURL url = new JMXServiceURL(getServiceUrl());
@@ -195,25 +551,139 @@ public abstract class BaseMojo extends AbstractMojo {
 		envMap.put("jmx.remote.credentials", new String[] { getUser(), getPassword() });
 		envMap.put(Context.SECURITY_PRINCIPAL, getUser());
 		envMap.put(Context.SECURITY_CREDENTIALS, getPassword());
+		CircuitBreaker breaker = CircuitBreaker.forTarget(getServiceUrl());
+		if (resilient && breakerCoolDown > 0) {
+			breaker.check(breakerCoolDown);
+		}
 		// get a connector and establish a connection
 		logger.info("Create a new JMX connector (user = '" + getUser() + "')");
-		connector = JMXConnectorFactory.connect(url, envMap);
+		int retry = 0;
+		while (connector == null) {
+			try {
+				connector = connect(url, envMap);
+			} catch (IOException e) {
+				if (!resilient || retry >= connectRetries) {
+					if (resilient && breakerCoolDown > 0) {
+						breaker.failure(e.getMessage(), breakerCoolDown);
+					}
+					throw e;
+				}
+				long delay = Deadlines.backoff(++retry, retryDelay, MAX_RETRY_DELAY);
+				logger.warn("Connecting to " + getServiceUrl() + " failed (" + e.getMessage() + "), retry " + retry
+						+ " of " + connectRetries + " in " + delay + "ms");
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to reconnect");
+				}
+			}
+		}
+		breaker.success();
 		logger.info("Establish a connection to the defined MBean server");
 		connection = connector.getMBeanServerConnection();
+		timer.stop("connect", phase);
+		if (reuseConnection) {
+			ConnectionCache.put(getConnectionKey(), connector);
+			logger.info("Opened JMX connection in " + (System.currentTimeMillis() - start) + "ms ("
+					+ ConnectionCache.getHits() + " cache hits, " + ConnectionCache.getMisses() + " misses)");
+		} else {
+			logger.info("Opened JMX connection in " + (System.currentTimeMillis() - start) + "ms");
+		}
 		return connection;
 	}
 
+	/*
+	 * Connect within the connect timeout, a server which accepts the connection but never answers would block
+	 * the build forever otherwise
+	 */
+	private JMXConnector connect(final JMXServiceURL url, final Map<String, Object> envMap) throws IOException {
+		try {
+			return Deadlines.call(new Callable<JMXConnector>() {
+				public JMXConnector call() throws IOException {
+					return JMXConnectorFactory.connect(url, envMap);
+				}
+			}, connectTimeout, "Connecting to " + url);
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			// e.g. a SecurityException for wrong credentials, retrying doesn't help
+			throw e;
+		} catch (TimeoutException e) {
+			throw new IOException(e.getMessage(), e);
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/*
+	 * Route the SSL connections to all endpoints of the service URL through a context trusting the keystore,
+	 * the default context of the JVM is restored once the session ends
+	 */
+	private void registerTruststore(File truststore) throws IOException {
+		SslContextRegistry.bindSession(session);
+		Matcher matcher = ENDPOINT_PATTERN.matcher(getServiceUrl());
+		try {
+			while (matcher.find()) {
+				SslContextRegistry.register(matcher.group(1), Integer.parseInt(matcher.group(2)), truststore,
+						truststorePassword);
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
 	/**
-	 * Closes the JMXConnector object.
+	 * Closes the JMXConnector object. In case connections are shared across the Maven session the connector
+	 * is kept open until the session ends.
 	 * 
 	 * @throws IOException
 	 */
 	public void closeConnector() throws IOException {
 		if (connector != null) {
-			connector.close();
+			long phase = timer.start();
+			try {
+				if (!reuseConnection) {
+					connector.close();
+				}
+			} finally {
+				connector = null;
+				connection = null;
+				timer.stop("close", phase);
+			}
+		}
+	}
+
+	/**
+	 * Closes the JMXConnector object and removes it from the session cache. This should be used whenever the
+	 * connection is known to be unusable afterwards, e.g. after the server has been shut down.
+	 * 
+	 * @throws IOException
+	 */
+	public void evictConnector() throws IOException {
+		if (connector != null) {
+			long phase = timer.start();
+			try {
+				if (reuseConnection) {
+					ConnectionCache.evict(getConnectionKey());
+				} else {
+					connector.close();
+				}
+			} finally {
+				connector = null;
+				connection = null;
+				timer.stop("close", phase);
+			}
 		}
 	}
 
+	/*
+	 * The key used to identify a connection in the session cache
+	 */
+	private String getConnectionKey() {
+		return ConnectionCache.key(getServiceUrl(), getUser(), getPassword());
+	}
+
 	/**
 	 * This method identifies the complete path of the artefact (including its extension) and returns a file
 	 * object. <code>${project.build.finalName}</code> doesn't provide the extension and therefore this method
@@ -223,134 +693,894 @@ public abstract class BaseMojo extends AbstractMojo {
 	 * @throws MojoFailureException
 	 */
 	public File getArtefactFile() throws MojoFailureException {
-		String ext = "jar";
-		if ("jar".equalsIgnoreCase(packaging) || "bundle".equals(packaging)) {
-			// do nothing, default applies
-		} else if ("war".equalsIgnoreCase(packaging)) {
-			ext = "war";
-		} else if ("virgo-plan".equalsIgnoreCase(packaging)) {
-			ext = "plan";
-		} else if ("virgo-par".equalsIgnoreCase(packaging)) {
-			ext = "par";
-		} else if ("virgo-property".equalsIgnoreCase(packaging)) {
-			ext = "properties";
-			throw new MojoFailureException("", new UnsupportedOperationException(
-					"The Maven packaging type 'virgo-property' is currently not supported."));
-		} else {
-			throw new MojoFailureException("The given Maven packaging type is currently not supported");
-		}
-		File artefact = new File(path, finalArtefact + "." + ext);
-		if (artefact != null && artefact.exists() && artefact.isFile()) {
-			return artefact;
-		} else {
-			return null;
+		long phase = timer.start();
+		try {
+			return resolveArtefactFile(path, finalArtefact, packaging);
+		} finally {
+			timer.stop("resolve artefact", phase);
 		}
 	}
 
 	/**
-	 * Process start arguments to check whether or not a JMX port has been specified. In case a JMX port has
-	 * been found it will be set.
+	 * Invokes an operation of an MBean and records the time it took.
+	 * 
+	 * @param connection
+	 * @param name
+	 * @param operation
+	 * @param params
+	 * @param signature
+	 * @return The result of the operation
+	 * @throws Exception
 	 */
-	protected void checkForJMXPort() {
-		logger.info("Parsing the start arguments for a JMX port");
-		boolean jmxParam = false;
-		for (String argument : getStartParams()) {
-			if (jmxParam) { // JMX port number
-				setJmxPort(argument.trim());
-				logger.debug("JMX port found: " + getJmxPort());
-				return;
-			}
-			if ("-jmxport".equalsIgnoreCase(argument.trim())) {
-				logger.debug("JMX argument found, expect next argument to be a valid port number");
-				jmxParam = true;
-			}
+	protected Object invokeOperation(MBeanServerConnection connection, ObjectName name, String operation,
+			Object[] params, String[] signature) throws Exception {
+		long phase = timer.start();
+		try {
+			return invokeWithDeadline(connection, name, operation, params, signature);
+		} catch (TimeoutException e) {
+			// the connection may be stuck, make sure it isn't handed out again
+			evictConnector();
+			throw e;
+		} finally {
+			timer.stop("invoke " + operation, phase);
 		}
 	}
 
 	/**
-	 * Transforms a stack trace into a String object.
+	 * Invokes an operation of an MBean, giving up once the invoke timeout is over.
 	 * 
-	 * @param throwable
-	 * @return The strack trace payload as a String object.
+	 * @param connection
+	 * @param name
+	 * @param operation
+	 * @param params
+	 * @param signature
+	 * @return The result of the operation
+	 * @throws TimeoutException
+	 *             In case the operation didn't return in time
+	 * @throws Exception
 	 */
-	public static String stackTrace2String(Throwable throwable) {
-		final Writer result = new StringWriter();
-		final PrintWriter printWriter = new PrintWriter(result);
-		throwable.printStackTrace(printWriter);
-		return result.toString();
+	protected Object invokeWithDeadline(final MBeanServerConnection connection, final ObjectName name,
+			final String operation, final Object[] params, final String[] signature) throws Exception {
+		return Deadlines.call(new Callable<Object>() {
+			public Object call() throws Exception {
+				return connection.invoke(name, operation, params, signature);
+			}
+		}, invokeTimeout, "Invoking " + operation + " on " + name);
 	}
 
-	/*
-	 * getter/setter methods ***************************************
-	 */
-
 	/**
-	 * Returns the Virgo root direcotry
+	 * Invokes an operation of the deployer MBean and waits until the affected artefact reaches its final
+	 * state, see {@link ArtifactStateWatcher}.
 	 * 
-	 * @return A file object pointing to the Virgo root directory
+	 * @param connection
+	 * @param operation
+	 * @param params
+	 * @param signature
+	 * @param type
+	 *            The Virgo artefact type, e.g. <code>bundle</code>
+	 * @param identity
+	 *            Symbolic name and version of the artefact
+	 * @param removal
+	 *            Whether the operation removes the artefact instead of starting it
+	 * @return The result of the operation
+	 * @throws Exception
 	 */
-	public File getVirgoRoot() {
-		return virgoRoot;
+	protected Object invokeDeployer(MBeanServerConnection connection, String operation, Object[] params,
+			String[] signature, String type, String[] identity, boolean removal) throws Exception {
+		ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+		if (deployTimeout <= 0) {
+			return invokeOperation(connection, name, operation, params, signature);
+		}
+		// subscribe first, the notifications are sent while the operation is running
+		ArtifactStateWatcher watcher = new ArtifactStateWatcher(connection, type, identity[0], identity[1], logger,
+				invokeTimeout);
+		try {
+			try {
+				watcher.start();
+				Object result = invokeOperation(connection, name, operation, params, signature);
+				long phase = timer.start();
+				try {
+					if (removal) {
+						watcher.awaitRemoved(deployTimeout);
+					} else {
+						String state = watcher.awaitActive(deployTimeout);
+						if (state != null) {
+							logger.info(identity[0] + " " + identity[1] + " is " + state);
+						}
+					}
+				} finally {
+					timer.stop(removal ? "await removal" : "await active", phase);
+				}
+				return result;
+			} finally {
+				watcher.close();
+			}
+		} catch (TimeoutException e) {
+			// the connection may be stuck, make sure it isn't handed out again
+			evictConnector();
+			throw e;
+		}
 	}
 
 	/**
-	 * Sets the Virgo root directory via the POM configuration.
+	 * Returns the Virgo artefact type of the given artefact.
 	 * 
-	 * @param virgoRoot
+	 * @param artefact
+	 * @return
 	 */
-	public void setVirgoRoot(File virgoRoot) {
-		this.virgoRoot = virgoRoot;
+	protected String getArtifactType(File artefact) {
+		String fileName = artefact.getName();
+		return ArtifactStateWatcher.getArtifactType(fileName.substring(fileName.lastIndexOf('.') + 1));
 	}
 
 	/**
-	 * Sets the Virgo root directory via the commandline as a system property
-	 * 
-	 * @param virgoRoot
+	 * Writes the phase timings of this goal execution to <code>target/virgo-metrics</code> and updates the
+	 * report covering the whole reactor build. Failures are only logged since the metrics must never break
+	 * the build.
 	 */
-	public void setVirgoRoot(String virgoRoot) {
-		this.virgoRoot = new File(virgoRoot);
+	protected void writeMetrics() {
+		if (!metrics) {
+			return;
+		}
+		String project = finalArtefact;
+		if (session != null && session.getCurrentProject() != null) {
+			project = session.getCurrentProject().getArtifactId();
+		}
+		String goal = mojoExecution != null ? mojoExecution.getGoal() : getClass().getSimpleName().toLowerCase();
+		try {
+			List<MetricsReport.Record> records = MetricsReport.collect(session, project, goal, timer);
+			MetricsReport.write(new File(path, "virgo-metrics"), goal, records);
+			if (session != null && session.getExecutionRootDirectory() != null) {
+				File root = new File(session.getExecutionRootDirectory(), "target/virgo-metrics");
+				MetricsReport.write(root, "reactor", MetricsReport.getSessionRecords());
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write the metrics report: " + e.getMessage());
+		}
 	}
 
 	/**
-	 * Returns the JMX port
+	 * Returns whether or not the goal is executed against several servers, i.e. the instances of the server
+	 * pool or the list of target servers.
 	 * 
 	 * @return
 	 */
-	public int getJmxPort() {
-		return jmxPort;
+	protected boolean isFanOut() {
+		return pool || targets != null;
 	}
 
 	/**
-	 * Sets the JMX port. In case the port number is not valid the existing port number will remain active.
+	 * Executes the goal against every target server, or every instance of the server pool, and fails in case
+	 * any of them failed.
 	 * 
-	 * @param jmxPort
+	 * @throws MojoFailureException
 	 */
-	public void setJmxPort(int jmxPort) {
-		if (jmxPort >= 1 && jmxPort <= 65565) {
-			this.jmxPort = jmxPort;
-		} else {
-			getLog().warn(
-					"The given JMX port (" + jmxPort + ") is not a valid port number, use current value "
-							+ this.jmxPort);
+	protected void executeOnTargets() throws MojoFailureException {
+		try {
+			List<VirgoTarget> servers;
+			try {
+				servers = targets != null ? TargetList.read(targets) : ServerPool.read(getPoolDirectory());
+			} catch (IOException e) {
+				throw new MojoFailureException(e.getMessage());
+			}
+			logger.info("Executing the goal on " + servers.size() + (targets != null ? " target servers"
+					: " instances of the server pool"));
+			if ("rolling".equalsIgnoreCase(rollout) && supportsRollout()) {
+				rollOut(servers);
+			} else {
+				fanOut(servers);
+			}
+		} finally {
+			writeMetrics();
 		}
 	}
 
 	/**
-	 * Sets the JMX port. In case the port number is not valid the existing port number will remain active.
+	 * Executes the goal concurrently against each of the given targets, at most
+	 * <code>parallelTargets</code> at a time. Every target is handled by its own copy of this mojo (see
+	 * {@link #forTarget(VirgoTarget)}) using its own JMX connection. With <code>failFast</code> the targets
+	 * which have not been started yet are skipped once the goal failed for one of them.
 	 * 
-	 * @param jmxPort
+	 * @param targets
+	 * @throws MojoFailureException
+	 *             In case the goal failed for any of the targets
 	 */
-	public void setJmxPort(String jmxPort) {
+	protected void fanOut(List<VirgoTarget> targets) throws MojoFailureException {
 		try {
-			setJmxPort(Integer.parseInt(jmxPort));
-		} catch (NumberFormatException e) {
-			getLog().warn(
-					"The given JMX port (" + jmxPort + ") is not a number, use current value " + this.jmxPort);
+			createTargetExecutor().fanOut(targets);
+		} catch (ExecutionException e) {
+			throw new MojoFailureException(e.getMessage());
 		}
 	}
 
 	/**
-	 * Returns all the defined parameter that should be applied to the startup of the Virgo server
+	 * Returns whether or not the goal can roll an artefact out in batches, see <code>rollout</code>.
+	 * 
+	 * @return
+	 */
+	protected boolean supportsRollout() {
+		return false;
+	}
+
+	/**
+	 * Executes the goal against the given targets in batches of <code>batchSize</code>. A batch is finished
+	 * once the artefact is ACTIVE on each of its targets and the <code>healthUrl</code> answers, only then
+	 * the next batch is started. In case any target of a batch fails the rollout is halted and, with
+	 * <code>rollback</code>, all targets updated so far are rolled back, see
+	 * {@link #rollBack(VirgoTarget, File, File)}.
+	 * 
+	 * @param targets
+	 * @throws MojoFailureException
+	 *             In case the rollout has been halted
+	 */
+	protected void rollOut(List<VirgoTarget> targets) throws MojoFailureException {
+		try {
+			createTargetExecutor().rollOut(targets, batchSize, healthUrl, healthTimeout, rollbackCache,
+					rollback);
+		} catch (ExecutionException e) {
+			throw new MojoFailureException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Puts the artefact deployed before the rollout back on the given target. An artefact with the same
+	 * symbolic name and version is refreshed in place, otherwise the previous one is started before the new
+	 * one is removed, so the node keeps serving.
+	 * 
+	 * @param target
+	 * @param artefact
+	 *            The artefact which has been rolled out
+	 * @param previous
+	 *            The artefact kept from the last successful rollout
+	 * @throws Exception
+	 */
+	protected void rollBack(VirgoTarget target, File artefact, File previous) throws Exception {
+		String[] identity = getBundleIdentity(artefact);
+		BaseMojo copy = forTarget(target);
+		if (copy.deployTimeout <= 0) {
+			copy.deployTimeout = healthTimeout;
+		}
+		try {
+			MBeanServerConnection connection = copy.getConnection();
+			String[] previousIdentity = getBundleIdentity(previous);
+			String uri = copy.getArtefactUri(connection, previous);
+			if (Arrays.equals(identity, previousIdentity)) {
+				// same symbolic name and version, e.g. a snapshot, update it in place
+				Object[] params = { uri, identity[0] };
+				String[] signature = { "java.lang.String", "java.lang.String" };
+				copy.invokeDeployer(connection, "refresh", params, signature, getArtifactType(previous),
+						previousIdentity, false);
+			} else {
+				Object[] params = { uri, isRecoverable() };
+				String[] signature = { "java.lang.String", "boolean" };
+				copy.invokeDeployer(connection, "deploy", params, signature, getArtifactType(previous),
+						previousIdentity, false);
+				params = new Object[] { identity[0], identity[1] };
+				signature = new String[] { "java.lang.String", "java.lang.String" };
+				copy.invokeDeployer(connection, "undeploy", params, signature, getArtifactType(artefact),
+						identity, true);
+			}
+			copy.forgetDeployment(artefact);
+		} finally {
+			try {
+				copy.closeConnector();
+			} catch (IOException e) {
+				logger.warn("Unable to close the connection to " + target.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * The executor running a copy of this mojo per target
+	 */
+	private TargetExecutor createTargetExecutor() {
+		return new TargetExecutor(new TargetExecutor.Goal() {
+			public void execute(VirgoTarget target, boolean gated) throws Exception {
+				BaseMojo copy = forTarget(target);
+				if (gated && copy.deployTimeout <= 0) {
+					// the gate relies on waiting for the artefact to become active
+					copy.deployTimeout = healthTimeout;
+				}
+				copy.execute();
+			}
+
+			public File getArtefact() throws Exception {
+				return getDeployableArtefact();
+			}
+
+			public String[] getIdentity(File artefact) {
+				return getBundleIdentity(artefact);
+			}
+
+			public void rollBack(VirgoTarget target, File artefact, File previous) throws Exception {
+				BaseMojo.this.rollBack(target, artefact, previous);
+			}
+		}, parallelTargets, failFast, logger);
+	}
+
+	/**
+	 * Creates a copy of this mojo which is bound to the given target. The copy uses a connection of its own
+	 * and doesn't write metrics, its phases are recorded by the timer of this mojo.
+	 * 
+	 * @param target
+	 * @return
+	 */
+	protected BaseMojo forTarget(VirgoTarget target) {
+		BaseMojo copy;
+		try {
+			copy = (BaseMojo) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		// remote targets must not fall back to the files (PID, keystore, pickup) of the local instance
+		copy.virgoRoot = target.getVirgoRoot();
+		if (target.getJmxPort() >= 0) {
+			copy.jmxPort = target.getJmxPort();
+			copy.startParams = withJmxPort(startParams, target.getJmxPort());
+		}
+		copy.serviceUrl = target.getServiceUrl();
+		if (target.getUser() != null) {
+			copy.user = target.getUser();
+		}
+		if (target.getPassword() != null) {
+			copy.password = target.getPassword();
+		}
+		if (target.getTruststore() != null) {
+			copy.truststoreLocation = target.getTruststore();
+		}
+		copy.pool = false;
+		copy.targets = null;
+		copy.metrics = false;
+		// a cached connection would be closed by whichever copy finishes last
+		copy.reuseConnection = false;
+		copy.connector = null;
+		copy.connection = null;
+		return copy;
+	}
+
+	/**
+	 * Creates a target using the configured service URL.
+	 * 
+	 * @param name
+	 * @param virgoRoot
+	 * @param jmxPort
+	 * @param httpPort
+	 * @return
+	 */
+	protected VirgoTarget createTarget(String name, File virgoRoot, int jmxPort, int httpPort) {
+		return new VirgoTarget(name, virgoRoot, jmxPort, serviceUrl, httpPort);
+	}
+
+	/*
+	 * Start arguments with the value of -jmxport replaced by the given port, or added if missing
+	 */
+	private static String[] withJmxPort(String[] startParams, int jmxPort) {
+		List<String> arguments = new ArrayList<String>();
+		if (startParams != null) {
+			arguments.addAll(Arrays.asList(startParams));
+		}
+		int index = -1;
+		for (int i = 0; i < arguments.size() - 1; i++) {
+			if ("-jmxport".equalsIgnoreCase(arguments.get(i).trim())) {
+				index = i + 1;
+			}
+		}
+		if (index < 0) {
+			arguments.add("-jmxport");
+			arguments.add(String.valueOf(jmxPort));
+		} else {
+			arguments.set(index, String.valueOf(jmxPort));
+		}
+		return arguments.toArray(new String[arguments.size()]);
+	}
+
+	/**
+	 * Returns the timer measuring the phases of this goal execution.
+	 * 
+	 * @return
+	 */
+	protected PhaseTimer getTimer() {
+		return timer;
+	}
+
+	/**
+	 * Identifies the complete path of an artefact based on the target folder, the final name and the Maven
+	 * packaging type of a project. This allows to resolve the artefacts of other projects of the reactor as
+	 * well.
+	 * 
+	 * @param path
+	 *            The location of the target folder
+	 * @param finalArtefact
+	 *            The artefact's final name (excluding the extension)
+	 * @param packaging
+	 *            The Maven packaging type
+	 * @return A file object pointing to the location of the artefact or <code>null</code> if it doesn't
+	 *         exist.
+	 * @throws MojoFailureException
+	 *             In case the packaging type is not supported
+	 */
+	public static File resolveArtefactFile(String path, String finalArtefact, String packaging)
+			throws MojoFailureException {
+		File artefact = new File(path, finalArtefact + "." + getArtefactExtension(packaging));
+		if (artefact != null && artefact.exists() && artefact.isFile()) {
+			return artefact;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the file extension of artefacts of the given Maven packaging type.
+	 * 
+	 * @param packaging
+	 * @return The file extension without the leading dot
+	 * @throws MojoFailureException
+	 *             In case the packaging type is not supported
+	 */
+	public static String getArtefactExtension(String packaging) throws MojoFailureException {
+		String ext = "jar";
+		if ("jar".equalsIgnoreCase(packaging) || "bundle".equals(packaging)) {
+			// do nothing, default applies
+		} else if ("war".equalsIgnoreCase(packaging)) {
+			ext = "war";
+		} else if ("virgo-plan".equalsIgnoreCase(packaging)) {
+			ext = "plan";
+		} else if ("virgo-par".equalsIgnoreCase(packaging)) {
+			ext = "par";
+		} else if ("virgo-property".equalsIgnoreCase(packaging)) {
+			ext = "properties";
+			throw new MojoFailureException("", new UnsupportedOperationException(
+					"The Maven packaging type 'virgo-property' is currently not supported."));
+		} else {
+			throw new MojoFailureException("The given Maven packaging type is currently not supported");
+		}
+		return ext;
+	}
+
+	/**
+	 * Checks whether the given artefact has already been deployed to the current server and hasn't changed
+	 * since. The check is skipped in case the <code>force</code> property has been set.
+	 * 
+	 * @param artefact
+	 * @return <code>true</code> in case there is no need to push the artefact to the server again
+	 * @throws IOException
+	 */
+	protected boolean isAlreadyDeployed(File artefact) throws IOException {
+		if (force || artefact == null) {
+			return false;
+		}
+		return isAlreadyDeployed(artefact, getArtefactHash(artefact), getBundleIdentity(artefact));
+	}
+
+	/**
+	 * Checks whether the given artefact has already been deployed to the current server with the given
+	 * content hash and identity, see {@link #isAlreadyDeployed(File)}.
+	 * 
+	 * @param artefact
+	 * @param hash
+	 *            The content hash of the artefact, see {@link ContentHasher}
+	 * @param identity
+	 *            Symbolic name and version of the artefact
+	 * @return <code>true</code> in case there is no need to push the artefact to the server again
+	 * @throws IOException
+	 */
+	protected boolean isAlreadyDeployed(File artefact, String hash, String[] identity) throws IOException {
+		if (force) {
+			return false;
+		}
+		if (DeployState.isUpToDate(artefact, hash, getDeploymentTarget(), identity[0], identity[1])) {
+			logger.info("Artefact " + artefact.getName() + " has not changed since its last deployment to "
+					+ getDeploymentTarget() + ", nothing to do (use -Dvirgo.force=true to push it anyway)");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records the successful deployment of the given artefact to the current server.
+	 * 
+	 * @param artefact
+	 * @throws IOException
+	 */
+	protected void recordDeployment(File artefact) throws IOException {
+		if (artefact != null) {
+			recordDeployment(artefact, getArtefactHash(artefact), getBundleIdentity(artefact));
+		}
+	}
+
+	/**
+	 * Records the successful deployment of the given artefact with the given content hash and identity.
+	 * 
+	 * @param artefact
+	 * @param hash
+	 * @param identity
+	 * @throws IOException
+	 */
+	protected void recordDeployment(File artefact, String hash, String[] identity) throws IOException {
+		DeployState.record(artefact, hash, getDeploymentTarget(), identity[0], identity[1]);
+	}
+
+	/**
+	 * Deploys the given artefact using the configured transport, i.e. via the pickup directory or via the
+	 * deployer MBean, either referencing the local file or streaming the artefact to the server first. With a
+	 * <code>deployTimeout</code> the method waits until the artefact is ACTIVE. The deployment is not
+	 * recorded, see {@link #recordDeployment(File)}.
+	 * 
+	 * @param connection
+	 *            The connection to the server, not used by the <code>pickup</code> transport and may be
+	 *            <code>null</code> then
+	 * @param artefact
+	 * @param identity
+	 *            Symbolic name and version of the artefact
+	 * @throws Exception
+	 */
+	protected void deployArtefact(MBeanServerConnection connection, File artefact, String[] identity)
+			throws Exception {
+		if (isPickupTransport()) {
+			createPickupDeployer().deploy(artefact, identity[0], pickupTimeout);
+			return;
+		}
+		// get the Deployer MBean and set up the arguments
+		String artefactUri = getArtefactUri(connection, artefact);
+		logger.info("Add " + artefactUri + " to the argument list");
+		Object[] params = { artefactUri, isRecoverable() };
+		String[] signature = { "java.lang.String", "boolean" };
+		logger.info("Deploy " + artefact.getName());
+		// invoke the deploy method of the Deployer MBean and wait for the artefact to become active
+		invokeDeployer(connection, "deploy", params, signature, getArtifactType(artefact), identity, false);
+	}
+
+	/**
+	 * Returns the symbolic name and version Virgo knows the artefact of this project by, see
+	 * {@link #getBundleIdentity(File)}. In exploded mode the exploded directory is preferred.
+	 * 
+	 * @return An array containing the symbolic name and the version
+	 * @throws MojoFailureException
+	 */
+	protected String[] getBundleIdentity() throws MojoFailureException {
+		if (exploded && getExplodedDirectory().isDirectory()) {
+			return getBundleIdentity(getExplodedDirectory());
+		}
+		return getBundleIdentity(getArtefactFile());
+	}
+
+	/**
+	 * Returns the symbolic name and version Virgo knows the given artefact by. They are read from the
+	 * manifest of the artefact, the configured <code>symbolicName</code> and <code>osgiVersion</code> only
+	 * serve as a fallback in case the artefact doesn't exist or its manifest doesn't declare a symbolic name.
+	 * 
+	 * @param artefact
+	 *            The packaged artefact or the exploded directory, may be <code>null</code>
+	 * @return An array containing the symbolic name and the version
+	 */
+	protected String[] getBundleIdentity(File artefact) {
+		return getBundleIdentity(artefact, getSymbolicName(), getOsgiVersion());
+	}
+
+	/**
+	 * Returns the symbolic name and version Virgo knows the given artefact by like
+	 * {@link #getBundleIdentity(File)}, but falls back to the given values, e.g. the ones of another project
+	 * of the reactor.
+	 * 
+	 * @param artefact
+	 * @param symbolicName
+	 * @param version
+	 *            The OSGi version
+	 * @return An array containing the symbolic name and the version
+	 */
+	protected String[] getBundleIdentity(File artefact, String symbolicName, String version) {
+		String[] identity = { symbolicName, version };
+		if (artefact == null || !artefact.exists()) {
+			return identity;
+		}
+		try {
+			BundleManifest manifest = BundleManifest.readCached(artefact);
+			if (manifest != null && manifest.getSymbolicName() != null) {
+				identity[0] = manifest.getSymbolicName();
+				// bundles without a version have the version 0.0.0
+				identity[1] = manifest.getVersion() != null ? manifest.getVersion() : "0.0.0";
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to read the manifest of " + artefact.getName()
+					+ ", falling back to the symbolic name and version of the POM: " + e.getMessage());
+		}
+		return identity;
+	}
+
+	/**
+	 * Removes the recorded deployment state of the given artefact.
+	 * 
+	 * @param artefact
+	 * @throws IOException
+	 */
+	protected void forgetDeployment(File artefact) throws IOException {
+		if (artefact != null) {
+			DeployState.remove(artefact, getDeploymentTarget());
+		}
+	}
+
+	/**
+	 * Returns whether or not artefacts are deployed via the pickup directory instead of JMX.
+	 * 
+	 * @return
+	 */
+	protected boolean isPickupTransport() {
+		return "pickup".equalsIgnoreCase(transport);
+	}
+
+	/**
+	 * Returns whether or not artefacts are streamed to the staging MBean of the server before deploying them.
+	 * 
+	 * @return
+	 */
+	protected boolean isStreamTransport() {
+		return "stream".equalsIgnoreCase(transport);
+	}
+
+	/**
+	 * Returns the URI the deployer MBean should use to fetch the given artefact. When using the
+	 * <code>stream</code> transport the artefact is transferred to the server first and the URI of the staged
+	 * copy is returned, otherwise this is simply the local file URI.
+	 * 
+	 * @param connection
+	 * @param artefact
+	 * @return
+	 * @throws Exception
+	 */
+	protected String getArtefactUri(MBeanServerConnection connection, File artefact) throws Exception {
+		if (!isStreamTransport()) {
+			return "file:///" + artefact.getAbsolutePath().replaceAll("\\\\", "/");
+		}
+		long phase = getTimer().start();
+		ChunkedUploader uploader = new ChunkedUploader(connection, invokeTimeout);
+		String uri;
+		try {
+			uri = uploader.upload(artefact);
+		} catch (TimeoutException e) {
+			// the connection may be stuck, make sure it isn't handed out again
+			evictConnector();
+			throw e;
+		}
+		getTimer().stop("upload " + artefact.getName(), phase);
+		logger.info("Transferred " + artefact.getName() + " as " + uri + ", sent " + uploader.getSentChunks()
+				+ " of " + uploader.getChunks() + " chunks (" + uploader.getSentBytes() + " bytes)");
+		return uri;
+	}
+
+	/**
+	 * Creates a deployer using the pickup directory of the configured Virgo instance.
+	 * 
+	 * @return
+	 */
+	protected PickupDeployer createPickupDeployer() {
+		if (getVirgoRoot() == null) {
+			throw new IllegalStateException("The pickup transport needs the Virgo root directory of "
+					+ getServiceUrl());
+		}
+		PickupDeployer deployer = new PickupDeployer(getVirgoRoot(), new File(getVirgoRoot(), EVENT_LOG), logger);
+		deployer.setHardLink(pickupHardLink);
+		return deployer;
+	}
+
+	/**
+	 * Invalidates the recorded deployments to the configured server, so the next deployment of every
+	 * artefact isn't skipped. Used once the server lost its deployments, e.g. when it is (re)started.
+	 */
+	protected void invalidateDeployments() {
+		try {
+			DeployState.invalidate(getServiceUrl());
+			if (getVirgoRoot() != null) {
+				DeployState.invalidate(getPickupTarget());
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to invalidate the recorded deployments to " + getServiceUrl() + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/*
+	 * Identifies where artefacts end up, either the JMX service URL or the pickup directory
+	 */
+	private String getDeploymentTarget() {
+		if (isPickupTransport()) {
+			return getPickupTarget();
+		}
+		return getServiceUrl();
+	}
+
+	private String getPickupTarget() {
+		return new File(getVirgoRoot(), "pickup").toURI().toString();
+	}
+
+	/*
+	 * The artefact is hashed only once as long as it doesn't change
+	 */
+	private String getArtefactHash(File artefact) throws IOException {
+		if (artefact.isDirectory()) {
+			// the modification time of a directory doesn't reflect changes of nested files
+			return ContentHasher.hashTree(artefact);
+		}
+		if (!artefact.equals(hashedArtefact) || artefact.lastModified() != hashedModified) {
+			long start = System.currentTimeMillis();
+			hashedModified = artefact.lastModified();
+			artefactHash = ContentHasher.hash(artefact);
+			hashedArtefact = artefact;
+			logger.debug("Hashed " + artefact.getName() + " in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		return artefactHash;
+	}
+
+	/**
+	 * Returns the artefact which should be handed to Virgo. This is either the packaged artefact or, in
+	 * exploded mode, the exploded bundle directory which is brought up to date first.
+	 * 
+	 * @return
+	 * @throws MojoFailureException
+	 * @throws IOException
+	 */
+	public File getDeployableArtefact() throws MojoFailureException, IOException {
+		if (!exploded) {
+			return getArtefactFile();
+		}
+		if (isPickupTransport() || isStreamTransport()) {
+			throw new MojoFailureException("Exploded bundles cannot be deployed via the " + transport + " transport");
+		}
+		File source = getExplodedSource();
+		if (!source.isDirectory()) {
+			throw new MojoFailureException("The directory " + source + " does not exist, compile the project first");
+		}
+		Manifest manifest = BundlePackager.readManifest(source);
+		if (manifest == null) {
+			manifest = BundlePackager.readManifest(getArtefactFile());
+		}
+		if (manifest == null) {
+			throw new MojoFailureException("No manifest found in " + source + " or the packaged artefact");
+		}
+		long start = System.currentTimeMillis();
+		File directory = getExplodedDirectory();
+		int changes;
+		// the instances of a server pool share the exploded directory
+		synchronized (BaseMojo.class) {
+			changes = DirectorySync.sync(source, directory, manifest);
+		}
+		logger.info("Synchronised " + changes + " changed files into " + directory + " ("
+				+ (System.currentTimeMillis() - start) + "ms)");
+		return directory;
+	}
+
+	/**
+	 * Returns the directory the exploded bundle is created from.
+	 * 
+	 * @return
+	 */
+	public File getExplodedSource() {
+		if (explodedSource != null) {
+			return explodedSource;
+		}
+		if ("war".equalsIgnoreCase(packaging)) {
+			return new File(path, finalArtefact);
+		}
+		return outputDirectory;
+	}
+
+	/**
+	 * Returns the location of the exploded bundle directory. The directory is named like the packaged
+	 * artefact so Virgo is able to determine the artefact type.
+	 * 
+	 * @return
+	 * @throws MojoFailureException
+	 */
+	public File getExplodedDirectory() throws MojoFailureException {
+		return new File(new File(path, "virgo-exploded"), finalArtefact + "." + getArtefactExtension(packaging));
+	}
+
+	/**
+	 * Process start arguments to check whether or not a JMX port has been specified. In case a JMX port has
+	 * been found it will be set.
+	 */
+	protected void checkForJMXPort() {
+		logger.info("Parsing the start arguments for a JMX port");
+		if (getStartParams() == null) {
+			return;
+		}
+		boolean jmxParam = false;
+		for (String argument : getStartParams()) {
+			if (jmxParam) { // JMX port number
+				setJmxPort(argument.trim());
+				logger.debug("JMX port found: " + getJmxPort());
+				return;
+			}
+			if ("-jmxport".equalsIgnoreCase(argument.trim())) {
+				logger.debug("JMX argument found, expect next argument to be a valid port number");
+				jmxParam = true;
+			}
+		}
+	}
+
+	/**
+	 * Transforms a stack trace into a String object.
+	 * 
+	 * @param throwable
+	 * @return The strack trace payload as a String object.
+	 */
+	public static String stackTrace2String(Throwable throwable) {
+		final Writer result = new StringWriter();
+		final PrintWriter printWriter = new PrintWriter(result);
+		throwable.printStackTrace(printWriter);
+		return result.toString();
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the Virgo root direcotry
+	 * 
+	 * @return A file object pointing to the Virgo root directory
+	 */
+	public File getVirgoRoot() {
+		return virgoRoot;
+	}
+
+	/**
+	 * Sets the Virgo root directory via the POM configuration.
+	 * 
+	 * @param virgoRoot
+	 */
+	public void setVirgoRoot(File virgoRoot) {
+		this.virgoRoot = virgoRoot;
+	}
+
+	/**
+	 * Sets the Virgo root directory via the commandline as a system property
+	 * 
+	 * @param virgoRoot
+	 */
+	public void setVirgoRoot(String virgoRoot) {
+		this.virgoRoot = new File(virgoRoot);
+	}
+
+	/**
+	 * Returns the JMX port
+	 * 
+	 * @return
+	 */
+	public int getJmxPort() {
+		return jmxPort;
+	}
+
+	/**
+	 * Sets the JMX port. In case the port number is not valid the existing port number will remain active.
+	 * 
+	 * @param jmxPort
+	 */
+	public void setJmxPort(int jmxPort) {
+		if (jmxPort >= 1 && jmxPort <= 65565) {
+			this.jmxPort = jmxPort;
+		} else {
+			getLog().warn(
+					"The given JMX port (" + jmxPort + ") is not a valid port number, use current value "
+							+ this.jmxPort);
+		}
+	}
+
+	/**
+	 * Sets the JMX port. In case the port number is not valid the existing port number will remain active.
+	 * 
+	 * @param jmxPort
+	 */
+	public void setJmxPort(String jmxPort) {
+		try {
+			setJmxPort(Integer.parseInt(jmxPort));
+		} catch (NumberFormatException e) {
+			getLog().warn(
+					"The given JMX port (" + jmxPort + ") is not a number, use current value " + this.jmxPort);
+		}
+	}
+
+	/**
+	 * Returns all the defined parameter that should be applied to the startup of the Virgo server
 	 * 
 	 * @return
 	 */
@@ -359,205 +1589,432 @@ public abstract class BaseMojo extends AbstractMojo {
 	}
 
 	/**
-	 * Sets the start parameter via the POM configuration.
+	 * Sets the start parameter via the POM configuration.
+	 * 
+	 * @param startParams
+	 */
+	public void setStartParams(String[] startParams) {
+		this.startParams = startParams;
+	}
+
+	/**
+	 * Sets the start parameter via the commandline as a system property.
+	 * 
+	 * @param startParams
+	 */
+	public void setStartParams(String startParams) {
+		this.startParams = startParams.split(",");
+	}
+
+	/**
+	 * Returns the delay value in ms the Maven goal should wait until it will finish the current action.
+	 * 
+	 * @return
+	 */
+	public int getDelayAfterStart() {
+		return delayAfterStart;
+	}
+
+	/**
+	 * Sets the delay value in ms the Maven goal should wait until it will finish the current action.
+	 * 
+	 * @param delayAfterStart
+	 */
+	public void setDelayAfterStart(int delayAfterStart) {
+		this.delayAfterStart = delayAfterStart;
+	}
+
+	/**
+	 * 
+	 * @param truststoreLocation
+	 */
+	public void setTruststoreLocation(File truststoreLocation) {
+		this.truststoreLocation = truststoreLocation;
+		// TODO
+	}
+
+	/**
+	 * Sets the password of the truststore.
+	 * 
+	 * @param truststorePassword
+	 */
+	public void setTruststorePassword(String truststorePassword) {
+		this.truststorePassword = truststorePassword;
+	}
+
+	/**
+	 * Returns the service URL used to connect to the MBean server.
+	 * 
+	 * @return
+	 */
+	public String getServiceUrl() {
+		return String.format(serviceUrl, jmxPort, jmxPort);
+	}
+
+	/**
+	 * Set the service URL used to connect to the MBean server.
+	 * 
+	 * @param serviceUrl
+	 */
+	public void setServiceUrl(String serviceUrl) {
+		this.serviceUrl = serviceUrl;
+	}
+
+	/**
+	 * Get the user name used to connect to the MBean server.
+	 * 
+	 * @return
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Set the user name used to connect to the MBean server.
+	 * 
+	 * @param user
+	 */
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	/**
+	 * Get the password used to connect to the MBean server.
+	 * 
+	 * @return
+	 */
+	public String getPassword() {
+		return password;
+	}
+
+	/**
+	 * Set the password used to connect to the MBean server.
+	 * 
+	 * @param password
+	 */
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	/**
+	 * Return the location of the target folder as a string.
+	 * 
+	 * @return
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Return the name of the final artefact.
+	 * 
+	 * @return
+	 */
+	public String getFinalArtefact() {
+		return finalArtefact;
+	}
+
+	/**
+	 * Return the packaging type.
+	 * 
+	 * @return
+	 */
+	public String getPackaging() {
+		return packaging;
+	}
+
+	/**
+	 * Set the packaging type. Do not call this method directly.
+	 * 
+	 * @param packaging
+	 */
+	public void setPackaging(String packaging) {
+		this.packaging = packaging;
+	}
+
+	/**
+	 * Get the symbolic name.
+	 * 
+	 * @return
+	 */
+	public String getSymbolicName() {
+		return symbolicName;
+	}
+
+	/**
+	 * Set the symbolic name.
+	 * 
+	 * @param symbolicName
+	 */
+	public void setSymbolicName(String symbolicName) {
+		this.symbolicName = symbolicName;
+	}
+
+	/**
+	 * Get the OSGi version. It will use Bundlor's MavenVersionNumberConverter class to provide a valid OSGi
+	 * version.
+	 * 
+	 * @return
+	 */
+	public String getOsgiVersion() {
+		return MavenVersionNumberConverter.convertToOsgi(osgiVersion);
+	}
+
+	/**
+	 * Get the version as defined by the user or the artefact's version in case no OSGi version has been
+	 * specified. There is no quarantee that this version is a valid OSGi version.
+	 * 
+	 * @return
+	 */
+	public String getOriginalVersion() {
+		return osgiVersion;
+	}
+
+	/**
+	 * Set the OSGi version.
+	 * 
+	 * @param osgiVersion
+	 */
+	public void setOsgiVersion(String osgiVersion) {
+		if (osgiVersion != null && osgiVersion.trim().length() > 0) {
+			this.osgiVersion = osgiVersion;
+		}
+	}
+
+	/**
+	 * Returns whether or not an artefact is recoverable after a server restart.
+	 * 
+	 * @return
+	 */
+	public boolean isRecoverable() {
+		return recoverable;
+	}
+
+	/**
+	 * Define whether or not the artefact is recoverable after a server restart.
 	 * 
-	 * @param startParams
+	 * @param recoverable
 	 */
-	public void setStartParams(String[] startParams) {
-		this.startParams = startParams;
+	public void setRecoverable(boolean recoverable) {
+		this.recoverable = recoverable;
 	}
 
 	/**
-	 * Sets the start parameter via the commandline as a system property.
+	 * Returns whether or not artefacts are pushed to the server even if they haven't changed.
 	 * 
-	 * @param startParams
+	 * @return
 	 */
-	public void setStartParams(String startParams) {
-		this.startParams = startParams.split(",");
+	public boolean isForce() {
+		return force;
 	}
 
 	/**
-	 * Returns the delay value in ms the Maven goal should wait until it will finish the current action.
+	 * Define whether or not artefacts are pushed to the server even if they haven't changed.
 	 * 
-	 * @return
+	 * @param force
 	 */
-	public int getDelayAfterStart() {
-		return delayAfterStart;
+	public void setForce(boolean force) {
+		this.force = force;
 	}
 
 	/**
-	 * Sets the delay value in ms the Maven goal should wait until it will finish the current action.
+	 * Returns the transport used to deploy artefacts.
 	 * 
-	 * @param delayAfterStart
+	 * @return
 	 */
-	public void setDelayAfterStart(int delayAfterStart) {
-		this.delayAfterStart = delayAfterStart;
+	public String getTransport() {
+		return transport;
 	}
 
 	/**
+	 * Set the transport used to deploy artefacts, either <code>jmx</code>, <code>pickup</code> or
+	 * <code>stream</code>.
 	 * 
-	 * @param truststoreLocation
+	 * @param transport
 	 */
-	public void setTruststoreLocation(File truststoreLocation) {
-		this.truststoreLocation = truststoreLocation;
-		// TODO
+	public void setTransport(String transport) {
+		this.transport = transport;
 	}
 
 	/**
-	 * Returns the service URL used to connect to the MBean server.
+	 * Returns the maximum time in ms a single attempt to connect may take.
 	 * 
 	 * @return
 	 */
-	public String getServiceUrl() {
-		return String.format(serviceUrl, jmxPort, jmxPort);
+	public int getConnectTimeout() {
+		return connectTimeout;
 	}
 
 	/**
-	 * Set the service URL used to connect to the MBean server.
+	 * Set the maximum time in ms a single attempt to connect may take, 0 to wait forever.
 	 * 
-	 * @param serviceUrl
+	 * @param connectTimeout
 	 */
-	public void setServiceUrl(String serviceUrl) {
-		this.serviceUrl = serviceUrl;
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
 	}
 
 	/**
-	 * Get the user name used to connect to the MBean server.
+	 * Returns the number of retries after a failed attempt to connect.
 	 * 
 	 * @return
 	 */
-	public String getUser() {
-		return user;
+	public int getConnectRetries() {
+		return connectRetries;
 	}
 
 	/**
-	 * Set the user name used to connect to the MBean server.
+	 * Set the number of retries after a failed attempt to connect.
 	 * 
-	 * @param user
+	 * @param connectRetries
 	 */
-	public void setUser(String user) {
-		this.user = user;
+	public void setConnectRetries(int connectRetries) {
+		this.connectRetries = connectRetries;
 	}
 
 	/**
-	 * Get the password used to connect to the MBean server.
+	 * Returns the upper bound of the delay before the first retry in ms.
 	 * 
 	 * @return
 	 */
-	public String getPassword() {
-		return password;
+	public int getRetryDelay() {
+		return retryDelay;
 	}
 
 	/**
-	 * Set the password used to connect to the MBean server.
+	 * Set the upper bound of the delay before the first retry in ms.
 	 * 
-	 * @param password
+	 * @param retryDelay
 	 */
-	public void setPassword(String password) {
-		this.password = password;
+	public void setRetryDelay(int retryDelay) {
+		this.retryDelay = retryDelay;
 	}
 
 	/**
-	 * Return the location of the target folder as a string.
+	 * Returns the maximum time in ms an MBean operation may take.
 	 * 
 	 * @return
 	 */
-	public String getPath() {
-		return path;
+	public int getInvokeTimeout() {
+		return invokeTimeout;
 	}
 
 	/**
-	 * Return the name of the final artefact.
+	 * Set the maximum time in ms an MBean operation may take, 0 to wait forever.
 	 * 
-	 * @return
+	 * @param invokeTimeout
 	 */
-	public String getFinalArtefact() {
-		return finalArtefact;
+	public void setInvokeTimeout(int invokeTimeout) {
+		this.invokeTimeout = invokeTimeout;
 	}
 
 	/**
-	 * Return the packaging type.
+	 * Returns the time in ms goals fail fast once connecting to a server failed.
 	 * 
 	 * @return
 	 */
-	public String getPackaging() {
-		return packaging;
+	public int getBreakerCoolDown() {
+		return breakerCoolDown;
 	}
 
 	/**
-	 * Set the packaging type. Do not call this method directly.
+	 * Set the time in ms goals fail fast once connecting to a server failed, 0 to turn the circuit breaker
+	 * off.
 	 * 
-	 * @param packaging
+	 * @param breakerCoolDown
 	 */
-	public void setPackaging(String packaging) {
-		this.packaging = packaging;
+	public void setBreakerCoolDown(int breakerCoolDown) {
+		this.breakerCoolDown = breakerCoolDown;
 	}
 
 	/**
-	 * Get the symbolic name.
+	 * Returns the maximum time in ms to wait for an artefact to reach its final state.
 	 * 
 	 * @return
 	 */
-	public String getSymbolicName() {
-		return symbolicName;
+	public int getDeployTimeout() {
+		return deployTimeout;
 	}
 
 	/**
-	 * Set the symbolic name.
+	 * Set the maximum time in ms to wait for an artefact to reach its final state, 0 to not wait at all.
 	 * 
-	 * @param symbolicName
+	 * @param deployTimeout
 	 */
-	public void setSymbolicName(String symbolicName) {
-		this.symbolicName = symbolicName;
+	public void setDeployTimeout(int deployTimeout) {
+		this.deployTimeout = deployTimeout;
 	}
 
 	/**
-	 * Get the OSGi version. It will use Bundlor's MavenVersionNumberConverter class to provide a valid OSGi
-	 * version.
+	 * Returns the maximum time in ms to wait for a pickup deployment to be confirmed.
 	 * 
 	 * @return
 	 */
-	public String getOsgiVersion() {
-		return MavenVersionNumberConverter.convertToOsgi(osgiVersion);
+	public int getPickupTimeout() {
+		return pickupTimeout;
 	}
 
 	/**
-	 * Get the version as defined by the user or the artefact's version in case no OSGi version has been
-	 * specified. There is no quarantee that this version is a valid OSGi version.
+	 * Set the maximum time in ms to wait for a pickup deployment to be confirmed.
+	 * 
+	 * @param pickupTimeout
+	 */
+	public void setPickupTimeout(int pickupTimeout) {
+		this.pickupTimeout = pickupTimeout;
+	}
+
+	/**
+	 * Returns whether or not the pickup transport stages artefacts as hard links.
 	 * 
 	 * @return
 	 */
-	public String getOriginalVersion() {
-		return osgiVersion;
+	public boolean isPickupHardLink() {
+		return pickupHardLink;
 	}
 
 	/**
-	 * Set the OSGi version.
+	 * Define whether or not the pickup transport stages artefacts as hard links.
 	 * 
-	 * @param osgiVersion
+	 * @param pickupHardLink
 	 */
-	public void setOsgiVersion(String osgiVersion) {
-		if (osgiVersion != null && osgiVersion.trim().length() > 0) {
-			this.osgiVersion = osgiVersion;
-		}
+	public void setPickupHardLink(boolean pickupHardLink) {
+		this.pickupHardLink = pickupHardLink;
 	}
 
 	/**
-	 * Returns whether or not an artefact is recoverable after a server restart.
+	 * Returns whether or not the bundle is deployed as an exploded directory.
 	 * 
 	 * @return
 	 */
-	public boolean isRecoverable() {
-		return recoverable;
+	public boolean isExploded() {
+		return exploded;
 	}
 
 	/**
-	 * Define whether or not the artefact is recoverable after a server restart.
+	 * Define whether or not the bundle is deployed as an exploded directory.
 	 * 
-	 * @param recoverable
+	 * @param exploded
 	 */
-	public void setRecoverable(boolean recoverable) {
-		this.recoverable = recoverable;
+	public void setExploded(boolean exploded) {
+		this.exploded = exploded;
+	}
+
+	/**
+	 * Set the directory the exploded bundle is created from.
+	 * 
+	 * @param explodedSource
+	 */
+	public void setExplodedSource(File explodedSource) {
+		this.explodedSource = explodedSource;
+	}
+
+	/**
+	 * Returns the directory containing the compiled classes and resources.
+	 * 
+	 * @return
+	 */
+	public File getOutputDirectory() {
+		return outputDirectory;
 	}
 
 	/**
@@ -569,4 +2026,255 @@ public abstract class BaseMojo extends AbstractMojo {
 		return connector;
 	}
 
+	/**
+	 * Returns whether or not JMX connections are shared across the Maven session.
+	 * 
+	 * @return
+	 */
+	public boolean isReuseConnection() {
+		return reuseConnection;
+	}
+
+	/**
+	 * Define whether or not JMX connections are shared across the Maven session.
+	 * 
+	 * @param reuseConnection
+	 */
+	public void setReuseConnection(boolean reuseConnection) {
+		this.reuseConnection = reuseConnection;
+	}
+
+	/**
+	 * Returns whether or not the phase timings are written to <code>target/virgo-metrics</code>.
+	 * 
+	 * @return
+	 */
+	public boolean isMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Define whether or not the phase timings are written to <code>target/virgo-metrics</code>.
+	 * 
+	 * @param metrics
+	 */
+	public void setMetrics(boolean metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns whether or not the goal is executed against all instances of the server pool.
+	 * 
+	 * @return
+	 */
+	public boolean isPool() {
+		return pool;
+	}
+
+	/**
+	 * Define whether or not the goal is executed against all instances of the server pool.
+	 * 
+	 * @param pool
+	 */
+	public void setPool(boolean pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the list of target servers the goal is executed against.
+	 * 
+	 * @return
+	 */
+	public File getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Sets the list of target servers the goal is executed against.
+	 * 
+	 * @param targets
+	 */
+	public void setTargets(File targets) {
+		this.targets = targets;
+	}
+
+	/**
+	 * Returns the maximum number of target servers the goal is executed against at the same time.
+	 * 
+	 * @return
+	 */
+	public int getParallelTargets() {
+		return parallelTargets;
+	}
+
+	/**
+	 * Sets the maximum number of target servers the goal is executed against at the same time.
+	 * 
+	 * @param parallelTargets
+	 */
+	public void setParallelTargets(int parallelTargets) {
+		this.parallelTargets = parallelTargets;
+	}
+
+	/**
+	 * Returns whether or not the goal stops at the first target server it failed for.
+	 * 
+	 * @return
+	 */
+	public boolean isFailFast() {
+		return failFast;
+	}
+
+	/**
+	 * Sets whether or not the goal stops at the first target server it failed for.
+	 * 
+	 * @param failFast
+	 */
+	public void setFailFast(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Returns how an artefact is rolled out to a list of target servers, <code>parallel</code> or
+	 * <code>rolling</code>.
+	 * 
+	 * @return
+	 */
+	public String getRollout() {
+		return rollout;
+	}
+
+	/**
+	 * Sets how an artefact is rolled out to a list of target servers, <code>parallel</code> or
+	 * <code>rolling</code>.
+	 * 
+	 * @param rollout
+	 */
+	public void setRollout(String rollout) {
+		this.rollout = rollout;
+	}
+
+	/**
+	 * Returns the number of target servers updated at the same time by a rolling rollout.
+	 * 
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of target servers updated at the same time by a rolling rollout.
+	 * 
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the URL checked after a server has been updated by a rolling rollout.
+	 * 
+	 * @return
+	 */
+	public String getHealthUrl() {
+		return healthUrl;
+	}
+
+	/**
+	 * Sets the URL checked after a server has been updated by a rolling rollout.
+	 * 
+	 * @param healthUrl
+	 */
+	public void setHealthUrl(String healthUrl) {
+		this.healthUrl = healthUrl;
+	}
+
+	/**
+	 * Returns the maximum time in ms a server of a rolling rollout may take to pass its health check.
+	 * 
+	 * @return
+	 */
+	public int getHealthTimeout() {
+		return healthTimeout;
+	}
+
+	/**
+	 * Sets the maximum time in ms a server of a rolling rollout may take to pass its health check.
+	 * 
+	 * @param healthTimeout
+	 */
+	public void setHealthTimeout(int healthTimeout) {
+		this.healthTimeout = healthTimeout;
+	}
+
+	/**
+	 * Returns whether or not the servers updated by a halted rolling rollout are rolled back.
+	 * 
+	 * @return
+	 */
+	public boolean isRollback() {
+		return rollback;
+	}
+
+	/**
+	 * Sets whether or not the servers updated by a halted rolling rollout are rolled back.
+	 * 
+	 * @param rollback
+	 */
+	public void setRollback(boolean rollback) {
+		this.rollback = rollback;
+	}
+
+	/**
+	 * Returns the directory keeping the artefact of the last successful rolling rollout per server.
+	 * 
+	 * @return
+	 */
+	public File getRollbackCache() {
+		return rollbackCache;
+	}
+
+	/**
+	 * Sets the directory keeping the artefact of the last successful rolling rollout per server.
+	 * 
+	 * @param rollbackCache
+	 */
+	public void setRollbackCache(File rollbackCache) {
+		this.rollbackCache = rollbackCache;
+	}
+
+	/**
+	 * Returns the directory containing the instances and the descriptor of the server pool.
+	 * 
+	 * @return
+	 */
+	public File getPoolDirectory() {
+		if (poolDirectory != null) {
+			return poolDirectory;
+		}
+		if (session != null && session.getExecutionRootDirectory() != null) {
+			return new File(session.getExecutionRootDirectory(), "target/virgo-pool");
+		}
+		return new File(path, "virgo-pool");
+	}
+
+	/**
+	 * Set the directory containing the instances and the descriptor of the server pool.
+	 * 
+	 * @param poolDirectory
+	 */
+	public void setPoolDirectory(File poolDirectory) {
+		this.poolDirectory = poolDirectory;
+	}
+
+	/**
+	 * Returns the current Maven session.
+	 * 
+	 * @return
+	 */
+	public MavenSession getSession() {
+		return session;
+	}
+
 }
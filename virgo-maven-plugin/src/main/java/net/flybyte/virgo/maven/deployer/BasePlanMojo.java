@@ -0,0 +1,271 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.BundleDependencyGraph;
+import net.flybyte.virgo.maven.helper.BundleManifest;
+import net.flybyte.virgo.maven.helper.MavenVersionNumberConverter;
+import net.flybyte.virgo.maven.helper.ReactorPlan;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Base class of the goals treating all bundles of the reactor build as a single unit. A plan referencing
+ * every bundle of the reactor by its symbolic name and version (as declared in its manifest) is generated
+ * and the bundles are staged into a Virgo repository, so Virgo resolves and commits all of them in one pass
+ * instead of once per bundle. See {@link ReactorPlan} for details.
+ * 
+ * @author Frieder Heugel
+ */
+public abstract class BasePlanMojo extends BaseMojo {
+	/**
+	 * All projects of the current reactor build.
+	 * 
+	 * @parameter expression="${reactorProjects}"
+	 * @required
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	/**
+	 * The symbolic name of the generated plan. Instead of defining this property in the pom file it is also
+	 * possible to use a VM argument <code>-Dvirgo.planname</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="planName" default-value="${project.groupId}.${project.artifactId}.reactor"
+	 *            expression="${virgo.planname}"
+	 */
+	private String planName;
+	/**
+	 * The version of the generated plan, it is converted into a valid OSGi version. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.planversion</code>
+	 * when executing the Maven goal.
+	 * 
+	 * @parameter property="planVersion" default-value="${project.version}" expression="${virgo.planversion}"
+	 */
+	private String planVersion;
+	/**
+	 * Defines whether or not the bundles of the plan are isolated from the rest of the server. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.planscoped</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="planScoped" default-value="false" expression="${virgo.planscoped}"
+	 */
+	private boolean planScoped;
+	/**
+	 * Defines whether or not the bundles of the plan share their life cycle, i.e. are started and stopped
+	 * together. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.planatomic</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="planAtomic" default-value="true" expression="${virgo.planatomic}"
+	 */
+	private boolean planAtomic;
+	/**
+	 * The Virgo repository directory the bundles of the plan are staged into. Defaults to the watched user
+	 * repository <code>repository/usr</code> of the Virgo root directory. Instead of defining this property
+	 * in the pom file it is also possible to use a VM argument <code>-Dvirgo.repositorydirectory</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="repositoryDirectory" expression="${virgo.repositorydirectory}"
+	 */
+	private File repositoryDirectory;
+	/**
+	 * The time in milliseconds Virgo needs to notice changes of a watched repository, i.e. the
+	 * <code>watchInterval</code> of the repository configured in
+	 * <code>configuration/org.eclipse.virgo.repository.properties</code> plus some headroom. The goals only
+	 * wait in case bundles have been staged. Instead of defining this property in the pom file it is also
+	 * possible to use a VM argument <code>-Dvirgo.watchinterval</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="watchInterval" default-value="6000" expression="${virgo.watchinterval}"
+	 */
+	private int watchInterval;
+
+	/**
+	 * Creates the plan for all bundles of the reactor. The bundles are ordered by their dependencies.
+	 * Projects with an unsupported packaging type and artefacts without a symbolic name are skipped.
+	 * 
+	 * @return
+	 * @throws MojoFailureException
+	 *             In case the artefact of a project hasn't been packaged
+	 * @throws IOException
+	 */
+	protected ReactorPlan createPlan() throws MojoFailureException, IOException {
+		long phase = getTimer().start();
+		Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+		for (MavenProject project : reactorProjects) {
+			if ("virgo-plan".equalsIgnoreCase(project.getPackaging())) {
+				logger.info("Skipping " + project.getId() + ", plans cannot be nested in the reactor plan");
+				continue;
+			}
+			File artefact;
+			try {
+				artefact = resolveArtefactFile(project.getBuild().getDirectory(), project.getBuild()
+						.getFinalName(), project.getPackaging());
+			} catch (MojoFailureException e) {
+				logger.info("Skipping " + project.getId() + " (packaging '" + project.getPackaging() + "')");
+				continue;
+			}
+			if (artefact == null) {
+				throw new MojoFailureException("The artefact of " + project.getId()
+						+ " does not exist, has the project been packaged?");
+			}
+			BundleManifest manifest = BundleManifest.readCached(artefact);
+			if (manifest == null || manifest.getSymbolicName() == null) {
+				logger.warn("Skipping " + artefact.getName() + ", it doesn't declare a symbolic name");
+				continue;
+			}
+			manifests.put(artefact, manifest);
+		}
+		ReactorPlan plan = new ReactorPlan(planName, MavenVersionNumberConverter.convertToOsgi(planVersion),
+				planScoped, planAtomic);
+		for (File artefact : order(manifests)) {
+			plan.add(artefact, manifests.get(artefact));
+		}
+		getTimer().stop("resolve artefact", phase);
+		return plan;
+	}
+
+	/*
+	 * Bundles are listed in dependency order, Virgo resolves cycles within a plan anyway
+	 */
+	private List<File> order(Map<File, BundleManifest> manifests) {
+		List<File> ordered = new ArrayList<File>();
+		try {
+			for (List<File> wave : new BundleDependencyGraph(manifests).computeWaves()) {
+				ordered.addAll(wave);
+			}
+		} catch (IllegalStateException e) {
+			logger.debug("Keeping the reactor order: " + e.getMessage());
+			ordered.clear();
+			ordered.addAll(manifests.keySet());
+		}
+		return ordered;
+	}
+
+	/**
+	 * Stages the bundles of the plan into the repository and waits for Virgo to notice them.
+	 * 
+	 * @param plan
+	 * @return The entries which have been staged because they changed
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected List<ReactorPlan.Entry> stage(ReactorPlan plan) throws IOException, InterruptedException {
+		long phase = getTimer().start();
+		List<ReactorPlan.Entry> staged = plan.stage(getRepositoryDirectory(), new File(path,
+				"virgo-plan/staging"));
+		getTimer().stop("stage artefacts", phase);
+		logger.info("Staged " + staged.size() + " of " + plan.getEntries().size() + " artefacts into "
+				+ getRepositoryDirectory());
+		if (!staged.isEmpty() && watchInterval > 0) {
+			logger.info("Waiting " + watchInterval + "ms for Virgo to pick up the changed artefacts");
+			phase = getTimer().start();
+			Thread.sleep(watchInterval);
+			getTimer().stop("wait for repository", phase);
+		}
+		return staged;
+	}
+
+	/**
+	 * Returns the location of the generated plan file.
+	 * 
+	 * @return
+	 */
+	protected File getPlanFile() {
+		return new File(new File(path, "virgo-plan"), planName + ".plan");
+	}
+
+	/**
+	 * Returns the URI of the generated plan file as passed to the deployer MBean.
+	 * 
+	 * @return
+	 */
+	protected String getPlanUri() {
+		return "file:///" + getPlanFile().getAbsolutePath().replaceAll("\\\\", "/");
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the symbolic name of the generated plan.
+	 * 
+	 * @return
+	 */
+	public String getPlanName() {
+		return planName;
+	}
+
+	/**
+	 * Sets the symbolic name of the generated plan.
+	 * 
+	 * @param planName
+	 */
+	public void setPlanName(String planName) {
+		this.planName = planName;
+	}
+
+	/**
+	 * Returns the OSGi version of the generated plan.
+	 * 
+	 * @return
+	 */
+	public String getPlanVersion() {
+		return MavenVersionNumberConverter.convertToOsgi(planVersion);
+	}
+
+	/**
+	 * Sets the version of the generated plan.
+	 * 
+	 * @param planVersion
+	 */
+	public void setPlanVersion(String planVersion) {
+		this.planVersion = planVersion;
+	}
+
+	/**
+	 * Returns the repository directory the bundles of the plan are staged into.
+	 * 
+	 * @return
+	 */
+	public File getRepositoryDirectory() {
+		if (repositoryDirectory == null && getVirgoRoot() == null) {
+			throw new IllegalStateException("The repository directory of " + getServiceUrl() + " is unknown");
+		}
+		return repositoryDirectory != null ? repositoryDirectory : new File(getVirgoRoot(), "repository/usr");
+	}
+
+	/**
+	 * Sets the repository directory the bundles of the plan are staged into.
+	 * 
+	 * @param repositoryDirectory
+	 */
+	public void setRepositoryDirectory(File repositoryDirectory) {
+		this.repositoryDirectory = repositoryDirectory;
+	}
+
+	/**
+	 * Returns the time in ms to wait for Virgo to notice changes of the repository.
+	 * 
+	 * @return
+	 */
+	public int getWatchInterval() {
+		return watchInterval;
+	}
+
+	/**
+	 * Sets the time in ms to wait for Virgo to notice changes of the repository.
+	 * 
+	 * @param watchInterval
+	 */
+	public void setWatchInterval(int watchInterval) {
+		this.watchInterval = watchInterval;
+	}
+
+}
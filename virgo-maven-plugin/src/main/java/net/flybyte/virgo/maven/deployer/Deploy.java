@@ -1,9 +1,9 @@
 package net.flybyte.virgo.maven.deployer;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 
 import net.flybyte.virgo.maven.BaseMojo;
 
@@ -24,18 +24,19 @@ public class Deploy extends BaseMojo {
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
 		try {
 			logger.info("Start deploying the artefact to Eclipse Virgo");
-			MBeanServerConnection connection = getConnection();
-			// get the Deployer MBean and set up the arguments
-			String artefactPath = getArtefactFile().getAbsolutePath().replaceAll("\\\\", "/");
-			logger.info("Add " + artefactPath + " to the argument list");
-			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
-			Object[] params  = { "file:///" + artefactPath, isRecoverable() };
-			String[] signature = { "java.lang.String", "boolean" };
-			logger.info("Deploy artifact");
-			// invoke the deploy method of the Deployer MBean
-			connection.invoke(name, "deploy", params, signature);
+			File artefact = getDeployableArtefact();
+			if (isAlreadyDeployed(artefact)) {
+				return;
+			}
+			MBeanServerConnection connection = isPickupTransport() ? null : getConnection();
+			deployArtefact(connection, artefact, getBundleIdentity(artefact));
+			recordDeployment(artefact);
 		}  catch (Exception e) {
 			throw new MojoFailureException(stackTrace2String(e));
 		} finally {
@@ -43,8 +44,15 @@ public class Deploy extends BaseMojo {
 				closeConnector();
 			} catch (IOException e) {
 				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
 			}
 		}
 	}
 
+	@Override
+	protected boolean supportsRollout() {
+		return true;
+	}
+
 }
@@ -0,0 +1,325 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServerConnection;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.BundleDependencyGraph;
+import net.flybyte.virgo.maven.helper.BundleManifest;
+import net.flybyte.virgo.maven.helper.ContentHasher;
+import net.flybyte.virgo.maven.helper.ExecutionReport;
+import net.flybyte.virgo.maven.helper.MavenVersionNumberConverter;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Deploys the artefacts of all projects of the reactor build to Eclipse Virgo using the configured
+ * <code>transport</code>, like the deploy goal does for a single project. All deployments share a single JMX
+ * connection and are executed concurrently, the number of parallel deployments can be limited. Projects with an unsupported packaging type (e.g. <code>pom</code>) are
+ * skipped. By default the artefacts are deployed in waves derived from their <code>Import-Package</code>,
+ * <code>Export-Package</code> and <code>Require-Bundle</code> headers, so that an artefact is only deployed
+ * once everything it depends on has been deployed. Artefacts which haven't changed since their last
+ * deployment to the same server are skipped unless <code>-Dvirgo.force</code> is set. Check the <a href=
+ * "http://virgo-opengrok.springsource.org/xref/virgo/org.eclipse.virgo.kernel/org.eclipse.virgo.kernel.deployer/src/main/java/org/eclipse/virgo/kernel/deployer/Deployer.java"
+ * >Virgo sourcecode</a> for more information.
+ * 
+ * @goal deployAll
+ * @aggregator
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class DeployAll extends BaseMojo {
+	/**
+	 * All projects of the current reactor build.
+	 * 
+	 * @parameter expression="${reactorProjects}"
+	 * @required
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+	/**
+	 * The maximum number of deployments executed concurrently. Instead of defining this property in the pom
+	 * file it is also possible to use a VM argument <code>-Dvirgo.threads</code> when executing the Maven
+	 * goal.
+	 * 
+	 * @parameter property="threads" default-value="4" expression="${virgo.threads}"
+	 */
+	private int threads;
+	/**
+	 * Defines whether or not the artefacts are deployed in the order given by their package and bundle
+	 * dependencies. If disabled all artefacts are deployed at once. Instead of defining this property in the
+	 * pom file it is also possible to use a VM argument <code>-Dvirgo.ordered</code> when executing the Maven
+	 * goal.
+	 * 
+	 * @parameter property="ordered" default-value="true" expression="${virgo.ordered}"
+	 */
+	private boolean ordered;
+	/**
+	 * Defines whether or not the goal fails in case an artefact imports a package or requires a bundle which
+	 * is not provided by any other artefact of the reactor. Such dependencies are usually satisfied by Virgo
+	 * itself and are only reported by default. Instead of defining this property in the pom file it is also
+	 * possible to use a VM argument <code>-Dvirgo.failonunresolved</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="failOnUnresolved" default-value="false" expression="${virgo.failonunresolved}"
+	 */
+	private boolean failOnUnresolved;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
+		try {
+			logger.info("Start deploying all reactor artefacts to Eclipse Virgo");
+			long phase = getTimer().start();
+			Map<File, MavenProject> artefacts = collectArtefacts();
+			getTimer().stop("resolve artefact", phase);
+			if (artefacts.isEmpty()) {
+				logger.info("No deployable artefacts found in the reactor");
+				return;
+			}
+			// local to this run, the copies of a fan-out deploy run concurrently
+			Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+			Map<File, String[]> identities = new HashMap<File, String[]>();
+			Map<File, String> hashes = new HashMap<File, String>();
+			for (Map.Entry<File, MavenProject> entry : artefacts.entrySet()) {
+				manifests.put(entry.getKey(), BundleManifest.read(entry.getKey()));
+				identities.put(entry.getKey(), getIdentity(entry.getKey(), entry.getValue()));
+			}
+			// analyse the dependencies before anything is sent to the server
+			phase = getTimer().start();
+			List<List<File>> waves = ordered ? computeWaves(manifests) : singleWave(artefacts.keySet());
+			getTimer().stop("compute waves", phase);
+			phase = getTimer().start();
+			boolean upToDate = removeUnchanged(waves, identities, hashes);
+			getTimer().stop("hash artefacts", phase);
+			if (upToDate) {
+				logger.info("All artefacts are up to date, nothing to deploy");
+				return;
+			}
+			MBeanServerConnection connection = isPickupTransport() ? null : getConnection();
+			ExecutionReport report = new ExecutionReport("Deployment summary");
+			for (int i = 0; i < waves.size(); i++) {
+				logger.info("Deploying wave " + (i + 1) + " of " + waves.size() + " (" + waves.get(i).size()
+						+ " artefacts)");
+				deployConcurrently(connection, waves.get(i), identities, hashes, report);
+				if (report.hasFailures() && i < waves.size() - 1) {
+					logger.error("Skipping the remaining waves since their dependencies could not be deployed");
+					break;
+				}
+			}
+			report.log(logger);
+			if (report.hasFailures()) {
+				throw new MojoFailureException(report.getFailureCount() + " of " + artefacts.size()
+						+ " artefacts could not be deployed: " + report.getFailedNames());
+			}
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				closeConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+	/*
+	 * Resolve the artefact of every reactor project, skipping projects that cannot be deployed
+	 */
+	private Map<File, MavenProject> collectArtefacts() throws MojoFailureException {
+		Map<File, MavenProject> artefacts = new LinkedHashMap<File, MavenProject>();
+		for (MavenProject project : reactorProjects) {
+			File artefact;
+			try {
+				artefact = resolveArtefactFile(project.getBuild().getDirectory(), project.getBuild()
+						.getFinalName(), project.getPackaging());
+			} catch (MojoFailureException e) {
+				logger.info("Skipping " + project.getId() + " (packaging '" + project.getPackaging() + "')");
+				continue;
+			}
+			if (artefact == null) {
+				throw new MojoFailureException("The artefact of " + project.getId()
+						+ " does not exist, has the project been packaged?");
+			}
+			logger.info("Add " + artefact + " to the list of artefacts");
+			artefacts.put(artefact, project);
+		}
+		return artefacts;
+	}
+
+	/*
+	 * Split the artefacts into waves of independent artefacts, fails on cycles
+	 */
+	private List<List<File>> computeWaves(Map<File, BundleManifest> manifests) throws MojoFailureException {
+		BundleDependencyGraph graph = new BundleDependencyGraph(manifests);
+		for (String unresolved : graph.getUnresolved()) {
+			if (failOnUnresolved) {
+				logger.error("Unresolved dependency: " + unresolved);
+			} else {
+				logger.info("Dependency not provided by the reactor: " + unresolved);
+			}
+		}
+		if (failOnUnresolved && !graph.getUnresolved().isEmpty()) {
+			throw new MojoFailureException(graph.getUnresolved().size()
+					+ " dependencies are not provided by the reactor");
+		}
+		List<List<File>> waves;
+		try {
+			waves = graph.computeWaves();
+		} catch (IllegalStateException e) {
+			throw new MojoFailureException(e.getMessage());
+		}
+		for (int i = 0; i < waves.size(); i++) {
+			logger.info("Wave " + (i + 1) + ": " + waves.get(i));
+		}
+		return waves;
+	}
+
+	private List<List<File>> singleWave(Collection<File> artefacts) {
+		List<List<File>> waves = new ArrayList<List<File>>();
+		waves.add(new ArrayList<File>(artefacts));
+		return waves;
+	}
+
+	/*
+	 * Drop all artefacts which have already been deployed to the server, returns true if nothing is left
+	 */
+	private boolean removeUnchanged(List<List<File>> waves, Map<File, String[]> identities,
+			Map<File, String> hashes) throws IOException {
+		Iterator<List<File>> waveIterator = waves.iterator();
+		while (waveIterator.hasNext()) {
+			List<File> wave = waveIterator.next();
+			Iterator<File> iterator = wave.iterator();
+			while (iterator.hasNext()) {
+				File artefact = iterator.next();
+				hashes.put(artefact, ContentHasher.hash(artefact));
+				if (isAlreadyDeployed(artefact, hashes.get(artefact), identities.get(artefact))) {
+					iterator.remove();
+				}
+			}
+			if (wave.isEmpty()) {
+				waveIterator.remove();
+			}
+		}
+		return waves.isEmpty();
+	}
+
+	/*
+	 * Symbolic name and version Virgo knows an artefact by, the ones of its project serve as a fallback just
+	 * like for the deploy goal of the project
+	 */
+	private String[] getIdentity(File artefact, MavenProject project) {
+		return getBundleIdentity(artefact, project.getGroupId() + "." + project.getArtifactId(),
+				MavenVersionNumberConverter.convertToOsgi(project.getVersion()));
+	}
+
+	/*
+	 * Deploy the given artefacts using a bounded number of concurrent deployments on the shared connection
+	 */
+	private void deployConcurrently(final MBeanServerConnection connection, List<File> artefacts,
+			final Map<File, String[]> identities, final Map<File, String> hashes,
+			final ExecutionReport report) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, artefacts.size())));
+		try {
+			for (final File artefact : artefacts) {
+				executor.execute(new Runnable() {
+					public void run() {
+						long start = System.currentTimeMillis();
+						try {
+							long phase = getTimer().start();
+							deployArtefact(connection, artefact, identities.get(artefact));
+							getTimer().stop("deploy " + artefact.getName(), phase);
+							recordDeployment(artefact, hashes.get(artefact), identities.get(artefact));
+							report.success(artefact.getName(), System.currentTimeMillis() - start);
+						} catch (Exception e) {
+							report.failure(artefact.getName(), System.currentTimeMillis() - start, e);
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the maximum number of concurrent deployments.
+	 * 
+	 * @return
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent deployments.
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns whether or not the artefacts are deployed in dependency order.
+	 * 
+	 * @return
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Define whether or not the artefacts are deployed in dependency order.
+	 * 
+	 * @param ordered
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Returns whether or not dependencies not provided by the reactor fail the goal.
+	 * 
+	 * @return
+	 */
+	public boolean isFailOnUnresolved() {
+		return failOnUnresolved;
+	}
+
+	/**
+	 * Define whether or not dependencies not provided by the reactor fail the goal.
+	 * 
+	 * @param failOnUnresolved
+	 */
+	public void setFailOnUnresolved(boolean failOnUnresolved) {
+		this.failOnUnresolved = failOnUnresolved;
+	}
+
+}
@@ -0,0 +1,67 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.IOException;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.ReactorPlan;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Deploys all bundles of the reactor build as a single plan via the deployer MBean, so Virgo resolves and
+ * commits them in one pass. The plan is written to <code>target/virgo-plan</code> and the bundles are
+ * staged into the user repository of Virgo first, see {@link BasePlanMojo}.
+ * 
+ * @goal deployPlan
+ * @aggregator
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class DeployPlan extends BasePlanMojo {
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
+		try {
+			logger.info("Start deploying the reactor as a plan to Eclipse Virgo");
+			ReactorPlan plan = createPlan();
+			if (plan.getEntries().isEmpty()) {
+				logger.info("No bundles found in the reactor");
+				return;
+			}
+			plan.write(getPlanFile());
+			stage(plan);
+			MBeanServerConnection connection = getConnection();
+			long start = System.currentTimeMillis();
+			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+			Object[] params = { getPlanUri(), isRecoverable() };
+			String[] signature = { "java.lang.String", "boolean" };
+			logger.info("Deploy plan " + plan.getName() + " " + plan.getVersion());
+			// invoke the deploy method of the Deployer MBean
+			invokeOperation(connection, name, "deploy", params, signature);
+			logger.info("Deployed " + plan.getEntries().size() + " artefacts in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				closeConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+}
@@ -1,9 +1,9 @@
 package net.flybyte.virgo.maven.deployer;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -26,19 +26,35 @@ public class Refresh extends BaseMojo {
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
 		try {
 			logger.info("Start refreshing single module");
+			File artefact = getDeployableArtefact();
+			if (isAlreadyDeployed(artefact)) {
+				return;
+			}
+			if (isPickupTransport()) {
+				// the hot deployer treats a modified file as a refresh
+				createPickupDeployer().deploy(artefact, getBundleIdentity(artefact)[0], getPickupTimeout());
+				recordDeployment(artefact);
+				return;
+			}
 			MBeanServerConnection connection = getConnection();
-			String artefactPath = getArtefactFile().getAbsolutePath().replaceAll("\\\\", "/");
+			String artefactUri = getArtefactUri(connection, artefact);
 			// get the Deployer MBean and set up the arguments
-			logger.info("Add module with uri 'file:///" + artefactPath + "' and symbolic name '"
-					+ getSymbolicName() + "' to the argument list");
-			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
-			Object[] params = { "file:///" + artefactPath, getOsgiVersion() };
+			String symbolicName = getBundleIdentity(artefact)[0];
+			logger.info("Add module with uri '" + artefactUri + "' and symbolic name '" + symbolicName
+					+ "' to the argument list");
+			Object[] params = { artefactUri, symbolicName };
 			String[] signature = { "java.lang.String", "java.lang.String" };
 			logger.info("Refresh module");
-			// invoke the undeploy method of the Deployer MBean
-			connection.invoke(name, "refresh", params, signature);
+			// invoke the refresh method of the Deployer MBean and wait for the module to become active again
+			invokeDeployer(connection, "refresh", params, signature, getArtifactType(artefact),
+					getBundleIdentity(artefact), false);
+			recordDeployment(artefact);
 		} catch (Exception e) {
 			throw new MojoFailureException(stackTrace2String(e));
 		} finally {
@@ -46,8 +62,15 @@ public class Refresh extends BaseMojo {
 				closeConnector();
 			} catch (IOException e) {
 				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
 			}
 		}		
 	}
 
+	@Override
+	protected boolean supportsRollout() {
+		return true;
+	}
+
 }
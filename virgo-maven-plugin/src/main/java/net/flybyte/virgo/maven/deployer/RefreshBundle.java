@@ -1,9 +1,9 @@
 package net.flybyte.virgo.maven.deployer;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -25,18 +25,27 @@ public class RefreshBundle extends BaseMojo {
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
 		try {
 			logger.info("Start refreshing bundle");
+			File artefact = getArtefactFile();
+			if (isAlreadyDeployed(artefact)) {
+				return;
+			}
+			String[] identity = getBundleIdentity(artefact);
 			MBeanServerConnection connection = getConnection();
 			// get the Deployer MBean and set up the arguments
-			logger.info("Add bundle with symbolic name '" + getSymbolicName() + "' and version '"
-					+ getOsgiVersion() + "' to the argument list");
-			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
-			Object[] params = { getSymbolicName(), getOsgiVersion() };
+			logger.info("Add bundle with symbolic name '" + identity[0] + "' and version '" + identity[1]
+					+ "' to the argument list");
+			Object[] params = { identity[0], identity[1] };
 			String[] signature = { "java.lang.String", "java.lang.String" };
 			logger.info("Refresh bundle");
-			// invoke the undeploy method of the Deployer MBean
-			connection.invoke(name, "refreshBundle", params, signature);
+			// invoke the refreshBundle method of the Deployer MBean and wait for the bundle to become active again
+			invokeDeployer(connection, "refreshBundle", params, signature, "bundle", identity, false);
+			recordDeployment(artefact);
 		} catch (Exception e) {
 			throw new MojoFailureException(stackTrace2String(e));
 		} finally {
@@ -44,6 +53,8 @@ public class RefreshBundle extends BaseMojo {
 				closeConnector();
 			} catch (IOException e) {
 				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
 			}
 		}
 	}
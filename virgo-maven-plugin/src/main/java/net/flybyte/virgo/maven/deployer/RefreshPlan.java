@@ -0,0 +1,74 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.ReactorPlan;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Brings the plan deployed by the deployPlan goal up to date. Only the bundles which changed since they
+ * have been staged are refreshed within the plan. In case the plan itself changed (e.g. a bundle has been
+ * added to the reactor) or <code>-Dvirgo.force</code> is set the whole plan is deployed again.
+ * 
+ * @goal refreshPlan
+ * @aggregator
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class RefreshPlan extends BasePlanMojo {
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
+		try {
+			logger.info("Start refreshing the reactor plan");
+			ReactorPlan plan = createPlan();
+			boolean planChanged = plan.write(getPlanFile());
+			List<ReactorPlan.Entry> staged = stage(plan);
+			if (!planChanged && staged.isEmpty() && !isForce()) {
+				logger.info("The reactor plan is up to date, nothing to do (use -Dvirgo.force=true to redeploy it)");
+				return;
+			}
+			MBeanServerConnection connection = getConnection();
+			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+			if (planChanged || isForce()) {
+				logger.info("Redeploy plan " + plan.getName() + " " + plan.getVersion());
+				Object[] params = { getPlanUri(), isRecoverable() };
+				String[] signature = { "java.lang.String", "boolean" };
+				invokeOperation(connection, name, "deploy", params, signature);
+				return;
+			}
+			for (ReactorPlan.Entry entry : staged) {
+				logger.info("Refresh " + entry.getName() + " " + entry.getVersion() + " within the plan");
+				Object[] params = { getPlanUri(), entry.getName() };
+				String[] signature = { "java.lang.String", "java.lang.String" };
+				// invoke the refresh method of the Deployer MBean
+				invokeOperation(connection, name, "refresh", params, signature);
+			}
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				closeConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+}
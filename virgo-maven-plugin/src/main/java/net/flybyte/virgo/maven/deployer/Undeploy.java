@@ -1,11 +1,12 @@
 package net.flybyte.virgo.maven.deployer;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 
 import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.ArtifactStateWatcher;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -19,23 +20,38 @@ import org.apache.maven.plugin.MojoFailureException;
  * @requiresProject true
  * 
  * @author Frieder Heugel
- *
+ * 
  */
 public class Undeploy extends BaseMojo {
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
 		try {
 			logger.info("Start undeploying the artefact from Eclipse Virgo");
+			if (isPickupTransport()) {
+				File artefact = getArtefactFile();
+				String fileName = getFinalArtefact() + "." + getArtefactExtension(getPackaging());
+				createPickupDeployer().undeploy(fileName, getBundleIdentity(artefact)[0], getPickupTimeout());
+				forgetDeployment(artefact);
+				return;
+			}
+			String[] identity = getBundleIdentity();
 			MBeanServerConnection connection = getConnection();
 			// get the Deployer MBean and set up the arguments
-			logger.info("Add bundle with symbolic name '" + getSymbolicName() + "' and version '" + getOsgiVersion() + "' to the argument list");
-			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
-			Object[] params  = { getSymbolicName(), getOsgiVersion() };
+			logger.info("Add bundle with symbolic name '" + identity[0] + "' and version '" + identity[1] + "' to the argument list");
+			Object[] params  = { identity[0], identity[1] };
 			String[] signature = { "java.lang.String", "java.lang.String" };
 			logger.info("Undeploy bundle");
-			// invoke the undeploy method of the Deployer MBean
-			connection.invoke(name, "undeploy", params, signature);
+			// invoke the undeploy method of the Deployer MBean and wait for the artefact to disappear
+			invokeDeployer(connection, "undeploy", params, signature,
+					ArtifactStateWatcher.getArtifactType(getArtefactExtension(getPackaging())), identity, true);
+			// make sure the next deployment isn't skipped
+			forgetDeployment(getArtefactFile());
+			forgetDeployment(getExplodedDirectory());
 		}  catch (Exception e) {
 			throw new MojoFailureException(stackTrace2String(e));
 		} finally {
@@ -43,6 +59,8 @@ public class Undeploy extends BaseMojo {
 				closeConnector();
 			} catch (IOException e) {
 				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
 			}
 		}
 	}
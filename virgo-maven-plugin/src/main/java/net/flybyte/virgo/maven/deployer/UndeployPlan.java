@@ -0,0 +1,73 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.IOException;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.ReactorPlan;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Undeploys the plan deployed by the deployPlan goal via the deployer MBean and removes the staged bundles
+ * from the repository again.
+ * 
+ * @goal undeployPlan
+ * @aggregator
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class UndeployPlan extends BasePlanMojo {
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
+		try {
+			logger.info("Start undeploying the reactor plan from Eclipse Virgo");
+			MBeanServerConnection connection = getConnection();
+			ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+			Object[] params = { getPlanName(), getPlanVersion() };
+			String[] signature = { "java.lang.String", "java.lang.String" };
+			logger.info("Undeploy plan " + getPlanName() + " " + getPlanVersion());
+			// invoke the undeploy method of the Deployer MBean
+			invokeOperation(connection, name, "undeploy", params, signature);
+			unstage();
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				closeConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+	/*
+	 * The staged bundles are identified by the artefacts of the reactor, these may have been cleaned already
+	 */
+	private void unstage() throws IOException {
+		ReactorPlan plan;
+		try {
+			plan = createPlan();
+		} catch (MojoFailureException e) {
+			logger.warn("Unable to remove the staged artefacts from " + getRepositoryDirectory() + ": "
+					+ e.getMessage());
+			return;
+		}
+		logger.info("Removed " + plan.unstage(getRepositoryDirectory()) + " artefacts from "
+				+ getRepositoryDirectory());
+	}
+
+}
@@ -0,0 +1,241 @@
+package net.flybyte.virgo.maven.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.BundlePackager;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Watches the build output directory and refreshes the bundle in Eclipse Virgo whenever its content changes.
+ * Bursts of changes (e.g. a full recompile in the IDE) are collected until the output directory has been
+ * quiet for a short period, then the bundle is repackaged and refreshed via the deployer MBean. The goal
+ * keeps a single JMX connection open and runs until it is interrupted (Ctrl+C). In exploded mode
+ * (<code>-Dvirgo.exploded</code>) no jar is built, the exploded bundle directory is synchronised instead.
+ * Check the <a href=
+ * "http://virgo-opengrok.springsource.org/xref/virgo/org.eclipse.virgo.kernel/org.eclipse.virgo.kernel.deployer/src/main/java/org/eclipse/virgo/kernel/deployer/Deployer.java"
+ * >Virgo sourcecode</a> for more information.
+ * 
+ * @goal watch
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class Watch extends BaseMojo {
+	/**
+	 * The time in milliseconds the output directory has to be quiet before the bundle is refreshed. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.quietperiod</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="quietPeriod" default-value="300" expression="${virgo.quietperiod}"
+	 */
+	private int quietPeriod;
+
+	private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		WatchService watcher = null;
+		File watched = isExploded() ? getExplodedSource() : outputDirectory;
+		try {
+			File artefact = null;
+			Manifest manifest = null;
+			if (!isExploded()) {
+				artefact = getArtefactFile();
+				if (artefact == null) {
+					throw new MojoFailureException("The artefact does not exist, package the project first");
+				}
+				if (!artefact.getName().endsWith(".jar")) {
+					throw new MojoFailureException("The watch goal only supports bundles packaged as jar");
+				}
+				manifest = readManifest(artefact);
+			}
+			watcher = FileSystems.getDefault().newWatchService();
+			register(watcher, watched.toPath());
+			MBeanServerConnection connection = getConnection();
+			logger.info("Watching " + watched + " for changes, press Ctrl+C to stop");
+			while (true) {
+				WatchKey key = watcher.take();
+				long detected = System.currentTimeMillis();
+				boolean changed = processEvents(watcher, key);
+				// debounce, wait until the output directory is quiet again
+				while ((key = watcher.poll(quietPeriod, TimeUnit.MILLISECONDS)) != null) {
+					changed |= processEvents(watcher, key);
+				}
+				if (!changed) {
+					continue;
+				}
+				try {
+					long phase = getTimer().start();
+					if (isExploded()) {
+						artefact = getDeployableArtefact();
+					} else {
+						manifest = readManifest(artefact, manifest);
+						BundlePackager.pack(outputDirectory, manifest, artefact);
+					}
+					getTimer().stop(isExploded() ? "sync" : "package", phase);
+					long packaged = System.currentTimeMillis();
+					try {
+						refresh(connection, artefact);
+					} catch (IOException e) {
+						logger.warn("Connection lost (" + e.getMessage() + "), reconnecting");
+						evictConnector();
+						connection = getConnection();
+						refresh(connection, artefact);
+					}
+					recordDeployment(artefact);
+					long refreshed = System.currentTimeMillis();
+					logger.info("Bundle refreshed " + (refreshed - detected) + "ms after the change was detected ("
+							+ quietPeriod + "ms quiet period, " + (packaged - detected - quietPeriod)
+							+ "ms " + (isExploded() ? "sync" : "packaging") + ", " + (refreshed - packaged)
+							+ "ms refresh)");
+					writeMetrics();
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Exception e) {
+					// e.g. a half-written class or a bundle which doesn't resolve yet, the next change may fix it
+					logger.error("Refreshing the bundle failed, waiting for the next change: " + e.getMessage());
+					logger.debug(stackTrace2String(e));
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.info("Stopped watching " + watched);
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				if (watcher != null) {
+					watcher.close();
+				}
+				closeConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+	/*
+	 * Invoke the refresh operation of the Deployer MBean
+	 */
+	private void refresh(MBeanServerConnection connection, File artefact) throws Exception {
+		String artefactPath = artefact.getAbsolutePath().replaceAll("\\\\", "/");
+		ObjectName name = new ObjectName(BaseMojo.MBEAN_DEPLOYER);
+		Object[] params = { "file:///" + artefactPath, getBundleIdentity(artefact)[0] };
+		String[] signature = { "java.lang.String", "java.lang.String" };
+		invokeOperation(connection, name, "refresh", params, signature);
+	}
+
+	/*
+	 * A manifest within the output directory (e.g. generated by Bundlor) takes precedence over the manifest
+	 * of the packaged artefact
+	 */
+	private Manifest readManifest(File artefact) throws IOException, MojoFailureException {
+		Manifest manifest = readManifest(artefact, null);
+		if (manifest == null) {
+			throw new MojoFailureException("Neither " + outputDirectory + " nor " + artefact
+					+ " contain a manifest");
+		}
+		return manifest;
+	}
+
+	private Manifest readManifest(File artefact, Manifest fallback) throws IOException {
+		Manifest manifest = BundlePackager.readManifest(outputDirectory);
+		if (manifest != null) {
+			return manifest;
+		}
+		if (fallback != null) {
+			return fallback;
+		}
+		return BundlePackager.readManifest(artefact);
+	}
+
+	/*
+	 * Handle the events of a watch key, returns true if a file has been changed
+	 */
+	private boolean processEvents(WatchService watcher, WatchKey key) throws IOException {
+		boolean changed = false;
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (Files.isDirectory(path)) {
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					register(watcher, path);
+					changed = true;
+				}
+			} else {
+				logger.debug(event.kind().name() + ": " + path);
+				changed = true;
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return changed;
+	}
+
+	/*
+	 * The watch service is not recursive, register every directory of the tree
+	 */
+	private void register(final WatchService watcher, Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				directories.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the quiet period in ms used to debounce changes.
+	 * 
+	 * @return
+	 */
+	public int getQuietPeriod() {
+		return quietPeriod;
+	}
+
+	/**
+	 * Sets the quiet period in ms used to debounce changes.
+	 * 
+	 * @param quietPeriod
+	 */
+	public void setQuietPeriod(int quietPeriod) {
+		this.quietPeriod = quietPeriod;
+	}
+
+}
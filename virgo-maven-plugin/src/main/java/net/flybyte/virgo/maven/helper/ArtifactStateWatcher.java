@@ -0,0 +1,363 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationBroadcaster;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Follows the state of an artefact through the artefact model MBeans of Virgo (e.g.
+ * <code>org.eclipse.virgo.kernel:type=ArtifactModel,artifact-type=bundle,name=foo,version=1.0.0,region=...</code>
+ * ). The watcher subscribes to the registration notifications of the MBean server and to the attribute change
+ * notifications of the artefact's model MBean, so a goal doesn't have to take the return of a deployer
+ * operation as proof that the artefact has been started. The watcher has to be started before the operation
+ * is invoked, otherwise notifications may be missed.
+ * 
+ * <pre>
+ * ArtifactStateWatcher watcher = new ArtifactStateWatcher(connection, &quot;bundle&quot;, name, version, logger);
+ * watcher.start();
+ * try {
+ * 	connection.invoke(...);
+ * 	watcher.awaitActive(timeout);
+ * } finally {
+ * 	watcher.close();
+ * }
+ * </pre>
+ * 
+ * @author Frieder Heugel
+ */
+public class ArtifactStateWatcher implements NotificationListener {
+	/*
+	 * States of the artefact model MBeans, Virgo reports the name of the enum
+	 */
+	public static final String ACTIVE = "ACTIVE";
+	public static final String FAILED = "FAILED";
+	public static final String STARTING = "STARTING";
+	public static final String UNINSTALLED = "UNINSTALLED";
+	private static final String MODEL = "org.eclipse.virgo.kernel:type=ArtifactModel,";
+	/**
+	 * The state is re-read at least this often in case the model MBeans of a Virgo version don't emit
+	 * attribute change notifications
+	 */
+	private static final long RECHECK_INTERVAL = 1000;
+	private final MBeanServerConnection connection;
+	private final ObjectName pattern;
+	private final String description;
+	private final Log logger;
+	private final long callTimeout;
+	private final Set<ObjectName> subscribed = new HashSet<ObjectName>();
+	private boolean changed;
+	private boolean started;
+
+	/**
+	 * Creates a new watcher for the given artefact.
+	 * 
+	 * @param connection
+	 * @param type
+	 *            The artefact type as used by Virgo, e.g. <code>bundle</code>, <code>par</code> or
+	 *            <code>plan</code>
+	 * @param symbolicName
+	 * @param version
+	 * @param logger
+	 * @throws JMException
+	 *             In case the identity of the artefact cannot be part of an object name
+	 */
+	public ArtifactStateWatcher(MBeanServerConnection connection, String type, String symbolicName,
+			String version, Log logger) throws JMException {
+		this(connection, type, symbolicName, version, logger, 0);
+	}
+
+	/**
+	 * Creates a new watcher for the given artefact, every remote call of the watcher is bounded by the given
+	 * timeout.
+	 * 
+	 * @param connection
+	 * @param type
+	 *            The artefact type as used by Virgo, e.g. <code>bundle</code>, <code>par</code> or
+	 *            <code>plan</code>
+	 * @param symbolicName
+	 * @param version
+	 * @param logger
+	 * @param callTimeout
+	 *            The maximum time in ms a single remote call may take, a value of 0 or below waits forever
+	 * @throws JMException
+	 *             In case the identity of the artefact cannot be part of an object name
+	 */
+	public ArtifactStateWatcher(MBeanServerConnection connection, String type, String symbolicName,
+			String version, Log logger, long callTimeout) throws JMException {
+		this.connection = connection;
+		this.callTimeout = callTimeout;
+		this.pattern = new ObjectName(MODEL + "artifact-type=" + type + ",name=" + symbolicName + ",version="
+				+ version + ",*");
+		this.description = type + " " + symbolicName + " " + version;
+		this.logger = logger;
+	}
+
+	/**
+	 * Returns the artefact type Virgo uses for artefacts with the given file extension.
+	 * 
+	 * @param extension
+	 * @return
+	 */
+	public static String getArtifactType(String extension) {
+		if ("par".equals(extension) || "plan".equals(extension)) {
+			return extension;
+		}
+		return "bundle";
+	}
+
+	/**
+	 * Subscribes to the registration notifications of the MBean server and the notifications of the
+	 * artefact's model MBean in case it is already registered.
+	 * 
+	 * @throws IOException
+	 * @throws JMException
+	 * @throws TimeoutException
+	 *             In case the server didn't answer in time
+	 */
+	public void start() throws IOException, JMException, TimeoutException {
+		final NotificationListener listener = this;
+		call(new Callable<Object>() {
+			public Object call() throws Exception {
+				connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+				return null;
+			}
+		}, "Subscribing to the MBean server delegate");
+		started = true;
+		subscribe();
+	}
+
+	/**
+	 * Waits until the artefact has been started.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait in ms
+	 * @return The final state, <code>null</code> in case the server doesn't expose artefact model MBeans
+	 * @throws TimeoutException
+	 *             In case the artefact didn't reach a final state in time
+	 * @throws IllegalStateException
+	 *             In case starting the artefact failed
+	 */
+	public String awaitActive(long timeout) throws IOException, JMException, InterruptedException,
+			TimeoutException {
+		long deadline = System.currentTimeMillis() + timeout;
+		String previous = null;
+		while (true) {
+			String state = readState();
+			if (state == null && !hasModel()) {
+				logger.info("The server doesn't expose artefact model MBeans, cannot confirm the state of "
+						+ description);
+				return null;
+			}
+			if (state != null && !state.equals(previous)) {
+				logger.debug("State of " + description + ": " + state);
+			}
+			if (ACTIVE.equals(state)) {
+				return state;
+			}
+			if (FAILED.equals(state) || UNINSTALLED.equals(state)
+					|| (STARTING.equals(previous) && state != null && !STARTING.equals(state))) {
+				throw new IllegalStateException("Starting " + description + " failed, its state is " + state);
+			}
+			if (state == null && previous != null) {
+				throw new IllegalStateException(description + " has been removed while waiting for it to start");
+			}
+			previous = state;
+			awaitChange(deadline, "start", state);
+		}
+	}
+
+	/**
+	 * Waits until the model MBean of the artefact has been removed.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait in ms
+	 * @throws TimeoutException
+	 *             In case the artefact is still present once the timeout expired
+	 */
+	public void awaitRemoved(long timeout) throws IOException, JMException, InterruptedException,
+			TimeoutException {
+		long deadline = System.currentTimeMillis() + timeout;
+		String state;
+		while ((state = readState()) != null) {
+			awaitChange(deadline, "be removed", state);
+		}
+	}
+
+	/**
+	 * Removes all listeners, has to be called once the watcher isn't needed anymore since connections may be
+	 * reused by later goals.
+	 */
+	public void close() {
+		if (!started) {
+			return;
+		}
+		started = false;
+		try {
+			removeListener(MBeanServerDelegate.DELEGATE_NAME);
+		} catch (Exception e) {
+			logger.debug("Could not remove the listener from the MBean server delegate: " + e.getMessage());
+		}
+		Set<ObjectName> names;
+		synchronized (this) {
+			names = new HashSet<ObjectName>(subscribed);
+			subscribed.clear();
+		}
+		for (ObjectName name : names) {
+			try {
+				removeListener(name);
+			} catch (Exception e) {
+				// the MBean is usually gone or no broadcaster at all
+			}
+		}
+	}
+
+	public void handleNotification(Notification notification, Object handback) {
+		if (notification instanceof MBeanServerNotification) {
+			ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+			if (!pattern.apply(name)) {
+				return;
+			}
+			if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+				synchronized (this) {
+					// the listener is gone with the MBean, a redeployment registers a new one under the same name
+					subscribed.remove(name);
+				}
+			}
+		} else if (!(notification instanceof AttributeChangeNotification)) {
+			return;
+		}
+		synchronized (this) {
+			changed = true;
+			notifyAll();
+		}
+	}
+
+	/*
+	 * Blocks until a notification concerning the artefact arrives, at most until the recheck interval is over
+	 */
+	private void awaitChange(long deadline, String goal, String state) throws InterruptedException,
+			TimeoutException {
+		synchronized (this) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (!changed && remaining <= 0) {
+				throw new TimeoutException(description + " didn't " + goal + " in time, its state is " + state);
+			}
+			if (!changed) {
+				wait(Math.min(remaining, RECHECK_INTERVAL));
+			}
+			changed = false;
+		}
+	}
+
+	/*
+	 * Reads the state of the first matching model MBean, subscribing to MBeans registered in the meantime
+	 */
+	private String readState() throws IOException, JMException, TimeoutException {
+		Set<ObjectName> names = subscribe();
+		String result = null;
+		for (final ObjectName name : names) {
+			String state;
+			try {
+				state = String.valueOf(call(new Callable<Object>() {
+					public Object call() throws Exception {
+						return connection.getAttribute(name, "State");
+					}
+				}, "Reading the state of " + name));
+			} catch (InstanceNotFoundException e) {
+				// unregistered in the meantime
+				continue;
+			}
+			// the artefact may be known in more than one region
+			if (result == null || ACTIVE.equals(state)) {
+				result = state;
+			}
+		}
+		return result;
+	}
+
+	private Set<ObjectName> subscribe() throws IOException, JMException, TimeoutException {
+		Set<ObjectName> names = queryNames(pattern);
+		final NotificationListener listener = this;
+		for (final ObjectName name : names) {
+			synchronized (this) {
+				if (!subscribed.add(name)) {
+					continue;
+				}
+			}
+			try {
+				call(new Callable<Object>() {
+					public Object call() throws Exception {
+						if (connection.isInstanceOf(name, NotificationBroadcaster.class.getName())) {
+							connection.addNotificationListener(name, listener, null, null);
+						}
+						return null;
+					}
+				}, "Subscribing to " + name);
+			} catch (InstanceNotFoundException e) {
+				// unregistered in the meantime, the delegate notification triggers another check
+			}
+		}
+		return names;
+	}
+
+	private boolean hasModel() throws IOException, JMException, TimeoutException {
+		return !queryNames(new ObjectName(MODEL + "*")).isEmpty();
+	}
+
+	private Set<ObjectName> queryNames(final ObjectName name) throws IOException, JMException, TimeoutException {
+		return call(new Callable<Set<ObjectName>>() {
+			public Set<ObjectName> call() throws Exception {
+				return connection.queryNames(name, null);
+			}
+		}, "Querying " + name);
+	}
+
+	private void removeListener(final ObjectName name) throws IOException, JMException, TimeoutException {
+		final NotificationListener listener = this;
+		call(new Callable<Object>() {
+			public Object call() throws Exception {
+				connection.removeNotificationListener(name, listener);
+				return null;
+			}
+		}, "Removing the listener from " + name);
+	}
+
+	/*
+	 * Run a remote call with the call timeout, rethrowing the exceptions of the connection as they are
+	 */
+	private <T> T call(Callable<T> call, String description) throws IOException, JMException, TimeoutException {
+		try {
+			return Deadlines.call(call, callTimeout, description);
+		} catch (IOException e) {
+			throw e;
+		} catch (JMException e) {
+			throw e;
+		} catch (TimeoutException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(description + " has been interrupted");
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a dependency graph for a set of artefacts based on their <code>Import-Package</code>,
+ * <code>Export-Package</code> and <code>Require-Bundle</code> headers. The graph is used to split the
+ * artefacts into waves: every artefact of a wave only depends on artefacts of earlier waves, so all
+ * artefacts of one wave can be deployed in parallel. Artefacts without a manifest (e.g. plans) are
+ * expected to reference the other artefacts and are therefore put into the last wave.
+ * 
+ * @author Frieder Heugel
+ */
+public class BundleDependencyGraph {
+	private final Map<File, Set<File>> dependencies = new LinkedHashMap<File, Set<File>>();
+	private final List<String> unresolved = new ArrayList<String>();
+
+	/**
+	 * Creates the dependency graph for the given artefacts.
+	 * 
+	 * @param manifests
+	 *            The artefacts mapped to their manifest, the manifest may be <code>null</code>
+	 */
+	public BundleDependencyGraph(Map<File, BundleManifest> manifests) {
+		Map<String, Set<File>> exporters = new HashMap<String, Set<File>>();
+		Map<String, File> bundles = new HashMap<String, File>();
+		for (Map.Entry<File, BundleManifest> entry : manifests.entrySet()) {
+			dependencies.put(entry.getKey(), new LinkedHashSet<File>());
+			BundleManifest manifest = entry.getValue();
+			if (manifest == null) {
+				continue;
+			}
+			if (manifest.getSymbolicName() != null) {
+				bundles.put(manifest.getSymbolicName(), entry.getKey());
+			}
+			for (String packageName : manifest.getExportedPackages()) {
+				Set<File> files = exporters.get(packageName);
+				if (files == null) {
+					files = new LinkedHashSet<File>();
+					exporters.put(packageName, files);
+				}
+				files.add(entry.getKey());
+			}
+		}
+		for (Map.Entry<File, BundleManifest> entry : manifests.entrySet()) {
+			File artefact = entry.getKey();
+			BundleManifest manifest = entry.getValue();
+			Set<File> required = dependencies.get(artefact);
+			if (manifest == null) {
+				// plans and other descriptors refer to the bundles, deploy them last
+				for (Map.Entry<File, BundleManifest> other : manifests.entrySet()) {
+					if (other.getValue() != null) {
+						required.add(other.getKey());
+					}
+				}
+				continue;
+			}
+			for (Map.Entry<String, Boolean> imported : manifest.getImportedPackages().entrySet()) {
+				if (manifest.getExportedPackages().contains(imported.getKey())) {
+					// substitutable export, the bundle is able to wire to itself
+					continue;
+				}
+				Set<File> files = exporters.get(imported.getKey());
+				if (files != null) {
+					required.addAll(files);
+				} else if (!imported.getValue()) {
+					unresolved.add(artefact.getName() + " imports package " + imported.getKey());
+				}
+			}
+			for (Map.Entry<String, Boolean> bundle : manifest.getRequiredBundles().entrySet()) {
+				File file = bundles.get(bundle.getKey());
+				if (file != null) {
+					required.add(file);
+				} else if (!bundle.getValue()) {
+					unresolved.add(artefact.getName() + " requires bundle " + bundle.getKey());
+				}
+			}
+			required.remove(artefact);
+		}
+	}
+
+	/**
+	 * Returns the imports and bundle requirements that cannot be satisfied by any of the artefacts. These
+	 * may still be satisfied by bundles already installed in Virgo.
+	 * 
+	 * @return
+	 */
+	public List<String> getUnresolved() {
+		return unresolved;
+	}
+
+	/**
+	 * Returns the artefacts the given artefact depends on.
+	 * 
+	 * @param artefact
+	 * @return
+	 */
+	public Set<File> getDependencies(File artefact) {
+		return dependencies.get(artefact);
+	}
+
+	/**
+	 * Splits the artefacts into waves using a topological sort. The artefacts of a wave only depend on
+	 * artefacts of previous waves.
+	 * 
+	 * @return The waves in deployment order
+	 * @throws IllegalStateException
+	 *             In case the artefacts contain a dependency cycle
+	 */
+	public List<List<File>> computeWaves() {
+		List<List<File>> waves = new ArrayList<List<File>>();
+		Set<File> done = new LinkedHashSet<File>();
+		while (done.size() < dependencies.size()) {
+			List<File> wave = new ArrayList<File>();
+			for (Map.Entry<File, Set<File>> entry : dependencies.entrySet()) {
+				if (!done.contains(entry.getKey()) && done.containsAll(entry.getValue())) {
+					wave.add(entry.getKey());
+				}
+			}
+			if (wave.isEmpty()) {
+				throw new IllegalStateException("Dependency cycle detected: " + describeCycle(done));
+			}
+			done.addAll(wave);
+			waves.add(wave);
+		}
+		return waves;
+	}
+
+	/*
+	 * Follow the dependencies of the remaining artefacts until an artefact is visited twice
+	 */
+	private String describeCycle(Set<File> done) {
+		File current = null;
+		for (File artefact : dependencies.keySet()) {
+			if (!done.contains(artefact)) {
+				current = artefact;
+				break;
+			}
+		}
+		List<File> path = new ArrayList<File>();
+		while (current != null && !path.contains(current)) {
+			path.add(current);
+			File next = null;
+			for (File dependency : dependencies.get(current)) {
+				if (!done.contains(dependency)) {
+					next = dependency;
+					break;
+				}
+			}
+			current = next;
+		}
+		StringBuilder cycle = new StringBuilder();
+		for (File artefact : path.subList(path.indexOf(current), path.size())) {
+			cycle.append(artefact.getName()).append(" -> ");
+		}
+		return cycle.append(current.getName()).toString();
+	}
+
+}
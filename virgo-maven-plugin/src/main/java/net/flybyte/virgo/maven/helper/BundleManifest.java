@@ -0,0 +1,300 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * Provides access to the OSGi relevant headers of an artefact's manifest. Only the parts needed by the
+ * plugin are evaluated: the bundle identity and the package and bundle dependencies.
+ * 
+ * @author Frieder Heugel
+ */
+public class BundleManifest {
+	private static final int CACHE_SIZE = 256;
+	private static final Map<String, BundleManifest> CACHE = new LinkedHashMap<String, BundleManifest>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BundleManifest> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private final String symbolicName;
+	private final String version;
+	private final Set<String> exportedPackages = new LinkedHashSet<String>();
+	private final Map<String, Boolean> importedPackages = new HashMap<String, Boolean>();
+	private final Map<String, Boolean> requiredBundles = new HashMap<String, Boolean>();
+
+	/**
+	 * Creates a new bundle manifest from the given manifest object.
+	 * 
+	 * @param manifest
+	 */
+	public BundleManifest(Manifest manifest) {
+		Attributes attributes = manifest.getMainAttributes();
+		String name = attributes.getValue("Bundle-SymbolicName");
+		if (name == null) {
+			// PAR files use their own set of headers
+			name = attributes.getValue("Application-SymbolicName");
+		}
+		symbolicName = parseSymbolicName(name);
+		String bundleVersion = attributes.getValue("Bundle-Version");
+		if (bundleVersion == null) {
+			bundleVersion = attributes.getValue("Application-Version");
+		}
+		version = bundleVersion != null ? bundleVersion.trim() : null;
+		for (Clause clause : parseClauses(attributes.getValue("Export-Package"))) {
+			exportedPackages.addAll(clause.getNames());
+		}
+		for (Clause clause : parseClauses(attributes.getValue("Import-Package"))) {
+			for (String packageName : clause.getNames()) {
+				importedPackages.put(packageName, clause.isOptional());
+			}
+		}
+		for (Clause clause : parseClauses(attributes.getValue("Require-Bundle"))) {
+			for (String bundleName : clause.getNames()) {
+				requiredBundles.put(bundleName, clause.isOptional());
+			}
+		}
+	}
+
+	/**
+	 * Reads the manifest of the given artefact, which can either be an archive or an exploded directory.
+	 * Archives are read via {@link ManifestReader}, so only the manifest entry is inflated.
+	 * 
+	 * @param artefact
+	 * @return The manifest or <code>null</code> in case the artefact doesn't contain a manifest
+	 * @throws IOException
+	 */
+	public static BundleManifest read(File artefact) throws IOException {
+		if (artefact.isDirectory()) {
+			File manifestFile = new File(artefact, JarFile.MANIFEST_NAME);
+			if (!manifestFile.isFile()) {
+				return null;
+			}
+			InputStream in = new FileInputStream(manifestFile);
+			try {
+				return new BundleManifest(new Manifest(in));
+			} finally {
+				in.close();
+			}
+		}
+		if (artefact.getName().endsWith(".plan")) {
+			return null;
+		}
+		try {
+			Manifest manifest = ManifestReader.read(artefact);
+			return manifest != null ? new BundleManifest(manifest) : null;
+		} catch (ZipException e) {
+			// leave unusual archives to the JDK
+		}
+		JarFile jar = new JarFile(artefact, false);
+		try {
+			Manifest manifest = jar.getManifest();
+			return manifest != null ? new BundleManifest(manifest) : null;
+		} finally {
+			jar.close();
+		}
+	}
+
+	/**
+	 * Reads the manifest of the given artefact like {@link #read(File)}. The result is cached as long as the
+	 * size and modification time of an archive don't change, so repeated lookups of large WARs or PARs are
+	 * free. Exploded directories are not cached.
+	 * 
+	 * @param artefact
+	 * @return The manifest or <code>null</code> in case the artefact doesn't contain a manifest
+	 * @throws IOException
+	 */
+	public static BundleManifest readCached(File artefact) throws IOException {
+		if (artefact.isDirectory()) {
+			return read(artefact);
+		}
+		String key = artefact.getAbsolutePath() + "|" + artefact.length() + "|" + artefact.lastModified();
+		synchronized (CACHE) {
+			if (CACHE.containsKey(key)) {
+				return CACHE.get(key);
+			}
+		}
+		BundleManifest manifest = read(artefact);
+		synchronized (CACHE) {
+			CACHE.put(key, manifest);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Splits an OSGi manifest header into its clauses. Quoted strings (e.g. version ranges) are respected.
+	 * 
+	 * @param header
+	 * @return The clauses of the header, an empty list if the header is <code>null</code>
+	 */
+	public static List<Clause> parseClauses(String header) {
+		List<Clause> clauses = new ArrayList<Clause>();
+		if (header == null || header.trim().length() == 0) {
+			return clauses;
+		}
+		for (String clause : split(header, ',')) {
+			if (clause.trim().length() > 0) {
+				clauses.add(new Clause(split(clause, ';')));
+			}
+		}
+		return clauses;
+	}
+
+	/*
+	 * The name of the first clause, null for a missing or blank header or one which only carries directives
+	 */
+	private static String parseSymbolicName(String header) {
+		List<Clause> clauses = parseClauses(header);
+		if (clauses.isEmpty()) {
+			return null;
+		}
+		for (String name : clauses.get(0).getNames()) {
+			if (name.trim().length() > 0) {
+				return name.trim();
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Split the value at the given separator unless the separator is part of a quoted string
+	 */
+	private static List<String> split(String value, char separator) {
+		List<String> parts = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			}
+			if (c == separator && !quoted) {
+				parts.add(current.toString().trim());
+				current.setLength(0);
+			} else {
+				current.append(c);
+			}
+		}
+		parts.add(current.toString().trim());
+		return parts;
+	}
+
+	/**
+	 * Returns the symbolic name of the bundle.
+	 * 
+	 * @return The symbolic name or <code>null</code> in case the manifest doesn't declare one, a blank header
+	 *         or a header carrying only directives doesn't count
+	 */
+	public String getSymbolicName() {
+		return symbolicName;
+	}
+
+	/**
+	 * Returns the version of the bundle.
+	 * 
+	 * @return
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the names of all exported packages.
+	 * 
+	 * @return
+	 */
+	public Set<String> getExportedPackages() {
+		return Collections.unmodifiableSet(exportedPackages);
+	}
+
+	/**
+	 * Returns the names of all imported packages mapped to whether or not the import is optional.
+	 * 
+	 * @return
+	 */
+	public Map<String, Boolean> getImportedPackages() {
+		return Collections.unmodifiableMap(importedPackages);
+	}
+
+	/**
+	 * Returns the symbolic names of all required bundles mapped to whether or not the requirement is
+	 * optional.
+	 * 
+	 * @return
+	 */
+	public Map<String, Boolean> getRequiredBundles() {
+		return Collections.unmodifiableMap(requiredBundles);
+	}
+
+	/**
+	 * A single clause of a manifest header, e.g. <code>org.example;version="[1.0,2.0)"</code>.
+	 */
+	public static class Clause {
+		private final List<String> names = new ArrayList<String>();
+		private final Map<String, String> parameters = new HashMap<String, String>();
+
+		private Clause(List<String> parts) {
+			for (String part : parts) {
+				int index = part.indexOf('=');
+				if (index < 0) {
+					names.add(part);
+				} else {
+					// directives (":=") and attributes ("=") share one map, directives keep their colon
+					String key = part.substring(0, index).trim();
+					String value = part.substring(index + 1).trim();
+					if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 1) {
+						value = value.substring(1, value.length() - 1);
+					}
+					parameters.put(key, value);
+				}
+			}
+		}
+
+		/**
+		 * Returns the package or bundle names of this clause.
+		 * 
+		 * @return
+		 */
+		public List<String> getNames() {
+			return names;
+		}
+
+		/**
+		 * Returns the value of an attribute or directive (directive keys end with a colon, e.g.
+		 * <code>resolution:</code>).
+		 * 
+		 * @param key
+		 * @return
+		 */
+		public String getParameter(String key) {
+			return parameters.get(key);
+		}
+
+		/**
+		 * Returns whether or not this clause is marked as optional.
+		 * 
+		 * @return
+		 */
+		public boolean isOptional() {
+			return "optional".equals(getParameter("resolution:"));
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+
+/**
+ * Packages a directory (usually <code>target/classes</code>) into a bundle jar. The jar is written with the
+ * fastest compression level to a temporary file first and then moved over the existing artefact, so Virgo
+ * never reads a partially written jar.
+ * 
+ * @author Frieder Heugel
+ */
+public final class BundlePackager {
+
+	private BundlePackager() {
+	}
+
+	/**
+	 * Packages the content of the given directory into the target jar.
+	 * 
+	 * @param directory
+	 * @param manifest
+	 *            The manifest of the bundle, any <code>META-INF/MANIFEST.MF</code> within the directory is
+	 *            ignored
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void pack(File directory, Manifest manifest, File target) throws IOException {
+		File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(temp), manifest);
+		try {
+			out.setLevel(Deflater.BEST_SPEED);
+			addDirectory(out, directory, "");
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads the manifest of the given bundle directory or jar.
+	 * 
+	 * @param artefact
+	 * @return The manifest or <code>null</code> if there is none
+	 * @throws IOException
+	 */
+	public static Manifest readManifest(File artefact) throws IOException {
+		if (artefact == null || !artefact.exists()) {
+			return null;
+		}
+		if (artefact.isDirectory()) {
+			File file = new File(artefact, JarFile.MANIFEST_NAME);
+			if (!file.isFile()) {
+				return null;
+			}
+			InputStream in = new FileInputStream(file);
+			try {
+				return new Manifest(in);
+			} finally {
+				in.close();
+			}
+		}
+		JarFile jar = new JarFile(artefact, false);
+		try {
+			return jar.getManifest();
+		} finally {
+			jar.close();
+		}
+	}
+
+	private static void addDirectory(JarOutputStream out, File directory, String prefix) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		byte[] buffer = new byte[64 * 1024];
+		for (File file : files) {
+			String name = prefix + file.getName();
+			if (file.isDirectory()) {
+				if (!"META-INF".equals(name)) {
+					// the manifest has been written as the first entry, keep it that way
+					out.putNextEntry(new JarEntry(name + "/"));
+					out.closeEntry();
+				}
+				addDirectory(out, file, name + "/");
+			} else if (!JarFile.MANIFEST_NAME.equals(name)) {
+				JarEntry entry = new JarEntry(name);
+				entry.setTime(file.lastModified());
+				out.putNextEntry(entry);
+				InputStream in = new FileInputStream(file);
+				try {
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+				out.closeEntry();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A dynamic class data sharing archive (see JEP 350) for a Virgo instance. The JVM records the classes
+ * loaded by the instance when it exits after a start with <code>-XX:ArchiveClassesAtExit</code>, later
+ * starts with <code>-XX:SharedArchiveFile</code> map these classes from the archive instead of loading,
+ * verifying and linking them again. An archive is only valid for the JVM that created it and for the exact
+ * class path, therefore archives are kept in a cache directory keyed by the output of
+ * <code>java -version</code>, the location of the instance and a fingerprint of its <code>lib</code> and
+ * <code>plugins</code> directories. The startup durations measured with and without the archive are stored
+ * next to it.
+ * 
+ * @author Frieder Heugel
+ */
+public class CdsArchive {
+	/**
+	 * The first Java version supporting dynamic archives
+	 */
+	public static final int MIN_JAVA_VERSION = 13;
+	private static final Pattern VERSION_PATTERN = Pattern.compile("version \"(1\\.)?(\\d+)");
+	private final File cacheDir;
+	private final File virgoRoot;
+	private final String javaVersion;
+	private final int majorVersion;
+	private final String key;
+
+	private CdsArchive(File cacheDir, File virgoRoot, String javaVersion, String key) {
+		this.cacheDir = cacheDir;
+		this.virgoRoot = virgoRoot;
+		this.javaVersion = javaVersion;
+		this.key = key;
+		Matcher matcher = VERSION_PATTERN.matcher(javaVersion);
+		this.majorVersion = matcher.find() ? Integer.parseInt(matcher.group(2)) : -1;
+	}
+
+	/**
+	 * Determines the archive of the given instance.
+	 * 
+	 * @param cacheDir
+	 *            The directory the archives are kept in
+	 * @param virgoRoot
+	 *            The root directory of the instance
+	 * @param java
+	 *            The Java executable the instance is started with
+	 * @return
+	 * @throws IOException
+	 *             In case the Java version cannot be determined
+	 */
+	public static CdsArchive forInstance(File cacheDir, File virgoRoot, String java) throws IOException {
+		String javaVersion = getJavaVersion(java);
+		MessageDigest digest = ContentHasher.newDigest();
+		update(digest, javaVersion);
+		update(digest, virgoRoot.getCanonicalPath());
+		update(digest, ContentHasher.hashTree(new File(virgoRoot, "lib")));
+		update(digest, ContentHasher.hashTree(new File(virgoRoot, "plugins")));
+		String key = ContentHasher.toHex(digest.digest()).substring(0, 16);
+		return new CdsArchive(cacheDir, virgoRoot, javaVersion, key);
+	}
+
+	/**
+	 * Returns the Java executable Virgo's start scripts use, i.e. the one of <code>JAVA_HOME</code> or the
+	 * one on the path.
+	 * 
+	 * @return
+	 */
+	public static String getJavaExecutable() {
+		String javaHome = System.getenv("JAVA_HOME");
+		if (javaHome != null) {
+			File java = new File(javaHome, "bin/java");
+			if (java.isFile()) {
+				return java.getAbsolutePath();
+			}
+			java = new File(javaHome, "bin/java.exe");
+			if (java.isFile()) {
+				return java.getAbsolutePath();
+			}
+		}
+		return "java";
+	}
+
+	/*
+	 * The complete version output, it identifies vendor and build as well
+	 */
+	private static String getJavaVersion(String java) throws IOException {
+		Process process = new ProcessBuilder(java, "-version").redirectErrorStream(true).start();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = process.getInputStream();
+		try {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		try {
+			if (process.waitFor() != 0) {
+				throw new IOException(java + " -version failed: " + out.toString("UTF-8"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while determining the Java version", e);
+		}
+		return out.toString("UTF-8").trim();
+	}
+
+	private static void update(MessageDigest digest, String value) throws IOException {
+		digest.update(value.getBytes("UTF-8"));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Returns whether or not the JVM supports dynamic archives.
+	 * 
+	 * @return
+	 */
+	public boolean isSupported() {
+		return majorVersion >= MIN_JAVA_VERSION;
+	}
+
+	/**
+	 * Returns whether or not an archive matching the instance exists.
+	 * 
+	 * @return
+	 */
+	public boolean exists() {
+		return getFile().isFile() && getFile().length() > 0;
+	}
+
+	/**
+	 * Returns the archive file.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return new File(cacheDir, "virgo-" + key + ".jsa");
+	}
+
+	/**
+	 * Returns the JVM option recording the archive when the JVM exits.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static String getDumpOption(File file) {
+		return "-XX:ArchiveClassesAtExit=" + file.getAbsolutePath();
+	}
+
+	/**
+	 * Returns the JVM option using the archive.
+	 * 
+	 * @return
+	 */
+	public String getUseOption() {
+		return "-XX:SharedArchiveFile=" + getFile().getAbsolutePath();
+	}
+
+	/**
+	 * Removes all archives recorded for the same instance with a different key, e.g. before the JVM or the
+	 * bundles of the instance changed.
+	 * 
+	 * @return The number of removed archives
+	 */
+	public int removeStale() throws IOException {
+		File[] files = cacheDir.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		String root = virgoRoot.getCanonicalPath();
+		int removed = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.startsWith("virgo-") || !name.endsWith(".properties") || name.contains(key)) {
+				continue;
+			}
+			Properties properties = load(file);
+			if (root.equals(properties.getProperty("root"))) {
+				String base = name.substring(0, name.length() - ".properties".length());
+				new File(cacheDir, base + ".jsa").delete();
+				file.delete();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Stores a measured startup duration.
+	 * 
+	 * @param withArchive
+	 * @param duration
+	 *            The duration in ms
+	 * @throws IOException
+	 */
+	public void recordStartup(boolean withArchive, long duration) throws IOException {
+		Properties properties = load(getPropertiesFile());
+		properties.setProperty("root", virgoRoot.getCanonicalPath());
+		properties.setProperty("java", javaVersion.split("\\r?\\n")[0]);
+		properties.setProperty(withArchive ? "startup.with" : "startup.without", String.valueOf(duration));
+		cacheDir.mkdirs();
+		OutputStream out = new FileOutputStream(getPropertiesFile());
+		try {
+			properties.store(out, "Startup durations of " + virgoRoot);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns a stored startup duration.
+	 * 
+	 * @param withArchive
+	 * @return The duration in ms, -1 in case none has been recorded
+	 */
+	public long getStartup(boolean withArchive) {
+		String value;
+		try {
+			value = load(getPropertiesFile()).getProperty(withArchive ? "startup.with" : "startup.without");
+		} catch (IOException e) {
+			return -1;
+		}
+		return value == null ? -1 : Long.parseLong(value);
+	}
+
+	private File getPropertiesFile() {
+		return new File(cacheDir, "virgo-" + key + ".properties");
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Returns the key of the archive.
+	 * 
+	 * @return
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the major version of the JVM, -1 if unknown.
+	 * 
+	 * @return
+	 */
+	public int getMajorVersion() {
+		return majorVersion;
+	}
+
+}
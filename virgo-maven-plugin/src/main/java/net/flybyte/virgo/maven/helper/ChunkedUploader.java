@@ -0,0 +1,283 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+/**
+ * Transfers an artefact to a remote Virgo instance through the staging MBean of the companion agent, so the
+ * server doesn't have to share a file system with the build. The artefact is split into chunks using
+ * content-defined chunking: chunk boundaries depend on the content only, so rebuilding a jar with a single
+ * changed class only changes the chunks around that class instead of all chunks behind it. The server is
+ * asked which chunks (by SHA-256 hash) it doesn't have yet and only those are sent, deflated if that makes
+ * them smaller. Since the server keeps all chunks it has received, an interrupted transfer is resumed by
+ * simply transferring the artefact again.
+ * <p>
+ * The staging MBean (see {@link #MBEAN_STAGING}) has to provide the following operations:
+ * <ul>
+ * <li><code>String[] findMissingChunks(String[] hashes)</code> - returns the hashes of the chunks unknown
+ * to the server</li>
+ * <li><code>void putChunk(String hash, byte[] data, boolean compressed)</code> - stores a chunk after
+ * verifying its hash</li>
+ * <li><code>String assemble(String fileName, String[] hashes, String fileHash)</code> - concatenates the
+ * chunks into a staged file, verifies its hash and returns the URI to hand to the deployer MBean</li>
+ * </ul>
+ * 
+ * @author Frieder Heugel
+ */
+public class ChunkedUploader {
+	/**
+	 * The identifier of the staging MBean provided by the companion agent
+	 */
+	public static final String MBEAN_STAGING = "net.flybyte.virgo:type=ArtefactStaging";
+	private static final int MIN_CHUNK = 16 * 1024;
+	private static final int MAX_CHUNK = 256 * 1024;
+	/**
+	 * 16 bits of the rolling hash have to be zero for a boundary, i.e. chunks are about 64k on average
+	 */
+	private static final long BOUNDARY_MASK = 0xFFFF000000000000L;
+	private static final long[] GEAR = new long[256];
+
+	static {
+		// the table has to be the same for every build, otherwise no chunk would ever be reused
+		Random random = new Random(0x5649524730L);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = random.nextLong();
+		}
+	}
+
+	private final MBeanServerConnection connection;
+	private final ObjectName name;
+	private final long timeout;
+	private int chunks;
+	private int sentChunks;
+	private long sentBytes;
+
+	/**
+	 * Creates a new uploader using the given connection.
+	 * 
+	 * @param connection
+	 * @throws IOException
+	 *             In case the name of the staging MBean is invalid
+	 */
+	public ChunkedUploader(MBeanServerConnection connection) throws IOException {
+		this(connection, 0);
+	}
+
+	/**
+	 * Creates a new uploader using the given connection, every invocation of the staging MBean is bounded by
+	 * the given timeout.
+	 * 
+	 * @param connection
+	 * @param timeout
+	 *            The maximum time in ms a single invocation may take, a value of 0 or below waits forever
+	 * @throws IOException
+	 *             In case the name of the staging MBean is invalid
+	 */
+	public ChunkedUploader(MBeanServerConnection connection, long timeout) throws IOException {
+		this.connection = connection;
+		this.timeout = timeout;
+		try {
+			this.name = new ObjectName(MBEAN_STAGING);
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Transfers the given artefact to the server.
+	 * 
+	 * @param artefact
+	 * @return The URI of the staged artefact on the server
+	 * @throws Exception
+	 *             In case the transfer failed, transferring the artefact again resumes it
+	 */
+	public String upload(File artefact) throws Exception {
+		List<Chunk> boundaries = split(artefact);
+		String[] hashes = new String[boundaries.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = boundaries.get(i).getHash();
+		}
+		Set<String> missing = new HashSet<String>(Arrays.asList((String[]) invoke("findMissingChunks",
+				new Object[] { hashes }, new String[] { String[].class.getName() })));
+		chunks = boundaries.size();
+		sentChunks = 0;
+		sentBytes = 0;
+		RandomAccessFile file = new RandomAccessFile(artefact, "r");
+		try {
+			for (Chunk chunk : boundaries) {
+				// the same chunk may occur several times within an artefact
+				if (!missing.remove(chunk.getHash())) {
+					continue;
+				}
+				byte[] data = new byte[chunk.getLength()];
+				file.seek(chunk.getOffset());
+				file.readFully(data);
+				byte[] compressed = deflate(data);
+				boolean useCompressed = compressed.length < data.length;
+				byte[] payload = useCompressed ? compressed : data;
+				invoke("putChunk", new Object[] { chunk.getHash(), payload, useCompressed },
+						new String[] { String.class.getName(), byte[].class.getName(), boolean.class.getName() });
+				sentChunks++;
+				sentBytes += payload.length;
+			}
+		} finally {
+			file.close();
+		}
+		return (String) invoke("assemble", new Object[] { artefact.getName(), hashes,
+				ContentHasher.hash(artefact) }, new String[] { String.class.getName(), String[].class.getName(),
+				String.class.getName() });
+	}
+
+	private Object invoke(final String operation, final Object[] params, final String[] signature)
+			throws Exception {
+		return Deadlines.call(new Callable<Object>() {
+			public Object call() throws Exception {
+				return connection.invoke(name, operation, params, signature);
+			}
+		}, timeout, "Invoking " + operation + " on " + name);
+	}
+
+	/**
+	 * Splits the given file into content-defined chunks.
+	 * 
+	 * @param file
+	 * @return The chunks in the order of the file
+	 * @throws IOException
+	 */
+	public static List<Chunk> split(File file) throws IOException {
+		List<Chunk> result = new ArrayList<Chunk>();
+		InputStream in = new FileInputStream(file);
+		try {
+			MessageDigest digest = ContentHasher.newDigest();
+			byte[] buffer = new byte[64 * 1024];
+			long offset = 0;
+			int length = 0;
+			long hash = 0;
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				int start = 0;
+				for (int i = 0; i < read; i++) {
+					hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+					length++;
+					if (length >= MAX_CHUNK || (length >= MIN_CHUNK && (hash & BOUNDARY_MASK) == 0)) {
+						digest.update(buffer, start, i + 1 - start);
+						result.add(new Chunk(offset, length, ContentHasher.toHex(digest.digest())));
+						offset += length;
+						start = i + 1;
+						length = 0;
+						hash = 0;
+					}
+				}
+				digest.update(buffer, start, read - start);
+			}
+			if (length > 0 || result.isEmpty()) {
+				result.add(new Chunk(offset, length, ContentHasher.toHex(digest.digest())));
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+			byte[] buffer = new byte[16 * 1024];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the number of chunks of the last transferred artefact.
+	 * 
+	 * @return
+	 */
+	public int getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Returns the number of chunks which actually had to be sent for the last artefact.
+	 * 
+	 * @return
+	 */
+	public int getSentChunks() {
+		return sentChunks;
+	}
+
+	/**
+	 * Returns the number of (compressed) bytes sent for the last artefact.
+	 * 
+	 * @return
+	 */
+	public long getSentBytes() {
+		return sentBytes;
+	}
+
+	/**
+	 * A chunk of a file.
+	 */
+	public static class Chunk {
+		private final long offset;
+		private final int length;
+		private final String hash;
+
+		public Chunk(long offset, int length, String hash) {
+			this.offset = offset;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns the position of the chunk within the file.
+		 * 
+		 * @return
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the length of the chunk in bytes.
+		 * 
+		 * @return
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the SHA-256 hash of the chunk.
+		 * 
+		 * @return
+		 */
+		public String getHash() {
+			return hash;
+		}
+	}
+
+}
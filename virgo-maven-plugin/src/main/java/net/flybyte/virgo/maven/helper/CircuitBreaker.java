@@ -0,0 +1,96 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers servers which could not be reached, so the remaining projects of a reactor build fail fast
+ * instead of each of them waiting for its own connect timeouts and retries. A breaker opens once a goal gave
+ * up connecting to a server and stays open for the cool down period. After that a single goal may try
+ * again: the breaker closes as soon as a connection succeeds and opens again if it fails. Like the
+ * {@link ConnectionCache} the breakers live as long as the plugin's classes, i.e. one Maven session.
+ * 
+ * @author Frieder Heugel
+ */
+public final class CircuitBreaker {
+	private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<String, CircuitBreaker>();
+	private final String target;
+	private long openUntil;
+	private int failures;
+	private String lastFailure;
+
+	private CircuitBreaker(String target) {
+		this.target = target;
+	}
+
+	/**
+	 * Returns the breaker of the given target, usually the service URL.
+	 * 
+	 * @param target
+	 * @return
+	 */
+	public static synchronized CircuitBreaker forTarget(String target) {
+		CircuitBreaker breaker = BREAKERS.get(target);
+		if (breaker == null) {
+			breaker = new CircuitBreaker(target);
+			BREAKERS.put(target, breaker);
+		}
+		return breaker;
+	}
+
+	/**
+	 * Fails in case the breaker is open. Once the cool down period is over the first caller is let through
+	 * while everybody else keeps failing fast until that caller reports its outcome.
+	 * 
+	 * @param coolDown
+	 *            The time in ms the breaker stays open
+	 * @throws IOException
+	 *             In case the breaker is open
+	 */
+	public synchronized void check(long coolDown) throws IOException {
+		if (failures == 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (now < openUntil) {
+			throw new IOException(target + " is considered unavailable after " + failures
+					+ " failed attempts to connect, failing fast for another " + (openUntil - now)
+					+ "ms (last error: " + lastFailure + ")");
+		}
+		// half open, give this caller a chance but keep the others out
+		openUntil = now + coolDown;
+	}
+
+	/**
+	 * Closes the breaker.
+	 */
+	public synchronized void success() {
+		failures = 0;
+		openUntil = 0;
+		lastFailure = null;
+	}
+
+	/**
+	 * Opens the breaker for the given cool down period.
+	 * 
+	 * @param message
+	 *            Describes why connecting failed
+	 * @param coolDown
+	 */
+	public synchronized void failure(String message, long coolDown) {
+		failures++;
+		lastFailure = message;
+		openUntil = System.currentTimeMillis() + coolDown;
+	}
+
+	/**
+	 * Returns whether or not the breaker is currently open.
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isOpen() {
+		return failures > 0 && System.currentTimeMillis() < openUntil;
+	}
+
+}
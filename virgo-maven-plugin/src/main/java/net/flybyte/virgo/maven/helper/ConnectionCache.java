@@ -0,0 +1,203 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.management.remote.JMXConnector;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps JMX connectors open for the lifetime of a Maven session so that all goals of a reactor build can
+ * share a single connection per server. The plugin's classes are loaded once per session which makes a
+ * static cache the simplest way to share state across mojo executions. Connectors are keyed by service URL
+ * and credentials, health checked before they are handed out and closed once the session is over (see
+ * {@link SessionEndListener}). A shutdown hook closes whatever is left in case the end of the session has not
+ * been signalled, e.g. when Maven has been aborted.
+ * 
+ * @author Frieder Heugel
+ */
+public final class ConnectionCache {
+	private static final Map<String, JMXConnector> CONNECTORS = new HashMap<String, JMXConnector>();
+	private static MavenSession session;
+	private static int hits;
+	private static int misses;
+	private static boolean shutdownHookRegistered;
+
+	private ConnectionCache() {
+	}
+
+	/**
+	 * Creates the key identifying a connector.
+	 * 
+	 * @param serviceUrl
+	 * @param user
+	 * @param password
+	 * @return
+	 */
+	public static String key(String serviceUrl, String user, String password) {
+		return user + "@" + serviceUrl + "#" + (password == null ? 0 : password.hashCode());
+	}
+
+	/**
+	 * Binds the cache to the given Maven session, its connectors are closed once the session ends. In case
+	 * the cache has been used by a different session before (e.g. in an embedded Maven) all connectors of the
+	 * old session will be closed.
+	 * 
+	 * @param currentSession
+	 * @param logger
+	 */
+	public static synchronized void bindSession(MavenSession currentSession, final Log logger) {
+		if (session != null && session != currentSession) {
+			closeAll();
+		}
+		if (currentSession != null && currentSession != session) {
+			SessionEndListener.register(currentSession, new Runnable() {
+				public void run() {
+					synchronized (ConnectionCache.class) {
+						if (!CONNECTORS.isEmpty()) {
+							logger.info("Closing all cached JMX connections (" + hits + " cache hits, " + misses
+									+ " misses)");
+						}
+						closeAll();
+					}
+				}
+			});
+		}
+		session = currentSession;
+		if (!shutdownHookRegistered) {
+			// last line of defence in case the end of the session has not been detected
+			Runtime.getRuntime().addShutdownHook(new Thread("virgo-connection-cache") {
+				@Override
+				public void run() {
+					closeAll();
+				}
+			});
+			shutdownHookRegistered = true;
+		}
+	}
+
+	/**
+	 * Returns a healthy connector for the given key. Connectors which fail the health check are closed and
+	 * removed from the cache. The health check runs without holding the lock of the cache, so a hanging
+	 * server doesn't block the connections to other servers.
+	 * 
+	 * @param key
+	 * @param timeout
+	 *            The maximum time in ms the health check may take, a value of 0 or below waits forever
+	 * @return The cached connector or <code>null</code> in case there is no healthy connector
+	 */
+	public static JMXConnector get(String key, long timeout) {
+		JMXConnector connector;
+		synchronized (ConnectionCache.class) {
+			connector = CONNECTORS.get(key);
+		}
+		if (connector != null) {
+			if (isHealthy(connector, timeout)) {
+				synchronized (ConnectionCache.class) {
+					hits++;
+				}
+				return connector;
+			}
+			boolean removed;
+			synchronized (ConnectionCache.class) {
+				// another thread may have replaced the connector meanwhile
+				removed = CONNECTORS.get(key) == connector && CONNECTORS.remove(key) != null;
+			}
+			if (removed) {
+				closeQuietly(connector);
+			}
+		}
+		synchronized (ConnectionCache.class) {
+			misses++;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a connector to the cache.
+	 * 
+	 * @param key
+	 * @param connector
+	 */
+	public static synchronized void put(String key, JMXConnector connector) {
+		JMXConnector previous = CONNECTORS.put(key, connector);
+		if (previous != null && previous != connector) {
+			closeQuietly(previous);
+		}
+	}
+
+	/**
+	 * Closes the connector with the given key and removes it from the cache.
+	 * 
+	 * @param key
+	 */
+	public static void evict(String key) {
+		JMXConnector connector;
+		synchronized (ConnectionCache.class) {
+			connector = CONNECTORS.remove(key);
+		}
+		if (connector != null) {
+			closeQuietly(connector);
+		}
+	}
+
+	/**
+	 * Closes all cached connectors.
+	 */
+	public static synchronized void closeAll() {
+		List<JMXConnector> connectors = new ArrayList<JMXConnector>(CONNECTORS.values());
+		CONNECTORS.clear();
+		for (JMXConnector connector : connectors) {
+			closeQuietly(connector);
+		}
+	}
+
+	/**
+	 * Returns the number of requests that could be served from the cache.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that required a new connection.
+	 * 
+	 * @return
+	 */
+	public static synchronized int getMisses() {
+		return misses;
+	}
+
+	/*
+	 * A cheap remote call to make sure the connection is still alive
+	 */
+	private static boolean isHealthy(final JMXConnector connector, long timeout) {
+		try {
+			Deadlines.call(new Callable<Integer>() {
+				public Integer call() throws IOException {
+					return connector.getMBeanServerConnection().getMBeanCount();
+				}
+			}, timeout, "Checking the cached connection");
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static void closeQuietly(JMXConnector connector) {
+		try {
+			connector.close();
+		} catch (IOException e) {
+			// ignore, the connection is gone anyway
+		}
+	}
+
+}
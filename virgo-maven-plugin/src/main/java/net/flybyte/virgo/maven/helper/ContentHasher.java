@@ -0,0 +1,117 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Calculates content hashes of artefacts. The content is streamed through a direct buffer so that even
+ * large WAR or PAR files are never loaded into the heap.
+ * 
+ * @author Frieder Heugel
+ */
+public final class ContentHasher {
+	private static final String ALGORITHM = "SHA-256";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ContentHasher() {
+	}
+
+	/**
+	 * Calculates the SHA-256 hash of the given file.
+	 * 
+	 * @param file
+	 * @return The hash as a lower case hex string
+	 * @throws IOException
+	 */
+	public static String hash(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		update(digest, file);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Calculates a fingerprint of a directory tree. To keep this cheap for exploded bundles with thousands of
+	 * resources only the relative path, size and modification time of every file are taken into account.
+	 * 
+	 * @param directory
+	 * @return The fingerprint as a lower case hex string
+	 * @throws IOException
+	 */
+	public static String hashTree(File directory) throws IOException {
+		MessageDigest digest = newDigest();
+		updateTree(digest, directory, "");
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Adds the content of the given file to a digest.
+	 * 
+	 * @param digest
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void update(MessageDigest digest, File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void updateTree(MessageDigest digest, File directory, String prefix) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list " + directory);
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = prefix + file.getName();
+			if (file.isDirectory()) {
+				updateTree(digest, file, name + "/");
+			} else {
+				digest.update((name + ":" + file.length() + ":" + file.lastModified() + "\n").getBytes("UTF-8"));
+			}
+		}
+	}
+
+	/**
+	 * Creates a new digest using the algorithm of this class.
+	 * 
+	 * @return
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not supported by this JVM", e);
+		}
+	}
+
+	/**
+	 * Converts a digest into a lower case hex string.
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+}
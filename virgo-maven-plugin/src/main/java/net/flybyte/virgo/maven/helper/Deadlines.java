@@ -0,0 +1,136 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs blocking remote calls (connecting, invoking MBean operations) with a deadline. RMI only offers socket
+ * level timeouts which don't cover a server that accepts connections but never answers, so the call is
+ * executed by a daemon thread and abandoned once the deadline has passed. The thread is interrupted, a
+ * result which arrives after the call has been abandoned is closed in case it is {@link Closeable} (e.g. a
+ * JMX connector), so late connections don't leak.
+ * 
+ * @author Frieder Heugel
+ */
+public final class Deadlines {
+	private static final Random RANDOM = new Random();
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private int count;
+
+		public synchronized Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "virgo-deadline-" + (++count));
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Deadlines() {
+	}
+
+	/**
+	 * Executes the given call and waits for its result at most for the given time.
+	 * 
+	 * @param call
+	 * @param timeout
+	 *            The deadline in ms, a value of 0 or below waits forever
+	 * @param description
+	 *            Describes the call in the message of the timeout
+	 * @return The result of the call
+	 * @throws TimeoutException
+	 *             In case the call didn't finish in time
+	 * @throws Exception
+	 *             The exception thrown by the call
+	 */
+	public static <T> T call(final Callable<T> call, long timeout, String description) throws Exception {
+		if (timeout <= 0) {
+			return call.call();
+		}
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		Future<T> future = EXECUTOR.submit(new Callable<T>() {
+			public T call() throws Exception {
+				T result = call.call();
+				if (abandoned.get()) {
+					closeQuietly(result);
+				}
+				return result;
+			}
+		});
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch (TimeoutException e) {
+			abandon(future, abandoned);
+			throw new TimeoutException(description + " did not finish within " + timeout + "ms");
+		} catch (InterruptedException e) {
+			abandon(future, abandoned);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the time to wait before the given retry using exponential backoff with full jitter, so that
+	 * clients which failed at the same time don't retry at the same time.
+	 * 
+	 * @param retry
+	 *            The number of the retry starting with 1
+	 * @param initialDelay
+	 *            The upper bound of the first delay in ms
+	 * @param maxDelay
+	 *            The upper bound of all delays in ms
+	 * @return
+	 */
+	public static long backoff(int retry, long initialDelay, long maxDelay) {
+		long bound = initialDelay << Math.min(retry - 1, 20);
+		if (bound <= 0 || bound > maxDelay) {
+			bound = maxDelay;
+		}
+		synchronized (RANDOM) {
+			return (long) (RANDOM.nextDouble() * bound);
+		}
+	}
+
+	/*
+	 * Either the call sees the flag and cleans up itself or its result is already available here
+	 */
+	private static void abandon(Future<?> future, AtomicBoolean abandoned) {
+		abandoned.set(true);
+		if (future.cancel(true)) {
+			return;
+		}
+		try {
+			closeQuietly(future.get());
+		} catch (CancellationException e) {
+			// nothing to clean up
+		} catch (ExecutionException e) {
+			// nothing to clean up
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void closeQuietly(Object result) {
+		if (result instanceof Closeable) {
+			try {
+				((Closeable) result).close();
+			} catch (IOException e) {
+				// ignore, it is gone anyway
+			}
+		}
+	}
+
+}
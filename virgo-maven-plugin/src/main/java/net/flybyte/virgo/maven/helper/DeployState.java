@@ -0,0 +1,225 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+/**
+ * Remembers what has been deployed to which server. The state is kept in a properties file next to the
+ * artefact (usually the <code>target</code> folder) and contains the content hash, the server URL as well
+ * as the symbolic name and version of every deployed artefact per server. It allows goals to skip the
+ * deployment of artefacts which haven't changed since they have been pushed to the server the last time.
+ * Starting or provisioning a server invalidates everything recorded for it before, the time of the last
+ * invalidation per server is kept in <code>~/.virgo-maven</code> so it applies to all projects. Since several
+ * Maven processes may use these files at the same time, every change is made while holding a file lock and
+ * written to a temporary file first, which then replaces the file atomically.
+ * 
+ * @author Frieder Heugel
+ */
+public final class DeployState {
+	/**
+	 * The name of the state file.
+	 */
+	public static final String FILE_NAME = "virgo-deploy-state.properties";
+	private static final String COMMENT = "Virgo deployment state, delete this file to force a new "
+			+ "deployment";
+	/*
+	 * Not final, the tests use a file of their own
+	 */
+	static File invalidations = new File(System.getProperty("user.home"),
+			".virgo-maven/deploy-invalidations.properties");
+
+	private DeployState() {
+	}
+
+	/**
+	 * Checks whether the given artefact with the given hash has already been deployed to the server.
+	 * 
+	 * @param artefact
+	 * @param hash
+	 * @param serverUrl
+	 * @param symbolicName
+	 * @param version
+	 * @return <code>true</code> if the recorded state matches all of the given values
+	 * @throws IOException
+	 */
+	public static synchronized boolean isUpToDate(File artefact, String hash, String serverUrl,
+			String symbolicName, String version) throws IOException {
+		Properties state = load(getStateFile(artefact));
+		String prefix = getPrefix(artefact, serverUrl);
+		long invalidated = Long.parseLong(load(invalidations).getProperty(getKey(serverUrl), "0"));
+		return hash.equals(state.getProperty(prefix + "hash"))
+				&& serverUrl.equals(state.getProperty(prefix + "serverUrl"))
+				&& String.valueOf(symbolicName).equals(state.getProperty(prefix + "symbolicName"))
+				&& String.valueOf(version).equals(state.getProperty(prefix + "version"))
+				&& Long.parseLong(state.getProperty(prefix + "deployed", "0")) > invalidated;
+	}
+
+	/**
+	 * Records a successful deployment.
+	 * 
+	 * @param artefact
+	 * @param hash
+	 * @param serverUrl
+	 * @param symbolicName
+	 * @param version
+	 * @throws IOException
+	 */
+	public static synchronized void record(File artefact, String hash, String serverUrl, String symbolicName,
+			String version) throws IOException {
+		String prefix = getPrefix(artefact, serverUrl);
+		FileLock lock = lock(getStateFile(artefact));
+		try {
+			Properties state = load(getStateFile(artefact));
+			state.setProperty(prefix + "hash", hash);
+			state.setProperty(prefix + "serverUrl", serverUrl);
+			state.setProperty(prefix + "symbolicName", String.valueOf(symbolicName));
+			state.setProperty(prefix + "version", String.valueOf(version));
+			state.setProperty(prefix + "deployed", String.valueOf(System.currentTimeMillis()));
+			store(getStateFile(artefact), state, COMMENT);
+		} finally {
+			release(lock);
+		}
+	}
+
+	/**
+	 * Removes the recorded state of an artefact on the given server, e.g. after it has been undeployed.
+	 * 
+	 * @param artefact
+	 * @param serverUrl
+	 * @throws IOException
+	 */
+	public static synchronized void remove(File artefact, String serverUrl) throws IOException {
+		if (!getStateFile(artefact).isFile()) {
+			return;
+		}
+		String prefix = getPrefix(artefact, serverUrl);
+		FileLock lock = lock(getStateFile(artefact));
+		try {
+			Properties state = load(getStateFile(artefact));
+			boolean changed = false;
+			for (String key : state.stringPropertyNames()) {
+				if (key.startsWith(prefix)) {
+					state.remove(key);
+					changed = true;
+				}
+			}
+			if (changed) {
+				store(getStateFile(artefact), state, COMMENT);
+			}
+		} finally {
+			release(lock);
+		}
+	}
+
+	/**
+	 * Invalidates everything recorded for the given server, e.g. because it has been started with a clean
+	 * state or re-provisioned.
+	 * 
+	 * @param serverUrl
+	 * @throws IOException
+	 */
+	public static synchronized void invalidate(String serverUrl) throws IOException {
+		FileLock lock = lock(invalidations);
+		try {
+			Properties state = load(invalidations);
+			state.setProperty(getKey(serverUrl), String.valueOf(System.currentTimeMillis()));
+			store(invalidations, state, "Last start or provisioning per server");
+		} finally {
+			release(lock);
+		}
+	}
+
+	private static String getPrefix(File artefact, String serverUrl) {
+		return artefact.getName() + "@" + getKey(serverUrl) + ".";
+	}
+
+	/*
+	 * The server URL is hashed since it doesn't make a readable property key
+	 */
+	private static String getKey(String serverUrl) {
+		MessageDigest digest = ContentHasher.newDigest();
+		try {
+			digest.update(serverUrl.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return ContentHasher.toHex(digest.digest()).substring(0, 16);
+	}
+
+	private static File getStateFile(File artefact) {
+		return new File(artefact.getAbsoluteFile().getParentFile(), FILE_NAME);
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties state = new Properties();
+		if (file.isFile()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				state.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return state;
+	}
+
+	/*
+	 * Write to a temporary file which replaces the file, readers never see a partially written file
+	 */
+	private static void store(File file, Properties state, String comment) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		try {
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				state.store(out, comment);
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/*
+	 * Lock the file against changes of other processes, the lock is held on a file of its own since the file
+	 * itself is replaced
+	 */
+	private static FileLock lock(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		FileChannel channel = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw").getChannel();
+		try {
+			return channel.lock();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static void release(FileLock lock) throws IOException {
+		try {
+			lock.release();
+		} finally {
+			lock.channel().close();
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Keeps an exploded bundle directory in sync with the build output. Only files whose size or modification
+ * time differ are copied and files which have been removed from the source are deleted, so that repeated
+ * synchronisations of large bundles only touch what actually changed.
+ * 
+ * @author Frieder Heugel
+ */
+public final class DirectorySync {
+
+	private DirectorySync() {
+	}
+
+	/**
+	 * Synchronises the target directory with the source directory and writes the given manifest.
+	 * 
+	 * @param source
+	 * @param target
+	 * @param manifest
+	 *            The manifest of the bundle, any <code>META-INF/MANIFEST.MF</code> within the source is ignored
+	 * @return The number of files that have been copied, written or deleted
+	 * @throws IOException
+	 */
+	public static int sync(File source, File target, Manifest manifest) throws IOException {
+		int changes = syncDirectory(source, target, "");
+		if (writeManifest(new File(target, JarFile.MANIFEST_NAME), manifest)) {
+			changes++;
+		}
+		return changes;
+	}
+
+	private static int syncDirectory(File source, File target, String prefix) throws IOException {
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Unable to create " + target);
+		}
+		int changes = 0;
+		Set<String> names = new HashSet<String>();
+		File[] files = source.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = prefix + file.getName();
+				names.add(file.getName());
+				File copy = new File(target, file.getName());
+				if (file.isDirectory()) {
+					if (copy.isFile() && !copy.delete()) {
+						throw new IOException("Unable to delete " + copy);
+					}
+					changes += syncDirectory(file, copy, name + "/");
+				} else if (!JarFile.MANIFEST_NAME.equals(name)
+						&& (copy.length() != file.length() || copy.lastModified() != file.lastModified())) {
+					if (copy.isDirectory()) {
+						delete(copy);
+					}
+					PickupDeployer.copy(file, copy);
+					copy.setLastModified(file.lastModified());
+					changes++;
+				}
+			}
+		}
+		// remove everything that doesn't exist in the source anymore
+		File[] copies = target.listFiles();
+		if (copies != null) {
+			for (File copy : copies) {
+				String name = prefix + copy.getName();
+				if (!names.contains(copy.getName()) && !JarFile.MANIFEST_NAME.equals(name)
+						&& !"META-INF".equals(name)) {
+					changes += delete(copy);
+				}
+			}
+		}
+		return changes;
+	}
+
+	/*
+	 * Only rewrite the manifest if its content changed
+	 */
+	private static boolean writeManifest(File file, Manifest manifest) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		manifest.write(bytes);
+		byte[] content = bytes.toByteArray();
+		if (file.isFile() && Arrays.equals(content, Files.readAllBytes(file.toPath()))) {
+			return false;
+		}
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content);
+		return true;
+	}
+
+	private static int delete(File file) throws IOException {
+		boolean directory = file.isDirectory();
+		int deleted = 0;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleted += delete(child);
+			}
+		}
+		if (!file.delete()) {
+			throw new IOException("Unable to delete " + file);
+		}
+		return directory ? deleted : deleted + 1;
+	}
+
+}
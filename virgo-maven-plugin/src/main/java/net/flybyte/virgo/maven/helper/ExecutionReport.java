@@ -0,0 +1,193 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects the outcome of a number of operations (e.g. one deployment per artefact) that have been executed
+ * as part of a single goal and prints a summary once all of them have finished. The report is thread safe
+ * and can be filled from several worker threads.
+ * 
+ * @author Frieder Heugel
+ */
+public class ExecutionReport {
+	private final String title;
+	private final List<Entry> entries = Collections.synchronizedList(new ArrayList<Entry>());
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * Creates a new report.
+	 * 
+	 * @param title
+	 *            A short description printed as the headline of the summary
+	 */
+	public ExecutionReport(String title) {
+		this.title = title;
+	}
+
+	/**
+	 * Records a successful operation.
+	 * 
+	 * @param name
+	 * @param duration
+	 *            The duration of the operation in ms
+	 */
+	public void success(String name, long duration) {
+		entries.add(new Entry(name, true, duration, null));
+	}
+
+	/**
+	 * Records a failed operation.
+	 * 
+	 * @param name
+	 * @param duration
+	 *            The duration of the operation in ms
+	 * @param error
+	 */
+	public void failure(String name, long duration, Throwable error) {
+		String message = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+		entries.add(new Entry(name, false, duration, message));
+	}
+
+	/**
+	 * Records an operation which has not been executed, e.g. because an earlier one failed.
+	 * 
+	 * @param name
+	 */
+	public void skipped(String name) {
+		entries.add(new Entry(name, true, -1, null));
+	}
+
+	/**
+	 * Returns whether or not any of the recorded operations failed.
+	 * 
+	 * @return
+	 */
+	public boolean hasFailures() {
+		return getFailureCount() > 0;
+	}
+
+	/**
+	 * Returns the number of failed operations.
+	 * 
+	 * @return
+	 */
+	public int getFailureCount() {
+		int failures = 0;
+		synchronized (entries) {
+			for (Entry entry : entries) {
+				if (!entry.success) {
+					failures++;
+				}
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Returns the number of skipped operations.
+	 * 
+	 * @return
+	 */
+	public int getSkippedCount() {
+		int skipped = 0;
+		synchronized (entries) {
+			for (Entry entry : entries) {
+				if (entry.duration < 0) {
+					skipped++;
+				}
+			}
+		}
+		return skipped;
+	}
+
+	/**
+	 * Returns the names of all operations that failed.
+	 * 
+	 * @return
+	 */
+	public List<String> getFailedNames() {
+		List<String> names = new ArrayList<String>();
+		synchronized (entries) {
+			for (Entry entry : entries) {
+				if (!entry.success) {
+					names.add(entry.name);
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the names of all operations that succeeded, skipped operations are not included.
+	 * 
+	 * @return
+	 */
+	public List<String> getSucceededNames() {
+		List<String> names = new ArrayList<String>();
+		synchronized (entries) {
+			for (Entry entry : entries) {
+				if (entry.success && entry.duration >= 0) {
+					names.add(entry.name);
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Prints the summary using the given logger. Failed operations are logged as errors.
+	 * 
+	 * @param logger
+	 */
+	public void log(Log logger) {
+		long elapsed = System.currentTimeMillis() - startTime;
+		logger.info("------------------------------------------------------------------------");
+		int skipped = getSkippedCount();
+		logger.info(title + " (" + entries.size() + " total, " + getFailureCount() + " failed, "
+				+ (skipped > 0 ? skipped + " skipped, " : "") + elapsed + "ms wall time)");
+		logger.info("------------------------------------------------------------------------");
+		List<Long> durations = new ArrayList<Long>();
+		synchronized (entries) {
+			for (Entry entry : entries) {
+				if (entry.duration < 0) {
+					logger.warn(String.format("%-7s %8s  %s", "SKIPPED", "", entry.name));
+					continue;
+				}
+				durations.add(entry.duration);
+				String line = String.format("%-7s %6dms  %s", entry.success ? "SUCCESS" : "FAILED",
+						entry.duration, entry.name);
+				if (entry.success) {
+					logger.info(line);
+				} else {
+					logger.error(line + " - " + entry.message);
+				}
+			}
+		}
+		if (durations.size() > 1) {
+			Collections.sort(durations);
+			logger.info("------------------------------------------------------------------------");
+			logger.info("Duration min " + durations.get(0) + "ms, median " + durations.get(durations.size() / 2)
+					+ "ms, max " + durations.get(durations.size() - 1) + "ms");
+		}
+		logger.info("------------------------------------------------------------------------");
+	}
+
+	private static class Entry {
+		private final String name;
+		private final boolean success;
+		private final long duration;
+		private final String message;
+
+		public Entry(String name, boolean success, long duration, String message) {
+			this.name = name;
+			this.success = success;
+			this.duration = duration;
+			this.message = message;
+		}
+	}
+
+}
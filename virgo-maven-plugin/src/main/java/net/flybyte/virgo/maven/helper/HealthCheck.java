@@ -0,0 +1,108 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Polls an HTTP URL until it answers with a 2xx status, used as a health gate of a rolling deployment. The
+ * URL may contain the placeholders <code>{host}</code> (the host of the JMX service URL of a target) and
+ * <code>{httpPort}</code> (the HTTP port of a target), so a single URL covers all nodes of a list.
+ * 
+ * @author Frieder Heugel
+ */
+public final class HealthCheck {
+	private static final Pattern HOST_PATTERN = Pattern.compile("rmi://([^/:]+):\\d+");
+
+	private HealthCheck() {
+	}
+
+	/**
+	 * Replaces the placeholders of the given URL by the values of the target.
+	 * 
+	 * @param url
+	 * @param target
+	 * @return
+	 * @throws IOException
+	 *             In case the URL needs a value the target doesn't provide
+	 */
+	public static String resolveUrl(String url, VirgoTarget target) throws IOException {
+		String resolved = url;
+		if (resolved.contains("{host}")) {
+			Matcher matcher = HOST_PATTERN.matcher(target.getServiceUrl());
+			if (!matcher.find()) {
+				throw new IOException("Unable to determine the host of " + target.getServiceUrl());
+			}
+			resolved = resolved.replace("{host}", matcher.group(1));
+		}
+		if (resolved.contains("{httpPort}")) {
+			if (target.getHttpPort() < 0) {
+				throw new IOException("The HTTP port of " + target.getName() + " is unknown");
+			}
+			resolved = resolved.replace("{httpPort}", String.valueOf(target.getHttpPort()));
+		}
+		return resolved;
+	}
+
+	/**
+	 * Waits until the URL answers with a 2xx status.
+	 * 
+	 * @param url
+	 * @param timeout
+	 *            The maximum time in ms to wait
+	 * @param interval
+	 *            The time in ms between two requests
+	 * @throws IOException
+	 *             In case the URL didn't become healthy in time, the message contains the last status or error
+	 * @throws InterruptedException
+	 */
+	public static void await(String url, long timeout, long interval) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		String last;
+		while (true) {
+			long remaining = Math.max(1, deadline - System.currentTimeMillis());
+			try {
+				int status = request(url, (int) Math.min(remaining, Integer.MAX_VALUE));
+				if (status >= 200 && status < 300) {
+					return;
+				}
+				last = "status " + status;
+			} catch (IOException e) {
+				last = e.getMessage();
+			}
+			if (System.currentTimeMillis() + interval > deadline) {
+				throw new IOException(url + " did not become healthy within " + timeout + "ms (" + last + ")");
+			}
+			Thread.sleep(interval);
+		}
+	}
+
+	private static int request(String url, int timeout) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		connection.setUseCaches(false);
+		try {
+			int status = connection.getResponseCode();
+			// drain the body so the connection can be kept alive
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (in != null) {
+				try {
+					byte[] buffer = new byte[4096];
+					while (in.read(buffer) >= 0) {
+						// discard
+					}
+				} finally {
+					in.close();
+				}
+			}
+			return status;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates Virgo instances from a pristine Virgo installation which acts as a template. The immutable
+ * <code>lib</code>, <code>plugins</code> and <code>repository/ext</code> directories are hard-linked into
+ * the instance, so creating an instance only takes a fraction of the time and space of a full copy. All
+ * other files (e.g. <code>configuration</code>, <code>repository/usr</code>, <code>pickup</code> and
+ * <code>bin</code>) are copied, since a write to a hard-linked file would change the template. Files are
+ * also copied where hard links are not supported (e.g. across file systems). The
+ * ports configured in <code>configuration/tomcat-server.xml</code> and
+ * <code>configuration/osgi.console.properties</code> are rewritten using a {@link PortMapping}, so that
+ * several instances don't collide.
+ * 
+ * @author Frieder Heugel
+ */
+public class InstanceProvisioner {
+	/**
+	 * Directories which are never written to and hard-linked, all other files are copied.
+	 */
+	private static final List<String> LINKED = Arrays.asList("lib", "plugins", "repository/ext");
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+	private static final Pattern CONNECTOR = Pattern.compile("<Connector\\b[^>]*>");
+	private static final Pattern CONNECTOR_PORT = Pattern.compile("\\b((?:redirectPort|port)\\s*=\\s*\")(\\d+)\"");
+	private static final Pattern HTTP_PORT = Pattern.compile("\\bport\\s*=\\s*\"(\\d+)\"");
+	private static final Pattern CONSOLE_PORT = Pattern.compile("(?m)^(\\s*[\\w.]*port\\s*[=:]\\s*)(\\d+)");
+
+	private final File template;
+	private boolean hardLinks = true;
+	private int linkedFiles;
+	private int copiedFiles;
+
+	/**
+	 * Creates a new provisioner.
+	 * 
+	 * @param template
+	 *            The root directory of the Virgo installation used as template
+	 */
+	public InstanceProvisioner(File template) {
+		this.template = template;
+	}
+
+	/**
+	 * Creates (or recreates) an instance from the template.
+	 * 
+	 * @param instance
+	 *            The root directory of the new instance, an existing directory is replaced
+	 * @param ports
+	 *            Determines the ports of the instance
+	 * @return The HTTP port of the instance or -1 if it cannot be determined
+	 * @throws IOException
+	 */
+	public int provision(File instance, PortMapping ports) throws IOException {
+		File[] children = template.listFiles();
+		if (children == null || !new File(template, "bin").isDirectory()) {
+			throw new IOException(template + " is not a Virgo installation");
+		}
+		if (instance.exists()) {
+			delete(instance);
+		}
+		if (!instance.mkdirs()) {
+			throw new IOException("Unable to create the instance directory " + instance);
+		}
+		for (File child : children) {
+			clone(child, new File(instance, child.getName()), child.getName());
+		}
+		return rewritePorts(new File(instance, "configuration"), ports);
+	}
+
+	/**
+	 * Rewrites the ports of the connectors in <code>tomcat-server.xml</code> and of the OSGi console in
+	 * <code>osgi.console.properties</code>. Disabled ports (e.g. -1) are kept.
+	 * 
+	 * @param configuration
+	 *            The configuration directory of the instance
+	 * @param ports
+	 * @return The (new) port of the first plain HTTP connector or -1 if there is none
+	 * @throws IOException
+	 */
+	public static int rewritePorts(File configuration, PortMapping ports) throws IOException {
+		int httpPort = -1;
+		File tomcat = new File(configuration, "tomcat-server.xml");
+		if (tomcat.isFile()) {
+			String content = read(tomcat);
+			StringBuffer rewritten = new StringBuffer();
+			Matcher connectors = CONNECTOR.matcher(content);
+			while (connectors.find()) {
+				String connector = rewrite(connectors.group(), CONNECTOR_PORT, ports);
+				if (httpPort < 0 && isPlainHttp(connector)) {
+					Matcher port = HTTP_PORT.matcher(connector);
+					if (port.find()) {
+						httpPort = Integer.parseInt(port.group(1));
+					}
+				}
+				connectors.appendReplacement(rewritten, Matcher.quoteReplacement(connector));
+			}
+			connectors.appendTail(rewritten);
+			write(tomcat, rewritten.toString());
+		}
+		File console = new File(configuration, "osgi.console.properties");
+		if (console.isFile()) {
+			write(console, rewrite(read(console), CONSOLE_PORT, ports));
+		}
+		return httpPort;
+	}
+
+	private static boolean isLinked(String path) {
+		for (String directory : LINKED) {
+			if (path.startsWith(directory + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of files hard-linked by this provisioner so far.
+	 * 
+	 * @return
+	 */
+	public int getLinkedFiles() {
+		return linkedFiles;
+	}
+
+	/**
+	 * Returns the number of files copied by this provisioner so far.
+	 * 
+	 * @return
+	 */
+	public int getCopiedFiles() {
+		return copiedFiles;
+	}
+
+	/**
+	 * Returns a mapping adding the given offset to every port.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	public static PortMapping offset(final int offset) {
+		return new PortMapping() {
+			public int map(int port) {
+				return port + offset;
+			}
+		};
+	}
+
+	/*
+	 * Neither AJP nor SSL connectors are of interest to clients of the instance
+	 */
+	private static boolean isPlainHttp(String connector) {
+		String lower = connector.toLowerCase();
+		return !lower.contains("ajp") && !lower.matches("(?s).*sslenabled\\s*=\\s*\"true\".*");
+	}
+
+	private static String rewrite(String content, Pattern pattern, PortMapping ports) {
+		StringBuffer rewritten = new StringBuffer();
+		Matcher matcher = pattern.matcher(content);
+		while (matcher.find()) {
+			int port = Integer.parseInt(matcher.group(2));
+			String suffix = matcher.group().substring(matcher.end(2) - matcher.start());
+			matcher.appendReplacement(rewritten, Matcher.quoteReplacement(matcher.group(1)
+					+ (port > 0 ? ports.map(port) : port) + suffix));
+		}
+		matcher.appendTail(rewritten);
+		return rewritten.toString();
+	}
+
+	/*
+	 * Recreate the directory structure and link or copy the files, the path is relative to the template
+	 */
+	private void clone(File source, File target, String path) throws IOException {
+		if (source.isDirectory()) {
+			if (!target.isDirectory() && !target.mkdirs()) {
+				throw new IOException("Unable to create " + target);
+			}
+			File[] children = source.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					clone(child, new File(target, child.getName()), path + "/" + child.getName());
+				}
+			}
+			return;
+		}
+		if (isLinked(path) && hardLinks) {
+			try {
+				Files.createLink(target.toPath(), source.toPath());
+				linkedFiles++;
+				return;
+			} catch (IOException e) {
+				// e.g. the instance is located on another file system, don't try again
+				hardLinks = false;
+			} catch (UnsupportedOperationException e) {
+				hardLinks = false;
+			}
+		}
+		PickupDeployer.copy(source, target);
+		target.setExecutable(source.canExecute());
+		copiedFiles++;
+	}
+
+	/**
+	 * Deletes a file or directory recursively. Hard links are removed without touching the template they
+	 * link to.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void delete(File file) throws IOException {
+		if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					delete(child);
+				}
+			}
+		}
+		Files.deleteIfExists(file.toPath());
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), CHARSET);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+	/**
+	 * Determines the port an instance uses in place of a port of the template.
+	 */
+	public interface PortMapping {
+		/**
+		 * Returns the port to use in place of the given port of the template.
+		 * 
+		 * @param port
+		 * @return
+		 */
+		int map(int port);
+	}
+
+	/**
+	 * Maps every port of the template to a port which is currently free on this host. The same port of the
+	 * template is always mapped to the same free port, so references like <code>redirectPort</code> stay
+	 * intact.
+	 */
+	public static class FreePorts implements PortMapping {
+		private final Map<Integer, Integer> assigned = new HashMap<Integer, Integer>();
+
+		public synchronized int map(int port) {
+			Integer free = assigned.get(port);
+			if (free == null) {
+				free = findFreePort();
+				assigned.put(port, free);
+			}
+			return free;
+		}
+
+		/**
+		 * Returns the ports assigned so far, keyed by the port of the template.
+		 * 
+		 * @return
+		 */
+		public synchronized Map<Integer, Integer> getAssigned() {
+			return new HashMap<Integer, Integer>(assigned);
+		}
+
+		private int findFreePort() {
+			for (int attempt = 0; attempt < 100; attempt++) {
+				int port;
+				try {
+					ServerSocket socket = new ServerSocket(0);
+					try {
+						port = socket.getLocalPort();
+					} finally {
+						socket.close();
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException("Unable to find a free port", e);
+				}
+				// the operating system may hand out the same port again once it has been released
+				if (!assigned.containsValue(port)) {
+					return port;
+				}
+			}
+			throw new IllegalStateException("Unable to find a free port");
+		}
+	}
+
+}
@@ -0,0 +1,355 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The <code>java</code> command line Virgo's start scripts execute for an instance. Instead of
+ * re-implementing the scripts of every Virgo version, the scripts are run once with a
+ * <code>JAVA_HOME</code> whose <code>java</code> executable merely records its arguments and working
+ * directory. The recorded class path, system properties, main class and launcher arguments are cached per
+ * instance, later starts
+ * execute the real <code>java</code> with them directly. The cache is keyed by the instance directory, the
+ * start arguments, the <code>JAVA_HOME</code> and <code>JAVA_OPTS</code> of the environment, the content of
+ * the scripts and the names of the files in <code>lib</code> and <code>plugins</code>.
+ * 
+ * @author Frieder Heugel
+ */
+public final class LaunchCommand {
+	private static final List<String> CLASSPATH_OPTIONS = Arrays.asList("-classpath", "-cp", "--class-path",
+			"-jar");
+	private final File file;
+	private final File workingDirectory;
+	private final List<String> command;
+	private final boolean cached;
+
+	private LaunchCommand(File file, List<String> recorded, boolean cached) {
+		this.file = file;
+		// the working directory is recorded ahead of the command line
+		this.workingDirectory = new File(recorded.get(0));
+		this.command = recorded.subList(1, recorded.size());
+		this.cached = cached;
+	}
+
+	/**
+	 * Returns the command line of the given instance, from the cache or by recording it.
+	 * 
+	 * @param cacheDir
+	 *            The directory recorded command lines are kept in
+	 * @param virgoRoot
+	 *            The root directory of the instance
+	 * @param startParams
+	 *            The arguments passed to the start script, may be <code>null</code>
+	 * @param environment
+	 *            The environment the start script is executed with
+	 * @param timeout
+	 *            The maximum time in ms to wait for the start script
+	 * @return
+	 * @throws IOException
+	 *             In case the command line cannot be recorded
+	 */
+	public static LaunchCommand forInstance(File cacheDir, File virgoRoot, String[] startParams,
+			Map<String, String> environment, long timeout) throws IOException {
+		List<String> arguments = startParams == null ? Collections.<String> emptyList() : Arrays
+				.asList(startParams);
+		File file = new File(cacheDir, "launch-" + getKey(virgoRoot, arguments, environment) + ".properties");
+		List<String> command = load(file);
+		if (command != null) {
+			return new LaunchCommand(file, command, true);
+		}
+		command = record(virgoRoot, arguments, environment, timeout);
+		cacheDir.mkdirs();
+		store(file, virgoRoot, command);
+		return new LaunchCommand(file, command, false);
+	}
+
+	/*
+	 * Everything the command line computed by the scripts depends on
+	 */
+	private static String getKey(File virgoRoot, List<String> arguments, Map<String, String> environment)
+			throws IOException {
+		MessageDigest digest = ContentHasher.newDigest();
+		update(digest, virgoRoot.getCanonicalPath());
+		update(digest, arguments.toString());
+		update(digest, String.valueOf(environment.get("JAVA_HOME")));
+		update(digest, String.valueOf(environment.get("JAVA_OPTS")));
+		update(digest, ContentHasher.hashTree(new File(virgoRoot, "bin")));
+		for (String directory : new String[] { "lib", "plugins" }) {
+			String[] names = new File(virgoRoot, directory).list();
+			if (names != null) {
+				Arrays.sort(names);
+				update(digest, Arrays.toString(names));
+			}
+		}
+		return ContentHasher.toHex(digest.digest()).substring(0, 16);
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		try {
+			digest.update(value.getBytes("UTF-8"));
+			digest.update((byte) 0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * Run the start script with a recording java executable, returns the working directory and the command
+	 */
+	private static List<String> record(File virgoRoot, List<String> arguments, Map<String, String> environment,
+			long timeout) throws IOException {
+		File javaHome = File.createTempFile("virgo-launch", "");
+		javaHome.delete();
+		File bin = new File(javaHome, "bin");
+		bin.mkdirs();
+		File output = new File(javaHome, "command.txt");
+		try {
+			String java = environment.get("JAVA_HOME") != null ? new File(environment.get("JAVA_HOME"),
+					"bin/java").getPath() : "java";
+			List<String> script = new ArrayList<String>();
+			if (isWindows()) {
+				writeScript(new File(bin, "java.bat"), "@echo off\r\n" + "if \"%1\"==\"-version\" \"" + java
+						+ "\" %* & exit /b\r\n" + "cd > \"" + output.getAbsolutePath() + "\"\r\n" + "echo %* >> \""
+						+ output.getAbsolutePath() + "\"\r\n");
+				script.add("cmd.exe");
+				script.add("/c");
+				script.add("startup.bat");
+			} else {
+				File recorder = new File(bin, "java");
+				writeScript(recorder, "#!/bin/sh\n" + "case \"$1\" in -version|-fullversion) exec \"" + java
+						+ "\" \"$@\";; esac\n" + "pwd > \"" + output.getAbsolutePath() + "\"\n"
+						+ "for a in \"$@\"; do printf '%s\\n' \"$a\"; done >> \"" + output.getAbsolutePath() + "\"\n");
+				recorder.setExecutable(true);
+				script.add("sh");
+				script.add("startup.sh");
+			}
+			script.addAll(arguments);
+			ProcessBuilder builder = new ProcessBuilder(script).directory(new File(virgoRoot, "bin"))
+					.redirectErrorStream(true);
+			builder.environment().putAll(environment);
+			builder.environment().put("JAVA_HOME", javaHome.getAbsolutePath());
+			Process process = builder.start();
+			StringBuilder console = new StringBuilder();
+			drain(process.getInputStream(), console);
+			if (!waitFor(process, timeout)) {
+				process.destroy();
+				throw new IOException("The start script did not finish within " + timeout + "ms");
+			}
+			if (!output.isFile()) {
+				synchronized (console) {
+					throw new IOException("The start script did not execute java, its output was:\n" + console);
+				}
+			}
+			List<String> lines = readLines(output);
+			List<String> command = isWindows() ? tokenize(lines.get(1)) : lines.subList(1, lines.size());
+			List<String> recorded = new ArrayList<String>();
+			recorded.add(lines.get(0));
+			recorded.add(java);
+			recorded.addAll(command);
+			return recorded;
+		} finally {
+			for (File file : new File[] { output, new File(bin, "java"), new File(bin, "java.bat"), bin, javaHome }) {
+				file.delete();
+			}
+		}
+	}
+
+	private static void writeScript(File file, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void drain(final InputStream in, final StringBuilder console) {
+		Thread drainer = new Thread("virgo-launch-recorder") {
+			@Override
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						synchronized (console) {
+							console.append(line).append('\n');
+						}
+					}
+				} catch (IOException e) {
+					// the process is gone
+				}
+			}
+		};
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	private static boolean waitFor(Process process, long timeout) throws IOException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			try {
+				process.exitValue();
+				return true;
+			} catch (IllegalThreadStateException e) {
+				if (System.currentTimeMillis() > deadline) {
+					return false;
+				}
+			}
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the start script");
+			}
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	/*
+	 * Split a batch command line, double quotes group arguments containing spaces
+	 */
+	static List<String> tokenize(String line) {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		boolean quoted = false;
+		boolean inToken = false;
+		for (char c : line.trim().toCharArray()) {
+			if (c == '"') {
+				quoted = !quoted;
+				inToken = true;
+			} else if (Character.isWhitespace(c) && !quoted) {
+				if (inToken) {
+					tokens.add(token.toString());
+					token.setLength(0);
+					inToken = false;
+				}
+			} else {
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) {
+			tokens.add(token.toString());
+		}
+		return tokens;
+	}
+
+	private static List<String> load(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		int count = Integer.parseInt(properties.getProperty("arg.count", "0"));
+		if (count == 0 || properties.getProperty("directory") == null) {
+			return null;
+		}
+		List<String> command = new ArrayList<String>(count + 1);
+		command.add(properties.getProperty("directory"));
+		for (int i = 0; i < count; i++) {
+			command.add(properties.getProperty("arg." + i));
+		}
+		return command;
+	}
+
+	private static void store(File file, File virgoRoot, List<String> recorded) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("root", virgoRoot.getCanonicalPath());
+		properties.setProperty("directory", recorded.get(0));
+		properties.setProperty("arg.count", String.valueOf(recorded.size() - 1));
+		for (int i = 1; i < recorded.size(); i++) {
+			properties.setProperty("arg." + (i - 1), recorded.get(i));
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Command line of " + virgoRoot);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the command line with additional JVM options. The options are inserted right before the class
+	 * path (or the main class), after the options of the start scripts, so they take precedence over them.
+	 * 
+	 * @param jvmOptions
+	 * @return
+	 */
+	public List<String> getCommand(List<String> jvmOptions) {
+		List<String> result = new ArrayList<String>(command);
+		int index = result.size();
+		for (int i = 1; i < result.size(); i++) {
+			if (CLASSPATH_OPTIONS.contains(result.get(i)) || !result.get(i).startsWith("-")) {
+				index = i;
+				break;
+			}
+		}
+		result.addAll(index, jvmOptions);
+		return result;
+	}
+
+	/**
+	 * Returns the directory the start scripts execute <code>java</code> in.
+	 * 
+	 * @return
+	 */
+	public File getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * Returns whether or not the command line has been taken from the cache.
+	 * 
+	 * @return
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+
+	/**
+	 * Returns the file the command line is cached in.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
+	}
+
+}
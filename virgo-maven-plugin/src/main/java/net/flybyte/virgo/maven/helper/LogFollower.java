@@ -0,0 +1,110 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows a (growing) log file similar to <code>tail -f</code>. Only lines written after the follower has
+ * been created are taken into account. The follower does not block, every call to {@link #poll(String)}
+ * reads whatever has been appended since the last call.
+ * 
+ * @author Frieder Heugel
+ */
+public class LogFollower {
+	private final File logFile;
+	private long offset;
+	private StringBuilder pending = new StringBuilder();
+
+	/**
+	 * Creates a new follower for the given log file. The current end of the file is used as starting point.
+	 * 
+	 * @param logFile
+	 */
+	public LogFollower(File logFile) {
+		this.logFile = logFile;
+		this.offset = logFile.isFile() ? logFile.length() : 0;
+	}
+
+	/**
+	 * Reads all complete lines appended since the last call and checks whether one of them contains the
+	 * given marker.
+	 * 
+	 * @param marker
+	 * @return <code>true</code> in case a line containing the marker has been found
+	 * @throws IOException
+	 */
+	public boolean poll(String marker) throws IOException {
+		return readLine(marker) != null;
+	}
+
+	/**
+	 * Reads all complete lines appended since the last call and returns the first line containing the given
+	 * marker.
+	 * 
+	 * @param marker
+	 * @return The matching line or <code>null</code> if no line matched
+	 * @throws IOException
+	 */
+	public String readLine(String marker) throws IOException {
+		for (String line : readLines()) {
+			if (line.contains(marker)) {
+				return line;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads all complete lines appended since the last call.
+	 * 
+	 * @return The new lines, an empty list if nothing has been appended
+	 * @throws IOException
+	 */
+	public List<String> readLines() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		if (!logFile.isFile()) {
+			return lines;
+		}
+		long length = logFile.length();
+		if (length < offset) {
+			// the log has been rotated, start from the beginning of the new file
+			offset = 0;
+			pending.setLength(0);
+		}
+		if (length == offset) {
+			return lines;
+		}
+		RandomAccessFile file = new RandomAccessFile(logFile, "r");
+		try {
+			file.seek(offset);
+			byte[] buffer = new byte[(int) Math.min(length - offset, 64 * 1024)];
+			int read = file.read(buffer);
+			if (read <= 0) {
+				return lines;
+			}
+			offset += read;
+			pending.append(new String(buffer, 0, read, "UTF-8"));
+		} finally {
+			file.close();
+		}
+		int newline;
+		while ((newline = pending.indexOf("\n")) >= 0) {
+			lines.add(pending.substring(0, newline).trim());
+			pending.delete(0, newline + 1);
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns the log file this follower is reading from.
+	 * 
+	 * @return
+	 */
+	public File getLogFile() {
+		return logFile;
+	}
+
+}
@@ -0,0 +1,228 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the manifest of an archive without opening it as a whole. The end of central directory record is
+ * located at the end of the file, the central directory is scanned for <code>META-INF/MANIFEST.MF</code>
+ * and only this single entry is read and inflated. The central directory is memory-mapped (except on
+ * Windows where a mapped file cannot be replaced until the mapping has been garbage collected), so the cost
+ * doesn't depend on the size of the archive but only on the number of its entries. ZIP64 archives are
+ * supported.
+ * 
+ * @author Frieder Heugel
+ */
+public final class ManifestReader {
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_HEADER = 0x06054b50;
+	private static final int ZIP64_END_HEADER = 0x06064b50;
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int CENTRAL_SIZE = 46;
+	private static final int LOCAL_SIZE = 30;
+	private static final int MAX_COMMENT = 0xFFFF;
+	private static final int MAX_MANIFEST = 16 * 1024 * 1024;
+	private static final long UNKNOWN = 0xFFFFFFFFL;
+	private static final byte[] MANIFEST_NAME = JarFile.MANIFEST_NAME.getBytes();
+	private static final boolean MAP = System.getProperty("os.name").toLowerCase().indexOf("win") < 0;
+
+	private ManifestReader() {
+	}
+
+	/**
+	 * Reads the manifest of the given archive.
+	 * 
+	 * @param archive
+	 * @return The manifest or <code>null</code> in case the archive doesn't contain one
+	 * @throws ZipException
+	 *             In case the file is not a valid zip archive
+	 * @throws IOException
+	 */
+	public static Manifest read(File archive) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(archive, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			byte[] content = findManifest(channel);
+			return content != null ? new Manifest(new ByteArrayInputStream(content)) : null;
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * Locate the central directory and return the (inflated) manifest entry
+	 */
+	private static byte[] findManifest(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < END_SIZE) {
+			throw new ZipException("Not a zip archive");
+		}
+		// the end record is followed by a comment of up to 64k
+		int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+		long tailStart = size - tailSize;
+		ByteBuffer tail = buffer(channel, tailStart, tailSize);
+		int end = -1;
+		for (int i = tailSize - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_HEADER) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new ZipException("Not a zip archive, end of central directory not found");
+		}
+		long centralSize = tail.getInt(end + 12) & UNKNOWN;
+		long centralOffset = tail.getInt(end + 16) & UNKNOWN;
+		if ((centralSize == UNKNOWN || centralOffset == UNKNOWN) && tailStart + end >= ZIP64_LOCATOR_SIZE) {
+			ByteBuffer locator = buffer(channel, tailStart + end - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+			if (locator.getInt(0) == ZIP64_LOCATOR) {
+				ByteBuffer zip64End = buffer(channel, locator.getLong(8), ZIP64_END_SIZE);
+				if (zip64End.getInt(0) != ZIP64_END_HEADER) {
+					throw new ZipException("Invalid ZIP64 end of central directory");
+				}
+				centralSize = zip64End.getLong(40);
+				centralOffset = zip64End.getLong(48);
+			}
+		}
+		if (centralOffset < 0 || centralSize < 0 || centralOffset + centralSize > size
+				|| centralSize > Integer.MAX_VALUE) {
+			throw new ZipException("Invalid central directory");
+		}
+		ByteBuffer central = buffer(channel, centralOffset, (int) centralSize);
+		int position = 0;
+		while (position + CENTRAL_SIZE <= central.limit()) {
+			if (central.getInt(position) != CENTRAL_HEADER) {
+				throw new ZipException("Invalid central directory entry");
+			}
+			int nameLength = central.getShort(position + 28) & 0xFFFF;
+			int extraLength = central.getShort(position + 30) & 0xFFFF;
+			int commentLength = central.getShort(position + 32) & 0xFFFF;
+			if (isManifest(central, position + CENTRAL_SIZE, nameLength)) {
+				int method = central.getShort(position + 10) & 0xFFFF;
+				long[] sizes = { central.getInt(position + 24) & UNKNOWN, central.getInt(position + 20) & UNKNOWN,
+						central.getInt(position + 42) & UNKNOWN };
+				readZip64Sizes(central, position + CENTRAL_SIZE + nameLength, extraLength, sizes);
+				return readEntry(channel, sizes[2], method, sizes[1], sizes[0]);
+			}
+			position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+		}
+		return null;
+	}
+
+	/*
+	 * The entry name is compared ignoring the case, just like JarFile does
+	 */
+	private static boolean isManifest(ByteBuffer central, int offset, int length) {
+		if (length != MANIFEST_NAME.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (Character.toUpperCase((char) central.get(offset + i)) != MANIFEST_NAME[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Replace the 32 bit values (uncompressed size, compressed size, local header offset) which don't fit
+	 * by the ones of the ZIP64 extra field
+	 */
+	private static void readZip64Sizes(ByteBuffer central, int offset, int length, long[] sizes) {
+		int position = offset;
+		while (position + 4 <= offset + length) {
+			int id = central.getShort(position) & 0xFFFF;
+			int size = central.getShort(position + 2) & 0xFFFF;
+			if (id == 0x0001) {
+				int value = position + 4;
+				for (int i = 0; i < sizes.length && value + 8 <= position + 4 + size; i++) {
+					if (sizes[i] == UNKNOWN) {
+						sizes[i] = central.getLong(value);
+						value += 8;
+					}
+				}
+				return;
+			}
+			position += 4 + size;
+		}
+	}
+
+	private static byte[] readEntry(FileChannel channel, long offset, int method, long compressedSize,
+			long size) throws IOException {
+		if (size > MAX_MANIFEST || compressedSize > MAX_MANIFEST) {
+			throw new ZipException("Manifest too large (" + size + " bytes)");
+		}
+		ByteBuffer local = buffer(channel, offset, LOCAL_SIZE);
+		if (local.getInt(0) != LOCAL_HEADER) {
+			throw new ZipException("Invalid local header of the manifest entry");
+		}
+		long dataOffset = offset + LOCAL_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+		ByteBuffer data = buffer(channel, dataOffset, (int) compressedSize);
+		// one additional byte is required by the inflater in nowrap mode
+		byte[] input = new byte[(int) compressedSize + 1];
+		data.get(input, 0, (int) compressedSize);
+		if (method == 0) {
+			byte[] content = new byte[(int) compressedSize];
+			System.arraycopy(input, 0, content, 0, content.length);
+			return content;
+		}
+		if (method != 8) {
+			throw new ZipException("Unsupported compression method " + method + " of the manifest entry");
+		}
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(input);
+			byte[] content = new byte[(int) size];
+			int length = 0;
+			while (length < content.length && !inflater.finished()) {
+				int inflated = inflater.inflate(content, length, content.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != content.length) {
+				throw new ZipException("Truncated manifest entry");
+			}
+			return content;
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid manifest entry: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static ByteBuffer buffer(FileChannel channel, long position, int length) throws IOException {
+		if (position < 0 || position + length > channel.size()) {
+			throw new ZipException("Invalid offset " + position);
+		}
+		ByteBuffer buffer;
+		if (MAP) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		} else {
+			buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new ZipException("Unexpected end of file");
+				}
+			}
+			buffer.flip();
+		}
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
@@ -0,0 +1,181 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.flybyte.virgo.maven.helper.PhaseTimer.Phase;
+
+/**
+ * Writes the phase timings of the goals as JSON and CSV files, so they can be picked up by build analytics.
+ * Every goal execution writes a report for its own project, in addition all executions of a Maven session
+ * are collected so a report covering the whole reactor build can be written once the last project has been
+ * processed. Like the {@link ConnectionCache} the collected timings are kept in a static field since the
+ * plugin's classes are shared by all mojo executions of a session.
+ * 
+ * @author Frieder Heugel
+ */
+public final class MetricsReport {
+	private static final Map<PhaseTimer, List<Record>> EXECUTIONS = new LinkedHashMap<PhaseTimer, List<Record>>();
+	private static Object session;
+
+	private MetricsReport() {
+	}
+
+	/**
+	 * Adds the phases of a goal execution to the session wide collection and returns the records of this
+	 * execution. Collecting the same execution again (e.g. after every cycle of a long running goal) replaces
+	 * its previous records.
+	 * 
+	 * @param currentSession
+	 *            The current Maven session, may be <code>null</code>
+	 * @param project
+	 * @param goal
+	 * @param timer
+	 * @return
+	 */
+	public static synchronized List<Record> collect(Object currentSession, String project, String goal,
+			PhaseTimer timer) {
+		if (session != currentSession) {
+			// timings of a previous session (e.g. in an embedded Maven) don't belong to this build
+			EXECUTIONS.clear();
+			session = currentSession;
+		}
+		List<Record> records = new ArrayList<Record>();
+		for (Phase phase : timer.getPhases()) {
+			records.add(new Record(project, goal, phase));
+		}
+		EXECUTIONS.put(timer, records);
+		return records;
+	}
+
+	/**
+	 * Returns the records of all goal executions of the current session.
+	 * 
+	 * @return
+	 */
+	public static synchronized List<Record> getSessionRecords() {
+		List<Record> records = new ArrayList<Record>();
+		for (List<Record> execution : EXECUTIONS.values()) {
+			records.addAll(execution);
+		}
+		return records;
+	}
+
+	/**
+	 * Writes the given records to <code>&lt;name&gt;.json</code> and <code>&lt;name&gt;.csv</code> in the
+	 * given directory, existing files are replaced.
+	 * 
+	 * @param directory
+	 * @param name
+	 * @param records
+	 * @throws IOException
+	 */
+	public static void write(File directory, String name, List<Record> records) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the directory " + directory);
+		}
+		StringBuilder json = new StringBuilder("[\n");
+		StringBuilder csv = new StringBuilder("timestamp,project,goal,phase,durationMs\n");
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			json.append("  {\"timestamp\": ").append(record.phase.getStartTime());
+			json.append(", \"project\": ").append(quote(record.project));
+			json.append(", \"goal\": ").append(quote(record.goal));
+			json.append(", \"phase\": ").append(quote(record.phase.getName()));
+			json.append(", \"durationMs\": ").append(record.phase.getDuration()).append('}');
+			json.append(i < records.size() - 1 ? ",\n" : "\n");
+			csv.append(record.phase.getStartTime()).append(',').append(escape(record.project)).append(',');
+			csv.append(escape(record.goal)).append(',').append(escape(record.phase.getName())).append(',');
+			csv.append(record.phase.getDuration()).append('\n');
+		}
+		json.append("]\n");
+		writeFile(new File(directory, name + ".json"), json.toString());
+		writeFile(new File(directory, name + ".csv"), csv.toString());
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String quote(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * A single phase of a goal execution.
+	 */
+	public static class Record {
+		private final String project;
+		private final String goal;
+		private final Phase phase;
+
+		public Record(String project, String goal, Phase phase) {
+			this.project = project;
+			this.goal = goal;
+			this.phase = phase;
+		}
+
+		/**
+		 * Returns the artifact id of the project the goal has been executed for.
+		 * 
+		 * @return
+		 */
+		public String getProject() {
+			return project;
+		}
+
+		/**
+		 * Returns the name of the goal.
+		 * 
+		 * @return
+		 */
+		public String getGoal() {
+			return goal;
+		}
+
+		/**
+		 * Returns the measured phase.
+		 * 
+		 * @return
+		 */
+		public Phase getPhase() {
+			return phase;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the duration of the individual phases of a goal (e.g. connect, invoke, close). A phase is
+ * started by taking a timestamp and ended by passing the timestamp back together with the phase name, so
+ * phases may overlap and can be measured from several threads at once.
+ * 
+ * <pre>
+ * long start = timer.start();
+ * connection.invoke(...);
+ * timer.stop(&quot;invoke&quot;, start);
+ * </pre>
+ * 
+ * @author Frieder Heugel
+ */
+public class PhaseTimer {
+	private final List<Phase> phases = Collections.synchronizedList(new ArrayList<Phase>());
+
+	/**
+	 * Returns the timestamp marking the start of a phase.
+	 * 
+	 * @return
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records a phase that started at the given timestamp and ends now.
+	 * 
+	 * @param name
+	 * @param start
+	 *            The timestamp returned by {@link #start()}
+	 * @return The duration of the phase in ms
+	 */
+	public long stop(String name, long start) {
+		long duration = (System.nanoTime() - start) / 1000000L;
+		phases.add(new Phase(name, System.currentTimeMillis() - duration, duration));
+		return duration;
+	}
+
+	/**
+	 * Returns all phases recorded so far in the order they ended.
+	 * 
+	 * @return
+	 */
+	public List<Phase> getPhases() {
+		synchronized (phases) {
+			return new ArrayList<Phase>(phases);
+		}
+	}
+
+	/**
+	 * A single measured phase.
+	 */
+	public static class Phase {
+		private final String name;
+		private final long startTime;
+		private final long duration;
+
+		public Phase(String name, long startTime, long duration) {
+			this.name = name;
+			this.startTime = startTime;
+			this.duration = duration;
+		}
+
+		/**
+		 * Returns the name of the phase.
+		 * 
+		 * @return
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the time the phase started in ms since the epoch.
+		 * 
+		 * @return
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the duration of the phase in ms.
+		 * 
+		 * @return
+		 */
+		public long getDuration() {
+			return duration;
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Deploys artefacts by dropping them into Virgo's <code>pickup</code> directory. The artefact is staged in a
+ * directory next to <code>pickup</code> first and then moved into place atomically, so the hot deployer
+ * never sees a partially written file. The outcome of the deployment is taken from the event log.
+ * 
+ * @author Frieder Heugel
+ */
+public class PickupDeployer {
+	private static final String STARTED = "DE0005I";
+	private static final String START_FAILED = "DE0006E";
+	private static final String UNINSTALLED = "DE0013I";
+	private static final String HOT_DEPLOY_FAILED = "HD0002E";
+	private final File pickupDir;
+	private final File stagingDir;
+	private final File eventLog;
+	private final Log logger;
+	private boolean hardLink;
+	private int pollInterval = 200;
+
+	/**
+	 * Creates a new pickup deployer.
+	 * 
+	 * @param virgoRoot
+	 *            The root directory of the Virgo installation
+	 * @param eventLog
+	 *            The event log used to confirm deployments
+	 * @param logger
+	 */
+	public PickupDeployer(File virgoRoot, File eventLog, Log logger) {
+		this.pickupDir = new File(virgoRoot, "pickup");
+		this.stagingDir = new File(virgoRoot, "pickup-staging");
+		this.eventLog = eventLog;
+		this.logger = logger;
+	}
+
+	/**
+	 * Moves the artefact into the pickup directory and waits until Virgo reports it as started.
+	 * 
+	 * @param artefact
+	 * @param symbolicName
+	 *            The symbolic name Virgo will report once the artefact has been started
+	 * @param timeout
+	 *            The maximum time in ms to wait for the confirmation
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public void deploy(File artefact, String symbolicName, long timeout) throws IOException, TimeoutException,
+			InterruptedException {
+		if (!pickupDir.isDirectory()) {
+			throw new IOException("The pickup directory " + pickupDir + " does not exist");
+		}
+		File staged = stage(artefact);
+		File target = new File(pickupDir, artefact.getName());
+		LogFollower follower = new LogFollower(eventLog);
+		long start = System.currentTimeMillis();
+		try {
+			Files.move(staged.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			logger.warn("The staging directory " + stagingDir + " is not on the same file system as "
+					+ pickupDir + ", falling back to a non-atomic move");
+			Files.move(staged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		logger.info("Moved " + artefact.getName() + " into " + pickupDir);
+		await(follower, "'" + symbolicName + "'", STARTED, artefact.getName(), timeout);
+		logger.info("Virgo started " + symbolicName + " after " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Removes the artefact from the pickup directory and waits until Virgo reports it as uninstalled.
+	 * 
+	 * @param fileName
+	 *            The name of the artefact in the pickup directory
+	 * @param symbolicName
+	 *            The symbolic name Virgo will report once the artefact has been uninstalled
+	 * @param timeout
+	 *            The maximum time in ms to wait for the confirmation
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public void undeploy(String fileName, String symbolicName, long timeout) throws IOException,
+			TimeoutException, InterruptedException {
+		File target = new File(pickupDir, fileName);
+		if (!target.exists()) {
+			logger.info(fileName + " is not present in " + pickupDir + ", nothing to undeploy");
+			return;
+		}
+		LogFollower follower = new LogFollower(eventLog);
+		long start = System.currentTimeMillis();
+		if (!target.delete()) {
+			throw new IOException("Unable to delete " + target);
+		}
+		await(follower, "'" + symbolicName + "'", UNINSTALLED, fileName, timeout);
+		logger.info("Virgo uninstalled " + symbolicName + " after " + (System.currentTimeMillis() - start)
+				+ "ms");
+	}
+
+	/*
+	 * Create a copy (or hard link) of the artefact in the staging directory
+	 */
+	private File stage(File artefact) throws IOException {
+		if (!stagingDir.isDirectory() && !stagingDir.mkdirs()) {
+			throw new IOException("Unable to create the staging directory " + stagingDir);
+		}
+		File staged = new File(stagingDir, artefact.getName());
+		Files.deleteIfExists(staged.toPath());
+		if (hardLink) {
+			try {
+				Files.createLink(staged.toPath(), artefact.toPath());
+				logger.debug("Staged " + artefact.getName() + " as hard link");
+				return staged;
+			} catch (IOException e) {
+				logger.debug("Unable to create a hard link, copying instead: " + e.getMessage());
+			} catch (UnsupportedOperationException e) {
+				logger.debug("Hard links are not supported, copying instead");
+			}
+		}
+		copy(artefact, staged);
+		return staged;
+	}
+
+	/**
+	 * Copies a file using channel-to-channel transfer.
+	 * 
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void copy(File source, File target) throws IOException {
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				long size = inChannel.size();
+				long position = 0;
+				while (position < size) {
+					position += inChannel.transferTo(position, size - position, outChannel);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Wait for an event log entry confirming the operation, hot deploy failures end the wait immediately
+	 */
+	private void await(LogFollower follower, String name, String successCode, String fileName, long timeout)
+			throws IOException, TimeoutException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (System.currentTimeMillis() < deadline) {
+			for (String line : follower.readLines()) {
+				if (line.contains(successCode) && line.contains(name)) {
+					return;
+				}
+				if ((line.contains(HOT_DEPLOY_FAILED) && line.contains(fileName))
+						|| (line.contains(START_FAILED) && line.contains(name))) {
+					throw new IOException("Virgo reported a failure: " + line);
+				}
+			}
+			Thread.sleep(pollInterval);
+		}
+		throw new TimeoutException("Virgo did not confirm the operation on " + fileName + " within " + timeout
+				+ "ms");
+	}
+
+	/**
+	 * Define whether or not the artefact is staged as a hard link instead of a copy. A hard link shares the
+	 * content with the artefact in the target folder, so rebuilding the artefact in place also changes the
+	 * deployed file.
+	 * 
+	 * @param hardLink
+	 */
+	public void setHardLink(boolean hardLink) {
+		this.hardLink = hardLink;
+	}
+
+}
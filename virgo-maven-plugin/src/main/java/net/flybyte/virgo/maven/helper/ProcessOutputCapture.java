@@ -0,0 +1,218 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+import org.apache.commons.exec.LogOutputStream;
+import org.apache.commons.exec.PumpStreamHandler;
+
+/**
+ * Captures the console output of a started process. The stream pumps of commons-exec only put the lines
+ * into a bounded queue, so a slow disk never blocks the process writing to its console (lines are dropped
+ * and counted if the queue is full). A background thread writes the lines to a {@link RotatingFileWriter},
+ * feeds them into a {@link StartupTimeline} and keeps the last lines in memory so they can be reported in
+ * case the process fails. The capture has to be closed once the output is no longer of interest, which
+ * writes the pending lines, stops the thread and closes the log file.
+ * 
+ * @author Frieder Heugel
+ */
+public class ProcessOutputCapture {
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int TAIL_SIZE = 25;
+	private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+	private final LinkedList<String> tail = new LinkedList<String>();
+	private final AtomicLong dropped = new AtomicLong();
+	private final RotatingFileWriter writer;
+	private final StartupTimeline timeline;
+	private final Thread worker;
+	private volatile IOException writeError;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new capture and starts the background thread.
+	 * 
+	 * @param logFile
+	 *            The file the output is written to
+	 * @param maxSize
+	 *            The maximum size of a single log file in bytes
+	 * @param backups
+	 *            The number of rotated log files to keep
+	 * @param timeline
+	 *            The timeline fed with the output
+	 * @throws IOException
+	 */
+	public ProcessOutputCapture(File logFile, long maxSize, int backups, StartupTimeline timeline)
+			throws IOException {
+		this.writer = new RotatingFileWriter(logFile, maxSize, backups);
+		this.timeline = timeline;
+		worker = new Thread("virgo-output-capture") {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+		// the server outlives the goal, the thread must not keep Maven alive
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Creates the stream handler to be passed to the executor, standard output and error are both captured.
+	 * 
+	 * @return
+	 */
+	public ExecuteStreamHandler createStreamHandler() {
+		return new PumpStreamHandler(new QueueingStream(), new QueueingStream());
+	}
+
+	private void drain() {
+		try {
+			while (true) {
+				String line;
+				try {
+					line = queue.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (line == null) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+				process(line);
+			}
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if (writeError == null) {
+					writeError = e;
+				}
+			}
+		}
+	}
+
+	private void process(String line) {
+		timeline.process(line);
+		synchronized (tail) {
+			tail.add(line);
+			if (tail.size() > TAIL_SIZE) {
+				tail.removeFirst();
+			}
+		}
+		if (writeError == null) {
+			try {
+				writer.writeLine(line);
+				if (queue.isEmpty()) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				writeError = e;
+			}
+		}
+	}
+
+	/**
+	 * Stops capturing: the lines received so far are written, then the background thread ends and the log
+	 * file is closed. Output the process writes later is discarded.
+	 * 
+	 * @param timeout
+	 *            The maximum time in ms to wait for the pending lines to be written
+	 * @throws InterruptedException
+	 */
+	public void close(long timeout) throws InterruptedException {
+		closed = true;
+		worker.join(timeout);
+		if (worker.isAlive()) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the timeline has seen the ready marker or the timeout has elapsed.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait in ms
+	 * @return <code>true</code> in case the ready marker has been seen
+	 * @throws InterruptedException
+	 */
+	public boolean awaitReady(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!timeline.isReady() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		return timeline.isReady();
+	}
+
+	/**
+	 * Returns the last lines of the output.
+	 * 
+	 * @return
+	 */
+	public List<String> getTail() {
+		synchronized (tail) {
+			return new ArrayList<String>(tail);
+		}
+	}
+
+	/**
+	 * Returns the number of lines dropped because the queue was full.
+	 * 
+	 * @return
+	 */
+	public long getDroppedLines() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the error that stopped the output from being written to the log file, if any.
+	 * 
+	 * @return
+	 */
+	public IOException getWriteError() {
+		return writeError;
+	}
+
+	/**
+	 * Returns the file the output is written to.
+	 * 
+	 * @return
+	 */
+	public File getLogFile() {
+		return writer.getFile();
+	}
+
+	/**
+	 * Returns the timeline fed with the output.
+	 * 
+	 * @return
+	 */
+	public StartupTimeline getTimeline() {
+		return timeline;
+	}
+
+	/*
+	 * Splits the output into lines and hands them over to the background thread without blocking
+	 */
+	private class QueueingStream extends LogOutputStream {
+		@Override
+		protected void processLine(String line, int level) {
+			if (closed) {
+				return;
+			}
+			if (!queue.offer(line)) {
+				dropped.incrementAndGet();
+			}
+		}
+	}
+
+}
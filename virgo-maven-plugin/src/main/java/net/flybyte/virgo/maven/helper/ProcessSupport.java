@@ -0,0 +1,332 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+/**
+ * Provides access to the operating system process of a Virgo instance: its PID, whether it is still alive
+ * and a way to kill it. The PID is taken from the runtime MBean of the server (its name has the form
+ * <code>pid@host</code>). On Java 9 and later <code>java.lang.ProcessHandle</code> is used via reflection,
+ * since the plugin is compiled for older Java versions; otherwise <code>kill</code> or
+ * <code>tasklist</code>/<code>taskkill</code> are used.
+ * <p>
+ * The PID file records the start time of the process next to its PID. Since the operating system reuses
+ * PIDs, a PID taken from the file is only trusted in case the process still has the recorded start time and
+ * its command line refers to the Virgo root directory.
+ * 
+ * @author Frieder Heugel
+ */
+public final class ProcessSupport {
+	/**
+	 * The location of the PID file relative to the Virgo root directory.
+	 */
+	public static final String PID_FILE = "work/virgo-maven.pid";
+	private static final Object NO_HANDLE_SUPPORT = new Object();
+	private static final String PROCESS_HANDLE = "java.lang.ProcessHandle";
+	private static final String PROCESS_INFO = "java.lang.ProcessHandle$Info";
+	private static final String OPTIONAL = "java.util.Optional";
+
+	private ProcessSupport() {
+	}
+
+	/**
+	 * Asks the runtime MBean of the server for the PID of the server process. The PID is only returned in
+	 * case the server runs on this machine, otherwise it is of no use.
+	 * 
+	 * @param connection
+	 * @return The PID or -1 in case it could not be determined
+	 */
+	public static long getServerPid(MBeanServerConnection connection) {
+		try {
+			Object name = connection.getAttribute(new ObjectName("java.lang:type=Runtime"), "Name");
+			if (!(name instanceof String) || ((String) name).indexOf('@') < 0) {
+				return -1;
+			}
+			String[] parts = ((String) name).split("@", 2);
+			if (!isLocalHost(parts[1])) {
+				return -1;
+			}
+			return Long.parseLong(parts[0]);
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private static boolean isLocalHost(String host) {
+		try {
+			return host.equalsIgnoreCase(InetAddress.getLocalHost().getHostName());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the PID of a process started by the plugin.
+	 * 
+	 * @param process
+	 * @return The PID or -1 on Java 8, which doesn't expose it
+	 */
+	public static long getPid(Process process) {
+		try {
+			return (Long) Process.class.getMethod("pid").invoke(process);
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the PID and the start time of the process into the given file.
+	 * 
+	 * @param pidFile
+	 * @param pid
+	 * @throws IOException
+	 */
+	public static void writePid(File pidFile, long pid) throws IOException {
+		pidFile.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(pidFile), "UTF-8");
+		try {
+			writer.write(pid + "\n" + getStartTime(pid));
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Reads the PID from the given file.
+	 * 
+	 * @param pidFile
+	 * @return The PID or -1 in case the file doesn't exist or is invalid
+	 */
+	public static long readPid(File pidFile) {
+		return readPidFile(pidFile)[0];
+	}
+
+	/**
+	 * Returns whether or not the process of the given PID file is still the Virgo instance it has been
+	 * written for. The process has to run, its start time has to match the recorded one and its command line
+	 * has to refer to the Virgo root directory. Whatever of this cannot be determined on this platform is
+	 * skipped, but at least one of the start time and the command line has to be verified.
+	 * 
+	 * @param pidFile
+	 * @param virgoRoot
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isVirgoProcess(File pidFile, File virgoRoot) throws IOException {
+		long[] recorded = readPidFile(pidFile);
+		long pid = recorded[0];
+		if (pid < 0 || !isAlive(pid)) {
+			return false;
+		}
+		boolean verified = false;
+		long startTime = getStartTime(pid);
+		if (recorded[1] >= 0 && startTime >= 0) {
+			if (recorded[1] != startTime) {
+				return false;
+			}
+			verified = true;
+		}
+		String commandLine = getCommandLine(pid);
+		if (commandLine != null) {
+			if (commandLine.indexOf(virgoRoot.getAbsolutePath()) < 0
+					&& commandLine.indexOf(virgoRoot.getCanonicalPath()) < 0) {
+				return false;
+			}
+			verified = true;
+		}
+		return verified;
+	}
+
+	/*
+	 * Returns the PID and the start time recorded in the file, -1 for whatever is missing or invalid
+	 */
+	private static long[] readPidFile(File pidFile) {
+		long[] recorded = { -1, -1 };
+		if (!pidFile.isFile()) {
+			return recorded;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(pidFile));
+			try {
+				recorded[0] = Long.parseLong(reader.readLine().trim());
+				String startTime = reader.readLine();
+				if (startTime != null && startTime.trim().length() > 0) {
+					recorded[1] = Long.parseLong(startTime.trim());
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			// a file written by an older version has no start time
+		}
+		return recorded;
+	}
+
+	/*
+	 * Returns the start time of the process in milliseconds since the epoch, -1 if it is unknown
+	 */
+	private static long getStartTime(long pid) throws IOException {
+		Object info = getProcessInfo(pid);
+		if (info == null) {
+			return -1;
+		}
+		Object startInstant = invoke(invoke(info, PROCESS_INFO, "startInstant"), OPTIONAL, "orElse", null);
+		return startInstant == null ? -1 : (Long) invoke(startInstant, "java.time.Instant", "toEpochMilli");
+	}
+
+	/*
+	 * Returns the command line of the process, null if it is unknown
+	 */
+	private static String getCommandLine(long pid) throws IOException {
+		Object info = getProcessInfo(pid);
+		if (info != null) {
+			return (String) invoke(invoke(info, PROCESS_INFO, "commandLine"), OPTIONAL, "orElse", null);
+		}
+		if (getProcessHandle(pid) == NO_HANDLE_SUPPORT && !isWindows()) {
+			String commandLine = execute("ps", "-p", String.valueOf(pid), "-o", "args=").trim();
+			return commandLine.length() > 0 ? commandLine : null;
+		}
+		return null;
+	}
+
+	/*
+	 * Returns the ProcessHandle.Info of the PID, null if there is no such process or on Java 8
+	 */
+	private static Object getProcessInfo(long pid) throws IOException {
+		Object handle = getProcessHandle(pid);
+		if (handle == null || handle == NO_HANDLE_SUPPORT) {
+			return null;
+		}
+		return invoke(handle, "info");
+	}
+
+	/**
+	 * Returns whether or not the process with the given PID is still running.
+	 * 
+	 * @param pid
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isAlive(long pid) throws IOException {
+		Object handle = getProcessHandle(pid);
+		if (handle != NO_HANDLE_SUPPORT) {
+			return handle != null && (Boolean) invoke(handle, "isAlive");
+		}
+		if (isWindows()) {
+			return execute("tasklist", "/FI", "PID eq " + pid, "/NH").indexOf(" " + pid + " ") >= 0;
+		}
+		return executeForExitValue("kill", "-0", String.valueOf(pid)) == 0;
+	}
+
+	/**
+	 * Kills the process with the given PID forcibly.
+	 * 
+	 * @param pid
+	 * @throws IOException
+	 */
+	public static void kill(long pid) throws IOException {
+		Object handle = getProcessHandle(pid);
+		if (handle != NO_HANDLE_SUPPORT) {
+			if (handle != null) {
+				invoke(handle, "destroyForcibly");
+			}
+		} else if (isWindows()) {
+			execute("taskkill", "/F", "/PID", String.valueOf(pid));
+		} else {
+			executeForExitValue("kill", "-9", String.valueOf(pid));
+		}
+	}
+
+	/*
+	 * Returns the ProcessHandle of the PID, null if there is no such process and NO_HANDLE_SUPPORT on Java 8
+	 */
+	private static Object getProcessHandle(long pid) throws IOException {
+		Class<?> handleClass;
+		try {
+			handleClass = Class.forName(PROCESS_HANDLE);
+		} catch (ClassNotFoundException e) {
+			return NO_HANDLE_SUPPORT;
+		}
+		try {
+			Object optional = handleClass.getMethod("of", long.class).invoke(null, pid);
+			if (!(Boolean) invoke(optional, "isPresent")) {
+				return null;
+			}
+			return invoke(optional, "get");
+		} catch (Exception e) {
+			throw new IOException("Unable to access the process " + pid + ": " + e.getMessage());
+		}
+	}
+
+	private static Object invoke(Object target, String method) throws IOException {
+		return invoke(target, target instanceof java.util.Optional ? OPTIONAL : PROCESS_HANDLE, method);
+	}
+
+	private static Object invoke(Object target, String type, String method) throws IOException {
+		try {
+			// look the method up on the public interface/class, the implementation classes are not accessible
+			return Class.forName(type).getMethod(method).invoke(target);
+		} catch (Exception e) {
+			throw new IOException("Unable to invoke " + method + ": " + e.getMessage());
+		}
+	}
+
+	private static Object invoke(Object target, String type, String method, Object argument)
+			throws IOException {
+		try {
+			return Class.forName(type).getMethod(method, Object.class).invoke(target, argument);
+		} catch (Exception e) {
+			throw new IOException("Unable to invoke " + method + ": " + e.getMessage());
+		}
+	}
+
+	private static String execute(String... command) throws IOException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		StringBuilder output = new StringBuilder();
+		InputStream in = process.getInputStream();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				output.append(line).append('\n');
+			}
+			process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			in.close();
+		}
+		return output.toString();
+	}
+
+	private static int executeForExitValue(String... command) throws IOException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		try {
+			InputStream in = process.getInputStream();
+			while (in.read() >= 0) {
+				// discard the output
+			}
+			in.close();
+			return process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
+	}
+
+}
@@ -0,0 +1,262 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Virgo plan referencing a set of artefacts (usually all bundles of a reactor build) by their symbolic
+ * name and exact version, so that all of them are resolved and committed by Virgo in a single pass. The
+ * referenced artefacts have to be available in one of Virgo's repositories, they are staged into a
+ * repository directory (e.g. <code>repository/usr</code>) under the name
+ * <code>&lt;symbolic name&gt;-&lt;version&gt;.&lt;extension&gt;</code>. See the <a
+ * href="http://www.eclipse.org/virgo/documentation/">Virgo documentation</a> for the plan format.
+ * 
+ * @author Frieder Heugel
+ */
+public class ReactorPlan {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private final String name;
+	private final String version;
+	private final boolean scoped;
+	private final boolean atomic;
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Creates a new, empty plan.
+	 * 
+	 * @param name
+	 *            The symbolic name of the plan
+	 * @param version
+	 *            The OSGi version of the plan
+	 * @param scoped
+	 *            Whether or not the artefacts of the plan are isolated from other artefacts
+	 * @param atomic
+	 *            Whether or not the artefacts of the plan share their life cycle
+	 */
+	public ReactorPlan(String name, String version, boolean scoped, boolean atomic) {
+		this.name = name;
+		this.version = version;
+		this.scoped = scoped;
+		this.atomic = atomic;
+	}
+
+	/**
+	 * Adds an artefact to the plan. Artefacts are started in the order they have been added.
+	 * 
+	 * @param artefact
+	 *            A bundle (<code>jar</code>, <code>war</code>) or <code>par</code> file
+	 * @param manifest
+	 *            The manifest of the artefact which has to provide a symbolic name
+	 * @throws IllegalArgumentException
+	 *             In case the artefact is neither a bundle nor a PAR or doesn't have a symbolic name
+	 */
+	public void add(File artefact, BundleManifest manifest) {
+		String extension = getExtension(artefact);
+		String type;
+		if ("jar".equals(extension) || "war".equals(extension)) {
+			type = "bundle";
+		} else if ("par".equals(extension)) {
+			type = "par";
+		} else {
+			throw new IllegalArgumentException(artefact.getName() + " can not be part of a plan");
+		}
+		if (manifest == null || manifest.getSymbolicName() == null) {
+			throw new IllegalArgumentException(artefact.getName() + " doesn't declare a symbolic name");
+		}
+		String artefactVersion = manifest.getVersion() != null ? manifest.getVersion() : "0.0.0";
+		entries.add(new Entry(artefact, type, manifest.getSymbolicName(), artefactVersion));
+	}
+
+	/**
+	 * Writes the plan file. The file is only touched in case its content changes.
+	 * 
+	 * @param planFile
+	 * @return <code>true</code> in case the plan has been written, <code>false</code> if it was up to date
+	 * @throws IOException
+	 */
+	public boolean write(File planFile) throws IOException {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<plan name=\"").append(escape(name)).append("\" version=\"").append(escape(version));
+		xml.append("\" scoped=\"").append(scoped).append("\" atomic=\"").append(atomic).append("\"\n");
+		xml.append("\txmlns=\"http://www.eclipse.org/virgo/schema/plan\"\n");
+		xml.append("\txmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+		xml.append("\txsi:schemaLocation=\"http://www.eclipse.org/virgo/schema/plan ");
+		xml.append("http://www.eclipse.org/virgo/schema/plan/eclipse-virgo-plan.xsd\">\n");
+		for (Entry entry : entries) {
+			xml.append("\t<artifact type=\"").append(entry.getType()).append("\" name=\"");
+			xml.append(escape(entry.getName())).append("\" version=\"[").append(escape(entry.getVersion()));
+			xml.append(", ").append(escape(entry.getVersion())).append("]\"/>\n");
+		}
+		xml.append("</plan>\n");
+		byte[] content = xml.toString().getBytes(UTF8);
+		if (planFile.isFile() && Arrays.equals(content, Files.readAllBytes(planFile.toPath()))) {
+			return false;
+		}
+		planFile.getParentFile().mkdirs();
+		Files.write(planFile.toPath(), content);
+		return true;
+	}
+
+	/**
+	 * Copies the artefacts of the plan into the given repository directory. Artefacts whose size and
+	 * modification time match the staged copy are skipped. Every copy is written next to the repository
+	 * first and then moved into it, so a watched repository never sees a partially written file.
+	 * 
+	 * @param repositoryDirectory
+	 * @param tempDirectory
+	 *            The directory the copies are written to before they are moved into the repository
+	 * @return The entries which have been staged
+	 * @throws IOException
+	 */
+	public List<Entry> stage(File repositoryDirectory, File tempDirectory) throws IOException {
+		List<Entry> staged = new ArrayList<Entry>();
+		for (Entry entry : entries) {
+			File artefact = entry.getArtefact();
+			File target = new File(repositoryDirectory, entry.getRepositoryName());
+			if (target.isFile() && target.length() == artefact.length()
+					&& target.lastModified() == artefact.lastModified()) {
+				continue;
+			}
+			if (!repositoryDirectory.isDirectory() && !repositoryDirectory.mkdirs()) {
+				throw new IOException("Unable to create the repository directory " + repositoryDirectory);
+			}
+			tempDirectory.mkdirs();
+			File temp = new File(tempDirectory, entry.getRepositoryName());
+			PickupDeployer.copy(artefact, temp);
+			temp.setLastModified(artefact.lastModified());
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			staged.add(entry);
+		}
+		return staged;
+	}
+
+	/**
+	 * Removes the staged artefacts of the plan from the given repository directory.
+	 * 
+	 * @param repositoryDirectory
+	 * @return The number of files removed
+	 * @throws IOException
+	 */
+	public int unstage(File repositoryDirectory) throws IOException {
+		int removed = 0;
+		for (Entry entry : entries) {
+			if (Files.deleteIfExists(new File(repositoryDirectory, entry.getRepositoryName()).toPath())) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns the symbolic name of the plan.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the version of the plan.
+	 * 
+	 * @return
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the artefacts of the plan.
+	 * 
+	 * @return
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	private static String getExtension(File artefact) {
+		String fileName = artefact.getName();
+		return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * An artefact referenced by the plan.
+	 */
+	public static class Entry {
+		private final File artefact;
+		private final String type;
+		private final String name;
+		private final String version;
+
+		private Entry(File artefact, String type, String name, String version) {
+			this.artefact = artefact;
+			this.type = type;
+			this.name = name;
+			this.version = version;
+		}
+
+		/**
+		 * Returns the artefact file within the reactor.
+		 * 
+		 * @return
+		 */
+		public File getArtefact() {
+			return artefact;
+		}
+
+		/**
+		 * Returns the type of the artefact, either <code>bundle</code> or <code>par</code>.
+		 * 
+		 * @return
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the symbolic name of the artefact.
+		 * 
+		 * @return
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the version of the artefact.
+		 * 
+		 * @return
+		 */
+		public String getVersion() {
+			return version;
+		}
+
+		/**
+		 * Returns the name of the artefact within the repository.
+		 * 
+		 * @return
+		 */
+		public String getRepositoryName() {
+			return name + "-" + version + "." + getExtension(artefact);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes lines to a file of bounded size. Once the file exceeds the maximum size it is renamed to
+ * <code>&lt;name&gt;.1</code>, existing backups are shifted (<code>.1</code> becomes <code>.2</code> and so
+ * on) and the oldest backup is deleted. Existing files are rotated when the writer is created, so every
+ * writer starts with an empty file.
+ * 
+ * @author Frieder Heugel
+ */
+public class RotatingFileWriter {
+	private final File file;
+	private final long maxSize;
+	private final int backups;
+	private OutputStream out;
+	private long size;
+
+	/**
+	 * Creates a new writer.
+	 * 
+	 * @param file
+	 * @param maxSize
+	 *            The maximum size of a single file in bytes
+	 * @param backups
+	 *            The number of rotated files to keep
+	 * @throws IOException
+	 */
+	public RotatingFileWriter(File file, long maxSize, int backups) throws IOException {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.backups = backups;
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		if (file.exists()) {
+			rotate();
+		}
+		out = new FileOutputStream(file);
+	}
+
+	/**
+	 * Appends a line to the file, rotating the file first in case it is full.
+	 * 
+	 * @param line
+	 * @throws IOException
+	 */
+	public synchronized void writeLine(String line) throws IOException {
+		byte[] bytes = (line + System.getProperty("line.separator")).getBytes("UTF-8");
+		if (size > 0 && size + bytes.length > maxSize) {
+			out.close();
+			rotate();
+			out = new FileOutputStream(file);
+			size = 0;
+		}
+		out.write(bytes);
+		size += bytes.length;
+	}
+
+	/**
+	 * Writes buffered data to the file.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Closes the current file.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+	/*
+	 * Shift the backups by one and turn the current file into the first backup
+	 */
+	private void rotate() throws IOException {
+		new File(file.getPath() + "." + backups).delete();
+		for (int i = backups - 1; i >= 1; i--) {
+			File backup = new File(file.getPath() + "." + i);
+			if (backup.exists()) {
+				backup.renameTo(new File(file.getPath() + "." + (i + 1)));
+			}
+		}
+		if (backups > 0) {
+			if (!file.renameTo(new File(file.getPath() + ".1"))) {
+				throw new IOException("Unable to rotate " + file);
+			}
+		} else if (!file.delete()) {
+			throw new IOException("Unable to delete " + file);
+		}
+	}
+
+	/**
+	 * Returns the file currently written to.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+}
@@ -0,0 +1,129 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads and writes the descriptor of a pool of Virgo instances started by the start goal. The pool
+ * directory contains the instances themselves (<code>instance-1</code>, <code>instance-2</code>, ...), the
+ * descriptor <code>pool.properties</code> used by the other goals to fan out to all instances and one
+ * <code>instance-&lt;n&gt;.properties</code> file per instance. The latter are meant to be handed to the
+ * forks of surefire/failsafe, e.g. via
+ * <code>&lt;virgo.instance&gt;${virgo.pool.dir}/instance-${surefire.forkNumber}.properties&lt;/virgo.instance&gt;</code>
+ * in <code>systemPropertyVariables</code>.
+ * 
+ * @author Frieder Heugel
+ */
+public final class ServerPool {
+	/**
+	 * The name of the pool descriptor.
+	 */
+	public static final String DESCRIPTOR = "pool.properties";
+
+	private ServerPool() {
+	}
+
+	/**
+	 * Returns the directory of the instance with the given number.
+	 * 
+	 * @param poolDirectory
+	 * @param number
+	 *            The number of the instance, starting with 1
+	 * @return
+	 */
+	public static File getInstanceDirectory(File poolDirectory, int number) {
+		return new File(poolDirectory, "instance-" + number);
+	}
+
+	/**
+	 * Writes the pool descriptor and the instance files.
+	 * 
+	 * @param poolDirectory
+	 * @param targets
+	 * @throws IOException
+	 */
+	public static void write(File poolDirectory, List<VirgoTarget> targets) throws IOException {
+		Properties pool = new Properties();
+		pool.setProperty("pool.size", String.valueOf(targets.size()));
+		for (int i = 0; i < targets.size(); i++) {
+			Properties instance = toProperties(targets.get(i));
+			for (String key : instance.stringPropertyNames()) {
+				pool.setProperty("instance." + (i + 1) + "." + key, instance.getProperty(key));
+			}
+			store(instance, new File(poolDirectory, "instance-" + (i + 1) + ".properties"), "Virgo instance "
+					+ targets.get(i).getName());
+		}
+		store(pool, new File(poolDirectory, DESCRIPTOR), "Virgo server pool");
+	}
+
+	/**
+	 * Reads the pool descriptor.
+	 * 
+	 * @param poolDirectory
+	 * @return The instances of the pool
+	 * @throws IOException
+	 *             In case there is no pool descriptor
+	 */
+	public static List<VirgoTarget> read(File poolDirectory) throws IOException {
+		File descriptor = new File(poolDirectory, DESCRIPTOR);
+		if (!descriptor.isFile()) {
+			throw new IOException("No server pool found at " + poolDirectory + ", has it been started?");
+		}
+		Properties pool = new Properties();
+		InputStream in = new FileInputStream(descriptor);
+		try {
+			pool.load(in);
+		} finally {
+			in.close();
+		}
+		List<VirgoTarget> targets = new ArrayList<VirgoTarget>();
+		int size = Integer.parseInt(pool.getProperty("pool.size", "0"));
+		for (int i = 1; i <= size; i++) {
+			String prefix = "instance." + i + ".";
+			targets.add(new VirgoTarget(pool.getProperty(prefix + "name"), new File(pool.getProperty(prefix
+					+ "root")), Integer.parseInt(pool.getProperty(prefix + "jmxport")), pool.getProperty(prefix
+					+ "serviceurl"), Integer.parseInt(pool.getProperty(prefix + "httpport", "-1"))));
+		}
+		return targets;
+	}
+
+	/**
+	 * Writes the connection details of a single instance, using the same format as the instance files of a
+	 * pool.
+	 * 
+	 * @param file
+	 * @param target
+	 * @throws IOException
+	 */
+	public static void writeInstance(File file, VirgoTarget target) throws IOException {
+		store(toProperties(target), file, "Virgo instance " + target.getName());
+	}
+
+	private static Properties toProperties(VirgoTarget target) {
+		Properties properties = new Properties();
+		properties.setProperty("name", target.getName());
+		properties.setProperty("root", target.getVirgoRoot().getAbsolutePath());
+		properties.setProperty("jmxport", String.valueOf(target.getJmxPort()));
+		properties.setProperty("serviceurl", target.getServiceUrl());
+		properties.setProperty("httpport", String.valueOf(target.getHttpPort()));
+		return properties;
+	}
+
+	private static void store(Properties properties, File file, String comment) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, comment);
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Runs actions once the Maven session is over, i.e. after the last project of the reactor has been built or
+ * the build has failed. A plugin cannot register an execution listener in the usual way without being a
+ * build extension, therefore the listener of the session's request is wrapped. All events are passed on to
+ * the original listener, which e.g. prints the build summary.
+ * 
+ * @author Frieder Heugel
+ */
+public final class SessionEndListener implements ExecutionListener {
+	private final ExecutionListener delegate;
+	private final List<Runnable> actions = new ArrayList<Runnable>();
+
+	private SessionEndListener(ExecutionListener delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Registers an action which is run at the end of the given session.
+	 * 
+	 * @param session
+	 * @param action
+	 * @return Whether or not the action has been registered, which fails in case the session has no request
+	 */
+	public static boolean register(MavenSession session, Runnable action) {
+		MavenExecutionRequest request = session.getRequest();
+		if (request == null) {
+			return false;
+		}
+		synchronized (request) {
+			ExecutionListener listener = request.getExecutionListener();
+			if (!(listener instanceof SessionEndListener)) {
+				listener = new SessionEndListener(listener);
+				request.setExecutionListener(listener);
+			}
+			((SessionEndListener) listener).add(action);
+		}
+		return true;
+	}
+
+	private synchronized void add(Runnable action) {
+		actions.add(action);
+	}
+
+	public void sessionEnded(ExecutionEvent event) {
+		try {
+			if (delegate != null) {
+				delegate.sessionEnded(event);
+			}
+		} finally {
+			List<Runnable> pending;
+			synchronized (this) {
+				pending = new ArrayList<Runnable>(actions);
+				actions.clear();
+			}
+			for (Runnable action : pending) {
+				try {
+					action.run();
+				} catch (RuntimeException e) {
+					// the remaining actions must run anyway
+				}
+			}
+		}
+	}
+
+	public void projectDiscoveryStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.projectDiscoveryStarted(event);
+		}
+	}
+
+	public void sessionStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.sessionStarted(event);
+		}
+	}
+
+	public void projectSkipped(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.projectSkipped(event);
+		}
+	}
+
+	public void projectStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.projectStarted(event);
+		}
+	}
+
+	public void projectSucceeded(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.projectSucceeded(event);
+		}
+	}
+
+	public void projectFailed(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.projectFailed(event);
+		}
+	}
+
+	public void mojoSkipped(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.mojoSkipped(event);
+		}
+	}
+
+	public void mojoStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.mojoStarted(event);
+		}
+	}
+
+	public void mojoSucceeded(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.mojoSucceeded(event);
+		}
+	}
+
+	public void mojoFailed(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.mojoFailed(event);
+		}
+	}
+
+	public void forkStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkStarted(event);
+		}
+	}
+
+	public void forkSucceeded(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkSucceeded(event);
+		}
+	}
+
+	public void forkFailed(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkFailed(event);
+		}
+	}
+
+	public void forkedProjectStarted(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkedProjectStarted(event);
+		}
+	}
+
+	public void forkedProjectSucceeded(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkedProjectSucceeded(event);
+		}
+	}
+
+	public void forkedProjectFailed(ExecutionEvent event) {
+		if (delegate != null) {
+			delegate.forkedProjectFailed(event);
+		}
+	}
+
+}
@@ -0,0 +1,348 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Provides an <code>SSLContext</code> per Virgo keystore, so goals talking to servers with different
+ * keystores can run in the same JVM without touching the <code>javax.net.ssl.trustStore</code> system
+ * property. The RMI stub of a JMX connector server is created by the server and always connects through the
+ * JVM's default SSL socket factory, a socket factory passed in the environment of the client is not used for
+ * it. Therefore the registry installs a default context for the duration of the Maven session which routes
+ * every socket by its endpoint to the context registered for it. The host name of the stub is chosen by the
+ * server, so endpoints are also matched by their resolved address and endpoints on this machine by all
+ * addresses of the local host. Sockets to other endpoints are created by the original default context.
+ * Contexts are built once per keystore and kept for the lifetime of the plugin, their client session cache
+ * lets reconnects resume the TLS session instead of doing a full handshake.
+ * 
+ * @author Frieder Heugel
+ */
+public final class SslContextRegistry {
+	private static final int SESSION_CACHE_SIZE = 64;
+	private static final int SESSION_TIMEOUT = 3600;
+	private static final Map<String, SSLContext> CONTEXTS = new HashMap<String, SSLContext>();
+	private static final Map<String, Target> ENDPOINTS = new HashMap<String, Target>();
+	private static SSLContext original;
+	private static MavenSession session;
+
+	private SslContextRegistry() {
+	}
+
+	/**
+	 * Routes all SSL connections to the given endpoint through a context trusting the given keystore. The
+	 * context is only built once the first connection is opened, so a keystore which cannot be read only
+	 * fails in case the server actually uses SSL.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param keystore
+	 * @param password
+	 *            The keystore password, may be <code>null</code> since only certificates are read
+	 * @throws NoSuchAlgorithmException
+	 *             In case the default context of the JVM cannot be created
+	 */
+	public static synchronized void register(String host, int port, File keystore, String password)
+			throws NoSuchAlgorithmException {
+		install();
+		Target target = new Target(keystore, password);
+		ENDPOINTS.put(host + ":" + port, target);
+		// the host name of the stub is chosen by the server and rarely matches the one of the service URL
+		List<String> addresses = resolve(host);
+		if (isLocal(host)) {
+			// unless java.rmi.server.hostname is set the stub of a local server uses the local host address
+			try {
+				InetAddress localHost = InetAddress.getLocalHost();
+				addresses.add(localHost.getHostName());
+				addresses.addAll(resolve(localHost.getHostName()));
+			} catch (UnknownHostException e) {
+				// only the addresses of the service URL can be matched then
+			}
+		}
+		for (String address : addresses) {
+			ENDPOINTS.put(address + ":" + port, target);
+		}
+	}
+
+	private static List<String> resolve(String host) {
+		List<String> addresses = new ArrayList<String>();
+		try {
+			for (InetAddress address : InetAddress.getAllByName(host)) {
+				addresses.add(address.getHostAddress());
+			}
+		} catch (UnknownHostException e) {
+			// only the name can be matched then
+		}
+		return addresses;
+	}
+
+	/*
+	 * Whether the host is this machine, i.e. a loopback address or the address of a local interface
+	 */
+	private static boolean isLocal(String host) {
+		try {
+			for (InetAddress address : InetAddress.getAllByName(host)) {
+				if (address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null) {
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			// an unknown host cannot be a local one
+		}
+		return false;
+	}
+
+	/**
+	 * Makes the routing context the default context of the JVM, this has to happen before the first SSL RMI
+	 * connection is opened since the RMI socket factory keeps the default socket factory it found.
+	 * 
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static synchronized void install() throws NoSuchAlgorithmException {
+		if (original == null) {
+			original = SSLContext.getDefault();
+			SSLContext.setDefault(new RoutingContext(original));
+		}
+	}
+
+	/**
+	 * Forgets all registered endpoints and restores the default context the JVM had before
+	 * {@link #install()}. The RMI socket factory may still hold the socket factory of the routing context, it
+	 * creates all sockets through the original default context from now on.
+	 */
+	public static synchronized void uninstall() {
+		ENDPOINTS.clear();
+		if (original != null) {
+			SSLContext.setDefault(original);
+			original = null;
+		}
+	}
+
+	/**
+	 * Binds the registry to the given Maven session, the original default context is restored once the
+	 * session ends. In case the registry has been used by a different session before (e.g. in an embedded
+	 * Maven) the endpoints of the old session are forgotten.
+	 * 
+	 * @param currentSession
+	 */
+	public static synchronized void bindSession(MavenSession currentSession) {
+		if (session != null && session != currentSession) {
+			uninstall();
+		}
+		if (currentSession != null && currentSession != session) {
+			SessionEndListener.register(currentSession, new Runnable() {
+				public void run() {
+					uninstall();
+				}
+			});
+		}
+		session = currentSession;
+	}
+
+	/**
+	 * Returns the context trusting the given keystore, the context is created on first use.
+	 * 
+	 * @param keystore
+	 * @param password
+	 * @return
+	 * @throws IOException
+	 *             In case the keystore cannot be read
+	 */
+	public static synchronized SSLContext getContext(File keystore, String password) throws IOException {
+		String key = keystore.getAbsolutePath() + "|" + keystore.length() + "|" + keystore.lastModified();
+		SSLContext context = CONTEXTS.get(key);
+		if (context == null) {
+			try {
+				context = createContext(keystore, password);
+			} catch (GeneralSecurityException e) {
+				throw new IOException("Cannot create an SSL context from " + keystore, e);
+			}
+			CONTEXTS.put(key, context);
+		}
+		return context;
+	}
+
+	private static SSLContext createContext(File keystore, String password) throws IOException,
+			GeneralSecurityException {
+		KeyStore store = KeyStore.getInstance(KeyStore.getDefaultType());
+		InputStream in = new FileInputStream(keystore);
+		try {
+			store.load(in, password == null ? null : password.toCharArray());
+		} finally {
+			in.close();
+		}
+		TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		factory.init(store);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, factory.getTrustManagers(), null);
+		context.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+		context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT);
+		return context;
+	}
+
+	/*
+	 * The socket factory for the given endpoint, the original default factory for unknown endpoints
+	 */
+	private static SSLSocketFactory getSocketFactory(String host, int port) throws IOException {
+		Target target;
+		synchronized (SslContextRegistry.class) {
+			target = ENDPOINTS.get(host + ":" + port);
+		}
+		// resolving may take a while, don't block other connections meanwhile
+		List<String> addresses = target == null ? resolve(host) : new ArrayList<String>();
+		SSLContext fallback;
+		synchronized (SslContextRegistry.class) {
+			for (int i = 0; target == null && i < addresses.size(); i++) {
+				target = ENDPOINTS.get(addresses.get(i) + ":" + port);
+			}
+			fallback = original;
+		}
+		if (target != null) {
+			return getContext(target.keystore, target.password).getSocketFactory();
+		}
+		if (fallback == null) {
+			// the routing factory is still used by the RMI socket factory after the context was uninstalled
+			try {
+				fallback = SSLContext.getDefault();
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+		return fallback.getSocketFactory();
+	}
+
+	private static class Target {
+		private final File keystore;
+		private final String password;
+
+		public Target(File keystore, String password) {
+			this.keystore = keystore.getAbsoluteFile();
+			this.password = password;
+		}
+	}
+
+	/*
+	 * Behaves like the original default context apart from the socket factory
+	 */
+	private static class RoutingContext extends SSLContext {
+		public RoutingContext(final SSLContext delegate) {
+			super(new SSLContextSpi() {
+				private final SSLSocketFactory socketFactory = new RoutingSocketFactory(delegate.getSocketFactory());
+
+				@Override
+				protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr)
+						throws KeyManagementException {
+					throw new KeyManagementException("The default context is already initialized");
+				}
+
+				@Override
+				protected SSLSocketFactory engineGetSocketFactory() {
+					return socketFactory;
+				}
+
+				@Override
+				protected SSLServerSocketFactory engineGetServerSocketFactory() {
+					return delegate.getServerSocketFactory();
+				}
+
+				@Override
+				protected SSLEngine engineCreateSSLEngine() {
+					return delegate.createSSLEngine();
+				}
+
+				@Override
+				protected SSLEngine engineCreateSSLEngine(String host, int port) {
+					return delegate.createSSLEngine(host, port);
+				}
+
+				@Override
+				protected SSLSessionContext engineGetServerSessionContext() {
+					return delegate.getServerSessionContext();
+				}
+
+				@Override
+				protected SSLSessionContext engineGetClientSessionContext() {
+					return delegate.getClientSessionContext();
+				}
+			}, delegate.getProvider(), delegate.getProtocol());
+		}
+	}
+
+	private static class RoutingSocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory delegate;
+
+		public RoutingSocketFactory(SSLSocketFactory delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return delegate.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			// unconnected sockets are layered by the caller later on
+			return delegate.createSocket();
+		}
+
+		@Override
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+			return getSocketFactory(host, port).createSocket(socket, host, port, autoClose);
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return getSocketFactory(host, port).createSocket(host, port);
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+			return getSocketFactory(host, port).createSocket(host, port, localHost, localPort);
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return getSocketFactory(host.getHostName(), port).createSocket(host, port);
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+				throws IOException {
+			return getSocketFactory(address.getHostName(), port).createSocket(address, port, localAddress,
+					localPort);
+		}
+	}
+
+}
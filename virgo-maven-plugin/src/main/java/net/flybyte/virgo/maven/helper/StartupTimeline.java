@@ -0,0 +1,245 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a timeline of a Virgo startup from the console output of the server. Console lines look like
+ * <code>[2011-06-27 10:39:15.460] start-signalling-1 &lt;DE0005I&gt; Started bundle 'a.b' version '1.0.0'.</code>
+ * The timeline contains the kernel and user region milestones as well as the time every artefact took to
+ * install and to start, which shows which artefacts make the server slow to boot.
+ * 
+ * @author Frieder Heugel
+ */
+public class StartupTimeline {
+	private static final Pattern LINE_PATTERN = Pattern
+			.compile("^\\[(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3})\\].*?<([A-Z]{2}\\d{4}[IWE])>\\s*(.*)$");
+	private static final Pattern ARTEFACT_PATTERN = Pattern.compile("(\\w+) '([^']+)' version '([^']+)'");
+	private final String readyMarker;
+	private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	private final Map<String, Long> milestones = new LinkedHashMap<String, Long>();
+	private final Map<String, Artefact> artefacts = new LinkedHashMap<String, Artefact>();
+	private long firstTimestamp = -1;
+	private long readyTimestamp = -1;
+
+	/**
+	 * Creates a new timeline.
+	 * 
+	 * @param readyMarker
+	 *            The log code signalling that the server is fully up, e.g. <code>UR0001I</code>
+	 */
+	public StartupTimeline(String readyMarker) {
+		this.readyMarker = readyMarker;
+	}
+
+	/**
+	 * Processes a line of the console output, lines not containing a Virgo log code are ignored.
+	 * 
+	 * @param line
+	 */
+	public synchronized void process(String line) {
+		Matcher matcher = LINE_PATTERN.matcher(line);
+		if (!matcher.matches()) {
+			return;
+		}
+		long timestamp;
+		try {
+			timestamp = format.parse(matcher.group(1)).getTime();
+		} catch (ParseException e) {
+			return;
+		}
+		if (firstTimestamp < 0) {
+			firstTimestamp = timestamp;
+		}
+		String code = matcher.group(2);
+		String message = matcher.group(3);
+		if ("KE0001I".equals(code)) {
+			milestones.put("Kernel starting", timestamp);
+		} else if ("KE0002I".equals(code)) {
+			milestones.put("Kernel started", timestamp);
+		} else if ("UR0001I".equals(code)) {
+			milestones.put("User region ready", timestamp);
+		} else if (code.startsWith("DE")) {
+			processArtefactEvent(code, message, timestamp);
+		}
+		if (code.equals(readyMarker) && readyTimestamp < 0) {
+			readyTimestamp = timestamp;
+			milestones.put("Fully up (" + readyMarker + ")", timestamp);
+		}
+	}
+
+	private void processArtefactEvent(String code, String message, long timestamp) {
+		Matcher matcher = ARTEFACT_PATTERN.matcher(message);
+		if (!matcher.find()) {
+			return;
+		}
+		String key = matcher.group(1) + " " + matcher.group(2) + " " + matcher.group(3);
+		Artefact artefact = artefacts.get(key);
+		if (artefact == null) {
+			artefact = new Artefact(key);
+			artefacts.put(key, artefact);
+		}
+		if ("DE0000I".equals(code)) {
+			artefact.installing = timestamp;
+		} else if ("DE0001I".equals(code)) {
+			artefact.installed = timestamp;
+		} else if ("DE0004I".equals(code)) {
+			artefact.starting = timestamp;
+		} else if ("DE0005I".equals(code)) {
+			artefact.started = timestamp;
+		} else if ("DE0006E".equals(code)) {
+			artefact.started = timestamp;
+			artefact.failed = true;
+		}
+	}
+
+	/**
+	 * Returns whether or not the ready marker has been seen.
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isReady() {
+		return readyTimestamp >= 0;
+	}
+
+	/**
+	 * Returns the artefacts ordered by the time they took to start, the slowest first.
+	 * 
+	 * @return
+	 */
+	public synchronized List<Artefact> getSlowestArtefacts() {
+		List<Artefact> sorted = new ArrayList<Artefact>(artefacts.values());
+		Collections.sort(sorted, new Comparator<Artefact>() {
+			public int compare(Artefact a, Artefact b) {
+				return Long.valueOf(b.getStartDuration()).compareTo(a.getStartDuration());
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Returns the time between the first console line and the ready marker in ms, -1 if the ready marker has
+	 * not been seen yet.
+	 * 
+	 * @return
+	 */
+	public synchronized long getStartupDuration() {
+		return readyTimestamp < 0 ? -1 : readyTimestamp - firstTimestamp;
+	}
+
+	/**
+	 * Writes the timeline as a plain text report. All times are relative to the first console line.
+	 * 
+	 * @param report
+	 * @throws IOException
+	 */
+	public synchronized void write(File report) throws IOException {
+		StringBuilder text = new StringBuilder();
+		text.append("Virgo startup timeline (times relative to the first console message)\n\n");
+		text.append("Milestones\n");
+		long previous = firstTimestamp;
+		for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+			text.append(String.format("  %+9dms  %-30s (+%dms)%n", milestone.getValue() - firstTimestamp,
+					milestone.getKey(), milestone.getValue() - previous));
+			previous = milestone.getValue();
+		}
+		if (readyTimestamp < 0) {
+			text.append("  The server did not report '" + readyMarker + "' yet\n");
+		}
+		text.append("\nArtefacts (slowest start first)\n");
+		text.append(String.format("  %10s  %10s  %10s  %s%n", "start at", "install", "start", "artefact"));
+		for (Artefact artefact : getSlowestArtefacts()) {
+			text.append(String.format("  %+8dms  %10s  %10s  %s%s%n", artefact.getFirstTimestamp()
+					- firstTimestamp, formatDuration(artefact.getInstallDuration()),
+					formatDuration(artefact.getStartDuration()), artefact.name, artefact.failed ? " (failed)" : ""));
+		}
+		if (report.getParentFile() != null) {
+			report.getParentFile().mkdirs();
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(report), "UTF-8");
+		try {
+			writer.write(text.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String formatDuration(long duration) {
+		return duration < 0 ? "-" : duration + "ms";
+	}
+
+	/**
+	 * The install and start events of a single artefact.
+	 */
+	public static class Artefact {
+		private final String name;
+		private long installing = -1;
+		private long installed = -1;
+		private long starting = -1;
+		private long started = -1;
+		private boolean failed;
+
+		public Artefact(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the type, name and version of the artefact.
+		 * 
+		 * @return
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the time the installation took in ms, -1 if unknown.
+		 * 
+		 * @return
+		 */
+		public long getInstallDuration() {
+			return installing >= 0 && installed >= 0 ? installed - installing : -1;
+		}
+
+		/**
+		 * Returns the time the start took in ms, -1 if unknown.
+		 * 
+		 * @return
+		 */
+		public long getStartDuration() {
+			return starting >= 0 && started >= 0 ? started - starting : -1;
+		}
+
+		/**
+		 * Returns whether or not the artefact failed to start.
+		 * 
+		 * @return
+		 */
+		public boolean isFailed() {
+			return failed;
+		}
+
+		private long getFirstTimestamp() {
+			for (long timestamp : new long[] { installing, installed, starting, started }) {
+				if (timestamp >= 0) {
+					return timestamp;
+				}
+			}
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,322 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Executes a goal against several servers, i.e. the instances of the server pool or the list of target
+ * servers. Either all of them are handled concurrently (fan-out), or the artefact is rolled out in batches
+ * with a health gate in between (rolling rollout). What is executed against a single server is defined by
+ * the {@link Goal}.
+ * 
+ * @author Frieder Heugel
+ */
+public class TargetExecutor {
+	private static final long HEALTH_PROBE_INTERVAL = 500;
+	private final Goal goal;
+	private final int parallelTargets;
+	private final boolean failFast;
+	private final Log logger;
+
+	/**
+	 * Creates a new executor.
+	 * 
+	 * @param goal
+	 * @param parallelTargets
+	 *            The maximum number of targets handled at a time, 0 for all of them
+	 * @param failFast
+	 *            Defines whether or not the targets which have not been started yet are skipped once the goal
+	 *            failed for one of them
+	 * @param logger
+	 */
+	public TargetExecutor(Goal goal, int parallelTargets, boolean failFast, Log logger) {
+		this.goal = goal;
+		this.parallelTargets = parallelTargets;
+		this.failFast = failFast;
+		this.logger = logger;
+	}
+
+	/**
+	 * Executes the goal concurrently against each of the given targets.
+	 * 
+	 * @param targets
+	 * @throws ExecutionException
+	 *             In case the goal failed for any of the targets
+	 */
+	public void fanOut(List<VirgoTarget> targets) throws ExecutionException {
+		ExecutionReport report = executeConcurrently(targets, "Summary of " + targets.size() + " instances",
+				false, null, 0);
+		report.log(logger);
+		if (report.hasFailures()) {
+			String skipped = report.getSkippedCount() > 0 ? ", " + report.getSkippedCount() + " skipped" : "";
+			throw new ExecutionException("The goal failed on " + report.getFailureCount() + " of "
+					+ targets.size() + " instances: " + report.getFailedNames() + skipped, null);
+		}
+	}
+
+	/**
+	 * Executes the goal against the given targets in batches. A batch is finished once the goal succeeded
+	 * on each of its targets and the health URL answers, only then the next batch is started. In case any
+	 * target of a batch fails the rollout is halted and, with <code>rollback</code>, all targets updated so
+	 * far are rolled back to the artefact kept by the last successful rollout. The duration of every batch is
+	 * printed in the summary.
+	 * 
+	 * @param targets
+	 * @param batchSize
+	 * @param healthUrl
+	 *            The URL to probe after every target of a batch, see {@link HealthCheck#resolveUrl}, or
+	 *            <code>null</code>
+	 * @param healthTimeout
+	 * @param rollbackCache
+	 *            The directory keeping the artefact of the last successful rollout per target
+	 * @param rollback
+	 * @throws ExecutionException
+	 *             In case the rollout has been halted
+	 */
+	public void rollOut(List<VirgoTarget> targets, int batchSize, String healthUrl, int healthTimeout,
+			File rollbackCache, boolean rollback) throws ExecutionException {
+		List<List<VirgoTarget>> batches = getBatches(targets, batchSize);
+		ExecutionReport summary = new ExecutionReport("Rolling rollout to " + targets.size()
+				+ " instances in " + batches.size() + " batches");
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < batches.size(); i++) {
+			List<String> batch = new ArrayList<String>();
+			for (VirgoTarget target : batches.get(i)) {
+				batch.add(target.getName());
+			}
+			names.add("batch " + (i + 1) + " " + batch);
+		}
+		List<VirgoTarget> updated = new ArrayList<VirgoTarget>();
+		for (int i = 0; i < batches.size(); i++) {
+			List<VirgoTarget> batch = batches.get(i);
+			String name = names.get(i);
+			logger.info("Rolling out " + name);
+			long start = System.currentTimeMillis();
+			ExecutionReport report = executeConcurrently(batch, "Summary of " + name, true, healthUrl,
+					healthTimeout);
+			report.log(logger);
+			// failed nodes may still run the previous artefact, only the ones which passed are rolled back
+			List<String> succeeded = report.getSucceededNames();
+			for (VirgoTarget target : batch) {
+				if (succeeded.contains(target.getName())) {
+					updated.add(target);
+				}
+			}
+			if (!report.hasFailures()) {
+				summary.success(name, System.currentTimeMillis() - start);
+				continue;
+			}
+			summary.failure(name, System.currentTimeMillis() - start, new IllegalStateException("failed on "
+					+ report.getFailedNames()));
+			for (int j = i + 1; j < batches.size(); j++) {
+				summary.skipped(names.get(j));
+			}
+			summary.log(logger);
+			List<String> rolledBack = rollback ? rollBack(updated, rollbackCache) : new ArrayList<String>();
+			List<String> remaining = new ArrayList<String>();
+			for (VirgoTarget target : updated) {
+				if (!rolledBack.contains(target.getName())) {
+					remaining.add(target.getName());
+				}
+			}
+			throw new ExecutionException("The rollout has been halted at batch " + (i + 1) + " of "
+					+ batches.size() + ", it failed on " + report.getFailedNames() + ". Rolled back: "
+					+ rolledBack + ", still running the new artefact: " + remaining, null);
+		}
+		summary.log(logger);
+		stashArtefact(targets, rollbackCache);
+	}
+
+	/**
+	 * Splits the targets into consecutive batches of the given size, the last batch may be smaller.
+	 * 
+	 * @param targets
+	 * @param batchSize
+	 *            The size of a batch, values below 1 are treated as 1
+	 * @return
+	 */
+	public static List<List<VirgoTarget>> getBatches(List<VirgoTarget> targets, int batchSize) {
+		int size = Math.max(1, batchSize);
+		List<List<VirgoTarget>> batches = new ArrayList<List<VirgoTarget>>();
+		for (int i = 0; i < targets.size(); i += size) {
+			batches.add(targets.subList(i, Math.min(targets.size(), i + size)));
+		}
+		return batches;
+	}
+
+	/*
+	 * Run the goal against all targets concurrently, with the health gate of a rolling rollout if requested
+	 */
+	private ExecutionReport executeConcurrently(List<VirgoTarget> targets, String title, final boolean gate,
+			final String healthUrl, final int healthTimeout) {
+		final ExecutionReport report = new ExecutionReport(title);
+		final AtomicBoolean failed = new AtomicBoolean();
+		int threads = parallelTargets > 0 ? Math.min(targets.size(), parallelTargets) : targets.size();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			for (final VirgoTarget target : targets) {
+				executor.execute(new Runnable() {
+					public void run() {
+						if (failFast && failed.get()) {
+							report.skipped(target.getName());
+							return;
+						}
+						long start = System.currentTimeMillis();
+						try {
+							goal.execute(target, gate);
+							if (gate && healthUrl != null) {
+								HealthCheck.await(HealthCheck.resolveUrl(healthUrl, target), healthTimeout,
+										HEALTH_PROBE_INTERVAL);
+							}
+							report.success(target.getName(), System.currentTimeMillis() - start);
+						} catch (Exception e) {
+							failed.set(true);
+							report.failure(target.getName(), System.currentTimeMillis() - start, e);
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return report;
+	}
+
+	/*
+	 * Put the stashed artefact of the last rollout back on every target, returns the names of the targets
+	 * rolled back. Targets without a stashed artefact keep the new one, undeploying it would only take the
+	 * node out of service.
+	 */
+	private List<String> rollBack(List<VirgoTarget> targets, File rollbackCache) {
+		List<String> rolledBack = new ArrayList<String>();
+		String[] identity;
+		File artefact;
+		try {
+			artefact = goal.getArtefact();
+			identity = goal.getIdentity(artefact);
+		} catch (Exception e) {
+			logger.error("Unable to roll back, the artefact cannot be determined: " + e.getMessage());
+			return rolledBack;
+		}
+		for (VirgoTarget target : targets) {
+			File previous = getStashedArtefact(rollbackCache, target, identity[0], artefact);
+			if (!previous.isFile()) {
+				logger.warn("Not rolling back " + target.getName() + ", no previous artefact is known. It "
+						+ "keeps " + identity[0] + " " + identity[1]);
+				continue;
+			}
+			logger.info("Rolling back " + target.getName() + " to " + previous.getName());
+			try {
+				goal.rollBack(target, artefact, previous);
+				rolledBack.add(target.getName());
+			} catch (Exception e) {
+				logger.error("Unable to roll back " + target.getName() + ": " + e.getMessage());
+			}
+		}
+		return rolledBack;
+	}
+
+	/*
+	 * Keep the artefact of a successful rollout, it is deployed again in case the next rollout is rolled back
+	 */
+	private void stashArtefact(List<VirgoTarget> targets, File rollbackCache) {
+		try {
+			File artefact = goal.getArtefact();
+			if (!artefact.isFile()) {
+				// exploded directories are not kept
+				return;
+			}
+			String symbolicName = goal.getIdentity(artefact)[0];
+			rollbackCache.mkdirs();
+			for (VirgoTarget target : targets) {
+				PickupDeployer.copy(artefact,
+						getStashedArtefact(rollbackCache, target, symbolicName, artefact));
+			}
+		} catch (Exception e) {
+			logger.warn("Unable to keep the artefact for a later rollback: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the location of the artefact kept for a later rollback of the given target.
+	 * 
+	 * @param rollbackCache
+	 * @param target
+	 * @param symbolicName
+	 * @param artefact
+	 *            The artefact rolled out, its extension is kept
+	 * @return
+	 */
+	public static File getStashedArtefact(File rollbackCache, VirgoTarget target, String symbolicName,
+			File artefact) {
+		MessageDigest digest = ContentHasher.newDigest();
+		try {
+			digest.update(target.getServiceUrl().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		String name = artefact.getName();
+		return new File(rollbackCache, ContentHasher.toHex(digest.digest()).substring(0, 16) + "-"
+				+ symbolicName + name.substring(name.lastIndexOf('.')));
+	}
+
+	/**
+	 * The goal executed against a single target.
+	 */
+	public interface Goal {
+		/**
+		 * Executes the goal against the given target.
+		 * 
+		 * @param target
+		 * @param gated
+		 *            Defines whether or not the target is part of a rolling rollout, i.e. the artefact has to
+		 *            be ACTIVE before the health gate is checked
+		 * @throws Exception
+		 */
+		void execute(VirgoTarget target, boolean gated) throws Exception;
+
+		/**
+		 * Returns the artefact which is rolled out.
+		 * 
+		 * @return
+		 * @throws Exception
+		 */
+		File getArtefact() throws Exception;
+
+		/**
+		 * Returns the symbolic name and the version of the given artefact.
+		 * 
+		 * @param artefact
+		 * @return
+		 */
+		String[] getIdentity(File artefact);
+
+		/**
+		 * Replaces the artefact on the given target by the one kept from the last successful rollout.
+		 * 
+		 * @param target
+		 * @param artefact
+		 *            The artefact which has been rolled out
+		 * @param previous
+		 *            The artefact deployed before
+		 * @throws Exception
+		 */
+		void rollBack(VirgoTarget target, File artefact, File previous) throws Exception;
+	}
+
+}
@@ -0,0 +1,73 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads a list of target servers the goals are executed against concurrently, e.g. the nodes of a
+ * horizontally scaled staging tier. The list is a properties file describing every node with the prefix
+ * <code>target.&lt;n&gt;.</code>, starting with 1:
+ * 
+ * <pre>
+ * target.1.name=node1
+ * target.1.serviceurl=service:jmx:rmi://node1:9875/jndi/rmi://node1:9875/jmxrmi
+ * target.1.user=admin
+ * target.1.password=secret
+ * target.1.truststore=/etc/virgo/node1.keystore
+ * </pre>
+ * 
+ * Only <code>serviceurl</code> is required. <code>user</code>, <code>password</code> and
+ * <code>truststore</code> default to the settings of the goal, <code>root</code> (the Virgo root directory)
+ * and <code>jmxport</code> are only needed for instances installed on this machine, e.g. to start them.
+ * <code>httpport</code> is only needed by health checks using the <code>{httpPort}</code> placeholder.
+ * 
+ * @author Frieder Heugel
+ */
+public final class TargetList {
+
+	private TargetList() {
+	}
+
+	/**
+	 * Reads the target servers from the given file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             In case the file doesn't exist or doesn't describe any target
+	 */
+	public static List<VirgoTarget> read(File file) throws IOException {
+		if (!file.isFile()) {
+			throw new IOException("The list of target servers " + file + " does not exist");
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		List<VirgoTarget> targets = new ArrayList<VirgoTarget>();
+		for (int i = 1; properties.getProperty("target." + i + ".serviceurl") != null; i++) {
+			String prefix = "target." + i + ".";
+			String root = properties.getProperty(prefix + "root");
+			String truststore = properties.getProperty(prefix + "truststore");
+			int jmxPort = Integer.parseInt(properties.getProperty(prefix + "jmxport", "-1"));
+			int httpPort = Integer.parseInt(properties.getProperty(prefix + "httpport", "-1"));
+			targets.add(new VirgoTarget(properties.getProperty(prefix + "name", "target-" + i),
+					root != null ? new File(root) : null, jmxPort, properties.getProperty(prefix + "serviceurl"),
+					httpPort, properties.getProperty(prefix + "user"), properties.getProperty(prefix + "password"),
+					truststore != null ? new File(truststore) : null));
+		}
+		if (targets.isEmpty()) {
+			throw new IOException("No target servers found in " + file + ", expected target.1.serviceurl=...");
+		}
+		return targets;
+	}
+
+}
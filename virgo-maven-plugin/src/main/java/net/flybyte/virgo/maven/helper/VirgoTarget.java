@@ -0,0 +1,145 @@
+package net.flybyte.virgo.maven.helper;
+
+import java.io.File;
+
+/**
+ * The connection details of a single Virgo instance, e.g. one member of a server pool or one node of a list
+ * of target servers. Credentials and truststore are optional, the goal's own settings are used for those
+ * which are <code>null</code>.
+ * 
+ * @author Frieder Heugel
+ */
+public class VirgoTarget {
+	private final String name;
+	private final File virgoRoot;
+	private final int jmxPort;
+	private final String serviceUrl;
+	private final int httpPort;
+	private final String user;
+	private final String password;
+	private final File truststore;
+
+	/**
+	 * Creates a new target.
+	 * 
+	 * @param name
+	 *            A short name used in log messages
+	 * @param virgoRoot
+	 * @param jmxPort
+	 * @param serviceUrl
+	 *            The service URL, <code>%d</code> will be replaced by the JMX port
+	 * @param httpPort
+	 *            The HTTP port or -1 if unknown
+	 */
+	public VirgoTarget(String name, File virgoRoot, int jmxPort, String serviceUrl, int httpPort) {
+		this(name, virgoRoot, jmxPort, serviceUrl, httpPort, null, null, null);
+	}
+
+	/**
+	 * Creates a new target with its own credentials and truststore.
+	 * 
+	 * @param name
+	 *            A short name used in log messages
+	 * @param virgoRoot
+	 *            The root directory or <code>null</code> if the instance is not installed locally
+	 * @param jmxPort
+	 *            The JMX port or -1 if it is given by the service URL only
+	 * @param serviceUrl
+	 *            The service URL, <code>%d</code> will be replaced by the JMX port
+	 * @param httpPort
+	 *            The HTTP port or -1 if unknown
+	 * @param user
+	 * @param password
+	 * @param truststore
+	 *            The keystore of the instance, used to trust its SSL connections
+	 */
+	public VirgoTarget(String name, File virgoRoot, int jmxPort, String serviceUrl, int httpPort, String user,
+			String password, File truststore) {
+		this.name = name;
+		this.virgoRoot = virgoRoot;
+		this.jmxPort = jmxPort;
+		this.serviceUrl = serviceUrl;
+		this.httpPort = httpPort;
+		this.user = user;
+		this.password = password;
+		this.truststore = truststore;
+	}
+
+	/**
+	 * Returns the name of the target.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the root directory of the Virgo instance or <code>null</code> if unknown.
+	 * 
+	 * @return
+	 */
+	public File getVirgoRoot() {
+		return virgoRoot;
+	}
+
+	/**
+	 * Returns the JMX port.
+	 * 
+	 * @return
+	 */
+	public int getJmxPort() {
+		return jmxPort;
+	}
+
+	/**
+	 * Returns the service URL of the target.
+	 * 
+	 * @return
+	 */
+	public String getServiceUrl() {
+		return String.format(serviceUrl, jmxPort, jmxPort);
+	}
+
+	/**
+	 * Returns the HTTP port or -1 if unknown.
+	 * 
+	 * @return
+	 */
+	public int getHttpPort() {
+		return httpPort;
+	}
+
+	/**
+	 * Returns the JMX user or <code>null</code> to use the one of the goal.
+	 * 
+	 * @return
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the JMX password or <code>null</code> to use the one of the goal.
+	 * 
+	 * @return
+	 */
+	public String getPassword() {
+		return password;
+	}
+
+	/**
+	 * Returns the truststore or <code>null</code> to use the one of the goal.
+	 * 
+	 * @return
+	 */
+	public File getTruststore() {
+		return truststore;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,265 @@
+package net.flybyte.virgo.maven.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.Deadlines;
+import net.flybyte.virgo.maven.helper.ProcessSupport;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Shuts Virgo down and waits for the server process to exit. The server process is identified by asking
+ * the runtime MBean of the server for its PID, or by the PID file written by the start goal. A PID from the
+ * file is only used as long as the process is verifiably the Virgo instance, otherwise the file is stale
+ * and deleted. In case the process doesn't exit within the configured time the shutdown is escalated: a
+ * graceful shutdown is followed by an immediate shutdown, which is followed by killing the process. The
+ * time every stage took is reported. In case the PID cannot be determined (e.g. the server runs on a
+ * different machine) the goal waits until the server doesn't accept JMX connections anymore and cannot kill
+ * the process.
+ * 
+ * @author Frieder Heugel
+ */
+public abstract class BaseShutdownMojo extends BaseMojo {
+	/**
+	 * Defines whether or not the goal waits for the server process to exit. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.waitforexit</code>
+	 * when executing the Maven goal.
+	 * 
+	 * @parameter property="waitForExit" default-value="true" expression="${virgo.waitforexit}"
+	 */
+	private boolean waitForExit;
+	/**
+	 * Defines whether or not the shutdown is escalated in case the server doesn't exit in time. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.escalate</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="escalate" default-value="true" expression="${virgo.escalate}"
+	 */
+	private boolean escalate;
+	/**
+	 * The maximum time in milliseconds to wait for the server to exit after a graceful shutdown. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.shutdowntimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="shutdownTimeout" default-value="60000" expression="${virgo.shutdowntimeout}"
+	 */
+	private int shutdownTimeout;
+	/**
+	 * The maximum time in milliseconds to wait for the server to exit after an immediate shutdown. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.immediateshutdowntimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="immediateShutdownTimeout" default-value="30000"
+	 *            expression="${virgo.immediateshutdowntimeout}"
+	 */
+	private int immediateShutdownTimeout;
+	/**
+	 * The maximum time in milliseconds to wait for the server to exit after the process has been killed.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.killtimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="killTimeout" default-value="10000" expression="${virgo.killtimeout}"
+	 */
+	private int killTimeout;
+	/**
+	 * The interval in milliseconds between two checks whether the server has exited. Instead of defining
+	 * this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.probeinterval</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="probeInterval" default-value="500" expression="${virgo.probeinterval}"
+	 */
+	private int probeInterval;
+
+	/**
+	 * Shuts the server down using the given operation of the shutdown MBean and escalates if necessary.
+	 * 
+	 * @param operation
+	 *            Either <code>shutdown</code> or <code>immediateShutdown</code>
+	 * @throws MojoExecutionException
+	 * @throws MojoFailureException
+	 */
+	protected void shutdown(String operation) throws MojoExecutionException, MojoFailureException {
+		if (isFanOut()) {
+			executeOnTargets();
+			return;
+		}
+		try {
+			// check whether or not a JMX port has been specified in the start arguments
+			checkForJMXPort();
+			long pid = lookupPid();
+			if (pid < 0 && getPidFile() != null) {
+				pid = readPidFile();
+			}
+			if (pid >= 0) {
+				logger.info("Eclipse Virgo runs as process " + pid);
+			}
+			if ("shutdown".equals(operation)) {
+				if (stage("shutdown", pid, shutdownTimeout)) {
+					return;
+				}
+				if (!escalate) {
+					throw new MojoFailureException("Eclipse Virgo did not exit within " + shutdownTimeout + "ms");
+				}
+			}
+			if (stage("immediateShutdown", pid, immediateShutdownTimeout)) {
+				return;
+			}
+			if (!escalate || pid < 0) {
+				throw new MojoFailureException("Eclipse Virgo did not exit within " + immediateShutdownTimeout
+						+ "ms" + (pid < 0 ? ", the process is unknown and cannot be killed" : ""));
+			}
+			if (!stage("kill", pid, killTimeout)) {
+				throw new MojoFailureException("Eclipse Virgo process " + pid + " did not exit within "
+						+ killTimeout + "ms after it has been killed");
+			}
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			try {
+				// the server is going down, the connection must not be reused
+				evictConnector();
+			} catch (IOException e) {
+				throw new MojoFailureException(stackTrace2String(e));
+			} finally {
+				writeMetrics();
+			}
+		}
+	}
+
+	/*
+	 * Ask the server for its PID, a hanging or unreachable server must not stop the escalation chain
+	 */
+	private long lookupPid() throws IOException {
+		try {
+			final MBeanServerConnection connection = probeConnection();
+			return Deadlines.call(new Callable<Long>() {
+				public Long call() {
+					return ProcessSupport.getServerPid(connection);
+				}
+			}, getInvokeTimeout(), "Looking up the server process");
+		} catch (Exception e) {
+			logger.warn("Unable to ask the server for its process: " + e.getMessage());
+			evictConnector();
+			return -1;
+		}
+	}
+
+	/*
+	 * Take the PID from the PID file unless the process is gone or the PID has been reused by another process
+	 */
+	private long readPidFile() throws IOException {
+		File pidFile = getPidFile();
+		long pid = ProcessSupport.readPid(pidFile);
+		if (pid < 0) {
+			return -1;
+		}
+		if (!ProcessSupport.isVirgoProcess(pidFile, getVirgoRoot())) {
+			logger.warn("Process " + pid + " of " + pidFile + " is not Eclipse Virgo in " + getVirgoRoot()
+					+ ", deleting the stale PID file");
+			pidFile.delete();
+			return -1;
+		}
+		return pid;
+	}
+
+	/*
+	 * Execute one stage of the escalation chain and wait for the server to exit, returns true if it did
+	 */
+	private boolean stage(String stage, long pid, int timeout) throws Exception {
+		long start = System.currentTimeMillis();
+		long phase = getTimer().start();
+		if ("kill".equals(stage)) {
+			logger.warn("Killing Eclipse Virgo process " + pid);
+			ProcessSupport.kill(pid);
+		} else {
+			logger.info("Invoking " + stage + " on the server instance");
+			try {
+				MBeanServerConnection connection = probeConnection();
+				invokeOperation(connection, new ObjectName(BaseMojo.MBEAN_SHUTDOWN), stage, null, null);
+			} catch (IOException e) {
+				// a hanging server may refuse the connection, or close it before the invocation returns
+				logger.debug("Connection failed during " + stage + ": " + e.getMessage());
+			} catch (TimeoutException e) {
+				// a hanging server may never answer, the escalation takes care of it
+				logger.warn(e.getMessage());
+			} finally {
+				evictConnector();
+			}
+		}
+		if (!waitForExit) {
+			getTimer().stop(stage, phase);
+			return true;
+		}
+		boolean exited = awaitExit(pid, timeout);
+		getTimer().stop(stage, phase);
+		long duration = System.currentTimeMillis() - start;
+		if (exited) {
+			logger.info("Eclipse Virgo exited " + duration + "ms after " + stage);
+			if (getPidFile() != null) {
+				getPidFile().delete();
+			}
+		} else {
+			logger.warn("Eclipse Virgo is still running " + duration + "ms after " + stage);
+		}
+		return exited;
+	}
+
+	/*
+	 * Poll the process (or the JMX connector if the process is unknown) until the server is gone
+	 */
+	private boolean awaitExit(long pid, int timeout) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			if (pid >= 0 ? !ProcessSupport.isAlive(pid) : !isServerReachable()) {
+				return true;
+			}
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(probeInterval);
+		}
+	}
+
+	private boolean isServerReachable() throws IOException {
+		try {
+			final MBeanServerConnection connection = probeConnection();
+			Deadlines.call(new Callable<Integer>() {
+				public Integer call() throws IOException {
+					return connection.getMBeanCount();
+				}
+			}, getInvokeTimeout(), "Probing the server");
+			return true;
+		} catch (TimeoutException e) {
+			// a server which doesn't answer anymore is still there
+			return true;
+		} catch (Exception e) {
+			return false;
+		} finally {
+			evictConnector();
+		}
+	}
+
+	/**
+	 * Returns the PID file written by the start goal.
+	 * 
+	 * @return The PID file or <code>null</code> in case the Virgo root directory of the server is unknown,
+	 *         e.g. for a remote target
+	 */
+	protected File getPidFile() {
+		if (getVirgoRoot() == null) {
+			return null;
+		}
+		return new File(getVirgoRoot(), ProcessSupport.PID_FILE);
+	}
+
+}
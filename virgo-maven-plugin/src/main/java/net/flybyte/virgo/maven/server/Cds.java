@@ -0,0 +1,115 @@
+package net.flybyte.virgo.maven.server;
+
+import java.io.File;
+
+import net.flybyte.virgo.maven.helper.CdsArchive;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Records a class data sharing archive for the Virgo instance. The instance is started once with
+ * <code>-XX:ArchiveClassesAtExit</code> and shut down again, which makes the JVM dump the classes it loaded
+ * into an archive in <code>cdsCache</code>. A second start with the archive verifies it and measures the
+ * startup time with and without it. Afterwards the start goal passes the archive to the server
+ * automatically, see {@link CdsArchive}. Requires Java 13 or later.
+ * 
+ * @goal cds
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class Cds extends Start {
+	/**
+	 * The maximum time in milliseconds to wait for the server to exit and dump the archive. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.shutdowntimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="shutdownTimeout" default-value="60000" expression="${virgo.shutdowntimeout}"
+	 */
+	private int shutdownTimeout;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		checkReadiness();
+		// the startup time can only be measured by probing the server
+		if ("delay".equalsIgnoreCase(getReadiness())) {
+			setReadiness("any");
+		}
+		try {
+			File cacheDir = getCdsCache();
+			if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+				throw new MojoFailureException("Unable to create the CDS cache directory " + cacheDir);
+			}
+			CdsArchive archive = CdsArchive.forInstance(cacheDir, getVirgoRoot(), CdsArchive.getJavaExecutable());
+			if (!archive.isSupported()) {
+				throw new MojoFailureException("Dynamic CDS archives require Java " + CdsArchive.MIN_JAVA_VERSION
+						+ " or later, the server runs on Java " + archive.getMajorVersion());
+			}
+			archive.removeStale();
+			// training run, the JVM writes the archive when it exits
+			File dump = new File(cacheDir, archive.getFile().getName() + ".tmp");
+			dump.delete();
+			logger.info("Training start of Eclipse Virgo");
+			long phase = getTimer().start();
+			long without = launch(CdsArchive.getDumpOption(dump));
+			stop();
+			getTimer().stop("training run", phase);
+			if (dump.length() == 0) {
+				throw new MojoFailureException("The server didn't write a CDS archive, check " + getStartLog());
+			}
+			archive.getFile().delete();
+			if (!dump.renameTo(archive.getFile())) {
+				throw new MojoFailureException("Unable to move the CDS archive to " + archive.getFile());
+			}
+			logger.info("CDS archive written to " + archive.getFile() + " (" + archive.getFile().length() / 1024
+					+ "kB)");
+			// verification run
+			logger.info("Verification start of Eclipse Virgo with the CDS archive");
+			phase = getTimer().start();
+			long with = launch(archive.getUseOption());
+			stop();
+			getTimer().stop("verification run", phase);
+			archive.recordStartup(false, without);
+			archive.recordStartup(true, with);
+			logger.info("Startup took " + without + "ms without the CDS archive, " + with + "ms with it ("
+					+ (100 - with * 100 / without) + "% faster)");
+		} catch (MojoFailureException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MojoFailureException(stackTrace2String(e));
+		} finally {
+			closeCapture();
+			writeMetrics();
+		}
+	}
+
+	private void stop() throws Exception {
+		if (!shutdownLaunched(shutdownTimeout)) {
+			throw new MojoFailureException("Eclipse Virgo did not exit within " + shutdownTimeout + "ms");
+		}
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the maximum time in ms to wait for the server to exit.
+	 * 
+	 * @return
+	 */
+	public int getShutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	/**
+	 * Sets the maximum time in ms to wait for the server to exit.
+	 * 
+	 * @param shutdownTimeout
+	 */
+	public void setShutdownTimeout(int shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+}
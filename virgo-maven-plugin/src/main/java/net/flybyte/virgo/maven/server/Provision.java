@@ -0,0 +1,138 @@
+package net.flybyte.virgo.maven.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.DeployState;
+import net.flybyte.virgo.maven.helper.InstanceProvisioner;
+import net.flybyte.virgo.maven.helper.ServerPool;
+import net.flybyte.virgo.maven.helper.VirgoTarget;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Creates a fresh Virgo instance for the current build from a pristine Virgo installation, the configured
+ * <code>virgoRoot</code> acts as the template. The immutable <code>lib</code>, <code>plugins</code>
+ * and <code>repository/ext</code> directories are hard-linked, everything else is copied (see
+ * {@link InstanceProvisioner}). By default
+ * the instance gets free ports for JMX, the HTTP connectors and the OSGi console, so several builds on the
+ * same host can run their own servers side by side. The connection details are written to
+ * <code>virgo-instance.properties</code> in the instance directory and published as the project properties
+ * <code>virgo.root</code>, <code>virgo.jmxport</code> and <code>virgo.httpport</code>, so the goals
+ * executed later in the same build use the instance unless <code>virgoRoot</code> is configured explicitly
+ * in the pom.
+ * 
+ * @goal provision
+ * @requiresProject true
+ * 
+ * @author Frieder Heugel
+ */
+public class Provision extends BaseMojo {
+	/**
+	 * The name of the file describing a provisioned instance.
+	 */
+	public static final String DESCRIPTOR = "virgo-instance.properties";
+	/**
+	 * The root directory of the instance to create. An existing instance is replaced. Instead of defining
+	 * this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.instancedirectory</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="instanceDirectory" default-value="${project.build.directory}/virgo-instance"
+	 *            expression="${virgo.instancedirectory}"
+	 */
+	private File instanceDirectory;
+	/**
+	 * Defines whether or not the instance gets free ports. Otherwise it uses the ports of the template.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.freeports</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="freePorts" default-value="true" expression="${virgo.freeports}"
+	 */
+	private boolean freePorts;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		try {
+			// check whether or not a JMX port has been specified in the start arguments
+			checkForJMXPort();
+			logger.info("Provisioning a Virgo instance from " + getVirgoRoot() + " in " + instanceDirectory);
+			long start = System.currentTimeMillis();
+			long phase = getTimer().start();
+			InstanceProvisioner provisioner = new InstanceProvisioner(getVirgoRoot());
+			InstanceProvisioner.PortMapping ports = freePorts ? new InstanceProvisioner.FreePorts()
+					: InstanceProvisioner.offset(0);
+			int httpPort = provisioner.provision(instanceDirectory, ports);
+			VirgoTarget target = createTarget(instanceDirectory.getName(), instanceDirectory,
+					ports.map(getJmxPort()), httpPort);
+			ServerPool.writeInstance(new File(instanceDirectory, DESCRIPTOR), target);
+			// a previous instance in the same place may have had artefacts deployed
+			DeployState.invalidate(target.getServiceUrl());
+			DeployState.invalidate(new File(instanceDirectory, "pickup").toURI().toString());
+			getTimer().stop("provision", phase);
+			logger.info("Provisioned the instance in " + (System.currentTimeMillis() - start) + "ms ("
+					+ provisioner.getLinkedFiles() + " files linked, " + provisioner.getCopiedFiles()
+					+ " copied), JMX port " + target.getJmxPort() + ", HTTP port " + httpPort);
+			publish(target);
+		} catch (IOException e) {
+			throw new MojoFailureException("Unable to provision the Virgo instance: " + e.getMessage(), e);
+		} finally {
+			writeMetrics();
+		}
+	}
+
+	/*
+	 * Let the goals executed later in this build use the instance
+	 */
+	private void publish(VirgoTarget target) {
+		if (getSession() == null || getSession().getCurrentProject() == null) {
+			return;
+		}
+		Properties properties = getSession().getCurrentProject().getProperties();
+		properties.setProperty("virgo.root", target.getVirgoRoot().getAbsolutePath());
+		properties.setProperty("virgo.jmxport", String.valueOf(target.getJmxPort()));
+		properties.setProperty("virgo.httpport", String.valueOf(target.getHttpPort()));
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the root directory of the instance to create.
+	 * 
+	 * @return
+	 */
+	public File getInstanceDirectory() {
+		return instanceDirectory;
+	}
+
+	/**
+	 * Sets the root directory of the instance to create.
+	 * 
+	 * @param instanceDirectory
+	 */
+	public void setInstanceDirectory(File instanceDirectory) {
+		this.instanceDirectory = instanceDirectory;
+	}
+
+	/**
+	 * Returns whether or not the instance gets free ports.
+	 * 
+	 * @return
+	 */
+	public boolean isFreePorts() {
+		return freePorts;
+	}
+
+	/**
+	 * Define whether or not the instance gets free ports.
+	 * 
+	 * @param freePorts
+	 */
+	public void setFreePorts(boolean freePorts) {
+		this.freePorts = freePorts;
+	}
+
+}
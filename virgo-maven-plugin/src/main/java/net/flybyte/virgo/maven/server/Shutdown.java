@@ -1,17 +1,11 @@
 package net.flybyte.virgo.maven.server;
 
-import java.io.IOException;
-
-import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
-
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
-import net.flybyte.virgo.maven.BaseMojo;
-
 /**
- * Shuts a running Eclipse Virgo instance down.
+ * Shuts a running Eclipse Virgo instance down. The goal waits for the server process to exit and escalates
+ * the shutdown in case it doesn't exit in time, see {@link BaseShutdownMojo}.
  * 
  * @goal shutdown
  * @requiresProject true
@@ -19,27 +13,11 @@ import net.flybyte.virgo.maven.BaseMojo;
  * @author Frieder Heugel
  * 
  */
-public class Shutdown extends BaseMojo {
+public class Shutdown extends BaseShutdownMojo {
 
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		try {
-			// check whether or not a JMX port has been specified in the start arguments
-			checkForJMXPort();
-			logger.info("Prepare shutdown of Eclipse Virgo");
-			MBeanServerConnection connection = getConnection();
-			ObjectName name = new ObjectName(BaseMojo.MBEAN_SHUTDOWN);
-			logger.info("Shutting down server instance");
-			// invoke the undeploy method of the Deployer MBean
-			connection.invoke(name, "shutdown", null, null);
-		} catch (Exception e) {
-			throw new MojoFailureException(stackTrace2String(e));
-		} finally {
-			try {
-				closeConnector();
-			} catch (IOException e) {
-				throw new MojoFailureException(stackTrace2String(e));
-			}
-		}
+		logger.info("Prepare shutdown of Eclipse Virgo");
+		shutdown("shutdown");
 	}
 
 }
@@ -1,17 +1,47 @@
 package net.flybyte.virgo.maven.server;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
 
 import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.CdsArchive;
+import net.flybyte.virgo.maven.helper.Deadlines;
+import net.flybyte.virgo.maven.helper.InstanceProvisioner;
+import net.flybyte.virgo.maven.helper.LaunchCommand;
+import net.flybyte.virgo.maven.helper.LogFollower;
+import net.flybyte.virgo.maven.helper.ProcessOutputCapture;
+import net.flybyte.virgo.maven.helper.ProcessSupport;
+import net.flybyte.virgo.maven.helper.ServerPool;
+import net.flybyte.virgo.maven.helper.StartupTimeline;
+import net.flybyte.virgo.maven.helper.VirgoTarget;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.environment.EnvironmentUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
 
 /**
- * Starts an Eclipse Virgo instance by executing the provided startup script.
+ * Starts an Eclipse Virgo instance by executing the provided startup script. With a <code>poolSize</code>
+ * greater than one a pool of instances is created from the configured Virgo installation instead, see
+ * {@link ServerPool} for how to hand the instances to the forks of surefire/failsafe.
  * 
  * @goal start
  * @requiresProject true
@@ -19,28 +49,563 @@ import org.apache.maven.plugin.MojoFailureException;
  * @author Frieder Heugel
  */
 public class Start extends BaseMojo {
+	/**
+	 * The maximum time in ms the start script may take to record the command line of the direct launcher
+	 */
+	private static final long LAUNCH_RECORD_TIMEOUT = 60000;
+	/**
+	 * The maximum time in ms the console output may lag behind a successful readiness probe
+	 */
+	private static final long CONSOLE_LAG = 2000;
+	private static final List<String> READINESS_PROBES = Arrays.asList("delay", "jmx", "log", "any");
+	/**
+	 * Defines how the goal determines that Virgo has finished its startup. Possible values are
+	 * <code>delay</code> (simply wait for <code>delayAfterStart</code> ms), <code>jmx</code> (poll the
+	 * KernelStatus MBean), <code>log</code> (follow the event log for the <code>startedMarker</code>) and
+	 * <code>any</code> (whichever of <code>jmx</code> and <code>log</code> reports first). Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.readiness</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="readiness" default-value="delay" expression="${virgo.readiness}"
+	 */
+	private String readiness;
+	/**
+	 * The maximum time in milliseconds to wait for Virgo to become ready. Only applies if a readiness probe
+	 * other than <code>delay</code> has been selected. Instead of defining this property in the pom file it
+	 * is also possible to use a VM argument <code>-Dvirgo.starttimeout</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="startTimeout" default-value="300000" expression="${virgo.starttimeout}"
+	 */
+	private int startTimeout;
+	/**
+	 * The interval in milliseconds between two readiness checks. Instead of defining this property in the
+	 * pom file it is also possible to use a VM argument <code>-Dvirgo.probeinterval</code> when executing
+	 * the Maven goal.
+	 * 
+	 * @parameter property="probeInterval" default-value="500" expression="${virgo.probeinterval}"
+	 */
+	private int probeInterval;
+	/**
+	 * The event log entry that signals a completed startup when using the <code>log</code> readiness probe.
+	 * The default is the "user region ready" event. Instead of defining this property in the pom file it is
+	 * also possible to use a VM argument <code>-Dvirgo.startedmarker</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="startedMarker" default-value="UR0001I" expression="${virgo.startedmarker}"
+	 */
+	private String startedMarker;
+	/**
+	 * The file the console output of the server is written to until the goal has finished. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.startlog</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="startLog" default-value="${project.build.directory}/virgo-start.log"
+	 *            expression="${virgo.startlog}"
+	 */
+	private File startLog;
+	/**
+	 * The maximum size of the console output file in bytes. Once the file is full it is rotated. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.startlogsize</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="startLogSize" default-value="10485760" expression="${virgo.startlogsize}"
+	 */
+	private long startLogSize;
+	/**
+	 * The number of rotated console output files to keep. Instead of defining this property in the pom file
+	 * it is also possible to use a VM argument <code>-Dvirgo.startlogbackups</code> when executing the Maven
+	 * goal.
+	 * 
+	 * @parameter property="startLogBackups" default-value="3" expression="${virgo.startlogbackups}"
+	 */
+	private int startLogBackups;
+	/**
+	 * The report showing when the kernel, the user region and every artefact have been installed and
+	 * started. Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.timelinereport</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="timelineReport" default-value="${project.build.directory}/virgo-startup-timeline.txt"
+	 *            expression="${virgo.timelinereport}"
+	 */
+	private File timelineReport;
+	/**
+	 * The number of Virgo instances to start. With more than one instance the configured Virgo installation
+	 * is used as a template for a pool of instances, each with its own JMX port, HTTP port and work
+	 * directory. The pool is created in <code>poolDirectory</code>, its location and size are published as
+	 * the project properties <code>virgo.pool.dir</code> and <code>virgo.pool.size</code>. Goals executed
+	 * with <code>-Dvirgo.pool=true</code> (e.g. deploy, undeploy and shutdown) are applied to every instance.
+	 * Instead of defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.poolsize</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="poolSize" default-value="1" expression="${virgo.poolsize}"
+	 */
+	private int poolSize;
+	/**
+	 * The distance between the ports of two consecutive pool instances. The first instance uses the ports of
+	 * the template, the second one these ports plus <code>portStep</code> and so on. Instead of defining this
+	 * property in the pom file it is also possible to use a VM argument <code>-Dvirgo.portstep</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="portStep" default-value="10" expression="${virgo.portstep}"
+	 */
+	private int portStep;
+
+	/**
+	 * Defines whether or not the server is started with a class data sharing archive. With <code>auto</code>
+	 * the archive of the instance in <code>cdsCache</code> is passed to the server via <code>JAVA_OPTS</code>
+	 * as soon as the cache directory exists (it is created by the <code>cds</code> goal). In case the JVM or
+	 * the content of <code>lib</code> and <code>plugins</code> changed a new archive is recorded instead,
+	 * which is written when the server exits. <code>off</code> never uses an archive. Instead of defining
+	 * this property in the pom file it is also possible to use a VM argument <code>-Dvirgo.cds</code> when
+	 * executing the Maven goal.
+	 * 
+	 * @parameter property="cds" default-value="auto" expression="${virgo.cds}"
+	 */
+	private String cds;
+	/**
+	 * The directory class data sharing archives are kept in. Instead of defining this property in the pom
+	 * file it is also possible to use a VM argument <code>-Dvirgo.cdscache</code> when executing the Maven
+	 * goal.
+	 * 
+	 * @parameter property="cdsCache" default-value="${user.home}/.virgo-maven/cds" expression="${virgo.cdscache}"
+	 */
+	private File cdsCache;
+	/**
+	 * Defines how the server is launched. <code>script</code> executes Virgo's start script,
+	 * <code>direct</code> executes <code>java</code> directly with the command line the start script would
+	 * use. The command line is recorded by running the start script once with a stand-in <code>java</code>
+	 * and cached in <code>launchCache</code>, so later starts skip the shells of the scripts. Since the
+	 * plugin starts the JVM itself its PID is known right away. Instead of defining this property in the pom
+	 * file it is also possible to use a VM argument <code>-Dvirgo.launcher</code> when executing the Maven
+	 * goal.
+	 * 
+	 * @parameter property="launcher" default-value="script" expression="${virgo.launcher}"
+	 */
+	private String launcher;
+	/**
+	 * Additional options for the JVM of the server, e.g. heap or GC settings. With the <code>script</code>
+	 * launcher they are appended to <code>JAVA_OPTS</code>, with the <code>direct</code> launcher they are
+	 * passed after the options of the start script so they take precedence. Instead of defining this
+	 * property in the pom file it is also possible to use a comma separated VM argument
+	 * <code>-Dvirgo.jvmargs</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="jvmArgs" expression="${virgo.jvmargs}"
+	 */
+	private String[] jvmArgs;
+	/**
+	 * The directory the command lines of the <code>direct</code> launcher are cached in. Instead of
+	 * defining this property in the pom file it is also possible to use a VM argument
+	 * <code>-Dvirgo.launchcache</code> when executing the Maven goal.
+	 * 
+	 * @parameter property="launchCache" default-value="${user.home}/.virgo-maven/launch"
+	 *            expression="${virgo.launchcache}"
+	 */
+	private File launchCache;
+
+	private ProcessOutputCapture capture;
+	private DefaultExecuteResultHandler handler;
+	private volatile long launchedPid = -1;
+	private boolean remoteTarget;
 
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		checkReadiness();
+		if (poolSize > 1) {
+			startPool();
+			return;
+		}
+		if (getTargets() != null) {
+			executeOnTargets();
+			return;
+		}
+		if (remoteTarget) {
+			throw new MojoFailureException("Only instances installed on this machine can be started, the target "
+					+ getServiceUrl() + " has no Virgo root directory");
+		}
 		try {
-			logger.info("Prepare startup of Eclipse Virgo");
-			DefaultExecutor executor = new DefaultExecutor();
-			File workingDir = new File(getVirgoRoot(), "bin");
-			logger.info("Virgo root directory: " + getVirgoRoot());
-			logger.info("Working directory: " + workingDir);
-			executor.setWorkingDirectory(workingDir);
-			// check os
-			CommandLine cmdLine = determineStartScript();
-			// process arguments
-			processArguments(cmdLine);
-			DefaultExecuteResultHandler handler = new DefaultExecuteResultHandler();
-			logger.info("Starting Eclipse Virgo ...");
-			executor.execute(cmdLine, handler);
-			logger.debug("Delay setting found, wait for " + getDelayAfterStart() + "ms");
-			handler.waitFor(getDelayAfterStart());
+			CdsArchive archive = prepareCds();
+			String javaOption = null;
+			boolean withArchive = archive != null && archive.exists();
+			if (archive != null) {
+				javaOption = withArchive ? archive.getUseOption() : CdsArchive.getDumpOption(archive.getFile());
+			}
+			long duration = launch(javaOption);
+			if (archive != null && isProbing()) {
+				reportCds(archive, withArchive, duration);
+			}
+		} catch (MojoFailureException e) {
+			throw withOutputTail(e);
 		} catch (Exception e) {
 			throw new MojoFailureException(
 					"An exception occurred while executing the startup script", e);
+		} finally {
+			closeCapture();
+			writeTimeline();
+			writeMetrics();
+		}
+	}
+
+	/**
+	 * Executes the startup script, or the JVM directly, and waits until the server is ready.
+	 * 
+	 * @param javaOption
+	 *            An option passed to the JVM of the server in addition to the <code>jvmArgs</code>, may be
+	 *            <code>null</code>
+	 * @return The time in ms it took until the server was ready
+	 * @throws Exception
+	 */
+	protected long launch(String javaOption) throws Exception {
+		logger.info("Prepare startup of Eclipse Virgo");
+		launchedPid = -1;
+		new File(getVirgoRoot(), ProcessSupport.PID_FILE).delete();
+		// a clean start, a re-provisioned instance or non-recoverable deployments lose what has been deployed
+		invalidateDeployments();
+		DefaultExecutor executor = new DefaultExecutor() {
+			@Override
+			@SuppressWarnings("rawtypes")
+			protected Process launch(CommandLine command, Map env, File dir) throws IOException {
+				Process process = super.launch(command, env, dir);
+				long pid = ProcessSupport.getPid(process);
+				if (pid >= 0) {
+					// the process can be monitored before it is ready, the script runs in front of the JVM
+					ProcessSupport.writePid(new File(getVirgoRoot(), ProcessSupport.PID_FILE), pid);
+					logger.info((isDirectLaunch() ? "Eclipse Virgo" : "The startup script")
+							+ " runs as process " + pid);
+					launchedPid = pid;
+				}
+				return process;
+			}
+		};
+		File workingDir = new File(getVirgoRoot(), "bin");
+		logger.info("Virgo root directory: " + getVirgoRoot());
+		logger.info("Working directory: " + workingDir);
+		executor.setWorkingDirectory(workingDir);
+		// check os, the direct launch only collects the start arguments of the script
+		CommandLine cmdLine = isDirectLaunch() ? new CommandLine("startup") : determineStartScript();
+		// process arguments
+		processArguments(cmdLine);
+		if (isProbing()) {
+			checkJmxPortAvailable();
+		}
+		Map<String, String> environment = getProcEnvironment();
+		List<String> jvmOptions = new ArrayList<String>();
+		if (jvmArgs != null) {
+			jvmOptions.addAll(Arrays.asList(jvmArgs));
+		}
+		if (javaOption != null) {
+			jvmOptions.add(javaOption);
+		}
+		if (isDirectLaunch()) {
+			cmdLine = determineJavaCommand(cmdLine, environment, jvmOptions, executor);
+		} else if (!jvmOptions.isEmpty()) {
+			StringBuilder options = new StringBuilder();
+			for (String option : jvmOptions) {
+				options.append(options.length() > 0 ? " " : "").append(option);
+			}
+			String javaOpts = environment.get("JAVA_OPTS");
+			environment.put("JAVA_OPTS", javaOpts == null ? options.toString() : javaOpts + " " + options);
+			logger.info("Adding " + options + " to JAVA_OPTS");
+		}
+		// remember the current end of the event log before the server writes to it
+		LogFollower follower = new LogFollower(new File(getVirgoRoot(), EVENT_LOG));
+		closeCapture();
+		final ProcessOutputCapture output = new ProcessOutputCapture(startLog, startLogSize, startLogBackups,
+				new StartupTimeline(startedMarker));
+		capture = output;
+		executor.setStreamHandler(output.createStreamHandler());
+		logger.info("Writing the server output to " + startLog);
+		handler = new DefaultExecuteResultHandler() {
+			@Override
+			public void onProcessComplete(int exitValue) {
+				super.onProcessComplete(exitValue);
+				closeQuietly(output);
+			}
+
+			@Override
+			public void onProcessFailed(ExecuteException e) {
+				super.onProcessFailed(e);
+				closeQuietly(output);
+			}
+		};
+		logger.info("Starting Eclipse Virgo ...");
+		long startTime = System.currentTimeMillis();
+		long phase = getTimer().start();
+		executor.execute(cmdLine, environment, handler);
+		getTimer().stop("launch", phase);
+		phase = getTimer().start();
+		if (isProbing()) {
+			awaitReadiness(handler, follower, startTime);
+		} else {
+			logger.debug("Delay setting found, wait for " + getDelayAfterStart() + "ms");
+			handler.waitFor(getDelayAfterStart());
+		}
+		long duration = System.currentTimeMillis() - startTime;
+		getTimer().stop("wait for start", phase);
+		recordPid();
+		if (isProbing()) {
+			// the console output may lag behind the event log or the kernel status
+			long remaining = startTime + startTimeout - System.currentTimeMillis();
+			if (remaining > 0) {
+				output.awaitReady(Math.min(CONSOLE_LAG, remaining));
+			}
+		}
+		return duration;
+	}
+
+	/**
+	 * Stops capturing the console output of the server, see {@link ProcessOutputCapture#close(long)}. The
+	 * server keeps running, but its output is no longer written once the goal has finished.
+	 */
+	protected void closeCapture() {
+		if (capture != null) {
+			closeQuietly(capture);
+		}
+	}
+
+	private void closeQuietly(ProcessOutputCapture output) {
+		try {
+			output.close(CONSOLE_LAG);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Shuts the server started by {@link #launch(String)} down gracefully and waits for its process to exit.
+	 * 
+	 * @param timeout
+	 *            The maximum time in ms to wait for the process to exit
+	 * @return <code>true</code> if the process exited in time
+	 * @throws Exception
+	 */
+	protected boolean shutdownLaunched(long timeout) throws Exception {
+		logger.info("Shutting the server down");
+		try {
+			invokeOperation(probeConnection(), new ObjectName(BaseMojo.MBEAN_SHUTDOWN), "shutdown", null, null);
+		} catch (IOException e) {
+			// the server may close the connection before the invocation returns
+			logger.debug("Connection failed during shutdown: " + e.getMessage());
+		} finally {
+			evictConnector();
+		}
+		handler.waitFor(timeout);
+		return handler.hasResult();
+	}
+
+	/*
+	 * Use the CDS archive of the instance, or record a new one in case the archive no longer matches the
+	 * instance. Archives are only used once the cache directory has been created by the cds goal.
+	 */
+	private CdsArchive prepareCds() throws IOException {
+		if ("off".equalsIgnoreCase(cds) || !cdsCache.isDirectory()) {
+			return null;
+		}
+		long phase = getTimer().start();
+		try {
+			CdsArchive archive = CdsArchive.forInstance(cdsCache, getVirgoRoot(), CdsArchive.getJavaExecutable());
+			if (!archive.isSupported()) {
+				logger.debug("Java " + archive.getMajorVersion() + " doesn't support dynamic CDS archives");
+				return null;
+			}
+			if (archive.exists()) {
+				logger.info("Using the CDS archive " + archive.getFile());
+			} else if (archive.removeStale() > 0) {
+				logger.info("The CDS archive doesn't match the JVM or the bundles of the instance anymore, "
+						+ "a new one is recorded once the server is shut down");
+			} else {
+				logger.info("Recording a CDS archive for the instance once the server is shut down");
+			}
+			return archive;
+		} finally {
+			getTimer().stop("prepare cds", phase);
+		}
+	}
+
+	/*
+	 * Remember the startup time and compare it with the one measured without the archive
+	 */
+	private void reportCds(CdsArchive archive, boolean withArchive, long duration) throws IOException {
+		archive.recordStartup(withArchive, duration);
+		long without = archive.getStartup(false);
+		if (withArchive && without > 0) {
+			logger.info("Startup took " + duration + "ms with the CDS archive, " + without + "ms without ("
+					+ (100 - duration * 100 / without) + "% faster)");
+		}
+	}
+
+	/*
+	 * Create the instances of the server pool from the configured installation and start them concurrently
+	 */
+	private void startPool() throws MojoFailureException {
+		try {
+			checkForJMXPort();
+			File poolDirectory = getPoolDirectory();
+			logger.info("Creating a pool of " + poolSize + " Eclipse Virgo instances in " + poolDirectory);
+			List<VirgoTarget> targets = new ArrayList<VirgoTarget>();
+			InstanceProvisioner provisioner = new InstanceProvisioner(getVirgoRoot());
+			for (int i = 1; i <= poolSize; i++) {
+				InstanceProvisioner.PortMapping ports = InstanceProvisioner.offset((i - 1) * portStep);
+				File root = ServerPool.getInstanceDirectory(poolDirectory, i);
+				long phase = getTimer().start();
+				int httpPort = provisioner.provision(root, ports);
+				getTimer().stop("provision " + root.getName(), phase);
+				VirgoTarget target = createTarget(root.getName(), root, ports.map(getJmxPort()), httpPort);
+				logger.info(target.getName() + ": JMX port " + target.getJmxPort() + ", HTTP port " + httpPort);
+				targets.add(target);
+			}
+			// written up front so the pool can be shut down even if some of the instances fail to start
+			ServerPool.write(poolDirectory, targets);
+			publishPool(poolDirectory, targets.size());
+			fanOut(targets);
+		} catch (IOException e) {
+			throw new MojoFailureException("Unable to create the server pool: " + e.getMessage(), e);
+		} finally {
+			writeMetrics();
+		}
+	}
+
+	/*
+	 * Make the pool known to the plugins of all projects, e.g. to configure the surefire/failsafe forks
+	 */
+	private void publishPool(File poolDirectory, int size) {
+		if (getSession() == null || getSession().getProjects() == null) {
+			return;
+		}
+		for (MavenProject project : getSession().getProjects()) {
+			project.getProperties().setProperty("virgo.pool.dir", poolDirectory.getAbsolutePath());
+			project.getProperties().setProperty("virgo.pool.size", String.valueOf(size));
+		}
+	}
+
+	@Override
+	protected BaseMojo forTarget(VirgoTarget target) {
+		Start copy = (Start) super.forTarget(target);
+		copy.poolSize = 1;
+		copy.remoteTarget = target.getVirgoRoot() == null;
+		copy.capture = null;
+		copy.startLog = new File(startLog.getParentFile(), target.getName() + "-" + startLog.getName());
+		copy.timelineReport = new File(timelineReport.getParentFile(), target.getName() + "-"
+				+ timelineReport.getName());
+		return copy;
+	}
+
+	/*
+	 * Remember the PID of the server JVM instead of the one of the startup script so the shutdown goals can
+	 * wait for it to exit
+	 */
+	private void recordPid() {
+		if (isDirectLaunch() && launchedPid >= 0 || !isProbing()) {
+			// the launched process is recorded, without a probe the kernel may not accept connections yet
+			return;
+		}
+		File pidFile = new File(getVirgoRoot(), ProcessSupport.PID_FILE);
+		try {
+			// the kernel may not be up yet, retrying would only trip the circuit breaker for later goals
+			final MBeanServerConnection connection = probeConnection();
+			long pid = Deadlines.call(new Callable<Long>() {
+				public Long call() {
+					return ProcessSupport.getServerPid(connection);
+				}
+			}, getInvokeTimeout(), "Looking up the server process");
+			if (pid >= 0 && pid != launchedPid) {
+				ProcessSupport.writePid(pidFile, pid);
+				logger.info("Eclipse Virgo runs as process " + pid);
+			}
+		} catch (Exception e) {
+			logger.debug("Unable to determine the process of Eclipse Virgo: " + e.getMessage());
+		} finally {
+			try {
+				closeConnector();
+			} catch (IOException e) {
+				logger.debug("Unable to close the connection: " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Write the startup timeline collected so far and summarise it
+	 */
+	private void writeTimeline() {
+		if (capture == null) {
+			return;
+		}
+		StartupTimeline timeline = capture.getTimeline();
+		try {
+			timeline.write(timelineReport);
+		} catch (IOException e) {
+			logger.warn("Unable to write the startup timeline: " + e.getMessage());
+			return;
+		}
+		if (timeline.isReady()) {
+			logger.info("Startup timeline written to " + timelineReport + ", fully up after "
+					+ timeline.getStartupDuration() + "ms");
+		} else {
+			logger.info("Startup timeline written to " + timelineReport);
+		}
+		List<StartupTimeline.Artefact> slowest = timeline.getSlowestArtefacts();
+		for (int i = 0; i < Math.min(5, slowest.size()); i++) {
+			logger.info("  " + slowest.get(i).getStartDuration() + "ms to start " + slowest.get(i).getName());
 		}
+		if (capture.getDroppedLines() > 0) {
+			logger.warn(capture.getDroppedLines() + " lines of server output have been dropped");
+		}
+		if (capture.getWriteError() != null) {
+			logger.warn("Unable to write the server output: " + capture.getWriteError().getMessage());
+		}
+	}
+
+	/*
+	 * Startup failures are hard to diagnose without the server output, add its last lines to the message
+	 */
+	private MojoFailureException withOutputTail(MojoFailureException e) {
+		if (capture == null || capture.getTail().isEmpty()) {
+			return e;
+		}
+		StringBuilder message = new StringBuilder(e.getMessage());
+		message.append("\nLast lines of the server output (see ").append(startLog).append("):");
+		for (String line : capture.getTail()) {
+			message.append("\n  ").append(line);
+		}
+		return new MojoFailureException(message.toString(), e);
+	}
+
+	/*
+	 * Replace the start script by the java command line it executes, recorded once per instance
+	 */
+	private CommandLine determineJavaCommand(CommandLine arguments, Map<String, String> environment,
+			List<String> jvmOptions, DefaultExecutor executor) throws IOException {
+		long phase = getTimer().start();
+		List<String> startArguments = new ArrayList<String>();
+		for (String argument : arguments.getArguments()) {
+			// commons-exec quotes arguments containing spaces
+			if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\"")) {
+				argument = argument.substring(1, argument.length() - 1);
+			}
+			startArguments.add(argument);
+		}
+		LaunchCommand command = LaunchCommand.forInstance(launchCache, getVirgoRoot(),
+				startArguments.toArray(new String[startArguments.size()]), environment, LAUNCH_RECORD_TIMEOUT);
+		if (command.isCached()) {
+			logger.info("Using the command line of " + command.getFile());
+			if (startArguments.contains("-clean")) {
+				// the start script cleans the instance before it executes java
+				logger.info("Cleaning the serviceability and working directories");
+				InstanceProvisioner.delete(new File(getVirgoRoot(), "work"));
+				InstanceProvisioner.delete(new File(getVirgoRoot(), "serviceability"));
+			}
+		} else {
+			logger.info("Recorded the command line of the start script to " + command.getFile());
+		}
+		executor.setWorkingDirectory(command.getWorkingDirectory());
+		logger.info("Working directory: " + command.getWorkingDirectory());
+		List<String> java = command.getCommand(jvmOptions);
+		CommandLine cmdLine = new CommandLine(java.get(0));
+		for (String argument : java.subList(1, java.size())) {
+			cmdLine.addArgument(argument, false);
+		}
+		if (!jvmOptions.isEmpty()) {
+			logger.info("Adding JVM options " + jvmOptions);
+		}
+		getTimer().stop("resolve launch command", phase);
+		return cmdLine;
 	}
 
 	/*
@@ -48,7 +613,7 @@ public class Start extends BaseMojo {
 	 */
 	private CommandLine determineStartScript() {
 		CommandLine cmdLine = null;
-		if (System.getProperty("os.name").toLowerCase().indexOf("win") >= 0) { // windows
+		if (isWindows()) { // windows
 			logger.info("Windows operating system found, use startup.bat script");
 			cmdLine = new CommandLine("cmd.exe");
 			cmdLine.addArgument("/c");
@@ -62,13 +627,17 @@ public class Start extends BaseMojo {
 		return cmdLine;
 	}
 
-	/*
-	 * Process the given start arguments
+	/**
+	 * Adds the configured start arguments to the given command line. In case a JMX port is part of the
+	 * arguments it will be set, otherwise a JMX port other than the default one is passed on.
+	 * 
+	 * @param cmdLine
 	 */
-	private void processArguments(CommandLine cmdLine) {
+	protected void processArguments(CommandLine cmdLine) {
 		logger.info("Parsing for start arguments to pass on");
 		boolean jmxParam = false;
-		for (String argument : getStartParams()) {
+		boolean jmxPortGiven = false;
+		for (String argument : getStartParams() != null ? getStartParams() : new String[0]) {
 			if (jmxParam) { // JMX port number
 				setJmxPort(argument.trim());
 				logger.debug("JMX port found: " + getJmxPort());
@@ -77,10 +646,351 @@ public class Start extends BaseMojo {
 			if ("-jmxport".equalsIgnoreCase(argument.trim())) {
 				logger.debug("JMX argument found, expect next argument to be a valid port number");
 				jmxParam = true;
+				jmxPortGiven = true;
 			}
 			logger.info("Adding start argument: " + argument);
 			cmdLine.addArgument(argument);
 		}
+		if (!jmxPortGiven && getJmxPort() != DEFAULT_JMX_PORT) {
+			logger.info("Adding start argument: -jmxport " + getJmxPort());
+			cmdLine.addArgument("-jmxport");
+			cmdLine.addArgument(String.valueOf(getJmxPort()));
+		}
+	}
+
+	/*
+	 * Fail fast in case another process (most likely another Virgo instance) already holds the JMX port
+	 */
+	private void checkJmxPortAvailable() throws MojoFailureException {
+		ServerSocket socket = null;
+		try {
+			socket = new ServerSocket();
+			socket.bind(new InetSocketAddress(getJmxPort()));
+		} catch (BindException e) {
+			throw new MojoFailureException("The JMX port " + getJmxPort()
+					+ " is already in use, is another Virgo instance running?");
+		} catch (IOException e) {
+			logger.debug("Unable to check the JMX port: " + e.getMessage());
+		} finally {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/*
+	 * Wait until one of the selected readiness probes reports a started kernel
+	 */
+	private void awaitReadiness(DefaultExecuteResultHandler handler, LogFollower follower, long startTime)
+			throws MojoFailureException, IOException, InterruptedException {
+		boolean useJmx = "jmx".equalsIgnoreCase(readiness) || "any".equalsIgnoreCase(readiness);
+		boolean useLog = "log".equalsIgnoreCase(readiness) || "any".equalsIgnoreCase(readiness);
+		logger.info("Waiting for Eclipse Virgo to become ready (probe = '" + readiness + "', timeout = "
+				+ startTimeout + "ms)");
+		long deadline = startTime + startTimeout;
+		try {
+			while (true) {
+				checkStartProcess(handler);
+				if (useLog && follower.poll(startedMarker)) {
+					logger.debug("Found '" + startedMarker + "' in " + follower.getLogFile());
+					break;
+				}
+				if (useJmx && isKernelStarted()) {
+					logger.debug("KernelStatus MBean reports a started kernel");
+					break;
+				}
+				if (System.currentTimeMillis() > deadline) {
+					throw new MojoFailureException("Eclipse Virgo did not become ready within " + startTimeout
+							+ "ms");
+				}
+				Thread.sleep(probeInterval);
+			}
+		} finally {
+			closeConnector();
+		}
+		logger.info("Eclipse Virgo is ready, startup took " + (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	/*
+	 * The windows start script detaches from the server process and returns immediately, on any other
+	 * system the start script has to stay alive as long as the server is running
+	 */
+	private void checkStartProcess(DefaultExecuteResultHandler handler) throws MojoFailureException {
+		if (!handler.hasResult()) {
+			return;
+		}
+		if (handler.getException() != null) {
+			throw new MojoFailureException("The startup script failed with exit value "
+					+ handler.getExitValue(), handler.getException());
+		}
+		if (!isWindows()) {
+			throw new MojoFailureException("The startup script terminated early with exit value "
+					+ handler.getExitValue());
+		}
+	}
+
+	/*
+	 * Ask the KernelStatus MBean whether the kernel has been started
+	 */
+	private boolean isKernelStarted() throws IOException {
+		if (!isJmxPortOpen()) {
+			return false;
+		}
+		try {
+			final MBeanServerConnection connection = probeConnection();
+			Object status = Deadlines.call(new Callable<Object>() {
+				public Object call() throws Exception {
+					return connection.getAttribute(new ObjectName(BaseMojo.MBEAN_KERNEL_STATUS), "Status");
+				}
+			}, getInvokeTimeout(), "Reading the kernel status");
+			return "STARTED".equals(status);
+		} catch (Exception e) {
+			logger.debug("Kernel not ready yet: " + e.getMessage());
+			evictConnector();
+			return false;
+		}
+	}
+
+	/*
+	 * Avoid costly JMX connection attempts as long as nobody is listening on the JMX port
+	 */
+	private boolean isJmxPortOpen() {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress("localhost", getJmxPort()), probeInterval);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private boolean isDirectLaunch() {
+		return "direct".equalsIgnoreCase(launcher);
+	}
+
+	/**
+	 * Checks that the configured readiness probe is known, otherwise the goal would wait for a probe which
+	 * never runs until the start timeout.
+	 * 
+	 * @throws MojoExecutionException
+	 */
+	protected void checkReadiness() throws MojoExecutionException {
+		if (readiness == null || !READINESS_PROBES.contains(readiness.toLowerCase(Locale.ENGLISH))) {
+			throw new MojoExecutionException("Unknown readiness probe '" + readiness + "', possible values are "
+					+ READINESS_PROBES);
+		}
+	}
+
+	private boolean isProbing() {
+		return !"delay".equalsIgnoreCase(readiness);
+	}
+
+	private boolean isWindows() {
+		return System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
+	}
+
+	/*
+	 * commons-exec returns a raw map, copy it into a typed one
+	 */
+	private static Map<String, String> getProcEnvironment() throws IOException {
+		@SuppressWarnings("unchecked")
+		Map<String, String> environment = EnvironmentUtils.getProcEnvironment();
+		return new HashMap<String, String>(environment);
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns the file the console output of the server is written to.
+	 * 
+	 * @return
+	 */
+	public File getStartLog() {
+		return startLog;
+	}
+
+	/**
+	 * Returns the PID of the process started by the goal, i.e. the JVM when using the <code>direct</code>
+	 * launcher or the startup script otherwise.
+	 * 
+	 * @return The PID or -1 in case it is unknown
+	 */
+	public long getLaunchedPid() {
+		return launchedPid;
+	}
+
+	/**
+	 * Returns how the server is launched.
+	 * 
+	 * @return
+	 */
+	public String getLauncher() {
+		return launcher;
+	}
+
+	/**
+	 * Sets how the server is launched.
+	 * 
+	 * @param launcher
+	 */
+	public void setLauncher(String launcher) {
+		this.launcher = launcher;
+	}
+
+	/**
+	 * Returns the additional options for the JVM of the server.
+	 * 
+	 * @return
+	 */
+	public String[] getJvmArgs() {
+		return jvmArgs;
+	}
+
+	/**
+	 * Sets the additional options for the JVM of the server.
+	 * 
+	 * @param jvmArgs
+	 */
+	public void setJvmArgs(String[] jvmArgs) {
+		this.jvmArgs = jvmArgs;
+	}
+
+	/**
+	 * Returns the directory the command lines of the direct launcher are cached in.
+	 * 
+	 * @return
+	 */
+	public File getLaunchCache() {
+		return launchCache;
+	}
+
+	/**
+	 * Sets the directory the command lines of the direct launcher are cached in.
+	 * 
+	 * @param launchCache
+	 */
+	public void setLaunchCache(File launchCache) {
+		this.launchCache = launchCache;
+	}
+
+	/**
+	 * Returns whether or not the server is started with a class data sharing archive.
+	 * 
+	 * @return
+	 */
+	public String getCds() {
+		return cds;
+	}
+
+	/**
+	 * Sets whether or not the server is started with a class data sharing archive.
+	 * 
+	 * @param cds
+	 */
+	public void setCds(String cds) {
+		this.cds = cds;
+	}
+
+	/**
+	 * Returns the directory class data sharing archives are kept in.
+	 * 
+	 * @return
+	 */
+	public File getCdsCache() {
+		return cdsCache;
+	}
+
+	/**
+	 * Sets the directory class data sharing archives are kept in.
+	 * 
+	 * @param cdsCache
+	 */
+	public void setCdsCache(File cdsCache) {
+		this.cdsCache = cdsCache;
+	}
+
+	/**
+	 * Returns the readiness probe used to detect a started server.
+	 * 
+	 * @return
+	 */
+	public String getReadiness() {
+		return readiness;
+	}
+
+	/**
+	 * Sets the readiness probe used to detect a started server.
+	 * 
+	 * @param readiness
+	 */
+	public void setReadiness(String readiness) {
+		this.readiness = readiness;
+	}
+
+	/**
+	 * Returns the maximum time in ms to wait for the server to become ready.
+	 * 
+	 * @return
+	 */
+	public int getStartTimeout() {
+		return startTimeout;
+	}
+
+	/**
+	 * Sets the maximum time in ms to wait for the server to become ready.
+	 * 
+	 * @param startTimeout
+	 */
+	public void setStartTimeout(int startTimeout) {
+		this.startTimeout = startTimeout;
+	}
+
+	/**
+	 * Returns the interval in ms between two readiness checks.
+	 * 
+	 * @return
+	 */
+	public int getProbeInterval() {
+		return probeInterval;
+	}
+
+	/**
+	 * Sets the interval in ms between two readiness checks.
+	 * 
+	 * @param probeInterval
+	 */
+	public void setProbeInterval(int probeInterval) {
+		this.probeInterval = probeInterval;
+	}
+
+	/**
+	 * Returns the event log entry that signals a completed startup.
+	 * 
+	 * @return
+	 */
+	public String getStartedMarker() {
+		return startedMarker;
+	}
+
+	/**
+	 * Sets the event log entry that signals a completed startup.
+	 * 
+	 * @param startedMarker
+	 */
+	public void setStartedMarker(String startedMarker) {
+		this.startedMarker = startedMarker;
 	}
 
 }
@@ -0,0 +1,60 @@
+package net.flybyte.virgo.maven;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests how {@link BaseMojo} identifies the bundle of an artefact.
+ * 
+ * @author Frieder Heugel
+ */
+public class BaseMojoTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void takesIdentityFromManifest() throws IOException {
+		File artefact = createJar("foo.jar", "Bundle-SymbolicName: org.example.foo;singleton:=true\n"
+				+ "Bundle-Version: 1.2.0\n");
+		assertArrayEquals(new String[] { "org.example.foo", "1.2.0" },
+				createMojo().getBundleIdentity(artefact));
+	}
+
+	@Test
+	public void fallsBackToCoordinatesWithoutSymbolicName() throws IOException {
+		File artefact = createJar("blank.jar", "Bundle-SymbolicName: ;singleton:=true\n"
+				+ "Bundle-Version: 1.2.0\n");
+		assertArrayEquals(new String[] { "org.example.bar", "2.0.0.SNAPSHOT" },
+				createMojo().getBundleIdentity(artefact));
+	}
+
+	private static BaseMojo createMojo() {
+		BaseMojo mojo = new BaseMojo() {
+			@Override
+			public void execute() {
+			}
+		};
+		mojo.setSymbolicName("org.example.bar");
+		mojo.setOsgiVersion("2.0.0-SNAPSHOT");
+		return mojo;
+	}
+
+	private File createJar(String name, String headers) throws IOException {
+		String content = "Manifest-Version: 1.0\n" + headers + "\n";
+		Manifest manifest = new Manifest(new ByteArrayInputStream(content.getBytes("UTF-8")));
+		File jar = new File(folder.getRoot(), name);
+		new JarOutputStream(new FileOutputStream(jar), manifest).close();
+		return jar;
+	}
+
+}
@@ -0,0 +1,172 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeoutException;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the state machine of {@link ArtifactStateWatcher} against model MBeans registered in a local MBean
+ * server.
+ * 
+ * @author Frieder Heugel
+ */
+public class ArtifactStateWatcherTest {
+	private static final String MODEL = "org.eclipse.virgo.kernel:type=ArtifactModel,artifact-type=bundle,"
+			+ "name=";
+	private MBeanServer server;
+	private ArtifactStateWatcher watcher;
+
+	@Before
+	public void setUp() throws Exception {
+		server = MBeanServerFactory.newMBeanServer();
+		watcher = new ArtifactStateWatcher(server, "bundle", "org.example.foo", "1.0.0",
+				new SystemStreamLog(), 5000);
+		watcher.start();
+	}
+
+	@After
+	public void tearDown() {
+		watcher.close();
+	}
+
+	@Test
+	public void returnsNullWithoutArtifactModel() throws Exception {
+		assertNull(watcher.awaitActive(5000));
+	}
+
+	@Test
+	public void returnsActiveArtefact() throws Exception {
+		register("org.example.foo", "ACTIVE");
+		assertEquals(ArtifactStateWatcher.ACTIVE, watcher.awaitActive(5000));
+	}
+
+	@Test
+	public void followsStateChanges() throws Exception {
+		ArtifactModel model = register("org.example.foo", "STARTING");
+		changeLater(model, "ACTIVE", 100);
+		long start = System.currentTimeMillis();
+		assertEquals(ArtifactStateWatcher.ACTIVE, watcher.awaitActive(5000));
+		// woken up by the notification, not by the periodic recheck
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(elapsed + "ms", elapsed < 900);
+	}
+
+	@Test
+	public void waitsForRegistration() throws Exception {
+		// another artefact proves the server exposes model MBeans
+		register("org.example.bar", "ACTIVE");
+		final ArtifactModel model = new ArtifactModel("ACTIVE");
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+					server.registerMBean(model,
+							new ObjectName(MODEL + "org.example.foo,version=1.0.0,region=user"));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}).start();
+		assertEquals(ArtifactStateWatcher.ACTIVE, watcher.awaitActive(5000));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failsOnFailedState() throws Exception {
+		register("org.example.foo", "FAILED");
+		watcher.awaitActive(5000);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failsWhenStartingIsAborted() throws Exception {
+		ArtifactModel model = register("org.example.foo", "STARTING");
+		changeLater(model, "RESOLVED", 100);
+		watcher.awaitActive(5000);
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void timesOutWhileStarting() throws Exception {
+		register("org.example.foo", "STARTING");
+		watcher.awaitActive(200);
+	}
+
+	@Test
+	public void awaitsRemoval() throws Exception {
+		register("org.example.foo", "ACTIVE");
+		final ObjectName name = new ObjectName(MODEL + "org.example.foo,version=1.0.0,region=user");
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+					server.unregisterMBean(name);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}).start();
+		watcher.awaitRemoved(5000);
+		assertTrue(server.queryNames(name, null).isEmpty());
+	}
+
+	private ArtifactModel register(String symbolicName, String state) throws Exception {
+		ArtifactModel model = new ArtifactModel(state);
+		server.registerMBean(model, new ObjectName(MODEL + symbolicName + ",version=1.0.0,region=user"));
+		return model;
+	}
+
+	private static void changeLater(final ArtifactModel model, final String state, final long delay) {
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					return;
+				}
+				model.setState(state);
+			}
+		}).start();
+	}
+
+	/**
+	 * The management interface of {@link ArtifactModel}.
+	 */
+	public interface ArtifactModelMBean {
+		String getState();
+	}
+
+	/**
+	 * A model MBean announcing every state change like the ones of Virgo.
+	 */
+	public static class ArtifactModel extends NotificationBroadcasterSupport implements ArtifactModelMBean {
+		private volatile String state;
+		private long sequence;
+
+		public ArtifactModel(String state) {
+			this.state = state;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		public void setState(String state) {
+			String oldState = this.state;
+			this.state = state;
+			sendNotification(new AttributeChangeNotification(this, ++sequence, System.currentTimeMillis(),
+					"State changed", "State", String.class.getName(), oldState, state));
+		}
+	}
+
+}
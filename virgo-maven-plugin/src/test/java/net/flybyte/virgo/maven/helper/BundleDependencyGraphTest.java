@@ -0,0 +1,111 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BundleDependencyGraph}.
+ * 
+ * @author Frieder Heugel
+ */
+public class BundleDependencyGraphTest {
+	private static final File API = new File("api.jar");
+	private static final File IMPL = new File("impl.jar");
+	private static final File WEB = new File("web.war");
+	private static final File UTIL = new File("util.jar");
+	private static final File PLAN = new File("app.plan");
+
+	@Test
+	public void splitsArtefactsIntoWaves() {
+		Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+		manifests.put(PLAN, null);
+		manifests.put(WEB, manifest("org.example.web", null, "org.example.util", "org.example.impl"));
+		manifests.put(IMPL, manifest("org.example.impl", null, "org.example.api", null));
+		manifests.put(API, manifest("org.example.api", "org.example.api", null, null));
+		manifests.put(UTIL, manifest("org.example.util", "org.example.util", null, null));
+		List<List<File>> waves = new BundleDependencyGraph(manifests).computeWaves();
+		assertEquals(4, waves.size());
+		assertEquals(new HashSet<File>(Arrays.asList(API, UTIL)), new HashSet<File>(waves.get(0)));
+		assertEquals(new HashSet<File>(Arrays.asList(IMPL)), new HashSet<File>(waves.get(1)));
+		assertEquals(new HashSet<File>(Arrays.asList(WEB)), new HashSet<File>(waves.get(2)));
+		// the plan references the bundles and goes last
+		assertEquals(Collections.singletonList(PLAN), waves.get(3));
+	}
+
+	@Test
+	public void ignoresSubstitutableExports() {
+		Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+		manifests.put(API, manifest("org.example.api", "org.example.api", "org.example.api", null));
+		BundleDependencyGraph graph = new BundleDependencyGraph(manifests);
+		assertTrue(graph.getDependencies(API).isEmpty());
+		assertEquals(1, graph.computeWaves().size());
+	}
+
+	@Test
+	public void reportsUnresolvedMandatoryImports() {
+		Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+		Manifest manifest = createManifest("org.example.impl");
+		manifest.getMainAttributes().putValue("Import-Package",
+				"org.example.missing,org.slf4j;resolution:=optional");
+		manifest.getMainAttributes().putValue("Require-Bundle", "org.example.absent");
+		manifests.put(IMPL, new BundleManifest(manifest));
+		List<String> unresolved = new BundleDependencyGraph(manifests).getUnresolved();
+		assertEquals(Arrays.asList("impl.jar imports package org.example.missing",
+				"impl.jar requires bundle org.example.absent"), unresolved);
+	}
+
+	@Test
+	public void detectsCycles() {
+		Map<File, BundleManifest> manifests = new LinkedHashMap<File, BundleManifest>();
+		manifests.put(UTIL, manifest("org.example.util", null, null, null));
+		manifests.put(API, manifest("org.example.api", "org.example.api", "org.example.impl", null));
+		manifests.put(IMPL, manifest("org.example.impl", "org.example.impl", null, "org.example.api"));
+		try {
+			new BundleDependencyGraph(manifests).computeWaves();
+			fail("The cycle between api.jar and impl.jar has not been detected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("api.jar"));
+			assertTrue(e.getMessage(), e.getMessage().contains("impl.jar"));
+			assertTrue(e.getMessage(), !e.getMessage().contains("util.jar"));
+		}
+	}
+
+	private static BundleManifest manifest(String symbolicName, String exports, String imports,
+			String requiredBundles) {
+		Manifest manifest = createManifest(symbolicName);
+		Attributes attributes = manifest.getMainAttributes();
+		if (exports != null) {
+			attributes.putValue("Export-Package", exports + ";version=\"1.0.0\"");
+		}
+		if (imports != null) {
+			attributes.putValue("Import-Package", imports);
+		}
+		if (requiredBundles != null) {
+			attributes.putValue("Require-Bundle", requiredBundles);
+		}
+		return new BundleManifest(manifest);
+	}
+
+	private static Manifest createManifest(String symbolicName) {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+		manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+		return manifest;
+	}
+
+}
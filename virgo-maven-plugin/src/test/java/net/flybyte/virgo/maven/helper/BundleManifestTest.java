@@ -0,0 +1,64 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BundleManifest}.
+ * 
+ * @author Frieder Heugel
+ */
+public class BundleManifestTest {
+
+	@Test
+	public void readsIdentityAndDependencies() throws IOException {
+		BundleManifest manifest = parse("Bundle-SymbolicName: org.example.foo;singleton:=true\n"
+				+ "Bundle-Version: 1.0.0\n"
+				+ "Export-Package: org.example.foo;version=\"1.0.0\";uses:=\"org.example.bar,org.slf4j\"\n"
+				+ "Import-Package: org.example.bar;org.example.baz;version=\"[1,2)\",org.slf4j;resolu\n"
+				+ " tion:=optional\n" + "Require-Bundle: org.example.util\n");
+		assertEquals("org.example.foo", manifest.getSymbolicName());
+		assertEquals("1.0.0", manifest.getVersion());
+		assertEquals(1, manifest.getExportedPackages().size());
+		assertTrue(manifest.getExportedPackages().contains("org.example.foo"));
+		assertEquals(Boolean.FALSE, manifest.getImportedPackages().get("org.example.baz"));
+		assertEquals(Boolean.TRUE, manifest.getImportedPackages().get("org.slf4j"));
+		assertEquals(Boolean.FALSE, manifest.getRequiredBundles().get("org.example.util"));
+	}
+
+	@Test
+	public void readsIdentityOfPar() throws IOException {
+		BundleManifest manifest = parse("Application-SymbolicName: org.example.app\n"
+				+ "Application-Version: 2.0.0\n");
+		assertEquals("org.example.app", manifest.getSymbolicName());
+		assertEquals("2.0.0", manifest.getVersion());
+	}
+
+	@Test
+	public void treatsBlankSymbolicNameAsMissing() throws IOException {
+		assertNull(parse("Bundle-SymbolicName: \n").getSymbolicName());
+		assertNull(parse("Bundle-SymbolicName: ,\n").getSymbolicName());
+		assertNull(parse("Bundle-SymbolicName: ;singleton:=true\n").getSymbolicName());
+		assertNull(parse("Bundle-Version: 1.0.0\n").getSymbolicName());
+	}
+
+	@Test
+	public void keepsQuotedSeparators() {
+		assertEquals(2, BundleManifest.parseClauses("a;uses:=\"b,c\",d").size());
+		assertFalse(BundleManifest.parseClauses("a;uses:=\"b,c\",d").get(0).getNames().contains("c\""));
+	}
+
+	private static BundleManifest parse(String headers) throws IOException {
+		String manifest = "Manifest-Version: 1.0\n" + headers + "\n";
+		return new BundleManifest(new Manifest(new ByteArrayInputStream(manifest.getBytes("UTF-8"))));
+	}
+
+}
@@ -0,0 +1,113 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link BundlePackager}.
+ * 
+ * @author Frieder Heugel
+ */
+public class BundlePackagerTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void packsDirectoryWithManifestFirst() throws IOException {
+		File classes = folder.newFolder("classes");
+		write(new File(classes, "org/example/foo/Foo.class"), "foo");
+		write(new File(classes, "OSGI-INF/blueprint/foo.xml"), "<blueprint/>");
+		// replaced by the given manifest
+		write(new File(classes, JarFile.MANIFEST_NAME), "Bundle-SymbolicName: stale\n");
+		File target = new File(folder.getRoot(), "foo-1.0.0.jar");
+		write(target, "the previous artefact");
+		BundlePackager.pack(classes, createManifest("org.example.foo"), target);
+		JarInputStream in = new JarInputStream(Files.newInputStream(target.toPath()));
+		try {
+			// JarInputStream only finds the manifest if it is one of the first entries
+			Attributes attributes = in.getManifest().getMainAttributes();
+			assertEquals("org.example.foo", attributes.getValue("Bundle-SymbolicName"));
+			List<String> names = new ArrayList<String>();
+			JarEntry entry;
+			while ((entry = in.getNextJarEntry()) != null) {
+				names.add(entry.getName());
+				if (entry.getName().equals("org/example/foo/Foo.class")) {
+					assertEquals("foo", read(in));
+				}
+			}
+			assertEquals(Arrays.asList("OSGI-INF/", "OSGI-INF/blueprint/", "OSGI-INF/blueprint/foo.xml",
+					"org/", "org/example/", "org/example/foo/", "org/example/foo/Foo.class"), sort(names));
+		} finally {
+			in.close();
+		}
+		assertFalse(new File(folder.getRoot(), "foo-1.0.0.jar.tmp").exists());
+	}
+
+	@Test
+	public void readsManifestOfDirectoryAndJar() throws IOException {
+		File classes = folder.newFolder("classes");
+		assertNull(BundlePackager.readManifest(classes));
+		write(new File(classes, JarFile.MANIFEST_NAME), "Bundle-SymbolicName: org.example.dir\n");
+		assertEquals("org.example.dir", getSymbolicName(BundlePackager.readManifest(classes)));
+		File jar = new File(folder.getRoot(), "foo.jar");
+		new JarOutputStream(new FileOutputStream(jar), createManifest("org.example.jar")).close();
+		assertEquals("org.example.jar", getSymbolicName(BundlePackager.readManifest(jar)));
+		assertNull(BundlePackager.readManifest(new File(folder.getRoot(), "missing.jar")));
+	}
+
+	private static Manifest createManifest(String symbolicName) {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+		return manifest;
+	}
+
+	private static String getSymbolicName(Manifest manifest) {
+		return manifest.getMainAttributes().getValue("Bundle-SymbolicName");
+	}
+
+	private static List<String> sort(List<String> names) {
+		String[] sorted = names.toArray(new String[names.size()]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+	private static String read(InputStream in) throws IOException {
+		StringBuilder content = new StringBuilder();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			content.append(new String(buffer, 0, read, CHARSET));
+		}
+		return content.toString();
+	}
+
+}
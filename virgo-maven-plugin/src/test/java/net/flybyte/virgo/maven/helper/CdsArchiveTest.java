@@ -0,0 +1,122 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link CdsArchive}. The archives are determined with the JVM running the tests.
+ * 
+ * @author Frieder Heugel
+ */
+public class CdsArchiveTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File cacheDir;
+	private File virgoRoot;
+	private String java;
+
+	@Before
+	public void createInstance() throws IOException {
+		cacheDir = new File(folder.getRoot(), "cds");
+		virgoRoot = folder.newFolder("virgo");
+		write("lib/org.eclipse.virgo.kernel.jar", "kernel");
+		write("plugins/org.eclipse.osgi.jar", "osgi");
+		java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+	}
+
+	@Test
+	public void keepsKeyForUnchangedInstance() throws IOException {
+		CdsArchive archive = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		assertEquals(16, archive.getKey().length());
+		assertEquals(archive.getKey(), CdsArchive.forInstance(cacheDir, virgoRoot, java).getKey());
+		assertEquals(new File(cacheDir, "virgo-" + archive.getKey() + ".jsa"), archive.getFile());
+		assertEquals("-XX:SharedArchiveFile=" + archive.getFile().getAbsolutePath(), archive.getUseOption());
+		assertFalse(archive.exists());
+		// an empty file is left behind by a JVM which failed to dump the archive
+		cacheDir.mkdirs();
+		assertTrue(archive.getFile().createNewFile());
+		assertFalse(archive.exists());
+		write(archive.getFile(), "archive");
+		assertTrue(archive.exists());
+	}
+
+	@Test
+	public void changesKeyWithBundles() throws IOException {
+		String key = CdsArchive.forInstance(cacheDir, virgoRoot, java).getKey();
+		write("plugins/org.eclipse.equinox.region.jar", "region");
+		assertNotEquals(key, CdsArchive.forInstance(cacheDir, virgoRoot, java).getKey());
+	}
+
+	@Test
+	public void detectsVersionOfJvm() throws IOException {
+		CdsArchive archive = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		String version = System.getProperty("java.specification.version");
+		int major = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+		assertEquals(major, archive.getMajorVersion());
+		assertEquals(major >= CdsArchive.MIN_JAVA_VERSION, archive.isSupported());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMissingJava() throws IOException {
+		CdsArchive.forInstance(cacheDir, virgoRoot, new File(folder.getRoot(), "bin/java").getPath());
+	}
+
+	@Test
+	public void recordsStartupDurations() throws IOException {
+		CdsArchive archive = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		assertEquals(-1, archive.getStartup(false));
+		archive.recordStartup(false, 4200);
+		archive.recordStartup(true, 2900);
+		archive = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		assertEquals(4200, archive.getStartup(false));
+		assertEquals(2900, archive.getStartup(true));
+	}
+
+	@Test
+	public void removesStaleArchivesOfSameInstance() throws IOException {
+		CdsArchive stale = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		stale.recordStartup(false, 4200);
+		write(stale.getFile(), "archive");
+		// another instance sharing the cache directory
+		File otherRoot = virgoRoot;
+		virgoRoot = folder.newFolder("other");
+		write("lib/org.eclipse.virgo.kernel.jar", "kernel");
+		write("plugins/org.eclipse.osgi.jar", "osgi");
+		CdsArchive other = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		other.recordStartup(false, 3800);
+		virgoRoot = otherRoot;
+		write("plugins/org.eclipse.equinox.region.jar", "region");
+		CdsArchive current = CdsArchive.forInstance(cacheDir, virgoRoot, java);
+		current.recordStartup(false, 4300);
+		assertEquals(1, current.removeStale());
+		assertFalse(stale.getFile().exists());
+		assertEquals(-1, stale.getStartup(false));
+		assertEquals(3800, other.getStartup(false));
+		assertEquals(4300, current.getStartup(false));
+		assertEquals(0, current.removeStale());
+	}
+
+	private void write(String name, String content) throws IOException {
+		write(new File(virgoRoot, name), content);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+}
@@ -0,0 +1,116 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.flybyte.virgo.maven.helper.ChunkedUploader.Chunk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the content-defined chunking of {@link ChunkedUploader#split(File)}.
+ * 
+ * @author Frieder Heugel
+ */
+public class ChunkedUploaderTest {
+	private static final int MIN_CHUNK = 16 * 1024;
+	private static final int MAX_CHUNK = 256 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void splitsEmptyFileIntoSingleChunk() throws IOException {
+		List<Chunk> chunks = ChunkedUploader.split(folder.newFile());
+		assertEquals(1, chunks.size());
+		assertEquals(0, chunks.get(0).getLength());
+		assertEquals(hash(new byte[0], 0, 0), chunks.get(0).getHash());
+	}
+
+	@Test
+	public void chunksCoverTheFile() throws IOException {
+		byte[] content = random(3 * 1024 * 1024, 1);
+		List<Chunk> chunks = ChunkedUploader.split(write(content));
+		assertTrue(chunks.size() > 1);
+		long offset = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk chunk = chunks.get(i);
+			assertEquals(offset, chunk.getOffset());
+			assertTrue(chunk.getLength() <= MAX_CHUNK);
+			if (i < chunks.size() - 1) {
+				assertTrue(chunk.getLength() >= MIN_CHUNK);
+			}
+			assertEquals(hash(content, (int) offset, chunk.getLength()), chunk.getHash());
+			offset += chunk.getLength();
+		}
+		assertEquals(content.length, offset);
+	}
+
+	@Test
+	public void limitsChunksWithoutBoundary() throws IOException {
+		// a constant rolling hash never hits a boundary
+		List<Chunk> chunks = ChunkedUploader.split(write(new byte[MAX_CHUNK * 3 + 10]));
+		assertEquals(4, chunks.size());
+		assertEquals(MAX_CHUNK, chunks.get(0).getLength());
+		assertEquals(10, chunks.get(3).getLength());
+		// identical content, identical chunks
+		assertEquals(chunks.get(0).getHash(), chunks.get(2).getHash());
+	}
+
+	@Test
+	public void keepsBoundariesAfterInsertion() throws IOException {
+		byte[] original = random(2 * 1024 * 1024, 2);
+		byte[] changed = new byte[original.length + 100];
+		System.arraycopy(original, 0, changed, 0, 1000);
+		System.arraycopy(random(100, 3), 0, changed, 1000, 100);
+		System.arraycopy(original, 1000, changed, 1100, original.length - 1000);
+		Set<String> known = new HashSet<String>();
+		for (Chunk chunk : ChunkedUploader.split(write(original))) {
+			known.add(chunk.getHash());
+		}
+		List<Chunk> chunks = ChunkedUploader.split(write(changed));
+		int missing = 0;
+		for (Chunk chunk : chunks) {
+			if (!known.contains(chunk.getHash())) {
+				missing++;
+			}
+		}
+		// only the chunks around the inserted bytes have to be transferred again
+		assertTrue(missing + " of " + chunks.size() + " chunks changed", missing <= 2);
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] random(int length, long seed) {
+		byte[] content = new byte[length];
+		new Random(seed).nextBytes(content);
+		return content;
+	}
+
+	private static String hash(byte[] content, int offset, int length) {
+		MessageDigest digest = ContentHasher.newDigest();
+		digest.update(content, offset, length);
+		return ContentHasher.toHex(digest.digest());
+	}
+
+}
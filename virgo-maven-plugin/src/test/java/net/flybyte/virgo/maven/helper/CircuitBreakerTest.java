@@ -0,0 +1,77 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CircuitBreaker}. The breakers are shared by the whole JVM, so every test uses its own
+ * target.
+ * 
+ * @author Frieder Heugel
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void returnsSameBreakerPerTarget() {
+		assertSame(CircuitBreaker.forTarget("service:jmx:rmi://node1"),
+				CircuitBreaker.forTarget("service:jmx:rmi://node1"));
+	}
+
+	@Test
+	public void failsFastWhileOpen() throws IOException {
+		CircuitBreaker breaker = CircuitBreaker.forTarget("service:jmx:rmi://node2");
+		breaker.check(10000);
+		breaker.failure("Connection refused", 10000);
+		assertTrue(breaker.isOpen());
+		try {
+			breaker.check(10000);
+			fail("The open breaker let the caller through");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("1 failed attempts"));
+			assertTrue(e.getMessage(), e.getMessage().contains("Connection refused"));
+		}
+	}
+
+	@Test
+	public void letsSingleCallerThroughAfterCoolDown() throws Exception {
+		CircuitBreaker breaker = CircuitBreaker.forTarget("service:jmx:rmi://node3");
+		breaker.failure("Connection refused", 100);
+		Thread.sleep(150);
+		assertFalse(breaker.isOpen());
+		// half open, the first caller tries while the others keep failing
+		breaker.check(10000);
+		assertTrue(breaker.isOpen());
+		try {
+			breaker.check(10000);
+			fail("A second caller has been let through while the first one is trying");
+		} catch (IOException e) {
+			// expected
+		}
+		breaker.success();
+		assertFalse(breaker.isOpen());
+		breaker.check(10000);
+	}
+
+	@Test
+	public void opensAgainAfterFailedTrial() throws Exception {
+		CircuitBreaker breaker = CircuitBreaker.forTarget("service:jmx:rmi://node4");
+		breaker.failure("Connection refused", 100);
+		Thread.sleep(150);
+		breaker.check(100);
+		breaker.failure("Connection timed out", 10000);
+		try {
+			breaker.check(10000);
+			fail("The breaker did not open again");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("2 failed attempts"));
+			assertTrue(e.getMessage(), e.getMessage().contains("Connection timed out"));
+		}
+	}
+
+}
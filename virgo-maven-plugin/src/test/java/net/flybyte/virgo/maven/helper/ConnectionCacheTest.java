@@ -0,0 +1,179 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnector;
+import javax.security.auth.Subject;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConnectionCache} and its binding to the Maven session.
+ * 
+ * @author Frieder Heugel
+ */
+public class ConnectionCacheTest {
+	private static final String KEY = ConnectionCache.key("service:jmx:rmi://localhost:9875", "admin",
+			"secret");
+
+	@After
+	public void tearDown() {
+		ConnectionCache.closeAll();
+	}
+
+	@Test
+	public void returnsHealthyConnector() {
+		ConnectionCache.bindSession(newSession(), new SystemStreamLog());
+		StubConnector connector = new StubConnector();
+		ConnectionCache.put(KEY, connector);
+		int hits = ConnectionCache.getHits();
+		assertSame(connector, ConnectionCache.get(KEY, 1000));
+		assertEquals(hits + 1, ConnectionCache.getHits());
+		assertNull(ConnectionCache.get(ConnectionCache.key("service:jmx:rmi://other:9875", "admin", "secret"),
+				1000));
+	}
+
+	@Test
+	public void evictsBrokenConnector() {
+		ConnectionCache.bindSession(newSession(), new SystemStreamLog());
+		StubConnector connector = new StubConnector();
+		connector.broken = true;
+		ConnectionCache.put(KEY, connector);
+		assertNull(ConnectionCache.get(KEY, 1000));
+		assertTrue(connector.closed);
+	}
+
+	@Test
+	public void closesConnectorsAtSessionEnd() {
+		MavenSession session = newSession();
+		RecordingListener original = new RecordingListener();
+		session.getRequest().setExecutionListener(original);
+		ConnectionCache.bindSession(session, new SystemStreamLog());
+		// binding the same session again must not register a second action
+		ConnectionCache.bindSession(session, new SystemStreamLog());
+		StubConnector connector = new StubConnector();
+		ConnectionCache.put(KEY, connector);
+		session.getRequest().getExecutionListener().projectStarted(null);
+		assertFalse(connector.closed);
+		session.getRequest().getExecutionListener().sessionEnded(null);
+		assertTrue(connector.closed);
+		assertNull(ConnectionCache.get(KEY, 1000));
+		// the original listener still receives all events
+		assertEquals(1, original.projectsStarted);
+		assertEquals(1, original.sessionsEnded);
+	}
+
+	@Test
+	public void closesConnectorsOfPreviousSession() {
+		ConnectionCache.bindSession(newSession(), new SystemStreamLog());
+		StubConnector connector = new StubConnector();
+		ConnectionCache.put(KEY, connector);
+		ConnectionCache.bindSession(newSession(), new SystemStreamLog());
+		assertTrue(connector.closed);
+	}
+
+	@Test
+	public void runsActionsOnce() {
+		MavenSession session = newSession();
+		final int[] runs = { 0 };
+		assertTrue(SessionEndListener.register(session, new Runnable() {
+			public void run() {
+				runs[0]++;
+			}
+		}));
+		session.getRequest().getExecutionListener().sessionEnded(null);
+		session.getRequest().getExecutionListener().sessionEnded(null);
+		assertEquals(1, runs[0]);
+	}
+
+	private static MavenSession newSession() {
+		MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+		return new MavenSession(null, request, new DefaultMavenExecutionResult(),
+				Collections.<MavenProject> emptyList());
+	}
+
+	/**
+	 * Stands in for the listener printing the build output.
+	 */
+	private static class RecordingListener extends AbstractExecutionListener {
+		private int projectsStarted;
+		private int sessionsEnded;
+
+		@Override
+		public void projectStarted(ExecutionEvent event) {
+			projectsStarted++;
+		}
+
+		@Override
+		public void sessionEnded(ExecutionEvent event) {
+			sessionsEnded++;
+		}
+	}
+
+	/**
+	 * A connector to a local MBean server which can be broken on purpose.
+	 */
+	private static class StubConnector implements JMXConnector {
+		private final MBeanServerConnection connection = MBeanServerFactory.newMBeanServer();
+		private volatile boolean broken;
+		private volatile boolean closed;
+
+		public void connect() {
+		}
+
+		public void connect(Map<String, ?> env) {
+		}
+
+		public MBeanServerConnection getMBeanServerConnection() throws IOException {
+			if (broken || closed) {
+				throw new IOException("Connection closed");
+			}
+			return connection;
+		}
+
+		public MBeanServerConnection getMBeanServerConnection(Subject subject) throws IOException {
+			return getMBeanServerConnection();
+		}
+
+		public void close() {
+			closed = true;
+		}
+
+		public void addConnectionNotificationListener(NotificationListener listener,
+				NotificationFilter filter, Object handback) {
+		}
+
+		public void removeConnectionNotificationListener(NotificationListener listener) {
+		}
+
+		public void removeConnectionNotificationListener(NotificationListener listener,
+				NotificationFilter filter, Object handback) {
+		}
+
+		public String getConnectionId() {
+			return "stub";
+		}
+	}
+
+}
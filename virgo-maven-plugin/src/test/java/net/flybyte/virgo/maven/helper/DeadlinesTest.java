@@ -0,0 +1,119 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Deadlines}.
+ * 
+ * @author Frieder Heugel
+ */
+public class DeadlinesTest {
+
+	@Test
+	public void returnsResultWithinDeadline() throws Exception {
+		assertEquals("connected", Deadlines.call(new Callable<String>() {
+			public String call() {
+				return "connected";
+			}
+		}, 5000, "Connecting"));
+	}
+
+	@Test
+	public void runsInCallingThreadWithoutDeadline() throws Exception {
+		final Thread caller = Thread.currentThread();
+		assertSame(caller, Deadlines.call(new Callable<Thread>() {
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		}, 0, "Connecting"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rethrowsFailureOfCall() throws Exception {
+		Deadlines.call(new Callable<String>() {
+			public String call() throws IOException {
+				throw new IOException("Connection refused");
+			}
+		}, 5000, "Connecting");
+	}
+
+	@Test
+	public void abandonsHangingCall() throws Exception {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		try {
+			Deadlines.call(new Callable<String>() {
+				public String call() {
+					try {
+						Thread.sleep(30000);
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+					}
+					return null;
+				}
+			}, 200, "Invoking deploy");
+			fail("The hanging call has not been abandoned");
+		} catch (TimeoutException e) {
+			assertEquals("Invoking deploy did not finish within 200ms", e.getMessage());
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void closesLateResult() throws Exception {
+		final CountDownLatch closed = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			Deadlines.call(new Callable<Closeable>() {
+				public Closeable call() {
+					// like a connect which doesn't react to interrupts
+					boolean done = false;
+					while (!done) {
+						try {
+							done = release.await(5, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							// keep waiting
+						}
+					}
+					return new Closeable() {
+						public void close() {
+							closed.countDown();
+						}
+					};
+				}
+			}, 100, "Connecting");
+			fail("The hanging call has not been abandoned");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		release.countDown();
+		assertTrue("The late connection has not been closed", closed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void backsOffExponentiallyWithJitter() {
+		for (int i = 0; i < 100; i++) {
+			long first = Deadlines.backoff(1, 100, 5000);
+			assertTrue(String.valueOf(first), first >= 0 && first < 100);
+			long third = Deadlines.backoff(3, 100, 5000);
+			assertTrue(String.valueOf(third), third >= 0 && third < 400);
+			// the bound is capped, also where the shift would overflow
+			long late = Deadlines.backoff(80, 100, 5000);
+			assertTrue(String.valueOf(late), late >= 0 && late < 5000);
+		}
+	}
+
+}
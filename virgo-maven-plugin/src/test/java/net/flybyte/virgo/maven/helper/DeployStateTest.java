@@ -0,0 +1,124 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link DeployState}.
+ * 
+ * @author Frieder Heugel
+ */
+public class DeployStateTest {
+	private static final String SERVER = "service:jmx:rmi://localhost:9875/jndi/rmi://localhost:9875/jmxrmi";
+	private static final String OTHER = "service:jmx:rmi://localhost:9876/jndi/rmi://localhost:9876/jmxrmi";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File previousInvalidations;
+	private File artefact;
+
+	@Before
+	public void setUp() throws IOException {
+		previousInvalidations = DeployState.invalidations;
+		DeployState.invalidations = new File(folder.getRoot(), "home/deploy-invalidations.properties");
+		artefact = new File(folder.newFolder("target"), "foo-1.0.0.jar");
+	}
+
+	@After
+	public void tearDown() {
+		DeployState.invalidations = previousInvalidations;
+	}
+
+	@Test
+	public void detectsRecordedDeployment() throws IOException {
+		assertFalse(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.0"));
+		DeployState.record(artefact, "abc", SERVER, "org.example.foo", "1.0.0");
+		assertTrue(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.0"));
+		assertTrue(new File(artefact.getParentFile(), DeployState.FILE_NAME).isFile());
+	}
+
+	@Test
+	public void detectsChanges() throws IOException {
+		DeployState.record(artefact, "abc", SERVER, "org.example.foo", "1.0.0");
+		assertFalse(DeployState.isUpToDate(artefact, "abd", SERVER, "org.example.foo", "1.0.0"));
+		assertFalse(DeployState.isUpToDate(artefact, "abc", OTHER, "org.example.foo", "1.0.0"));
+		assertFalse(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.bar", "1.0.0"));
+		assertFalse(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.1"));
+	}
+
+	@Test
+	public void keepsStatePerServer() throws IOException {
+		DeployState.record(artefact, "abc", SERVER, "org.example.foo", "1.0.0");
+		DeployState.record(artefact, "abc", OTHER, "org.example.foo", "1.0.0");
+		DeployState.remove(artefact, OTHER);
+		assertTrue(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.0"));
+		assertFalse(DeployState.isUpToDate(artefact, "abc", OTHER, "org.example.foo", "1.0.0"));
+	}
+
+	@Test
+	public void invalidatesEverythingOfServer() throws Exception {
+		DeployState.record(artefact, "abc", SERVER, "org.example.foo", "1.0.0");
+		DeployState.record(artefact, "abc", OTHER, "org.example.foo", "1.0.0");
+		// the deployment has to be strictly older than the invalidation
+		Thread.sleep(5);
+		DeployState.invalidate(SERVER);
+		assertFalse(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.0"));
+		assertTrue(DeployState.isUpToDate(artefact, "abc", OTHER, "org.example.foo", "1.0.0"));
+		Thread.sleep(5);
+		DeployState.record(artefact, "abc", SERVER, "org.example.foo", "1.0.0");
+		assertTrue(DeployState.isUpToDate(artefact, "abc", SERVER, "org.example.foo", "1.0.0"));
+	}
+
+	@Test
+	public void keepsConcurrentInvalidations() throws Exception {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final String server = "service:jmx:rmi://node" + i + ":9875/jndi/rmi://node" + i + ":9875/jmxrmi";
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						DeployState.invalidate(server);
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Properties invalidations = new Properties();
+		InputStream in = new FileInputStream(DeployState.invalidations);
+		try {
+			invalidations.load(in);
+		} finally {
+			in.close();
+		}
+		assertEquals(8, invalidations.size());
+		// no temporary files are left behind
+		File[] files = DeployState.invalidations.getParentFile().listFiles();
+		for (File file : files) {
+			assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link DirectorySync}.
+ * 
+ * @author Frieder Heugel
+ */
+public class DirectorySyncTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File source;
+	private File target;
+
+	@Before
+	public void setUp() throws IOException {
+		source = folder.newFolder("classes");
+		target = new File(folder.getRoot(), "exploded/foo-1.0.0.jar");
+		write(source, "org/example/foo/Foo.class", "foo");
+		write(source, "org/example/foo/Bar.class", "bar");
+		write(source, "OSGI-INF/blueprint/foo.xml", "<blueprint/>");
+		// replaced by the given manifest
+		write(source, JarFile.MANIFEST_NAME, "Bundle-SymbolicName: stale\n");
+	}
+
+	@Test
+	public void copiesEverythingInitially() throws IOException {
+		assertEquals(4, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertEquals("foo", read(target, "org/example/foo/Foo.class"));
+		assertEquals("<blueprint/>", read(target, "OSGI-INF/blueprint/foo.xml"));
+		Manifest manifest = BundlePackager.readManifest(target);
+		assertEquals("org.example.foo", manifest.getMainAttributes().getValue("Bundle-SymbolicName"));
+		assertEquals(new File(source, "org/example/foo/Foo.class").lastModified(), new File(target,
+				"org/example/foo/Foo.class").lastModified());
+	}
+
+	@Test
+	public void leavesUnchangedFilesAlone() throws IOException {
+		DirectorySync.sync(source, target, createManifest("1.0.0"));
+		File copy = new File(target, "org/example/foo/Foo.class");
+		// a rewrite would show up as a different content
+		Files.write(copy.toPath(), "baz".getBytes(CHARSET));
+		copy.setLastModified(new File(source, "org/example/foo/Foo.class").lastModified());
+		assertEquals(0, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertEquals("baz", read(target, "org/example/foo/Foo.class"));
+	}
+
+	@Test
+	public void copiesModifiedFiles() throws IOException {
+		DirectorySync.sync(source, target, createManifest("1.0.0"));
+		File file = new File(source, "org/example/foo/Foo.class");
+		// same size, only the modification time tells the difference
+		write(source, "org/example/foo/Foo.class", "oof");
+		file.setLastModified(file.lastModified() - 10000);
+		assertEquals(1, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertEquals("oof", read(target, "org/example/foo/Foo.class"));
+	}
+
+	@Test
+	public void deletesRemovedFiles() throws IOException {
+		DirectorySync.sync(source, target, createManifest("1.0.0"));
+		assertTrue(new File(source, "org/example/foo/Bar.class").delete());
+		assertTrue(new File(source, "OSGI-INF/blueprint/foo.xml").delete());
+		assertTrue(new File(source, "OSGI-INF/blueprint").delete());
+		assertEquals(2, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertFalse(new File(target, "org/example/foo/Bar.class").exists());
+		assertFalse(new File(target, "OSGI-INF/blueprint").exists());
+		assertTrue(new File(target, "org/example/foo/Foo.class").exists());
+		// the manifest is not part of the source, but is kept
+		assertTrue(new File(target, JarFile.MANIFEST_NAME).isFile());
+	}
+
+	@Test
+	public void replacesFileByDirectory() throws IOException {
+		DirectorySync.sync(source, target, createManifest("1.0.0"));
+		assertTrue(new File(source, "org/example/foo/Bar.class").delete());
+		write(source, "org/example/foo/Bar.class/Baz.class", "baz");
+		assertEquals(1, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertEquals("baz", read(target, "org/example/foo/Bar.class/Baz.class"));
+	}
+
+	@Test
+	public void rewritesChangedManifestOnly() throws IOException {
+		DirectorySync.sync(source, target, createManifest("1.0.0"));
+		assertEquals(0, DirectorySync.sync(source, target, createManifest("1.0.0")));
+		assertEquals(1, DirectorySync.sync(source, target, createManifest("1.0.1")));
+		Manifest manifest = BundlePackager.readManifest(target);
+		assertEquals("1.0.1", manifest.getMainAttributes().getValue("Bundle-Version"));
+	}
+
+	private static Manifest createManifest(String version) {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", "org.example.foo");
+		manifest.getMainAttributes().putValue("Bundle-Version", version);
+		return manifest;
+	}
+
+	private static void write(File directory, String name, String content) throws IOException {
+		File file = new File(directory, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+	private static String read(File directory, String name) throws IOException {
+		return new String(Files.readAllBytes(new File(directory, name).toPath()), CHARSET);
+	}
+
+}
@@ -0,0 +1,91 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link HealthCheck}.
+ * 
+ * @author Frieder Heugel
+ */
+public class HealthCheckTest {
+	private static final String SERVICE_URL = "service:jmx:rmi://node1:9875/jndi/rmi://node1:9875/jmxrmi";
+	private HttpServer server;
+
+	@After
+	public void tearDown() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void resolvesPlaceholders() throws IOException {
+		VirgoTarget target = new VirgoTarget("node1", null, -1, SERVICE_URL, 8081);
+		assertEquals("http://node1:8081/app/health",
+				HealthCheck.resolveUrl("http://{host}:{httpPort}/app/health", target));
+		assertEquals("http://lb/health", HealthCheck.resolveUrl("http://lb/health", target));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnknownHttpPort() throws IOException {
+		VirgoTarget target = new VirgoTarget("node1", null, -1, SERVICE_URL, -1);
+		HealthCheck.resolveUrl("http://{host}:{httpPort}/", target);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnknownHost() throws IOException {
+		VirgoTarget target = new VirgoTarget("node1", null, -1, "service:jmx:jmxmp://", 8080);
+		HealthCheck.resolveUrl("http://{host}/", target);
+	}
+
+	@Test
+	public void waitsUntilHealthy() throws Exception {
+		// the first requests are answered while the application is still starting
+		final AtomicInteger requests = new AtomicInteger();
+		String url = serve(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(requests.incrementAndGet() < 3 ? 503 : 200, -1);
+				exchange.close();
+			}
+		});
+		HealthCheck.await(url, 5000, 10);
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void timesOutWhileUnhealthy() throws Exception {
+		String url = serve(new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		try {
+			HealthCheck.await(url, 200, 50);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("(status 500)"));
+		}
+	}
+
+	private String serve(HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/health", handler);
+		server.start();
+		return "http://localhost:" + server.getAddress().getPort() + "/health";
+	}
+
+}
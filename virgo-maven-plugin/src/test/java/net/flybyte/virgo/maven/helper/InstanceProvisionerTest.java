@@ -0,0 +1,104 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link InstanceProvisioner}.
+ * 
+ * @author Frieder Heugel
+ */
+public class InstanceProvisionerTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rewritesConnectorPorts() throws IOException {
+		File configuration = folder.newFolder("configuration");
+		write(new File(configuration, "tomcat-server.xml"), "<Server port=\"-1\">\n"
+				+ "  <Connector port=\"8009\" protocol=\"AJP/1.3\" redirectPort=\"8443\" />\n"
+				+ "  <Connector port=\"8080\" protocol=\"HTTP/1.1\"\n"
+				+ "             connectionTimeout=\"20000\" redirectPort=\"8443\" />\n"
+				+ "  <Connector port=\"8443\" protocol=\"HTTP/1.1\" SSLEnabled=\"true\" scheme=\"https\" />\n"
+				+ "  <Connector port=\"8081\" protocol=\"HTTP/1.1\" />\n"
+				+ "</Server>\n");
+		int httpPort = InstanceProvisioner.rewritePorts(configuration, InstanceProvisioner.offset(1000));
+		// the AJP connector comes first but isn't of interest to clients
+		assertEquals(9080, httpPort);
+		String content = read(new File(configuration, "tomcat-server.xml"));
+		assertTrue(content, content.contains("<Server port=\"-1\">"));
+		assertTrue(content,
+				content.contains("<Connector port=\"9009\" protocol=\"AJP/1.3\" redirectPort=\"9443\" />"));
+		assertTrue(content, content.contains("connectionTimeout=\"20000\" redirectPort=\"9443\" />"));
+		assertTrue(content,
+				content.contains("<Connector port=\"9443\" protocol=\"HTTP/1.1\" SSLEnabled=\"true\""));
+		assertTrue(content, content.contains("<Connector port=\"9081\""));
+	}
+
+	@Test
+	public void rewritesConsolePortsAndKeepsDisabledOnes() throws IOException {
+		File configuration = folder.newFolder("configuration");
+		write(new File(configuration, "osgi.console.properties"), "telnet.enabled=true\n"
+				+ "telnet.port=2501\n" + "ssh.enabled=false\n" + "ssh.port=-1\n");
+		int httpPort = InstanceProvisioner.rewritePorts(configuration, InstanceProvisioner.offset(1000));
+		assertEquals(-1, httpPort);
+		assertEquals("telnet.enabled=true\n" + "telnet.port=3501\n" + "ssh.enabled=false\n" + "ssh.port=-1\n",
+				read(new File(configuration, "osgi.console.properties")));
+	}
+
+	@Test
+	public void mapsSamePortToSameFreePort() {
+		InstanceProvisioner.FreePorts ports = new InstanceProvisioner.FreePorts();
+		int http = ports.map(8080);
+		assertEquals(http, ports.map(8080));
+		assertFalse(http == ports.map(8443));
+		assertEquals(2, ports.getAssigned().size());
+	}
+
+	@Test
+	public void linksOnlyImmutableDirectories() throws IOException {
+		File template = folder.newFolder("virgo");
+		String[] files = { "lib/kernel.jar", "plugins/osgi.jar", "repository/ext/spring.jar",
+				"repository/usr/app.jar", "pickup/admin.plan", "bin/startup.sh",
+				"configuration/kernel.properties", "version.txt" };
+		for (String file : files) {
+			File source = new File(template, file);
+			source.getParentFile().mkdirs();
+			write(source, file);
+		}
+		File instance = new File(folder.getRoot(), "instance");
+		InstanceProvisioner provisioner = new InstanceProvisioner(template);
+		provisioner.provision(instance, InstanceProvisioner.offset(0));
+		assertEquals(3, provisioner.getLinkedFiles());
+		assertEquals(5, provisioner.getCopiedFiles());
+		for (String file : files) {
+			File source = new File(template, file);
+			File target = new File(instance, file);
+			assertEquals(file, read(target));
+			boolean linked = file.startsWith("lib/") || file.startsWith("plugins/")
+					|| file.startsWith("repository/ext/");
+			assertEquals(file, linked, Files.isSameFile(source.toPath(), target.toPath()));
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), CHARSET);
+	}
+
+}
@@ -0,0 +1,41 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for the parsing of recorded batch command lines of {@link LaunchCommand}.
+ * 
+ * @author Frieder Heugel
+ */
+public class LaunchCommandTest {
+
+	@Test
+	public void splitsAtWhitespace() {
+		assertEquals(Arrays.asList("java", "-Xmx512m", "-cp", "lib/a.jar", "org.example.Main"),
+				LaunchCommand.tokenize("  java -Xmx512m\t-cp  lib/a.jar org.example.Main  "));
+	}
+
+	@Test
+	public void keepsQuotedWhitespace() {
+		String line = "\"C:\\Program Files\\Java\\bin\\java.exe\" -Dvirgo.home=\"C:\\My Virgo\""
+				+ " -cp \"a.jar;b.jar\"";
+		assertEquals(Arrays.asList("C:\\Program Files\\Java\\bin\\java.exe", "-Dvirgo.home=C:\\My Virgo",
+				"-cp", "a.jar;b.jar"), LaunchCommand.tokenize(line));
+	}
+
+	@Test
+	public void keepsEmptyQuotedArguments() {
+		assertEquals(Arrays.asList("java", "", "-version"), LaunchCommand.tokenize("java \"\" -version"));
+	}
+
+	@Test
+	public void returnsNoTokensForBlankLine() {
+		assertEquals(Collections.<String> emptyList(), LaunchCommand.tokenize("   "));
+	}
+
+}
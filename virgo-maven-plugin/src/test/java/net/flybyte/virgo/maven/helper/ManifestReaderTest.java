@@ -0,0 +1,139 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ManifestReader}, the results are compared to the ones of {@link JarFile}.
+ * 
+ * @author Frieder Heugel
+ */
+public class ManifestReaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsDeflatedManifest() throws IOException {
+		File archive = createArchive(ZipEntry.DEFLATED, true, null);
+		assertManifest(archive);
+	}
+
+	@Test
+	public void readsStoredManifest() throws IOException {
+		File archive = createArchive(ZipEntry.STORED, true, null);
+		assertManifest(archive);
+	}
+
+	@Test
+	public void readsManifestBehindOtherEntries() throws IOException {
+		File archive = createArchive(ZipEntry.DEFLATED, false, null);
+		assertManifest(archive);
+	}
+
+	@Test
+	public void readsManifestOfArchiveWithComment() throws IOException {
+		File archive = createArchive(ZipEntry.DEFLATED, true, "built by the Virgo Maven plugin tests");
+		assertManifest(archive);
+	}
+
+	@Test
+	public void returnsNullWithoutManifest() throws IOException {
+		File archive = folder.newFile("plain.zip");
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			writeEntry(out, "META-INF/spring/context.xml", ZipEntry.DEFLATED, "<beans/>");
+		} finally {
+			out.close();
+		}
+		assertNull(ManifestReader.read(archive));
+	}
+
+	@Test(expected = ZipException.class)
+	public void rejectsFilesOtherThanArchives() throws IOException {
+		File file = folder.newFile("plan.xml");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("<plan name=\"foo\" version=\"1.0.0\" scoped=\"false\" atomic=\"true\"/>"
+					.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		ManifestReader.read(file);
+	}
+
+	private void assertManifest(File archive) throws IOException {
+		Manifest expected;
+		JarFile jar = new JarFile(archive);
+		try {
+			expected = jar.getManifest();
+		} finally {
+			jar.close();
+		}
+		Manifest actual = ManifestReader.read(archive);
+		assertEquals(expected.getMainAttributes(), actual.getMainAttributes());
+		assertEquals("org.example.foo", actual.getMainAttributes().getValue("Bundle-SymbolicName"));
+	}
+
+	private File createArchive(int method, boolean manifestFirst, String comment) throws IOException {
+		File archive = folder.newFile();
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			if (!manifestFirst) {
+				writeEntry(out, "org/example/foo/Foo.class", ZipEntry.DEFLATED, "not really a class");
+			}
+			writeEntry(out, JarFile.MANIFEST_NAME, method, createManifest());
+			writeEntry(out, "OSGI-INF/blueprint/foo.xml", ZipEntry.STORED, "<blueprint/>");
+			if (comment != null) {
+				out.setComment(comment);
+			}
+		} finally {
+			out.close();
+		}
+		return archive;
+	}
+
+	private static String createManifest() {
+		StringBuilder manifest = new StringBuilder();
+		manifest.append(Attributes.Name.MANIFEST_VERSION).append(": 1.0\r\n");
+		manifest.append("Bundle-ManifestVersion: 2\r\n");
+		manifest.append("Bundle-SymbolicName: org.example.foo\r\n");
+		manifest.append("Bundle-Version: 1.0.0\r\n");
+		manifest.append("Import-Package: org.osgi.framework;version=\"[1.5,2)\",");
+		manifest.append("org.slf4j;resolution:=optional\r\n");
+		manifest.append("\r\n");
+		return manifest.toString();
+	}
+
+	private static void writeEntry(ZipOutputStream out, String name, int method, String content)
+			throws IOException {
+		byte[] data = content.getBytes("UTF-8");
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(method);
+		if (method == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(data);
+		out.closeEntry();
+	}
+
+}
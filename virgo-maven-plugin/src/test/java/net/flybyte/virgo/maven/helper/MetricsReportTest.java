@@ -0,0 +1,74 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import net.flybyte.virgo.maven.helper.MetricsReport.Record;
+import net.flybyte.virgo.maven.helper.PhaseTimer.Phase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link MetricsReport}.
+ * 
+ * @author Frieder Heugel
+ */
+public class MetricsReportTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesJsonAndCsv() throws IOException {
+		List<Record> records = Arrays.asList(new Record("foo", "deploy", new Phase("connect", 1000L, 12L)),
+				new Record("foo", "deploy", new Phase("deploy \"a,b\".jar", 1012L, 340L)));
+		File directory = new File(folder.getRoot(), "virgo-metrics");
+		MetricsReport.write(directory, "deploy", records);
+		assertEquals("[\n"
+				+ "  {\"timestamp\": 1000, \"project\": \"foo\", \"goal\": \"deploy\", "
+				+ "\"phase\": \"connect\", \"durationMs\": 12},\n"
+				+ "  {\"timestamp\": 1012, \"project\": \"foo\", \"goal\": \"deploy\", "
+				+ "\"phase\": \"deploy \\\"a,b\\\".jar\", \"durationMs\": 340}\n" + "]\n",
+				read(new File(directory, "deploy.json")));
+		assertEquals("timestamp,project,goal,phase,durationMs\n" + "1000,foo,deploy,connect,12\n"
+				+ "1012,foo,deploy,\"deploy \"\"a,b\"\".jar\",340\n",
+				read(new File(directory, "deploy.csv")));
+	}
+
+	@Test
+	public void collectsExecutionsOfSession() {
+		Object session = new Object();
+		PhaseTimer deploy = new PhaseTimer();
+		deploy.stop("connect", deploy.start());
+		PhaseTimer watch = new PhaseTimer();
+		watch.stop("package", watch.start());
+		assertEquals(1, MetricsReport.collect(session, "foo", "deploy", deploy).size());
+		MetricsReport.collect(session, "bar", "watch", watch);
+		// a long running goal reports again after every cycle
+		watch.stop("refresh", watch.start());
+		MetricsReport.collect(session, "bar", "watch", watch);
+		List<Record> records = MetricsReport.getSessionRecords();
+		assertEquals(3, records.size());
+		assertEquals("foo", records.get(0).getProject());
+		assertEquals("connect", records.get(0).getPhase().getName());
+		assertEquals("watch", records.get(2).getGoal());
+		assertEquals("refresh", records.get(2).getPhase().getName());
+		// a new session starts from scratch
+		MetricsReport.collect(new Object(), "foo", "deploy", deploy);
+		assertEquals(1, MetricsReport.getSessionRecords().size());
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), CHARSET);
+	}
+
+}
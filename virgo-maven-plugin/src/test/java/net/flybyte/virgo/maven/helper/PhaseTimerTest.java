@@ -0,0 +1,61 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.flybyte.virgo.maven.helper.PhaseTimer.Phase;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PhaseTimer}.
+ * 
+ * @author Frieder Heugel
+ */
+public class PhaseTimerTest {
+
+	@Test
+	public void recordsPhasesInTheOrderTheyEnded() throws InterruptedException {
+		PhaseTimer timer = new PhaseTimer();
+		long before = System.currentTimeMillis();
+		long outer = timer.start();
+		long inner = timer.start();
+		Thread.sleep(50);
+		long duration = timer.stop("invoke", inner);
+		timer.stop("connect", outer);
+		List<Phase> phases = timer.getPhases();
+		assertEquals(2, phases.size());
+		assertEquals("invoke", phases.get(0).getName());
+		assertEquals(duration, phases.get(0).getDuration());
+		assertTrue(String.valueOf(duration), duration >= 50);
+		assertEquals("connect", phases.get(1).getName());
+		assertTrue(phases.get(1).getDuration() >= phases.get(0).getDuration());
+		// the start time is derived from the end and the duration, allow for the rounding of both clocks
+		assertTrue(phases.get(1).getStartTime() >= before - 2);
+		assertTrue(phases.get(1).getStartTime() <= phases.get(0).getStartTime() + 2);
+	}
+
+	@Test
+	public void recordsPhasesOfSeveralThreads() throws InterruptedException {
+		final PhaseTimer timer = new PhaseTimer();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final String name = "deploy " + i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 100; j++) {
+						timer.stop(name, timer.start());
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(800, timer.getPhases().size());
+	}
+
+}
@@ -0,0 +1,145 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link PickupDeployer}, the hot deployer of Virgo is simulated by a thread which watches the
+ * pickup directory and writes the event log.
+ * 
+ * @author Frieder Heugel
+ */
+public class PickupDeployerTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File virgoRoot;
+	private File eventLog;
+	private File artefact;
+	private PickupDeployer deployer;
+
+	@Before
+	public void setUp() throws IOException {
+		virgoRoot = folder.newFolder("virgo");
+		new File(virgoRoot, "pickup").mkdirs();
+		eventLog = new File(virgoRoot, "serviceability/eventlogs/eventlog.log");
+		eventLog.getParentFile().mkdirs();
+		append("[2012-01-01 10:00:00.000] start-signalling-1 <DE0005I> Started bundle 'org.example.foo' "
+				+ "version '0.9.0'.");
+		artefact = new File(folder.getRoot(), "foo-1.0.0.jar");
+		Files.write(artefact.toPath(), "bundle content".getBytes(CHARSET));
+		deployer = new PickupDeployer(virgoRoot, eventLog, new SystemStreamLog());
+	}
+
+	@Test
+	public void deploysOnceStartIsLogged() throws Exception {
+		simulate("foo-1.0.0.jar", true, "<DE0005I> Started bundle 'org.example.foo' version '1.0.0'.");
+		deployer.deploy(artefact, "org.example.foo", 5000);
+		File deployed = new File(virgoRoot, "pickup/foo-1.0.0.jar");
+		assertArrayEquals(Files.readAllBytes(artefact.toPath()), Files.readAllBytes(deployed.toPath()));
+		// the staged copy has been moved into place
+		assertFalse(new File(virgoRoot, "pickup-staging/foo-1.0.0.jar").exists());
+		assertFalse(Files.isSameFile(artefact.toPath(), deployed.toPath()));
+	}
+
+	@Test
+	public void stagesHardLink() throws Exception {
+		deployer.setHardLink(true);
+		simulate("foo-1.0.0.jar", true, "<DE0005I> Started bundle 'org.example.foo' version '1.0.0'.");
+		deployer.deploy(artefact, "org.example.foo", 5000);
+		assertTrue(Files.isSameFile(artefact.toPath(), new File(virgoRoot, "pickup/foo-1.0.0.jar").toPath()));
+	}
+
+	@Test
+	public void failsOnHotDeployFailure() throws Exception {
+		simulate("foo-1.0.0.jar", true, "<HD0002E> Hot deploy failed for file 'foo-1.0.0.jar'.");
+		try {
+			deployer.deploy(artefact, "org.example.foo", 5000);
+			fail("The failed hot deployment has been ignored");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("HD0002E"));
+		}
+	}
+
+	@Test
+	public void failsOnStartFailure() throws Exception {
+		simulate("foo-1.0.0.jar", true, "<DE0006E> Start failed for bundle 'org.example.foo'.");
+		try {
+			deployer.deploy(artefact, "org.example.foo", 5000);
+			fail("The failed start has been ignored");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("DE0006E"));
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void ignoresOtherArtefacts() throws Exception {
+		// neither the entry written before the deployment nor the one of another bundle confirm it
+		simulate("foo-1.0.0.jar", true, "<DE0005I> Started bundle 'org.example.foobar' version '1.0.0'.");
+		deployer.deploy(artefact, "org.example.foo", 600);
+	}
+
+	@Test(expected = IOException.class)
+	public void failsWithoutPickupDirectory() throws Exception {
+		new File(virgoRoot, "pickup").delete();
+		deployer.deploy(artefact, "org.example.foo", 5000);
+	}
+
+	@Test
+	public void undeploysOnceUninstallIsLogged() throws Exception {
+		File deployed = new File(virgoRoot, "pickup/foo-1.0.0.jar");
+		Files.copy(artefact.toPath(), deployed.toPath());
+		simulate("foo-1.0.0.jar", false, "<DE0013I> Uninstalled bundle 'org.example.foo' version '1.0.0'.");
+		deployer.undeploy("foo-1.0.0.jar", "org.example.foo", 5000);
+		assertFalse(deployed.exists());
+	}
+
+	@Test
+	public void undeploysMissingArtefact() throws Exception {
+		// returns right away, nothing will be logged
+		deployer.undeploy("foo-1.0.0.jar", "org.example.foo", 0);
+	}
+
+	/*
+	 * Write the event log entry once the file has been added to or removed from the pickup directory
+	 */
+	private void simulate(String fileName, final boolean present, final String entry) {
+		final File file = new File(virgoRoot, "pickup/" + fileName);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (file.exists() != present) {
+						Thread.sleep(20);
+					}
+					append("[2012-01-01 10:00:01.000] fs-watcher " + entry);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}, "hot-deployer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void append(String line) throws IOException {
+		Files.write(eventLog.toPath(), (line + "\n").getBytes(CHARSET), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+}
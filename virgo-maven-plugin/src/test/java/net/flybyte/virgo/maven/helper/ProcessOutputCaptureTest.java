@@ -0,0 +1,80 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ProcessOutputCapture}.
+ * 
+ * @author Frieder Heugel
+ */
+public class ProcessOutputCaptureTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesOutputAndStopsOnClose() throws Exception {
+		File log = new File(folder.getRoot(), "virgo-start.log");
+		ProcessOutputCapture capture = new ProcessOutputCapture(log, 1024 * 1024, 1,
+				new StartupTimeline("UR0001I"));
+		pump(capture, "[2011-06-27 10:39:10.000] main <KE0001I> Kernel starting.\n"
+				+ "[2011-06-27 10:39:15.000] main <UR0001I> User region ready.\n");
+		assertTrue(capture.awaitReady(5000));
+		capture.close(5000);
+		assertFalse(isCaptureThreadAlive());
+		List<String> lines = Files.readAllLines(log.toPath(), CHARSET);
+		assertEquals(Arrays.asList("[2011-06-27 10:39:10.000] main <KE0001I> Kernel starting.",
+				"[2011-06-27 10:39:15.000] main <UR0001I> User region ready."), lines);
+		assertEquals(lines, capture.getTail());
+		// output after closing is discarded
+		pump(capture, "late line\n");
+		assertEquals(2, Files.readAllLines(log.toPath(), CHARSET).size());
+	}
+
+	@Test
+	public void awaitReadyTimesOutWithoutMarker() throws Exception {
+		ProcessOutputCapture capture = new ProcessOutputCapture(folder.newFile(), 1024, 1,
+				new StartupTimeline("UR0001I"));
+		try {
+			pump(capture, "[2011-06-27 10:39:10.000] main <KE0001I> Kernel starting.\n");
+			long start = System.currentTimeMillis();
+			assertFalse(capture.awaitReady(200));
+			assertTrue(System.currentTimeMillis() - start < 2000);
+		} finally {
+			capture.close(5000);
+		}
+	}
+
+	private static void pump(ProcessOutputCapture capture, String output) throws Exception {
+		ExecuteStreamHandler handler = capture.createStreamHandler();
+		handler.setProcessOutputStream(new ByteArrayInputStream(output.getBytes(CHARSET)));
+		handler.setProcessErrorStream(new ByteArrayInputStream(new byte[0]));
+		handler.start();
+		handler.stop();
+	}
+
+	private static boolean isCaptureThreadAlive() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("virgo-output-capture".equals(thread.getName()) && thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,100 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the verification of PID files of {@link ProcessSupport} against a process standing in for a Virgo
+ * instance.
+ * 
+ * @author Frieder Heugel
+ */
+public class ProcessSupportTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private File virgoRoot;
+	private File pidFile;
+	private Process process;
+	private long pid;
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(System.getProperty("os.name").toLowerCase().indexOf("win") < 0);
+		virgoRoot = folder.newFolder("virgo");
+		pidFile = new File(virgoRoot, ProcessSupport.PID_FILE);
+		// the command line of the stand-in refers to the root directory like the one of Virgo does
+		process = new ProcessBuilder("sh", "-c", "sleep 30; :", "virgo", virgoRoot.getAbsolutePath()).start();
+		pid = ProcessSupport.getPid(process);
+		assumeTrue(pid >= 0);
+	}
+
+	@After
+	public void tearDown() {
+		if (process != null) {
+			process.destroy();
+		}
+	}
+
+	@Test
+	public void acceptsProcessOfInstance() throws IOException {
+		ProcessSupport.writePid(pidFile, pid);
+		assertEquals(pid, ProcessSupport.readPid(pidFile));
+		assertTrue(ProcessSupport.isVirgoProcess(pidFile, virgoRoot));
+	}
+
+	@Test
+	public void rejectsProcessOfOtherInstance() throws IOException {
+		ProcessSupport.writePid(pidFile, pid);
+		assertFalse(ProcessSupport.isVirgoProcess(pidFile, folder.newFolder("other")));
+	}
+
+	@Test
+	public void rejectsReusedPid() throws IOException {
+		// the PID has been recorded for a process which started earlier
+		write(pid + "\n" + 1000);
+		assertEquals(pid, ProcessSupport.readPid(pidFile));
+		assertFalse(ProcessSupport.isVirgoProcess(pidFile, virgoRoot));
+	}
+
+	@Test
+	public void rejectsExitedProcess() throws Exception {
+		ProcessSupport.writePid(pidFile, pid);
+		process.destroy();
+		process.waitFor();
+		assertFalse(ProcessSupport.isVirgoProcess(pidFile, virgoRoot));
+	}
+
+	@Test
+	public void readsPidFileWithoutStartTime() throws IOException {
+		write(String.valueOf(pid));
+		assertEquals(pid, ProcessSupport.readPid(pidFile));
+		// the command line is still verified
+		assertTrue(ProcessSupport.isVirgoProcess(pidFile, virgoRoot));
+		assertFalse(ProcessSupport.isVirgoProcess(pidFile, folder.newFolder("other")));
+	}
+
+	@Test
+	public void rejectsMissingPidFile() throws IOException {
+		assertEquals(-1, ProcessSupport.readPid(pidFile));
+		assertFalse(ProcessSupport.isVirgoProcess(pidFile, virgoRoot));
+	}
+
+	private void write(String content) throws IOException {
+		pidFile.getParentFile().mkdirs();
+		Files.write(pidFile.toPath(), content.getBytes(Charset.forName("UTF-8")));
+	}
+
+}
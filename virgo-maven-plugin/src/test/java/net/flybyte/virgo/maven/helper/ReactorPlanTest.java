@@ -0,0 +1,108 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.Manifest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ReactorPlan}.
+ * 
+ * @author Frieder Heugel
+ */
+public class ReactorPlanTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesArtefactsWithExactVersions() throws IOException {
+		ReactorPlan plan = new ReactorPlan("org.example.app", "1.0.0", false, true);
+		plan.add(new File("foo-1.0.0.jar"), manifest("org.example.foo", "1.0.0"));
+		plan.add(new File("web-1.0.0.war"), manifest("org.example.web", null));
+		plan.add(new File("app-1.0.0.par"), manifest("org.example.par", "1.0.0.SNAPSHOT"));
+		File planFile = new File(folder.getRoot(), "plans/org.example.app.plan");
+		assertTrue(plan.write(planFile));
+		String xml = new String(Files.readAllBytes(planFile.toPath()), CHARSET);
+		assertTrue(xml, xml.contains("<plan name=\"org.example.app\" version=\"1.0.0\" scoped=\"false\" "
+				+ "atomic=\"true\""));
+		int foo = xml.indexOf("<artifact type=\"bundle\" name=\"org.example.foo\" "
+				+ "version=\"[1.0.0, 1.0.0]\"/>");
+		int web = xml.indexOf("<artifact type=\"bundle\" name=\"org.example.web\" "
+				+ "version=\"[0.0.0, 0.0.0]\"/>");
+		int par = xml.indexOf("<artifact type=\"par\" name=\"org.example.par\" "
+				+ "version=\"[1.0.0.SNAPSHOT, 1.0.0.SNAPSHOT]\"/>");
+		// started in the order the artefacts have been added
+		assertTrue(xml, foo > 0 && web > foo && par > web);
+		long modified = planFile.lastModified();
+		assertFalse(plan.write(planFile));
+		assertEquals(modified, planFile.lastModified());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsArtefactsOtherThanBundles() {
+		new ReactorPlan("org.example.app", "1.0.0", false, true).add(new File("foo-1.0.0.pom"),
+				manifest("org.example.foo", "1.0.0"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsArtefactsWithoutSymbolicName() {
+		new ReactorPlan("org.example.app", "1.0.0", false, true).add(new File("foo-1.0.0.jar"),
+				manifest(null, "1.0.0"));
+	}
+
+	@Test
+	public void stagesChangedArtefactsOnly() throws IOException {
+		File foo = write("target/foo-1.0.0.jar", "foo");
+		File bar = write("target/bar-2.0.0.jar", "bar");
+		ReactorPlan plan = new ReactorPlan("org.example.app", "1.0.0", false, true);
+		plan.add(foo, manifest("org.example.foo", "1.0.0"));
+		plan.add(bar, manifest("org.example.bar", "2.0.0"));
+		File repository = new File(folder.getRoot(), "virgo/repository/usr");
+		File temp = new File(folder.getRoot(), "virgo/work/staging");
+		assertEquals(2, plan.stage(repository, temp).size());
+		File staged = new File(repository, "org.example.foo-1.0.0.jar");
+		assertEquals("foo", new String(Files.readAllBytes(staged.toPath()), CHARSET));
+		assertEquals(foo.lastModified(), staged.lastModified());
+		assertEquals(0, plan.stage(repository, temp).size());
+		write("target/bar-2.0.0.jar", "rab!");
+		List<ReactorPlan.Entry> restaged = plan.stage(repository, temp);
+		assertEquals(1, restaged.size());
+		assertEquals("org.example.bar-2.0.0.jar", restaged.get(0).getRepositoryName());
+		// nothing is left behind next to the repository
+		assertEquals(0, temp.list().length);
+		assertEquals(2, plan.unstage(repository));
+		assertEquals(0, repository.list().length);
+		assertEquals(0, plan.unstage(repository));
+	}
+
+	private static BundleManifest manifest(String symbolicName, String version) {
+		Manifest manifest = new Manifest();
+		if (symbolicName != null) {
+			manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+		}
+		if (version != null) {
+			manifest.getMainAttributes().putValue("Bundle-Version", version);
+		}
+		return new BundleManifest(manifest);
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+		return file;
+	}
+
+}
@@ -0,0 +1,99 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ServerPool}.
+ * 
+ * @author Frieder Heugel
+ */
+public class ServerPoolTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsWrittenPool() throws IOException {
+		File poolDirectory = folder.newFolder("virgo-pool");
+		List<VirgoTarget> targets = createPool(poolDirectory, 3, 100);
+		ServerPool.write(poolDirectory, targets);
+		List<VirgoTarget> read = ServerPool.read(poolDirectory);
+		assertEquals(3, read.size());
+		for (int i = 0; i < 3; i++) {
+			VirgoTarget target = read.get(i);
+			assertEquals("instance-" + (i + 1), target.getName());
+			assertEquals(ServerPool.getInstanceDirectory(poolDirectory, i + 1).getAbsoluteFile(),
+					target.getVirgoRoot());
+			// every instance is shifted by the port step
+			assertEquals(9875 + i * 100, target.getJmxPort());
+			assertEquals(8080 + i * 100, target.getHttpPort());
+			assertEquals(serviceUrl(9875 + i * 100), target.getServiceUrl());
+		}
+	}
+
+	@Test
+	public void writesInstanceFilesForForks() throws IOException {
+		File poolDirectory = folder.newFolder("virgo-pool");
+		List<VirgoTarget> targets = createPool(poolDirectory, 2, 10);
+		ServerPool.write(poolDirectory, targets);
+		Properties instance = load(new File(poolDirectory, "instance-2.properties"));
+		assertEquals("instance-2", instance.getProperty("name"));
+		assertEquals(new File(poolDirectory, "instance-2").getAbsolutePath(), instance.getProperty("root"));
+		assertEquals("9885", instance.getProperty("jmxport"));
+		assertEquals("8090", instance.getProperty("httpport"));
+		assertEquals(serviceUrl(9885), instance.getProperty("serviceurl"));
+		Properties pool = load(new File(poolDirectory, ServerPool.DESCRIPTOR));
+		assertEquals("2", pool.getProperty("pool.size"));
+		assertEquals("9885", pool.getProperty("instance.2.jmxport"));
+		// a single instance is described the same way
+		File single = new File(folder.getRoot(), "instance.properties");
+		ServerPool.writeInstance(single, targets.get(1));
+		assertEquals(instance, load(single));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMissingPool() throws IOException {
+		ServerPool.read(folder.newFolder("virgo-pool"));
+	}
+
+	/*
+	 * Create the targets of a pool the way the start goal does
+	 */
+	private static List<VirgoTarget> createPool(File poolDirectory, int size, int portStep) {
+		List<VirgoTarget> targets = new ArrayList<VirgoTarget>();
+		for (int i = 1; i <= size; i++) {
+			InstanceProvisioner.PortMapping ports = InstanceProvisioner.offset((i - 1) * portStep);
+			File root = ServerPool.getInstanceDirectory(poolDirectory, i);
+			int jmxPort = ports.map(9875);
+			targets.add(new VirgoTarget(root.getName(), root, jmxPort, serviceUrl(jmxPort), ports.map(8080)));
+		}
+		return targets;
+	}
+
+	private static String serviceUrl(int port) {
+		return "service:jmx:rmi://localhost:" + port + "/jndi/rmi://localhost:" + port + "/jmxrmi";
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+}
@@ -0,0 +1,166 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link SslContextRegistry}, the handshakes are done with local servers using a generated key
+ * pair.
+ * 
+ * @author Frieder Heugel
+ */
+public class SslContextRegistryTest {
+	private static final String PASSWORD = "changeit";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private SSLContext original;
+	private File keystore;
+	private SSLServerSocket server;
+
+	@Before
+	public void setUp() throws Exception {
+		original = SSLContext.getDefault();
+		keystore = new File(folder.getRoot(), "keystore");
+		generateKeystore(keystore);
+		server = startServer(keystore);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		SslContextRegistry.uninstall();
+		server.close();
+	}
+
+	@Test
+	public void trustsKeystoreOfRegisteredEndpoint() throws Exception {
+		SslContextRegistry.register("localhost", server.getLocalPort(), keystore, PASSWORD);
+		handshake("localhost", server.getLocalPort());
+	}
+
+	@Test
+	public void matchesEndpointByAddress() throws Exception {
+		SslContextRegistry.register("localhost", server.getLocalPort(), keystore, PASSWORD);
+		handshake(InetAddress.getByName("localhost").getHostAddress(), server.getLocalPort());
+	}
+
+	@Test(expected = SSLException.class)
+	public void usesOriginalContextForOtherEndpoints() throws Exception {
+		SSLServerSocket other = startServer(keystore);
+		try {
+			SslContextRegistry.register("localhost", server.getLocalPort(), keystore, PASSWORD);
+			// the JVM doesn't trust the generated key pair, a match by the port alone would
+			handshake("localhost", other.getLocalPort());
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void restoresDefaultContext() throws Exception {
+		SslContextRegistry.register("localhost", server.getLocalPort(), keystore, PASSWORD);
+		assertNotSame(original, SSLContext.getDefault());
+		SslContextRegistry.uninstall();
+		assertSame(original, SSLContext.getDefault());
+		try {
+			handshake("localhost", server.getLocalPort());
+			fail("The endpoint is still routed after the context has been uninstalled");
+		} catch (SSLException e) {
+			// expected, the original context doesn't trust the key pair
+		}
+	}
+
+	private static void handshake(String host, int port) throws Exception {
+		SSLSocket socket = (SSLSocket) SSLContext.getDefault().getSocketFactory().createSocket(host, port);
+		try {
+			socket.setSoTimeout(5000);
+			socket.startHandshake();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/*
+	 * Accept connections and complete their handshake until the server socket is closed
+	 */
+	private static SSLServerSocket startServer(File keystore) throws Exception {
+		KeyStore store = KeyStore.getInstance("JKS");
+		InputStream in = new FileInputStream(keystore);
+		try {
+			store.load(in, PASSWORD.toCharArray());
+		} finally {
+			in.close();
+		}
+		KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		factory.init(store, PASSWORD.toCharArray());
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(factory.getKeyManagers(), null, null);
+		final SSLServerSocket server = (SSLServerSocket) context.getServerSocketFactory()
+				.createServerSocket(0, 50, InetAddress.getByName("localhost"));
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				while (!server.isClosed()) {
+					try {
+						SSLSocket socket = (SSLSocket) server.accept();
+						try {
+							socket.setSoTimeout(5000);
+							socket.startHandshake();
+						} catch (IOException e) {
+							// the client refused the certificate
+						} finally {
+							socket.close();
+						}
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			}
+		}, "ssl-test-server");
+		thread.setDaemon(true);
+		thread.start();
+		return server;
+	}
+
+	/*
+	 * Create a key pair for localhost using the keytool of the running JVM
+	 */
+	private static void generateKeystore(File keystore) throws IOException, InterruptedException {
+		String keytool = new File(System.getProperty("java.home"), "bin/keytool").getAbsolutePath();
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "virgo", "-keyalg", "RSA",
+				"-keysize", "2048", "-validity", "1", "-dname", "CN=localhost", "-storetype", "JKS",
+				"-keystore", keystore.getAbsolutePath(), "-storepass", PASSWORD, "-keypass", PASSWORD,
+				"-noprompt").redirectErrorStream(true).start();
+		InputStream in = process.getInputStream();
+		try {
+			while (in.read() >= 0) {
+				// drain the output so keytool doesn't block
+			}
+		} finally {
+			in.close();
+		}
+		if (process.waitFor() != 0 || !keystore.isFile()) {
+			throw new IOException("Unable to generate the keystore " + keystore);
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link StartupTimeline}.
+ * 
+ * @author Frieder Heugel
+ */
+public class StartupTimelineTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void collectsMilestonesAndArtefacts() throws IOException {
+		StartupTimeline timeline = new StartupTimeline("UR0001I");
+		timeline.process("[2011-06-27 10:39:10.000] main <KE0001I> Kernel starting.");
+		timeline.process("Some line without a log code");
+		timeline.process("[2011-06-27 10:39:12.000] main <KE0002I> Kernel started.");
+		timeline.process("[2011-06-27 10:39:12.100] fs-watcher <DE0000I> Installing bundle 'a.fast' "
+				+ "version '1.0.0'.");
+		timeline.process("[2011-06-27 10:39:12.200] fs-watcher <DE0001I> Installed bundle 'a.fast' "
+				+ "version '1.0.0'.");
+		timeline.process("[2011-06-27 10:39:12.300] start-signalling-1 <DE0004I> Starting bundle 'a.fast' "
+				+ "version '1.0.0'.");
+		timeline.process("[2011-06-27 10:39:12.350] start-signalling-1 <DE0005I> Started bundle 'a.fast' "
+				+ "version '1.0.0'.");
+		timeline.process("[2011-06-27 10:39:12.400] start-signalling-1 <DE0004I> Starting bundle 'b.slow' "
+				+ "version '2.0.0'.");
+		assertFalse(timeline.isReady());
+		assertEquals(-1, timeline.getStartupDuration());
+		timeline.process("[2011-06-27 10:39:14.400] start-signalling-1 <DE0006E> Start failed for bundle "
+				+ "'b.slow' version '2.0.0'.");
+		timeline.process("[2011-06-27 10:39:15.000] main <UR0001I> User region ready.");
+		assertTrue(timeline.isReady());
+		assertEquals(5000, timeline.getStartupDuration());
+		List<StartupTimeline.Artefact> slowest = timeline.getSlowestArtefacts();
+		assertEquals(2, slowest.size());
+		assertEquals("bundle b.slow 2.0.0", slowest.get(0).getName());
+		assertEquals(2000, slowest.get(0).getStartDuration());
+		assertEquals(-1, slowest.get(0).getInstallDuration());
+		assertTrue(slowest.get(0).isFailed());
+		assertEquals(50, slowest.get(1).getStartDuration());
+		assertEquals(100, slowest.get(1).getInstallDuration());
+		File report = new File(folder.getRoot(), "reports/timeline.txt");
+		timeline.write(report);
+		String text = new String(Files.readAllBytes(report.toPath()), Charset.forName("UTF-8"));
+		assertTrue(text, text.contains("Fully up (UR0001I)"));
+		assertTrue(text, text.contains("bundle b.slow 2.0.0 (failed)"));
+	}
+
+	@Test
+	public void usesConfiguredReadyMarker() {
+		StartupTimeline timeline = new StartupTimeline("KE0002I");
+		timeline.process("[2011-06-27 10:39:10.000] main <KE0001I> Kernel starting.");
+		timeline.process("[2011-06-27 10:39:11.500] main <KE0002I> Kernel started.");
+		assertTrue(timeline.isReady());
+		assertEquals(1500, timeline.getStartupDuration());
+	}
+
+}
@@ -0,0 +1,214 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TargetExecutor} using a goal which records what has been executed.
+ * 
+ * @author Frieder Heugel
+ */
+public class TargetExecutorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private RecordingGoal goal;
+	private File rollbackCache;
+	private List<VirgoTarget> targets;
+
+	@Before
+	public void setUp() throws IOException {
+		goal = new RecordingGoal(folder.newFile("foo-1.0.0.jar"));
+		rollbackCache = new File(folder.getRoot(), "rollback");
+		targets = new ArrayList<VirgoTarget>();
+		for (int i = 1; i <= 5; i++) {
+			targets.add(new VirgoTarget("node" + i, null, -1, "service:jmx:rmi://node" + i
+					+ ":9875/jndi/rmi://node" + i + ":9875/jmxrmi", 8080));
+		}
+	}
+
+	@Test
+	public void splitsIntoBatches() {
+		List<List<VirgoTarget>> batches = TargetExecutor.getBatches(targets, 2);
+		assertEquals(3, batches.size());
+		assertEquals(targets.subList(0, 2), batches.get(0));
+		assertEquals(targets.subList(4, 5), batches.get(2));
+		assertEquals(5, TargetExecutor.getBatches(targets, 0).size());
+		assertEquals(1, TargetExecutor.getBatches(targets, 10).size());
+	}
+
+	@Test
+	public void fansOutToAllTargets() throws ExecutionException {
+		new TargetExecutor(goal, 2, false, new SystemStreamLog()).fanOut(targets);
+		assertEquals(names(0, 1, 2, 3, 4), sorted(goal.executed));
+		assertFalse(goal.gated);
+	}
+
+	@Test
+	public void reportsFailedTargets() {
+		goal.failing.add("node2");
+		goal.failing.add("node4");
+		try {
+			new TargetExecutor(goal, 0, false, new SystemStreamLog()).fanOut(targets);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("The goal failed on 2 of 5 instances"));
+		}
+		assertEquals(5, goal.executed.size());
+	}
+
+	@Test
+	public void skipsRemainingTargetsWithFailFast() {
+		goal.failing.add("node1");
+		try {
+			new TargetExecutor(goal, 1, true, new SystemStreamLog()).fanOut(targets);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith(", 4 skipped"));
+		}
+		assertEquals(names(0), goal.executed);
+	}
+
+	@Test
+	public void rollsOutBatchesInOrderAndStashesArtefact() throws ExecutionException {
+		new TargetExecutor(goal, 0, false, new SystemStreamLog()).rollOut(targets, 2, null, 1000,
+				rollbackCache, true);
+		assertEquals(names(0, 1), sorted(goal.executed.subList(0, 2)));
+		assertEquals(names(2, 3), sorted(goal.executed.subList(2, 4)));
+		assertEquals(names(4), goal.executed.subList(4, 5));
+		assertTrue(goal.gated);
+		for (VirgoTarget target : targets) {
+			assertTrue(stashed(target).isFile());
+		}
+	}
+
+	@Test
+	public void haltsAndRollsBackUpdatedTargets() throws Exception {
+		// a previous rollout left an artefact for the first two nodes only
+		stash(targets.get(0));
+		stash(targets.get(1));
+		goal.failing.add("node4");
+		try {
+			new TargetExecutor(goal, 0, false, new SystemStreamLog()).rollOut(targets, 2, null, 1000,
+					rollbackCache, true);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("The rollout has been halted at batch 2"));
+			assertTrue(e.getMessage(), e.getMessage().endsWith("still running the new artefact: [node3]"));
+		}
+		// the third batch never started, the failed node isn't rolled back
+		assertEquals(4, goal.executed.size());
+		assertEquals(names(0, 1), sorted(goal.rolledBack));
+	}
+
+	@Test
+	public void haltsWithoutRollback() {
+		stash(targets.get(0));
+		goal.failing.add("node1");
+		try {
+			new TargetExecutor(goal, 0, false, new SystemStreamLog()).rollOut(targets, 2, null, 1000,
+					rollbackCache, false);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Rolled back: []"));
+		}
+		assertTrue(goal.rolledBack.isEmpty());
+	}
+
+	@Test
+	public void failsOnUnhealthyTarget() {
+		// nothing listens on port 1
+		try {
+			new TargetExecutor(goal, 0, false, new SystemStreamLog()).rollOut(targets, 5,
+					"http://localhost:1/health", 100, rollbackCache, false);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("The rollout has been halted at batch 1"));
+		}
+	}
+
+	private File stashed(VirgoTarget target) {
+		return TargetExecutor.getStashedArtefact(rollbackCache, target, "org.example.foo", goal.artefact);
+	}
+
+	private void stash(VirgoTarget target) {
+		File previous = stashed(target);
+		previous.getParentFile().mkdirs();
+		try {
+			Files.write(previous.toPath(), "previous".getBytes(Charset.forName("UTF-8")));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private List<String> names(int... indexes) {
+		List<String> names = new ArrayList<String>();
+		for (int index : indexes) {
+			names.add(targets.get(index).getName());
+		}
+		return names;
+	}
+
+	private static List<String> sorted(List<String> names) {
+		List<String> sorted = new ArrayList<String>(names);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * A goal recording the targets it has been executed against, failing for the configured ones.
+	 */
+	private static class RecordingGoal implements TargetExecutor.Goal {
+		private final File artefact;
+		private final Set<String> failing = new HashSet<String>();
+		private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		private final List<String> rolledBack = Collections.synchronizedList(new ArrayList<String>());
+		private volatile boolean gated;
+
+		public RecordingGoal(File artefact) {
+			this.artefact = artefact;
+		}
+
+		public void execute(VirgoTarget target, boolean gated) throws Exception {
+			this.gated = gated;
+			executed.add(target.getName());
+			if (failing.contains(target.getName())) {
+				throw new IllegalStateException("failed on purpose");
+			}
+		}
+
+		public File getArtefact() {
+			return artefact;
+		}
+
+		public String[] getIdentity(File artefact) {
+			return new String[] { "org.example.foo", "1.0.0" };
+		}
+
+		public void rollBack(VirgoTarget target, File artefact, File previous) throws Exception {
+			assertEquals(Arrays.asList("previous"),
+					Files.readAllLines(previous.toPath(), Charset.forName("UTF-8")));
+			rolledBack.add(target.getName());
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package net.flybyte.virgo.maven.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TargetList}.
+ * 
+ * @author Frieder Heugel
+ */
+public class TargetListTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsTargets() throws IOException {
+		List<VirgoTarget> targets = TargetList.read(write("target.1.name=node1\n"
+				+ "target.1.serviceurl=service:jmx:rmi://node1:9875/jndi/rmi://node1:9875/jmxrmi\n"
+				+ "target.1.user=admin\n" + "target.1.password=secret\n"
+				+ "target.1.truststore=/etc/virgo/node1.keystore\n" + "target.1.httpport=8080\n"
+				+ "target.2.serviceurl=service:jmx:rmi://localhost:9876/jndi/rmi://localhost:9876/jmxrmi\n"
+				+ "target.2.root=/opt/virgo\n" + "target.2.jmxport=9876\n"));
+		assertEquals(2, targets.size());
+		VirgoTarget first = targets.get(0);
+		assertEquals("node1", first.getName());
+		assertEquals("service:jmx:rmi://node1:9875/jndi/rmi://node1:9875/jmxrmi", first.getServiceUrl());
+		assertEquals("admin", first.getUser());
+		assertEquals("secret", first.getPassword());
+		assertEquals(new File("/etc/virgo/node1.keystore"), first.getTruststore());
+		assertEquals(8080, first.getHttpPort());
+		assertNull(first.getVirgoRoot());
+		assertEquals(-1, first.getJmxPort());
+		VirgoTarget second = targets.get(1);
+		assertEquals("target-2", second.getName());
+		assertEquals(new File("/opt/virgo"), second.getVirgoRoot());
+		assertEquals(9876, second.getJmxPort());
+		assertEquals(-1, second.getHttpPort());
+		// user, password and truststore default to the settings of the goal
+		assertNull(second.getUser());
+		assertNull(second.getPassword());
+		assertNull(second.getTruststore());
+	}
+
+	@Test
+	public void stopsAtFirstGap() throws IOException {
+		List<VirgoTarget> targets = TargetList.read(write("target.1.serviceurl=service:jmx:rmi://a\n"
+				+ "target.3.serviceurl=service:jmx:rmi://c\n"));
+		assertEquals(1, targets.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsListWithoutTargets() throws IOException {
+		TargetList.read(write("target.0.serviceurl=service:jmx:rmi://a\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsMissingList() throws IOException {
+		TargetList.read(new File(folder.getRoot(), "targets.properties"));
+	}
+
+	private File write(String content) throws IOException {
+		File file = folder.newFile("targets.properties");
+		Files.write(file.toPath(), content.getBytes(Charset.forName("ISO-8859-1")));
+		return file;
+	}
+
+}
@@ -0,0 +1,38 @@
+package net.flybyte.virgo.maven.server;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+/**
+ * Tests the validation of the configuration of {@link Start}.
+ * 
+ * @author Frieder Heugel
+ */
+public class StartTest {
+
+	@Test
+	public void acceptsKnownReadinessProbes() throws MojoExecutionException {
+		Start start = new Start();
+		for (String readiness : new String[] { "delay", "jmx", "log", "any", "JMX" }) {
+			start.setReadiness(readiness);
+			start.checkReadiness();
+		}
+	}
+
+	@Test
+	public void rejectsUnknownReadinessProbe() throws Exception {
+		Start start = new Start();
+		start.setReadiness("jxm");
+		try {
+			start.execute();
+			fail();
+		} catch (MojoExecutionException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("'jxm'"));
+			assertTrue(e.getMessage(), e.getMessage().endsWith("[delay, jmx, log, any]"));
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package net.flybyte.virgo.testsupport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common behaviour of all stand-in MBeans: every invocation is recorded, delayed by the configured latency
+ * and fails in case a failure has been injected for the operation. Injected failures are thrown as checked
+ * exceptions, so the client receives an <code>MBeanException</code> just like it does for a failing
+ * operation of Virgo.
+ * 
+ * @author Frieder Heugel
+ */
+public abstract class AbstractStandIn {
+	private final List<Invocation> invocations = Collections.synchronizedList(new ArrayList<Invocation>());
+	private final Map<String, Failure> failures = new HashMap<String, Failure>();
+	private volatile long latency;
+
+	/**
+	 * Has to be called at the beginning of every operation.
+	 * 
+	 * @param operation
+	 * @param arguments
+	 * @throws Exception
+	 *             In case a failure has been injected for the operation
+	 */
+	protected void invoked(String operation, Object... arguments) throws Exception {
+		long timestamp = System.currentTimeMillis();
+		if (latency > 0) {
+			Thread.sleep(latency);
+		}
+		String message = nextFailure(operation);
+		invocations.add(new Invocation(operation, arguments, timestamp, message != null));
+		if (message != null) {
+			throw new Exception(message);
+		}
+	}
+
+	/*
+	 * Returns the message of the failure to inject into the current invocation, null if it should succeed
+	 */
+	private synchronized String nextFailure(String operation) {
+		Failure failure = failures.get(operation);
+		if (failure == null) {
+			return null;
+		}
+		if (failure.remaining > 0 && --failure.remaining == 0) {
+			failures.remove(operation);
+		}
+		return failure.message;
+	}
+
+	/**
+	 * Lets the next invocations of the given operation fail.
+	 * 
+	 * @param operation
+	 * @param count
+	 *            The number of invocations that should fail, a value below 1 lets all invocations fail until
+	 *            the failures are cleared
+	 * @param message
+	 */
+	public synchronized void injectFailure(String operation, int count, String message) {
+		failures.put(operation, new Failure(count, message));
+	}
+
+	/**
+	 * Removes all injected failures.
+	 */
+	public synchronized void clearFailures() {
+		failures.clear();
+	}
+
+	/**
+	 * Returns all recorded invocations in the order they have been received.
+	 * 
+	 * @return
+	 */
+	public List<Invocation> getInvocations() {
+		synchronized (invocations) {
+			return new ArrayList<Invocation>(invocations);
+		}
+	}
+
+	/**
+	 * Returns the recorded invocations of the given operation.
+	 * 
+	 * @param operation
+	 * @return
+	 */
+	public List<Invocation> getInvocations(String operation) {
+		List<Invocation> result = new ArrayList<Invocation>();
+		synchronized (invocations) {
+			for (Invocation invocation : invocations) {
+				if (invocation.getOperation().equals(operation)) {
+					result.add(invocation);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all recorded invocations.
+	 */
+	public void clearInvocations() {
+		invocations.clear();
+	}
+
+	/**
+	 * Returns the time every invocation is delayed by in ms.
+	 * 
+	 * @return
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Sets the time every invocation is delayed by in ms.
+	 * 
+	 * @param latency
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	private static class Failure {
+		private int remaining;
+		private final String message;
+
+		public Failure(int remaining, String message) {
+			this.remaining = remaining;
+			this.message = message;
+		}
+	}
+
+}
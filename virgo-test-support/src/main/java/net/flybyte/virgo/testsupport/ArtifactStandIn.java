@@ -0,0 +1,71 @@
+package net.flybyte.virgo.testsupport;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+/**
+ * Stand-in for the model MBean Virgo registers for every deployed artefact. Every state change is announced
+ * by an attribute change notification.
+ * 
+ * @author Frieder Heugel
+ */
+public class ArtifactStandIn extends NotificationBroadcasterSupport implements ArtifactStandInMBean {
+	private final String type;
+	private final String name;
+	private final String version;
+	private volatile String state = "INSTALLED";
+	private long sequence;
+
+	public ArtifactStandIn(String type, String name, String version) {
+		this.type = type;
+		this.name = name;
+		this.version = version;
+	}
+
+	/**
+	 * Returns the object name Virgo uses for the model MBean of the artefact.
+	 * 
+	 * @return
+	 * @throws MalformedObjectNameException
+	 */
+	public ObjectName getObjectName() throws MalformedObjectNameException {
+		return new ObjectName("org.eclipse.virgo.kernel:type=ArtifactModel,artifact-type=" + type + ",name="
+				+ name + ",version=" + version + ",region=org.eclipse.virgo.region.user");
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * Changes the state and notifies the listeners.
+	 * 
+	 * @param state
+	 */
+	public void setState(String state) {
+		String oldState;
+		long number;
+		synchronized (this) {
+			oldState = this.state;
+			this.state = state;
+			number = ++sequence;
+		}
+		sendNotification(new AttributeChangeNotification(this, number, System.currentTimeMillis(), name
+				+ " is " + state, "State", String.class.getName(), oldState, state));
+	}
+
+}
@@ -0,0 +1,19 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Management interface of {@link ArtifactStandIn}, mirrors the attributes of the Virgo artefact model MBeans
+ * used by the plugin.
+ * 
+ * @author Frieder Heugel
+ */
+public interface ArtifactStandInMBean {
+
+	String getType();
+
+	String getName();
+
+	String getVersion();
+
+	String getState();
+
+}
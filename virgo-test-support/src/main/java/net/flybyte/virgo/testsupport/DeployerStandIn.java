@@ -0,0 +1,166 @@
+package net.flybyte.virgo.testsupport;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.flybyte.virgo.maven.helper.ArtifactStateWatcher;
+import net.flybyte.virgo.maven.helper.BundleManifest;
+
+/**
+ * Stand-in for the Virgo deployer MBean. Nothing is deployed, the invocations are only recorded. Like Virgo
+ * the stand-in registers a model MBean (see {@link ArtifactStandIn}) for every deployed artefact which goes
+ * through <code>STARTING</code> to <code>ACTIVE</code>. Starting can be delayed to mimic asynchronous
+ * application contexts and fails in case a failure has been injected for the <code>start</code> operation,
+ * the artefact ends up <code>RESOLVED</code> then.
+ * 
+ * @author Frieder Heugel
+ */
+public class DeployerStandIn extends AbstractStandIn implements DeployerStandInMBean, MBeanRegistration {
+	private final Map<String, ArtifactStandIn> artifacts = new HashMap<String, ArtifactStandIn>();
+	private volatile long startDelay;
+	private MBeanServer server;
+
+	public void deploy(String uri, boolean recoverable) throws Exception {
+		invoked("deploy", uri, recoverable);
+		ArtifactStandIn artifact = createArtifact(uri);
+		synchronized (artifacts) {
+			ArtifactStandIn previous = artifacts.put(artifact.getName(), artifact);
+			if (previous != null) {
+				unregister(previous);
+			}
+			server.registerMBean(artifact, artifact.getObjectName());
+		}
+		start(artifact);
+	}
+
+	public void undeploy(String symbolicName, String version) throws Exception {
+		invoked("undeploy", symbolicName, version);
+		ArtifactStandIn artifact;
+		synchronized (artifacts) {
+			artifact = artifacts.remove(symbolicName);
+		}
+		if (artifact != null) {
+			artifact.setState(ArtifactStateWatcher.UNINSTALLED);
+			unregister(artifact);
+		}
+	}
+
+	public void refresh(String uri, String symbolicName) throws Exception {
+		invoked("refresh", uri, symbolicName);
+		restart(symbolicName);
+	}
+
+	public void refreshBundle(String symbolicName, String version) throws Exception {
+		invoked("refreshBundle", symbolicName, version);
+		restart(symbolicName);
+	}
+
+	/*
+	 * Identifies the artefact by its manifest, artefacts which don't exist are named by their file name
+	 */
+	private ArtifactStandIn createArtifact(String uri) {
+		String fileName = uri.substring(uri.lastIndexOf('/') + 1);
+		int dot = fileName.lastIndexOf('.');
+		String type = ArtifactStateWatcher.getArtifactType(dot < 0 ? "" : fileName.substring(dot + 1));
+		String name = dot < 0 ? fileName : fileName.substring(0, dot);
+		String version = "0.0.0";
+		try {
+			BundleManifest manifest = BundleManifest.read(new File(URI.create(uri)));
+			if (manifest != null && manifest.getSymbolicName() != null) {
+				name = manifest.getSymbolicName();
+				version = manifest.getVersion() != null ? manifest.getVersion() : version;
+			}
+		} catch (Exception e) {
+			// keep the file name
+		}
+		return new ArtifactStandIn(type, name, version);
+	}
+
+	private void restart(String symbolicName) throws Exception {
+		ArtifactStandIn artifact;
+		synchronized (artifacts) {
+			artifact = artifacts.get(symbolicName);
+		}
+		if (artifact != null) {
+			artifact.setState("STOPPING");
+			artifact.setState("RESOLVED");
+			start(artifact);
+		}
+	}
+
+	private void start(final ArtifactStandIn artifact) throws Exception {
+		artifact.setState(ArtifactStateWatcher.STARTING);
+		if (startDelay <= 0) {
+			completeStart(artifact);
+			return;
+		}
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(startDelay);
+					completeStart(artifact);
+				} catch (Exception e) {
+					// the state tells about the failure
+				}
+			}
+		}, "virgo-standin-start");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void completeStart(ArtifactStandIn artifact) throws Exception {
+		try {
+			invoked("start", artifact.getName(), artifact.getVersion());
+		} catch (Exception e) {
+			artifact.setState("RESOLVED");
+			throw e;
+		}
+		artifact.setState(ArtifactStateWatcher.ACTIVE);
+	}
+
+	private void unregister(ArtifactStandIn artifact) throws Exception {
+		if (server.isRegistered(artifact.getObjectName())) {
+			server.unregisterMBean(artifact.getObjectName());
+		}
+	}
+
+	/**
+	 * Returns the time it takes to start a deployed artefact in ms.
+	 * 
+	 * @return
+	 */
+	public long getStartDelay() {
+		return startDelay;
+	}
+
+	/**
+	 * Sets the time it takes to start a deployed artefact in ms. With a delay the deployer operations return
+	 * right away and the artefact becomes active in the background.
+	 * 
+	 * @param startDelay
+	 */
+	public void setStartDelay(long startDelay) {
+		this.startDelay = startDelay;
+	}
+
+	public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+		this.server = server;
+		return name;
+	}
+
+	public void postRegister(Boolean registrationDone) {
+	}
+
+	public void preDeregister() throws Exception {
+	}
+
+	public void postDeregister() {
+	}
+
+}
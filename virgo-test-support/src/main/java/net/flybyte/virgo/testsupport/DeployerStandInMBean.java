@@ -0,0 +1,19 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Management interface of {@link DeployerStandIn}, mirrors the operations of the Virgo deployer MBean used
+ * by the plugin.
+ * 
+ * @author Frieder Heugel
+ */
+public interface DeployerStandInMBean {
+
+	void deploy(String uri, boolean recoverable) throws Exception;
+
+	void undeploy(String symbolicName, String version) throws Exception;
+
+	void refresh(String uri, String symbolicName) throws Exception;
+
+	void refreshBundle(String symbolicName, String version) throws Exception;
+
+}
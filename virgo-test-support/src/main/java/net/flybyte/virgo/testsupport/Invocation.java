@@ -0,0 +1,66 @@
+package net.flybyte.virgo.testsupport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single operation invoked on one of the stand-in MBeans.
+ * 
+ * @author Frieder Heugel
+ */
+public class Invocation {
+	private final String operation;
+	private final List<Object> arguments;
+	private final long timestamp;
+	private final boolean failed;
+
+	public Invocation(String operation, Object[] arguments, long timestamp, boolean failed) {
+		this.operation = operation;
+		this.arguments = Collections.unmodifiableList(Arrays.asList(arguments));
+		this.timestamp = timestamp;
+		this.failed = failed;
+	}
+
+	/**
+	 * Returns the name of the invoked operation.
+	 * 
+	 * @return
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the arguments the operation has been invoked with.
+	 * 
+	 * @return
+	 */
+	public List<Object> getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * Returns the time the invocation has been received in ms.
+	 * 
+	 * @return
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns whether or not a failure has been injected into this invocation.
+	 * 
+	 * @return
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return operation + arguments + (failed ? " (failed)" : "");
+	}
+
+}
@@ -0,0 +1,25 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Stand-in for the Virgo kernel status MBean. The status can be changed to simulate a server which is
+ * still starting.
+ * 
+ * @author Frieder Heugel
+ */
+public class KernelStatusStandIn implements KernelStatusStandInMBean {
+	private volatile String status = "STARTED";
+
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Sets the reported status, Virgo reports <code>STARTING</code> and <code>STARTED</code>.
+	 * 
+	 * @param status
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+}
@@ -0,0 +1,13 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Management interface of {@link KernelStatusStandIn}, mirrors the attribute of the Virgo kernel status
+ * MBean used by the plugin.
+ * 
+ * @author Frieder Heugel
+ */
+public interface KernelStatusStandInMBean {
+
+	String getStatus();
+
+}
@@ -0,0 +1,18 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Stand-in for the Virgo shutdown MBean. The invocations are recorded, the server keeps running.
+ * 
+ * @author Frieder Heugel
+ */
+public class ShutdownStandIn extends AbstractStandIn implements ShutdownStandInMBean {
+
+	public void shutdown() throws Exception {
+		invoked("shutdown");
+	}
+
+	public void immediateShutdown() throws Exception {
+		invoked("immediateShutdown");
+	}
+
+}
@@ -0,0 +1,15 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Management interface of {@link ShutdownStandIn}, mirrors the operations of the Virgo shutdown MBean used
+ * by the plugin.
+ * 
+ * @author Frieder Heugel
+ */
+public interface ShutdownStandInMBean {
+
+	void shutdown() throws Exception;
+
+	void immediateShutdown() throws Exception;
+
+}
@@ -0,0 +1,123 @@
+package net.flybyte.virgo.testsupport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.flybyte.virgo.maven.helper.ContentHasher;
+
+/**
+ * Stand-in for the staging MBean of the companion agent. Chunks are kept in <code>work/staging/chunks</code>
+ * of the Virgo root directory, named by their hash, and assembled into <code>work/staging</code>. Like the
+ * agent the stand-in verifies the hashes of all chunks and assembled files, so corrupted transfers are
+ * detected.
+ * 
+ * @author Frieder Heugel
+ */
+public class StagingStandIn extends AbstractStandIn implements StagingStandInMBean {
+	private volatile File directory;
+
+	public String[] findMissingChunks(String[] hashes) throws Exception {
+		invoked("findMissingChunks", (Object) hashes);
+		List<String> missing = new ArrayList<String>();
+		for (String hash : hashes) {
+			if (!getChunk(hash).isFile()) {
+				missing.add(hash);
+			}
+		}
+		return missing.toArray(new String[missing.size()]);
+	}
+
+	public void putChunk(String hash, byte[] data, boolean compressed) throws Exception {
+		invoked("putChunk", hash, data.length, compressed);
+		byte[] content = compressed ? inflate(data) : data;
+		String actual = ContentHasher.toHex(ContentHasher.newDigest().digest(content));
+		if (!actual.equals(hash)) {
+			throw new Exception("The chunk " + hash + " has been corrupted, its hash is " + actual);
+		}
+		File chunk = getChunk(hash);
+		chunk.getParentFile().mkdirs();
+		// write to a temporary file first, so concurrent transfers never see a partial chunk
+		File temp = File.createTempFile(hash, ".tmp", chunk.getParentFile());
+		Files.write(temp.toPath(), content);
+		Files.move(temp.toPath(), chunk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public String assemble(String fileName, String[] hashes, String fileHash) throws Exception {
+		invoked("assemble", fileName, hashes.length, fileHash);
+		File file = new File(directory, new File(fileName).getName());
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			for (String hash : hashes) {
+				File chunk = getChunk(hash);
+				if (!chunk.isFile()) {
+					throw new Exception("The chunk " + hash + " of " + fileName + " is missing");
+				}
+				Files.copy(chunk.toPath(), out);
+			}
+		} finally {
+			out.close();
+		}
+		String actual = ContentHasher.hash(temp);
+		if (!actual.equals(fileHash)) {
+			temp.delete();
+			throw new Exception("The assembled file " + fileName + " has the hash " + actual + " instead of "
+					+ fileHash);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return file.toURI().toString();
+	}
+
+	private File getChunk(String hash) {
+		return new File(directory, "chunks/" + hash);
+	}
+
+	private static byte[] inflate(byte[] data) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+			byte[] buffer = new byte[16 * 1024];
+			while (!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated chunk");
+				}
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Returns the directory artefacts are staged to.
+	 * 
+	 * @return
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets the directory artefacts are staged to.
+	 * 
+	 * @param directory
+	 */
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+}
@@ -0,0 +1,17 @@
+package net.flybyte.virgo.testsupport;
+
+/**
+ * Management interface of {@link StagingStandIn}, mirrors the operations of the staging MBean the
+ * <code>stream</code> transport of the plugin transfers artefacts to.
+ * 
+ * @author Frieder Heugel
+ */
+public interface StagingStandInMBean {
+
+	String[] findMissingChunks(String[] hashes) throws Exception;
+
+	void putChunk(String hash, byte[] data, boolean compressed) throws Exception;
+
+	String assemble(String fileName, String[] hashes, String fileHash) throws Exception;
+
+}
@@ -0,0 +1,373 @@
+package net.flybyte.virgo.testsupport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.management.remote.JMXAuthenticator;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXPrincipal;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.rmi.RMIConnectorServer;
+import javax.management.remote.rmi.RMIJRMPServerImpl;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.rmi.ssl.SslRMIClientSocketFactory;
+import javax.rmi.ssl.SslRMIServerSocketFactory;
+import javax.security.auth.Subject;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.helper.ChunkedUploader;
+
+/**
+ * An in-process stand-in for Eclipse Virgo. It registers MBeans under the names of the Virgo shutdown,
+ * deployer and kernel status MBeans, the staging MBean of the companion agent as well as the runtime MXBean
+ * of the JVM in a private MBean server and exposes them via an RMI connector server on a free port, using
+ * the same service URL layout as Virgo. A throw-away Virgo root directory is created which contains the
+ * keystore the plugin expects at <code>configuration/keystore</code>. In SSL mode the keystore holds a key
+ * pair which is used by the connector server, otherwise it is empty. The key pair is generated once per JVM.
+ * The JVM wide trust store is left alone, clients have to trust the keystore of the Virgo root like the
+ * plugin does. The stub of the connector server is bound to the in-process RMI registry directly, a
+ * registry receiving it over the network would connect to the connector server right away and thereby fix
+ * the default SSL socket factory of RMI before any client gets the chance to configure it.
+ * 
+ * <pre>
+ * VirgoStandIn virgo = new VirgoStandIn();
+ * virgo.setSsl(true);
+ * virgo.start();
+ * mojo.setVirgoRoot(virgo.getVirgoRoot());
+ * mojo.setServiceUrl(virgo.getServiceUrl());
+ * ...
+ * virgo.getDeployer().getInvocations(&quot;deploy&quot;);
+ * virgo.stop();
+ * </pre>
+ * 
+ * @author Frieder Heugel
+ */
+public class VirgoStandIn {
+	/**
+	 * The password of the generated keystore.
+	 */
+	public static final String KEYSTORE_PASSWORD = "changeit";
+	private static File sharedKeystore;
+	private final DeployerStandIn deployer = new DeployerStandIn();
+	private final ShutdownStandIn shutdown = new ShutdownStandIn();
+	private final KernelStatusStandIn kernelStatus = new KernelStatusStandIn();
+	private final StagingStandIn staging = new StagingStandIn();
+	private boolean ssl;
+	private String user;
+	private String password;
+	private MBeanServer server;
+	private Registry registry;
+	private JMXConnectorServer connectorServer;
+	private File virgoRoot;
+	private int port;
+	private String serviceUrl;
+
+	/**
+	 * Creates the Virgo root directory, registers the MBeans and starts the connector server.
+	 * 
+	 * @throws Exception
+	 */
+	public void start() throws Exception {
+		virgoRoot = File.createTempFile("virgo-standin", "");
+		virgoRoot.delete();
+		File keystore = new File(virgoRoot, "configuration/keystore");
+		keystore.getParentFile().mkdirs();
+		new File(virgoRoot, BaseMojo.EVENT_LOG).getParentFile().mkdirs();
+		new File(virgoRoot, BaseMojo.EVENT_LOG).createNewFile();
+		server = MBeanServerFactory.newMBeanServer();
+		server.registerMBean(deployer, new ObjectName(BaseMojo.MBEAN_DEPLOYER));
+		server.registerMBean(shutdown, new ObjectName(BaseMojo.MBEAN_SHUTDOWN));
+		server.registerMBean(kernelStatus, new ObjectName(BaseMojo.MBEAN_KERNEL_STATUS));
+		staging.setDirectory(new File(virgoRoot, "work/staging"));
+		staging.getDirectory().mkdirs();
+		server.registerMBean(staging, new ObjectName(ChunkedUploader.MBEAN_STAGING));
+		// exposes the PID of this JVM like the platform MBean server of Virgo does
+		server.registerMBean(new StandardMBean(ManagementFactory.getRuntimeMXBean(), RuntimeMXBean.class, true),
+				new ObjectName(ManagementFactory.RUNTIME_MXBEAN_NAME));
+		Map<String, Object> env = new HashMap<String, Object>();
+		port = findFreePort();
+		int connectorPort = port;
+		if (ssl) {
+			Files.copy(getSharedKeystore().toPath(), keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			env.put(RMIConnectorServer.RMI_CLIENT_SOCKET_FACTORY_ATTRIBUTE, new SslRMIClientSocketFactory());
+			env.put(RMIConnectorServer.RMI_SERVER_SOCKET_FACTORY_ATTRIBUTE, new SslRMIServerSocketFactory(
+					createSslContext(keystore), null, null, false));
+			// the plain registry and the SSL connector cannot share a port
+			connectorPort = findFreePort();
+		} else {
+			keystore.createNewFile();
+		}
+		if (user != null) {
+			env.put(JMXConnectorServer.AUTHENTICATOR, new Authenticator(user, password));
+		}
+		registry = LocateRegistry.createRegistry(port);
+		serviceUrl = String.format("service:jmx:rmi://localhost:%d/jndi/rmi://localhost:%d/jmxrmi", connectorPort,
+				port);
+		RMIClientSocketFactory clientFactory = (RMIClientSocketFactory) env
+				.get(RMIConnectorServer.RMI_CLIENT_SOCKET_FACTORY_ATTRIBUTE);
+		RMIServerSocketFactory serverFactory = (RMIServerSocketFactory) env
+				.get(RMIConnectorServer.RMI_SERVER_SOCKET_FACTORY_ATTRIBUTE);
+		RMIJRMPServerImpl serverImpl = new RMIJRMPServerImpl(connectorPort, clientFactory, serverFactory, env);
+		connectorServer = new RMIConnectorServer(new JMXServiceURL("rmi", "localhost", connectorPort), env,
+				serverImpl, server);
+		connectorServer.start();
+		registry.bind("jmxrmi", serverImpl.toStub());
+	}
+
+	/**
+	 * Stops the connector server and removes the Virgo root directory.
+	 * 
+	 * @throws Exception
+	 */
+	public void stop() throws Exception {
+		try {
+			if (connectorServer != null) {
+				connectorServer.stop();
+			}
+		} finally {
+			if (registry != null) {
+				UnicastRemoteObject.unexportObject(registry, true);
+			}
+			delete(virgoRoot);
+			connectorServer = null;
+			registry = null;
+			server = null;
+		}
+	}
+
+	/*
+	 * Generate the key pair on first use
+	 */
+	private static synchronized File getSharedKeystore() throws IOException, InterruptedException {
+		if (sharedKeystore == null) {
+			File keystore = File.createTempFile("virgo-standin", ".keystore");
+			keystore.delete();
+			keystore.deleteOnExit();
+			generateKeystore(keystore);
+			sharedKeystore = keystore;
+		}
+		return sharedKeystore;
+	}
+
+	/*
+	 * Create a key pair for localhost using the keytool of the running JVM
+	 */
+	private static void generateKeystore(File keystore) throws IOException, InterruptedException {
+		String keytool = new File(System.getProperty("java.home"), "bin/keytool").getAbsolutePath();
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "virgo", "-keyalg", "RSA",
+				"-keysize", "2048", "-validity", "365", "-dname", "CN=localhost", "-storetype", "JKS",
+				"-keystore", keystore.getAbsolutePath(), "-storepass", KEYSTORE_PASSWORD, "-keypass",
+				KEYSTORE_PASSWORD, "-noprompt").redirectErrorStream(true).start();
+		InputStream in = process.getInputStream();
+		try {
+			while (in.read() >= 0) {
+				// drain the output so keytool doesn't block
+			}
+		} finally {
+			in.close();
+		}
+		if (process.waitFor() != 0 || !keystore.isFile()) {
+			throw new IOException("Unable to generate the keystore " + keystore);
+		}
+	}
+
+	private SSLContext createSslContext(File keystore) throws Exception {
+		KeyStore store = KeyStore.getInstance("JKS");
+		InputStream in = new FileInputStream(keystore);
+		try {
+			store.load(in, KEYSTORE_PASSWORD.toCharArray());
+		} finally {
+			in.close();
+		}
+		KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		factory.init(store, KEYSTORE_PASSWORD.toCharArray());
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(factory.getKeyManagers(), null, null);
+		return context;
+	}
+
+	private static int findFreePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static void delete(File file) {
+		if (file == null) {
+			return;
+		}
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/*
+	 * getter/setter methods ***************************************
+	 */
+
+	/**
+	 * Returns whether or not the connector server uses SSL.
+	 * 
+	 * @return
+	 */
+	public boolean isSsl() {
+		return ssl;
+	}
+
+	/**
+	 * Define whether or not the connector server uses SSL. Has to be set before the stand-in is started.
+	 * 
+	 * @param ssl
+	 */
+	public void setSsl(boolean ssl) {
+		this.ssl = ssl;
+	}
+
+	/**
+	 * Requires clients to authenticate with the given credentials. Has to be set before the stand-in is
+	 * started, by default any client is accepted.
+	 * 
+	 * @param user
+	 * @param password
+	 */
+	public void setCredentials(String user, String password) {
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Sets the latency of all operations in ms.
+	 * 
+	 * @param latency
+	 */
+	public void setLatency(long latency) {
+		deployer.setLatency(latency);
+		shutdown.setLatency(latency);
+		staging.setLatency(latency);
+	}
+
+	/**
+	 * Returns the port of the RMI registry. Without SSL the connector server listens on the same port, so the
+	 * default service URL of the plugin can be used together with this port.
+	 * 
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the complete service URL of the connector server.
+	 * 
+	 * @return
+	 */
+	public String getServiceUrl() {
+		return serviceUrl;
+	}
+
+	/**
+	 * Returns the Virgo root directory.
+	 * 
+	 * @return
+	 */
+	public File getVirgoRoot() {
+		return virgoRoot;
+	}
+
+	/**
+	 * Returns the location of the keystore inside the Virgo root directory.
+	 * 
+	 * @return
+	 */
+	public File getKeystore() {
+		return new File(virgoRoot, "configuration/keystore");
+	}
+
+	/**
+	 * Returns the deployer MBean.
+	 * 
+	 * @return
+	 */
+	public DeployerStandIn getDeployer() {
+		return deployer;
+	}
+
+	/**
+	 * Returns the shutdown MBean.
+	 * 
+	 * @return
+	 */
+	public ShutdownStandIn getShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Returns the kernel status MBean.
+	 * 
+	 * @return
+	 */
+	public KernelStatusStandIn getKernelStatus() {
+		return kernelStatus;
+	}
+
+	/**
+	 * Returns the staging MBean of the companion agent.
+	 * 
+	 * @return
+	 */
+	public StagingStandIn getStaging() {
+		return staging;
+	}
+
+	/*
+	 * Accepts exactly one user, the credentials are passed by the plugin as a String array
+	 */
+	private static class Authenticator implements JMXAuthenticator {
+		private final String user;
+		private final String password;
+
+		public Authenticator(String user, String password) {
+			this.user = user;
+			this.password = password;
+		}
+
+		public Subject authenticate(Object credentials) {
+			if (!(credentials instanceof String[])
+					|| !Arrays.equals((String[]) credentials, new String[] { user, password })) {
+				throw new SecurityException("Invalid credentials");
+			}
+			return new Subject(true, Collections.singleton(new JMXPrincipal(user)),
+					Collections.emptySet(), Collections.emptySet());
+		}
+	}
+
+}
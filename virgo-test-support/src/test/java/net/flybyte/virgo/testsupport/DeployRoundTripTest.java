@@ -0,0 +1,128 @@
+package net.flybyte.virgo.testsupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.deployer.Deploy;
+import net.flybyte.virgo.maven.deployer.Undeploy;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the deploy and undeploy goals against a {@link VirgoStandIn}.
+ * 
+ * @author Frieder Heugel
+ */
+public class DeployRoundTripTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private VirgoStandIn server;
+	private File target;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new VirgoStandIn();
+		server.setSsl(true);
+		server.setCredentials("admin", "springsource");
+		server.start();
+		target = folder.newFolder("target");
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", "org.example.foo");
+		manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(new File(target, "foo-1.0.0.jar")),
+				manifest);
+		out.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void deploysAndUndeploys() throws Exception {
+		execute(new Deploy());
+		List<Invocation> deploys = server.getDeployer().getInvocations("deploy");
+		assertEquals(1, deploys.size());
+		assertTrue(deploys.get(0).toString(), String.valueOf(deploys.get(0).getArguments().get(0)).endsWith(
+				"foo-1.0.0.jar"));
+		assertEquals(1, server.getDeployer().getInvocations("start").size());
+		// the unchanged artefact is already deployed
+		execute(new Deploy());
+		assertEquals(1, server.getDeployer().getInvocations("deploy").size());
+		execute(new Undeploy());
+		List<Invocation> undeploys = server.getDeployer().getInvocations("undeploy");
+		assertEquals(1, undeploys.size());
+		assertEquals("org.example.foo", undeploys.get(0).getArguments().get(0));
+		assertEquals("1.0.0", undeploys.get(0).getArguments().get(1));
+		execute(new Deploy());
+		assertEquals(2, server.getDeployer().getInvocations("deploy").size());
+	}
+
+	@Test
+	public void reportsDeployerFailures() throws Exception {
+		server.getDeployer().injectFailure("deploy", 1, "Unable to satisfy dependencies");
+		try {
+			execute(new Deploy());
+			fail("The failure of the deployer has been ignored");
+		} catch (MojoFailureException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Unable to satisfy dependencies"));
+		}
+		execute(new Deploy());
+		assertEquals(2, server.getDeployer().getInvocations("deploy").size());
+	}
+
+	private void execute(BaseMojo mojo) throws Exception {
+		mojo.setVirgoRoot(server.getVirgoRoot());
+		mojo.setServiceUrl(server.getServiceUrl());
+		mojo.setUser("admin");
+		mojo.setPassword("springsource");
+		mojo.setPackaging("jar");
+		mojo.setSymbolicName("org.example.foo");
+		mojo.setOsgiVersion("1.0.0");
+		mojo.setRecoverable(true);
+		mojo.setTransport("jmx");
+		mojo.setConnectTimeout(5000);
+		mojo.setConnectRetries(1);
+		mojo.setRetryDelay(100);
+		mojo.setInvokeTimeout(10000);
+		mojo.setDeployTimeout(10000);
+		setArtefact(mojo, target, "foo-1.0.0");
+		mojo.execute();
+	}
+
+	/*
+	 * Maven injects the location of the artefact into protected fields
+	 */
+	private static void setArtefact(BaseMojo mojo, File path, String finalArtefact) throws IOException {
+		try {
+			Field field = BaseMojo.class.getDeclaredField("path");
+			field.setAccessible(true);
+			field.set(mojo, path.getAbsolutePath());
+			field = BaseMojo.class.getDeclaredField("finalArtefact");
+			field.setAccessible(true);
+			field.set(mojo, finalArtefact);
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+package net.flybyte.virgo.testsupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import net.flybyte.virgo.maven.BaseMojo;
+import net.flybyte.virgo.maven.deployer.Watch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the watch goal against a {@link VirgoStandIn} and changes the build output while it is watching.
+ * 
+ * @author Frieder Heugel
+ */
+public class WatchRoundTripTest {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final int QUIET_PERIOD = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private VirgoStandIn server;
+	private File classes;
+	private File artefact;
+	private Thread watch;
+	private volatile Throwable failure;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new VirgoStandIn();
+		server.start();
+		File target = folder.newFolder("target");
+		classes = new File(target, "classes");
+		write("org/example/foo/Foo.class", "version 0");
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", "org.example.foo");
+		manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+		artefact = new File(target, "foo-1.0.0.jar");
+		new JarOutputStream(new FileOutputStream(artefact), manifest).close();
+		watch = new Thread(new Runnable() {
+			public void run() {
+				try {
+					createWatch(classes).execute();
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+		}, "virgo-watch");
+		watch.start();
+		// the watch service is registered once a change arrives
+		int version = 0;
+		while (server.getDeployer().getInvocations("refresh").isEmpty()) {
+			assertTrue("The watch goal did not refresh the bundle", version < 30);
+			write("org/example/foo/Foo.class", "version " + ++version);
+			awaitRefresh(1, 300);
+		}
+		// let the last burst settle
+		Thread.sleep(QUIET_PERIOD * 3);
+		server.getDeployer().clearInvocations();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		watch.interrupt();
+		watch.join(10000);
+		server.stop();
+	}
+
+	@Test
+	public void refreshesOncePerBurst() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			write("org/example/foo/Bar" + i + ".class", "bar " + i);
+		}
+		List<Invocation> refreshes = awaitRefresh(1, 10000);
+		// a second refresh would follow within the quiet period
+		Thread.sleep(QUIET_PERIOD * 3);
+		assertEquals(1, server.getDeployer().getInvocations("refresh").size());
+		assertTrue(String.valueOf(refreshes.get(0).getArguments().get(0)).endsWith("foo-1.0.0.jar"));
+		assertEquals("org.example.foo", refreshes.get(0).getArguments().get(1));
+		JarFile jar = new JarFile(artefact);
+		try {
+			Manifest manifest = jar.getManifest();
+			assertEquals("org.example.foo", manifest.getMainAttributes().getValue("Bundle-SymbolicName"));
+			for (int i = 0; i < 5; i++) {
+				assertNotNull(jar.getEntry("org/example/foo/Bar" + i + ".class"));
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	@Test
+	public void keepsWatchingAfterFailedRefresh() throws Exception {
+		server.getDeployer().injectFailure("refresh", 1, "Unable to satisfy dependencies");
+		write("org/example/foo/Foo.class", "broken");
+		awaitRefresh(1, 10000);
+		write("org/example/foo/Foo.class", "fixed");
+		List<Invocation> refreshes = awaitRefresh(2, 10000);
+		assertTrue(refreshes.get(0).isFailed());
+		assertFalse(refreshes.get(1).isFailed());
+		assertTrue(watch.isAlive());
+	}
+
+	@Test
+	public void stopsWhenInterrupted() throws Exception {
+		watch.interrupt();
+		watch.join(10000);
+		assertFalse(watch.isAlive());
+		assertNull(failure);
+	}
+
+	private Watch createWatch(File outputDirectory) throws Exception {
+		Watch mojo = new Watch();
+		mojo.setVirgoRoot(server.getVirgoRoot());
+		mojo.setServiceUrl(server.getServiceUrl());
+		mojo.setPackaging("jar");
+		mojo.setSymbolicName("org.example.foo");
+		mojo.setOsgiVersion("1.0.0");
+		mojo.setQuietPeriod(QUIET_PERIOD);
+		mojo.setConnectTimeout(5000);
+		mojo.setInvokeTimeout(10000);
+		// Maven injects the locations into protected fields
+		set(mojo, "path", artefact.getParentFile().getAbsolutePath());
+		set(mojo, "finalArtefact", "foo-1.0.0");
+		set(mojo, "outputDirectory", outputDirectory);
+		return mojo;
+	}
+
+	private static void set(BaseMojo mojo, String name, Object value) throws IOException {
+		try {
+			Field field = BaseMojo.class.getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(mojo, value);
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/*
+	 * Wait until the given number of refresh invocations has been received, returns them
+	 */
+	private List<Invocation> awaitRefresh(int count, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		List<Invocation> refreshes = server.getDeployer().getInvocations("refresh");
+		while (refreshes.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			refreshes = server.getDeployer().getInvocations("refresh");
+		}
+		return refreshes;
+	}
+
+	private void write(String name, String content) throws IOException {
+		File file = new File(classes, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(CHARSET));
+	}
+
+}